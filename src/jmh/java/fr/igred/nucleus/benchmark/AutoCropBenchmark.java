@@ -0,0 +1,110 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.benchmark;
+
+import fr.igred.nucleus.autocrop.AutoCrop;
+import fr.igred.nucleus.autocrop.AutocropParameters;
+import ij.IJ;
+import ij.ImagePlus;
+import loci.formats.FormatException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the nuclei detection of autocrop (thresholding, connected components, filters and boxes) on a synthetic
+ * wide-field stack, written to a temporary TIFF file as autocrop reads its input from files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AutoCropBenchmark {
+	
+	/** Image width */
+	@Param("512")
+	public int width;
+	/** Image height */
+	@Param("512")
+	public int height;
+	/** Image depth */
+	@Param("24")
+	public int depth;
+	/** Distance between the nuclei, in pixels */
+	@Param("64")
+	public int spacing;
+	/** Tile size (0 to detect the nuclei on the whole image) */
+	@Param("0")
+	public int tileSize;
+	
+	private File               image;
+	private AutocropParameters params;
+	private AutoCrop           autoCrop;
+	
+	
+	@Setup(Level.Trial)
+	public void writeImage() throws IOException {
+		File      folder = Files.createTempDirectory("nucleusj-benchmark").toFile();
+		ImagePlus field  = SyntheticStacks.field(width, height, depth, spacing);
+		image = new File(folder, "field.tif");
+		IJ.saveAsTiff(field, image.getPath());
+		params = new AutocropParameters(folder.getPath(), folder.getPath());
+		params.setTileSize(tileSize);
+	}
+	
+	
+	/** Opening the image (and its 8-bit conversion) is not part of the measure. */
+	@Setup(Level.Invocation)
+	public void openImage() throws IOException, FormatException {
+		autoCrop = new AutoCrop(image, "field", params);
+	}
+	
+	
+	@TearDown(Level.Invocation)
+	public void closeImage() throws IOException {
+		autoCrop.close();
+	}
+	
+	
+	@Benchmark
+	public int computeBoxes() throws IOException, FormatException {
+		if (tileSize > 0) {
+			autoCrop.computeBoxesByTiles("Otsu");
+		} else {
+			autoCrop.thresholdKernels("Otsu");
+			autoCrop.computeConnectedComponent();
+			autoCrop.componentBorderFilter();
+			autoCrop.componentSizeFilter();
+			autoCrop.computeBoxes();
+		}
+		return autoCrop.getNbOfNuc();
+	}
+	
+}
@@ -0,0 +1,87 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.benchmark;
+
+import fr.igred.nucleus.core.Measure3D;
+import fr.igred.nucleus.phantom.Phantom;
+import fr.igred.nucleus.utils.ConvexHullSegmentation;
+import fr.igred.nucleus.utils.DistanceMap;
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/** Benchmarks of the measures and post-processing applied to a segmented nucleus. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MeasureBenchmark {
+	
+	/** Image width */
+	@Param("128")
+	public int width;
+	/** Image height */
+	@Param("128")
+	public int height;
+	/** Image depth */
+	@Param("32")
+	public int depth;
+	
+	private ImagePlus raw;
+	private ImagePlus mask;
+	
+	
+	@Setup(Level.Trial)
+	public void createImages() {
+		Phantom phantom = SyntheticStacks.nucleus(width, height, depth);
+		raw = phantom.getImage();
+		mask = SyntheticStacks.mask(phantom);
+	}
+	
+	
+	@Benchmark
+	public String nucleusParameter3D() {
+		Calibration cal     = raw.getCalibration();
+		Measure3D   measure = new Measure3D(new ImagePlus[]{mask}, raw,
+		                                    cal.pixelWidth, cal.pixelHeight, cal.pixelDepth);
+		return measure.nucleusParameter3D();
+	}
+	
+	
+	@Benchmark
+	public ImagePlus distanceMap() {
+		return DistanceMap.compute(mask);
+	}
+	
+	
+	@Benchmark
+	public ImagePlus convexHullSegmentation() {
+		return ConvexHullSegmentation.convexHullDetection(mask);
+	}
+	
+}
@@ -0,0 +1,81 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.benchmark;
+
+import fr.igred.nucleus.segmentation.NucleusSegmentation;
+import fr.igred.nucleus.segmentation.SegmentationParameters;
+import ij.ImagePlus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+
+/** Benchmark of the Otsu-modified nucleus segmentation on a synthetic nucleus. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SegmentationBenchmark {
+	
+	/** Image width */
+	@Param("128")
+	public int width;
+	/** Image height */
+	@Param("128")
+	public int height;
+	/** Image depth */
+	@Param("32")
+	public int depth;
+	
+	private ImagePlus              raw;
+	private SegmentationParameters params;
+	private NucleusSegmentation    segmentation;
+	
+	
+	@Setup(Level.Trial)
+	public void createImage() throws IOException {
+		String folder = Files.createTempDirectory("nucleusj-benchmark").toString();
+		raw = SyntheticStacks.nucleus(width, height, depth).getImage();
+		params = new SegmentationParameters(folder, folder);
+	}
+	
+	
+	/** The sphericity search runs on a pre-processed image, which is not part of the measure. */
+	@Setup(Level.Invocation)
+	public void preProcess() {
+		segmentation = new NucleusSegmentation(raw.duplicate(), params);
+		segmentation.preProcessImage();
+	}
+	
+	
+	@Benchmark
+	public int findOTSUMaximisingSphericity() {
+		segmentation.findOTSUMaximisingSphericity();
+		return segmentation.getBestThreshold();
+	}
+	
+}
@@ -0,0 +1,92 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.benchmark;
+
+import fr.igred.nucleus.phantom.Phantom;
+import fr.igred.nucleus.phantom.PhantomGenerator;
+import ij.ImagePlus;
+
+import static fr.igred.nucleus.utils.Thresholding.createMask;
+
+
+/**
+ * Synthetic stacks used as benchmark input, made by the {@link PhantomGenerator} with its default calibration and
+ * seed, so that every run processes the same voxels.
+ */
+final class SyntheticStacks {
+	
+	/** Default constructor: private to prevent instantiation */
+	private SyntheticStacks() {
+		// Prevent instantiation
+	}
+	
+	
+	/**
+	 * Creates a stack holding one nucleus with six chromocenters, filling about half of the image in x and y.
+	 *
+	 * @param width  image width
+	 * @param height image height
+	 * @param depth  image depth
+	 *
+	 * @return the phantom
+	 */
+	static Phantom nucleus(int width, int height, int depth) {
+		PhantomGenerator generator = new PhantomGenerator();
+		generator.setSize(width, height, depth);
+		double radius = Math.min(width, height) * 0.1 / 4;
+		double zRatio = Math.min(0.6, depth * 0.2 / 3 / radius);
+		generator.setNucleusShape(radius, zRatio, 0);
+		generator.setChromocenters(6, radius / 8);
+		return generator.generate();
+	}
+	
+	
+	/**
+	 * Creates a wide-field stack with touching nuclei, some of them on the borders.
+	 *
+	 * @param width   image width
+	 * @param height  image height
+	 * @param depth   image depth
+	 * @param spacing mean distance between the nuclei, in pixels
+	 *
+	 * @return the raw field of view
+	 */
+	static ImagePlus field(int width, int height, int depth, int spacing) {
+		PhantomGenerator generator = new PhantomGenerator();
+		generator.setSize(width, height, depth);
+		double radius = spacing * 0.1 / 3;
+		generator.setNucleusShape(radius, Math.min(0.6, depth * 0.2 / 3 / radius), 0.2);
+		generator.setNbNuclei(width / spacing * (height / spacing));
+		generator.setTouching(true);
+		generator.setBorder(true);
+		return generator.generate().getImage();
+	}
+	
+	
+	/**
+	 * Returns the 8-bit binary mask of the nuclei of a phantom.
+	 *
+	 * @param phantom phantom
+	 *
+	 * @return the mask (255 inside the nuclei)
+	 */
+	static ImagePlus mask(Phantom phantom) {
+		return createMask(phantom.getNucleusLabels(), 1);
+	}
+	
+}
@@ -0,0 +1,91 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.benchmark;
+
+import fr.igred.nucleus.utils.VoxelView;
+import ij.ImagePlus;
+import ij.ImageStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/** Compares voxel access through {@link ImageStack#getVoxel(int, int, int)} and through {@link VoxelView}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VoxelAccessBenchmark {
+	
+	/** Image width */
+	@Param("1024")
+	public int width;
+	/** Image height */
+	@Param("1024")
+	public int height;
+	/** Image depth */
+	@Param("32")
+	public int depth;
+	
+	private ImageStack stack;
+	private VoxelView  view;
+	
+	
+	@Setup(Level.Trial)
+	public void createImage() {
+		ImagePlus raw = SyntheticStacks.nucleus(width, height, depth).getImage();
+		stack = raw.getStack();
+		view = VoxelView.of(raw);
+	}
+	
+	
+	/** Former access pattern: getVoxel, x before y. */
+	@Benchmark
+	public double getVoxel() {
+		double sum = 0;
+		for (int z = 0; z < depth; ++z) {
+			for (int x = 0; x < width; ++x) {
+				for (int y = 0; y < height; ++y) {
+					sum += stack.getVoxel(x, y, z);
+				}
+			}
+		}
+		return sum;
+	}
+	
+	
+	@Benchmark
+	public double voxelView() {
+		double sum  = 0;
+		int    size = width * height;
+		for (int z = 0; z < depth; ++z) {
+			for (int offset = 0; offset < size; ++offset) {
+				sum += view.get(z, offset);
+			}
+		}
+		return sum;
+	}
+	
+}
@@ -19,9 +19,10 @@ package fr.igred.nucleus.autocrop;
 
 import fr.igred.nucleus.utils.Thresholding;
 import fr.igred.nucleus.io.Directory;
+import fr.igred.nucleus.io.ImageSource;
 import fr.igred.nucleus.io.OutputTextFile;
 import fr.igred.nucleus.io.OutputTiff;
-import fr.igred.nucleus.utils.Histogram;
+import fr.igred.nucleus.utils.ConnectedComponents;
 import fr.igred.omero.Client;
 import fr.igred.omero.exception.AccessException;
 import fr.igred.omero.exception.OMEROServerError;
@@ -32,21 +33,17 @@ import fr.igred.omero.roi.ROIWrapper;
 import fr.igred.omero.roi.RectangleWrapper;
 import fr.igred.omero.roi.ShapeList;
 import ij.ImagePlus;
-import ij.ImageStack;
 import ij.gui.Roi;
 import ij.measure.Calibration;
-import ij.plugin.ChannelSplitter;
 import ij.plugin.Duplicator;
 import ij.plugin.GaussianBlur3D;
-import inra.ijpb.binary.BinaryImages;
-import inra.ijpb.label.LabelImages;
 import loci.formats.FormatException;
-import loci.plugins.BF;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.Color;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
@@ -75,7 +72,7 @@ import static fr.igred.nucleus.utils.Thresholding.contrastAnd8bits;
  * ChannelToComputeThreshold) and then boxes coordinate are applied on all channel. You can identify from which channel
  * crop from the file name before file extension you can see C0 for channel 0 for example.
  */
-public class AutoCrop {
+public class AutoCrop implements Closeable {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
@@ -96,24 +93,26 @@ public class AutoCrop {
 	/** The path of the image to be processed */
 	private final String             imageFilePath;
 	
-	/** Raw image */
-	private ImagePlus        rawImg;
+	/** Image file, read on demand (null for OMERO images) */
+	private ImageSource         source;
+	/** Raw image (first channel) */
+	private ImagePlus           rawImg;
 	/** Segmented image */
-	private ImagePlus        imageSeg;
-	/** Segmented image connect component labelled */
-	private ImagePlus        imageSegLabelled;
+	private ImagePlus           imageSeg;
+	/** Connected components of the segmented image */
+	private ConnectedComponents components;
 	/** Number of channels in current image */
-	private int              channelNumbers = 1;
+	private int                 channelNumbers = 1;
 	/** Get current info image analysis */
-	private String           infoImageAnalysis;
+	private String              infoImageAnalysis;
 	/** OTSU threshold  used to compute segmented image */
-	private int              otsuThreshold;
+	private int                 otsuThreshold;
 	/** Slice start to compute OTSU */
-	private String           sliceUsedForOTSU;
+	private String              sliceUsedForOTSU;
 	/** Default threshold */
-	private boolean          defaultThreshold;
+	private boolean             defaultThreshold;
 	/** List of boxes  to crop link to label value */
-	private Map<Double, Box> boxes          = new HashMap<>();
+	private Map<Double, Box>    boxes          = new HashMap<>();
 	
 	
 	/**
@@ -132,11 +131,16 @@ public class AutoCrop {
 		this.imageFilePath = imageFile.getAbsolutePath();
 		this.outputDirPath = this.params.getOutputFolder();
 		this.outputFilesPrefix = outputFilesPrefix;
+		this.source = new ImageSource(imageFilePath);
+		/* When nuclei are detected tile by tile, planes are not kept in memory */
+		source.setCaching(params.getTileSize() == 0);
 		setChannelNumbers();
-		if (rawImg.getBitDepth() > 8) {
-			imageSeg = contrastAnd8bits(getImageChannel(this.params.getChannelToComputeThreshold()));
-		} else {
-			imageSeg = getImageChannel(this.params.getChannelToComputeThreshold());
+		if (params.getTileSize() == 0) {
+			if (rawImg.getBitDepth() > 8) {
+				imageSeg = contrastAnd8bits(getImageChannel(this.params.getChannelToComputeThreshold()));
+			} else {
+				imageSeg = getImageChannel(this.params.getChannelToComputeThreshold());
+			}
 		}
 		this.infoImageAnalysis = params.getAnalysisParameters();
 	}
@@ -170,6 +174,7 @@ public class AutoCrop {
 		this.imageFilePath = imageFile.getAbsolutePath();
 		this.outputDirPath = this.params.getOutputFolder();
 		this.outputFilesPrefix = outputFilesPrefix;
+		this.source = new ImageSource(imageFilePath);
 		setChannelNumbers();
 		this.imageSeg = rawImg;
 		this.infoImageAnalysis = params.getAnalysisParameters();
@@ -187,15 +192,13 @@ public class AutoCrop {
 	 *
 	 * @param channelNumber Number of channel to compute OTSU for crop
 	 *
-	 * @return image of specific channel
+	 * @return image of specific channel, which can be modified
 	 *
 	 * @throws IOException
 	 * @throws FormatException
 	 */
 	public ImagePlus getImageChannel(int channelNumber) throws IOException, FormatException {
-		ImagePlus[] currentImage = BF.openImagePlus(imageFilePath);
-		currentImage = ChannelSplitter.split(currentImage[0]);
-		return currentImage[channelNumber];
+		return source.readChannel(channelNumber);
 	}
 	
 	
@@ -213,11 +216,9 @@ public class AutoCrop {
 	 * @throws FormatException
 	 */
 	private void setChannelNumbers() throws IOException, FormatException {
-		ImagePlus[] currentImage = BF.openImagePlus(imageFilePath);
-		currentImage = ChannelSplitter.split(currentImage[0]);
-		this.rawImg = currentImage[0];
-		if (currentImage.length > 1) {
-			this.channelNumbers = currentImage.length;
+		this.rawImg = source.getChannel(0);
+		if (source.getNChannels() > 1) {
+			this.channelNumbers = source.getNChannels();
 		}
 	}
 	
@@ -275,10 +276,32 @@ public class AutoCrop {
 	}
 	
 	
-	/** MorpholibJ Method computing connected components using OTSU segmented image */
+	/**
+	 * Detects the nuclei of the image file tile by tile, without loading the whole image: this replaces
+	 * {@link #thresholdKernels(String)}, {@link #computeConnectedComponent()}, {@link #componentBorderFilter()},
+	 * {@link #componentSizeFilter()} and {@link #computeBoxes()}. The tile size is set in the autocrop parameters.
+	 *
+	 * @param typeThresholding thresholding method
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	public void computeBoxesByTiles(String typeThresholding) throws IOException, FormatException {
+		TiledDetection detection = new TiledDetection(source, params);
+		this.boxes = detection.run(typeThresholding, getVoxelVolume());
+		this.otsuThreshold = detection.getThreshold();
+		this.sliceUsedForOTSU = detection.getSliceUsedForOTSU();
+		this.defaultThreshold = detection.isDefaultThreshold();
+	}
+	
+	
+	/**
+	 * Computes the connected components (26-connectivity) of the OTSU segmented image, with their number of voxels and
+	 * their bounding boxes.
+	 */
 	public void computeConnectedComponent() {
 		LOGGER.info("Computing connected components.");
-		this.imageSegLabelled = BinaryImages.componentsLabeling(imageSeg, 26, 32);
+		this.components = ConnectedComponents.label(imageSeg, 26, false);
 	}
 	
 	
@@ -288,31 +311,27 @@ public class AutoCrop {
 	 */
 	public void componentSizeFilter() {
 		LOGGER.info("Filtering components by size.");
-		Histogram histogram = new Histogram();
-		histogram.run(imageSegLabelled);
-		Map<Double, Integer> histogramData = histogram.getHistogram();
-		for (Map.Entry<Double, Integer> entry : new TreeMap<>(histogramData).entrySet()) {
-			Double  key   = entry.getKey();
-			Integer value = entry.getValue();
+		for (int label = 1; label <= components.getNbLabels(); ++label) {
+			int value = components.getVoxelCount(label);
 			if (!(value * getVoxelVolume() < params.getMinVolumeNucleus() ||
 			      value * getVoxelVolume() > params.getMaxVolumeNucleus()) && value > 1) {
-				Box initializedBox = new Box(Short.MAX_VALUE,
-				                             Short.MIN_VALUE,
-				                             Short.MAX_VALUE,
-				                             Short.MIN_VALUE,
-				                             Short.MAX_VALUE,
-				                             Short.MIN_VALUE);
-				boxes.put(key, initializedBox);
+				Box initializedBox = new Box(Integer.MAX_VALUE,
+				                             Integer.MIN_VALUE,
+				                             Integer.MAX_VALUE,
+				                             Integer.MIN_VALUE,
+				                             Integer.MAX_VALUE,
+				                             Integer.MIN_VALUE);
+				boxes.put((double) label, initializedBox);
 			}
 		}
 		LOGGER.debug("Number of objects found: {}", boxes.size());
 	}
 	
 	
-	/** MorpholibJ Method filtering border connect component */
+	/** Filters the connected components touching the borders of the image */
 	public void componentBorderFilter() {
 		LOGGER.info("Filtering components on border.");
-		LabelImages.removeBorderLabels(imageSegLabelled);
+		components.removeBorderLabels();
 	}
 	
 	
@@ -328,23 +347,15 @@ public class AutoCrop {
 	public void computeBoxes() {
 		LOGGER.info("Computing boxes.");
 		try {
-			ImageStack imageStackInput = imageSegLabelled.getStack();
-			Box        box;
-			for (short k = 0; k < imageSegLabelled.getNSlices(); ++k) {
-				for (short i = 0; i < imageSegLabelled.getWidth(); ++i) {
-					for (short j = 0; j < imageSegLabelled.getHeight(); ++j) {
-						if (imageStackInput.getVoxel(i, j, k) > 0 &&
-						    boxes.containsKey(imageStackInput.getVoxel(i, j, k))) {
-							box = boxes.get(imageStackInput.getVoxel(i, j, k));
-							box.setXMin((short) Math.min(i, box.getXMin()));
-							box.setXMax((short) Math.max(i, box.getXMax()));
-							box.setYMin((short) Math.min(j, box.getYMin()));
-							box.setYMax((short) Math.max(j, box.getYMax()));
-							box.setZMin((short) Math.min(k, box.getZMin()));
-							box.setZMax((short) Math.max(k, box.getZMax()));
-						}
-					}
-				}
+			for (Map.Entry<Double, Box> entry : boxes.entrySet()) {
+				int[] bounds = components.getBoundingBox(entry.getKey().intValue());
+				Box   box    = entry.getValue();
+				box.setXMin(Math.min(bounds[0], box.getXMin()));
+				box.setXMax(Math.max(bounds[1], box.getXMax()));
+				box.setYMin(Math.min(bounds[2], box.getYMin()));
+				box.setYMax(Math.max(bounds[3], box.getYMax()));
+				box.setZMin(Math.min(bounds[4], box.getZMin()));
+				box.setZMax(Math.max(bounds[5], box.getZMax()));
 			}
 		} catch (Exception e) {
 			LOGGER.error("An error occurred.", e);
@@ -374,26 +385,26 @@ public class AutoCrop {
 			zMin = Math.max(1, zMin);
 			
 			int width = box.getXMax() + 2 * params.getXCropBoxSize() - box.getXMin();
-			if (width > imageSeg.getWidth()) {
-				width = imageSeg.getWidth() - 1;
+			if (width > rawImg.getWidth()) {
+				width = rawImg.getWidth() - 1;
 			}
-			if (width + xMin >= imageSeg.getWidth() || width < 0) {
-				width = imageSeg.getWidth() - xMin;
+			if (width + xMin >= rawImg.getWidth() || width < 0) {
+				width = rawImg.getWidth() - xMin;
 			}
 			int height = box.getYMax() + 2 * params.getYCropBoxSize() - box.getYMin();
-			if (height + yMin >= imageSeg.getHeight() || height < 0) {
-				height = imageSeg.getHeight() - yMin;
+			if (height + yMin >= rawImg.getHeight() || height < 0) {
+				height = rawImg.getHeight() - yMin;
 			}
 			int depth = box.getZMax() + 2 * params.getZCropBoxSize() - box.getZMin();
-			if (depth + zMin >= imageSeg.getNSlices() || depth < 0) {
-				depth = imageSeg.getNSlices() - zMin;
+			if (depth + zMin >= rawImg.getNSlices() || depth < 0) {
+				depth = rawImg.getNSlices() - zMin;
 			}
-			box.setXMin((short) xMin);
-			box.setXMax((short) (xMin + width));
-			box.setYMin((short) yMin);
-			box.setYMax((short) (yMin + height));
-			box.setZMin((short) zMin);
-			box.setZMax((short) (zMin + depth));
+			box.setXMin(xMin);
+			box.setXMax(xMin + width);
+			box.setYMin(yMin);
+			box.setYMax(yMin + height);
+			box.setZMin(zMin);
+			box.setZMax(zMin + depth);
 			entry.setValue(box);
 		}
 	}
@@ -413,59 +424,69 @@ public class AutoCrop {
 		Directory     dirOutput = new Directory(outputDirPath + File.separator + "nuclei");
 		dirOutput.checkAndCreateDir();
 		info.append(getSpecificImageInfo()).append(HEADERS);
+		/* Crops are taken from the raw image (first channel), so they are the same for every channel */
+		Map<Double, Box> sortedBoxes = new TreeMap<>(boxes);
+		for (Map.Entry<Double, Box> entry : sortedBoxes.entrySet()) {
+			int i = entry.getKey().intValue();
+			LOGGER.info("Processing box number: {}", i);
+			
+			Box box    = entry.getValue();
+			int xMin   = box.getXMin();
+			int yMin   = box.getYMin();
+			int zMin   = box.getZMin();
+			int width  = box.getXMax() - box.getXMin() + 1;
+			int height = box.getYMax() - box.getYMin() + 1;
+			int depth  = box.getZMax() - box.getZMin() + 1;
+			
+			ImagePlus croppedImage;
+			if (rawImg.getNSlices() > 1) {
+				croppedImage = cropImage(xMin, yMin, zMin, width, height, depth, 0);
+			} else {
+				croppedImage = cropImage2D(xMin, yMin, width, height, 0);
+			}
+			Calibration cal = rawImg.getCalibration();
+			croppedImage.setCalibration(cal);
+			String tiffPath = dirOutput.getDirPath() + File.separator +
+			                  outputFilesPrefix +
+			                  "_" + String.format("%03d", i) + ".tif";
+			OutputTiff fileOutput = new OutputTiff(tiffPath);
+			fileOutput.saveImage(croppedImage);
+			outputFile.add(tiffPath);
+			
+			int xMax = xMin + width;
+			int yMax = yMin + height;
+			int zMax = zMin + depth;
+			boxCoordinates.add(outputDirPath + File.separator +
+			                   outputFilesPrefix + "_" +
+			                   String.format("%03d", i) + "\t" +
+			                   xMin + "\t" +
+			                   xMax + "\t" +
+			                   yMin + "\t" +
+			                   yMax + "\t" +
+			                   zMin + "\t" +
+			                   zMax);
+		}
 		for (int c = 0; c < channelNumbers; c++) {
-			for (Map.Entry<Double, Box> entry : new TreeMap<>(boxes).entrySet()) {
+			for (Map.Entry<Double, Box> entry : sortedBoxes.entrySet()) {
 				int i = entry.getKey().intValue();
-				LOGGER.info("Processing box number: {}", i);
 				
 				Box box    = entry.getValue();
-				int xMin   = box.getXMin();
-				int yMin   = box.getYMin();
-				int zMin   = box.getZMin();
 				int width  = box.getXMax() - box.getXMin() + 1;
 				int height = box.getYMax() - box.getYMin() + 1;
 				int depth  = box.getZMax() - box.getZMin() + 1;
 				
-				ImagePlus croppedImage;
-				if (rawImg.getNSlices() > 1) {
-					croppedImage = cropImage(xMin, yMin, zMin, width, height, depth, c);
-				} else {
-					croppedImage = cropImage2D(xMin, yMin, width, height, c);
-				}
-				Calibration cal = rawImg.getCalibration();
-				croppedImage.setCalibration(cal);
 				String tiffPath = dirOutput.getDirPath() + File.separator +
 				                  outputFilesPrefix +
 				                  "_" + String.format("%03d", i) + ".tif";
-				OutputTiff fileOutput = new OutputTiff(tiffPath);
 				info.append(tiffPath).append("\t")
 				    .append(c).append("\t")
 				    .append(i).append("\t")
-				    .append(xMin).append("\t")
-				    .append(yMin).append("\t")
-				    .append(zMin).append("\t")
+				    .append(box.getXMin()).append("\t")
+				    .append(box.getYMin()).append("\t")
+				    .append(box.getZMin()).append("\t")
 				    .append(width).append("\t")
 				    .append(height).append("\t")
 				    .append(depth).append(eol);
-				fileOutput.saveImage(croppedImage);
-				outputFile.add(outputDirPath + File.separator +
-				               outputFilesPrefix + File.separator +
-				               outputFilesPrefix + "_" +
-				               String.format("%03d", i) + ".tif");
-				if (c == 0) {
-					int xMax = xMin + width;
-					int yMax = yMin + height;
-					int zMax = zMin + depth;
-					boxCoordinates.add(outputDirPath + File.separator +
-					                   outputFilesPrefix + "_" +
-					                   String.format("%03d", i) + "\t" +
-					                   xMin + "\t" +
-					                   xMax + "\t" +
-					                   yMin + "\t" +
-					                   yMax + "\t" +
-					                   zMin + "\t" +
-					                   zMax);
-				}
 			}
 		}
 		this.infoImageAnalysis += info.toString();
@@ -557,6 +578,62 @@ public class AutoCrop {
 	}
 	
 	
+	/**
+	 * Getter for the paths of the output files created by the cropKernels method
+	 *
+	 * @return the paths of the cropped images
+	 */
+	public List<String> getOutputFiles() {
+		return new ArrayList<>(outputFile);
+	}
+	
+	
+	/**
+	 * Exports the result of the nuclei detection: the threshold, then the label and coordinates of each box to crop,
+	 * one per line, separated by tabulations.
+	 *
+	 * @return the detection
+	 */
+	String exportDetection() {
+		StringBuilder detection = new StringBuilder();
+		detection.append(otsuThreshold).append('\t')
+		         .append(sliceUsedForOTSU).append('\t')
+		         .append(defaultThreshold).append('\n');
+		for (Map.Entry<Double, Box> entry : new TreeMap<>(boxes).entrySet()) {
+			Box box = entry.getValue();
+			detection.append(entry.getKey()).append('\t')
+			         .append(box.getXMin()).append('\t').append(box.getXMax()).append('\t')
+			         .append(box.getYMin()).append('\t').append(box.getYMax()).append('\t')
+			         .append(box.getZMin()).append('\t').append(box.getZMax()).append('\n');
+		}
+		return detection.toString();
+	}
+	
+	
+	/**
+	 * Imports a detection exported by {@link #exportDetection()}, instead of detecting the nuclei again.
+	 *
+	 * @param detection the detection
+	 */
+	void importDetection(String detection) {
+		String[] lines     = detection.split("\n");
+		String[] threshold = lines[0].split("\t", -1);
+		this.otsuThreshold = Integer.parseInt(threshold[0]);
+		this.sliceUsedForOTSU = threshold[1];
+		this.defaultThreshold = Boolean.parseBoolean(threshold[2]);
+		this.boxes = new HashMap<>(lines.length);
+		for (int i = 1; i < lines.length; i++) {
+			String[] values = lines[i].split("\t");
+			boxes.put(Double.parseDouble(values[0]), new Box(Integer.parseInt(values[1]),
+			                                                 Integer.parseInt(values[2]),
+			                                                 Integer.parseInt(values[3]),
+			                                                 Integer.parseInt(values[4]),
+			                                                 Integer.parseInt(values[5]),
+			                                                 Integer.parseInt(values[6])));
+		}
+	}
+	
+	
 	/**
 	 * Getter for the boxCoordinates
 	 *
@@ -581,6 +658,9 @@ public class AutoCrop {
 	 * @return : ImageCoreIJ of the cropped image.
 	 */
 	public ImagePlus cropImage(int xMin, int yMin, int zMin, int width, int height, int depth, int channelNumber) {
+		if (source != null) {
+			return cropSource(xMin, yMin, zMin, width, height, depth);
+		}
 		Duplicator duplicator = new Duplicator();
 		ImagePlus  cropped    = duplicator.run(rawImg, channelNumber, channelNumber, zMin, zMin + depth - 1, 0, 0);
 		cropped.setRoi(new Roi(xMin, yMin, width, height));
@@ -602,6 +682,9 @@ public class AutoCrop {
 	 * @return : ImageCoreIJ of the cropped image.
 	 */
 	public ImagePlus cropImage2D(int xMin, int yMin, int width, int height, int channelNumber) {
+		if (source != null) {
+			return cropSource(xMin, yMin, 1, width, height, 1);
+		}
 		Duplicator duplicator = new Duplicator();
 		ImagePlus  cropped    = duplicator.run(rawImg, channelNumber, channelNumber, 0, 1, 0, 0);
 		Roi        roi        = new Roi(xMin, yMin, width, height);
@@ -612,6 +695,18 @@ public class AutoCrop {
 	}
 	
 	
+	/**
+	 * Crops a box from the raw image (first channel) read from the image file, decoding only the planes it spans.
+	 */
+	private ImagePlus cropSource(int xMin, int yMin, int zMin, int width, int height, int depth) {
+		try {
+			return source.crop(0, xMin, yMin, zMin, width, height, depth);
+		} catch (IOException | FormatException e) {
+			throw new IllegalStateException("Cannot read " + imageFilePath, e);
+		}
+	}
+	
+	
 	/**
 	 * Getter of the number of nuclei contained in the input image
 	 *
@@ -718,4 +813,16 @@ public class AutoCrop {
 	}
 	
 	
+	/**
+	 * Closes the image file, if any.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (source != null) {
+			source.close();
+		}
+	}
+	
 }
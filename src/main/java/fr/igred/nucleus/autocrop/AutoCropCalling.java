@@ -26,7 +26,12 @@ import fr.igred.omero.repository.ImageWrapper;
 import fr.igred.omero.repository.ProjectWrapper;
 import fr.igred.nucleus.io.Directory;
 import fr.igred.nucleus.io.FilesNames;
+import fr.igred.nucleus.io.JobManifest;
 import fr.igred.nucleus.io.OutputTextFile;
+import fr.igred.nucleus.io.ResultCache;
+import fr.igred.nucleus.utils.BatchExecutor;
+import fr.igred.nucleus.utils.PipelineExecutor;
+import fr.igred.nucleus.utils.RunMetrics;
 import ij.IJ;
 import loci.formats.FormatException;
 import org.apache.commons.io.FilenameUtils;
@@ -37,13 +42,14 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -57,8 +63,19 @@ public class AutoCropCalling {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
-	/** Number of threads used to download images */
-	private static final int DOWNLOADER_THREADS = 1;
+	/** Number of attempts to download or upload an OMERO image */
+	private static final int  TRANSFER_ATTEMPTS = 3;
+	/** Delay before the first new attempt to download or upload an OMERO image, in seconds */
+	private static final long RETRY_DELAY       = 2;
+	
+	/** Name of the run in the metrics */
+	private static final String METRICS_NAME = "autocrop";
+	/** Stage of the metrics computing the boxes around the nuclei */
+	private static final String DETECTION    = "detection";
+	/** Stage of the metrics cropping the nuclei */
+	private static final String CROP         = "crop";
+	/** Name of the job manifest in the output folder */
+	private static final String MANIFEST     = "result_Autocrop_Manifest.tsv";
 	
 	/** Column names */
 	private static final String HEADERS = "FileName\tNumberOfCrop\tOTSUThreshold\tDefaultOTSUThreshold" +
@@ -73,9 +90,27 @@ public class AutoCropCalling {
 	/** Number of threads to used process images */
 	private int executorThreads = 1;
 	
+	/** Maximum processing time of one image, in seconds (0: no limit) */
+	private long timeout;
+	
+	/** Whether images completed by a previous run of the folder are skipped */
+	private boolean resume;
+	
+	/** Cache of the detections of unchanged images (null: disabled) */
+	private ResultCache cache;
+	
+	/** Number of threads used to download and upload OMERO images */
+	private int transferThreads = 1;
+	
+	/** Maximum number of OMERO images in memory at the same time (0: depends on the number of threads) */
+	private int maxImagesInMemory;
+	
 	/** Type of thresholding method used process images */
 	private String typeThresholding = "Otsu";
 	
+	/** Resources used by each stage of the current run */
+	private RunMetrics metrics = new RunMetrics(METRICS_NAME);
+	
 	
 	public AutoCropCalling(AutocropParameters params) {
 		this.params = params;
@@ -93,6 +128,59 @@ public class AutoCropCalling {
 	}
 	
 	
+	/**
+	 * Setter for the maximum processing time of one image when processing a folder
+	 *
+	 * @param seconds maximum duration in seconds (0 for no limit)
+	 */
+	public void setTimeout(long seconds) {
+		this.timeout = seconds;
+	}
+	
+	
+	/**
+	 * Setter for the resumption of a previous run when processing a folder: images recorded as completed in the job
+	 * manifest of the output folder, with the same parameters, are not processed again and their previous results are
+	 * merged in the result table.
+	 *
+	 * @param resume whether the previous run is resumed
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+	
+	
+	/**
+	 * Setter for the result cache: nuclei already detected in an image with the same content and parameters, in any
+	 * run sharing the cache, are restored from it instead of being detected again.
+	 *
+	 * @param cache result cache (null to disable it)
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+	
+	
+	/**
+	 * Setter for the number of threads used to download and upload OMERO images
+	 *
+	 * @param threadNumber number of threads for each transfer direction
+	 */
+	public void setTransferThreads(int threadNumber) {
+		this.transferThreads = threadNumber;
+	}
+	
+	
+	/**
+	 * Setter for the maximum number of OMERO images held in memory at the same time
+	 *
+	 * @param imageNumber maximum number of images (0 to derive it from the number of threads)
+	 */
+	public void setMaxImagesInMemory(int imageNumber) {
+		this.maxImagesInMemory = imageNumber;
+	}
+	
+	
 	/**
 	 * Setter for the thresholding method used to process images
 	 */
@@ -107,82 +195,191 @@ public class AutoCropCalling {
 	 * bio-formats, run the auto crop.
 	 */
 	public void runFolder() {
-		ExecutorService processExecutor = Executors.newFixedThreadPool(executorThreads);
-		
 		Directory directoryInput = new Directory(params.getInputFolder());
 		directoryInput.listImageFiles(params.getInputFolder());
 		directoryInput.checkIfEmpty();
 		directoryInput.checkAndActualiseNDFiles();
 		
-		List<File>     files = directoryInput.listFiles();
-		CountDownLatch latch = new CountDownLatch(files.size());
+		List<File> files = directoryInput.listFiles();
 		
-		ConcurrentHashMap<String, String> cropInfo = new ConcurrentHashMap<>(files.size());
+		Map<String, String> cropInfo = new HashMap<>(files.size());
 		
-		class ImageProcessor implements Runnable {
-			
-			private final File file;
-			
-			
-			ImageProcessor(File file) {
-				this.file = file;
-			}
-			
-			
-			@Override
-			public void run() {
-				LOGGER.info("Current file: {}", file.getAbsolutePath());
-				String     fileImg          = file.toString();
-				FilesNames outPutFilesNames = new FilesNames(fileImg);
-				String     prefix           = outPutFilesNames.prefixNameFile();
-				try {
-					AutoCrop autoCrop = new AutoCrop(file, prefix, params);
-					autoCrop.thresholdKernels(typeThresholding);
-					autoCrop.computeConnectedComponent();
-					autoCrop.componentBorderFilter();
-					autoCrop.componentSizeFilter();
-					autoCrop.computeBoxes();
-					autoCrop.addCropParameter();
-					autoCrop.boxIntersection();
-					autoCrop.cropKernels();
-					autoCrop.writeAnalyseInfo();
-					AnnotateAutoCrop annotate = new AnnotateAutoCrop(autoCrop.getFileCoordinates(),
-					                                                 file,
-					                                                 params.getOutputFolder() +
-					                                                 File.separator,
-					                                                 prefix,
-					                                                 params);
-					annotate.run();
-					
-					cropInfo.put(file.getName(), autoCrop.getImageCropInfo());
-					
-					latch.countDown();
-				} catch (IOException | FormatException e) {
-					LOGGER.error("Cannot run autocrop on: {}", file.getName(), e);
-					IJ.error("Cannot run autocrop on " + file.getName());
-				}
+		/* Images completed by a previous run with the same parameters are not cropped again */
+		String      hash = params.getParametersHash();
+		JobManifest manifest;
+		try {
+			manifest = new JobManifest(params.getOutputFolder() + MANIFEST, resume);
+		} catch (IOException e) {
+			LOGGER.error("Cannot write the job manifest in: {}", params.getOutputFolder(), e);
+			IJ.error("Cannot write the job manifest in " + params.getOutputFolder());
+			return;
+		}
+		Map<String, JobManifest.Entry> completed = manifest.getCompleted(hash);
+		List<File>                     toCrop    = new ArrayList<>(files.size());
+		for (File file : files) {
+			JobManifest.Entry entry = completed.get(file.getName());
+			if (entry == null) {
+				toCrop.add(file);
+			} else {
+				cropInfo.put(file.getName(), entry.getResult(0));
 			}
-			
 		}
+		if (toCrop.size() < files.size()) {
+			LOGGER.info("{} image(s) already cropped are skipped.", files.size() - toCrop.size());
+		}
+		
+		/* Computed here: building the parameters text is not thread-safe */
+		String processingHash = cache == null ? null : params.getProcessingHash();
 		
-		for (File currentFile : files) {
-			processExecutor.submit(new ImageProcessor(currentFile));
+		metrics = new RunMetrics(METRICS_NAME);
+		BatchExecutor<File, String> batch = new BatchExecutor<>(executorThreads);
+		batch.setTimeout(timeout, TimeUnit.SECONDS);
+		Map<File, Throwable> failures = batch.run(toCrop,
+		                                          file -> cropImage(file, manifest, hash, processingHash),
+		                                          (file, info) -> cropInfo.put(file.getName(), info));
+		if (!failures.isEmpty()) {
+			LOGGER.error("{} image(s) could not be cropped: {}", failures.size(), failures.keySet());
+			IJ.error("Cannot run autocrop on " + failures.size() + " image(s), see result_Autocrop_Report.tsv");
 		}
 		try {
-			latch.await();
-		} catch (InterruptedException e) {
-			LOGGER.error("Interrupted while waiting for image processing to finish.", e);
-			Thread.currentThread().interrupt();
+			for (Map.Entry<File, Throwable> failure : failures.entrySet()) {
+				manifest.record(failure.getKey().getName(), JobManifest.Status.FAILED, hash,
+				                Collections.emptyList(), String.valueOf(failure.getValue()));
+			}
+		} catch (IOException e) {
+			LOGGER.error("Cannot record the failures in the job manifest.", e);
 		}
-		processExecutor.shutdownNow();
+		OutputTextFile reportFile = new OutputTextFile(params.getOutputFolder() + "result_Autocrop_Report.tsv");
+		reportFile.saveTextFile(batch.getReport(), true);
 		
 		StringBuilder generalInfoBuilder = new StringBuilder();
 		for (File file : files) {
-			generalInfoBuilder.append(cropInfo.get(file.getName()));
+			if (cropInfo.containsKey(file.getName())) {
+				generalInfoBuilder.append(cropInfo.get(file.getName()));
+			}
 		}
 		outputCropGeneralInfo += generalInfoBuilder.toString();
 		
 		saveGeneralInfo();
+		metrics.save(params.getOutputFolder(), "result_Autocrop");
+	}
+	
+	
+	/**
+	 * Runs auto crop on one image file and saves the crops and annotated image.
+	 *
+	 * @param file           image file
+	 * @param manifest       job manifest of the run, where the image is recorded (null: not recorded)
+	 * @param hash           hash of the parameters
+	 * @param processingHash hash of the processing parameters, for the cache
+	 *
+	 * @return the crop information for this image
+	 *
+	 * @throws IOException     if the image could not be read or the results saved
+	 * @throws FormatException if the image format is not supported
+	 */
+	private String cropImage(File file, JobManifest manifest, String hash, String processingHash)
+	throws IOException, FormatException {
+		LOGGER.info("Current file: {}", file.getAbsolutePath());
+		String     fileImg          = file.toString();
+		FilesNames outPutFilesNames = new FilesNames(fileImg);
+		String     prefix           = outPutFilesNames.prefixNameFile();
+		try (RunMetrics.Tracking tracking = metrics.track(file.getName())) {
+			String       key    = null;
+			List<String> cached = null;
+			if (cache != null) {
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.CACHE)) {
+					key = cache.key(METRICS_NAME, processingHash + '\t' + typeThresholding, file);
+					cached = cache.restore(key, Collections.emptyMap());
+				}
+			}
+			try (AutoCrop autoCrop = openAutoCrop(file, prefix, cached == null ? null : cached.get(0))) {
+				if (cached == null) {
+					detectNuclei(autoCrop);
+					if (key != null) {
+						cache.store(key, Collections.singletonList(autoCrop.exportDetection()), Collections.emptyMap());
+					}
+				} else {
+					LOGGER.info("Detection restored from the cache: {}", file.getName());
+				}
+				try (RunMetrics.Stage stage = RunMetrics.stage(CROP)) {
+					autoCrop.cropKernels();
+				}
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+					autoCrop.writeAnalyseInfo();
+					/* The projection is computed from the planes already read to crop the nuclei */
+					AnnotateAutoCrop annotate = new AnnotateAutoCrop(autoCrop.getFileCoordinates(),
+					                                                 autoCrop.getRawImage(),
+					                                                 params.getOutputFolder() + File.separator,
+					                                                 prefix,
+					                                                 params);
+					annotate.run();
+				}
+				String info = autoCrop.getImageCropInfo();
+				if (manifest != null) {
+					manifest.record(file.getName(), JobManifest.Status.DONE, hash, autoCrop.getOutputFiles(), info);
+				}
+				return info;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Detects the nuclei of an image and computes the boxes to crop.
+	 *
+	 * @param autoCrop auto crop of the image
+	 *
+	 * @throws IOException     if the image could not be read
+	 * @throws FormatException if the image format is not supported
+	 */
+	private void detectNuclei(AutoCrop autoCrop) throws IOException, FormatException {
+		if (params.getTileSize() > 0) {
+			try (RunMetrics.Stage stage = RunMetrics.stage(DETECTION)) {
+				autoCrop.computeBoxesByTiles(typeThresholding);
+			}
+		} else {
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.THRESHOLD_SWEEP)) {
+				autoCrop.thresholdKernels(typeThresholding);
+			}
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.MORPHOLOGY)) {
+				autoCrop.computeConnectedComponent();
+				autoCrop.componentBorderFilter();
+				autoCrop.componentSizeFilter();
+			}
+			try (RunMetrics.Stage stage = RunMetrics.stage(DETECTION)) {
+				autoCrop.computeBoxes();
+			}
+		}
+		try (RunMetrics.Stage stage = RunMetrics.stage(DETECTION)) {
+			autoCrop.addCropParameter();
+			autoCrop.boxIntersection();
+		}
+	}
+	
+	
+	/**
+	 * Opens an image file for auto crop, measured as the opening stage of the current image.
+	 *
+	 * @param file      image file
+	 * @param prefix    prefix of the output files
+	 * @param detection detection restored from the cache (null: the nuclei have to be detected)
+	 *
+	 * @return the auto crop of the image
+	 *
+	 * @throws IOException     if the image could not be read
+	 * @throws FormatException if the image format is not supported
+	 */
+	private AutoCrop openAutoCrop(File file, String prefix, String detection) throws IOException, FormatException {
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.OPEN)) {
+			if (detection == null) {
+				return new AutoCrop(file, prefix, params);
+			} else {
+				AutoCrop autoCrop = new AutoCrop(file, prefix, params, Collections.emptyMap());
+				autoCrop.importDetection(detection);
+				return autoCrop;
+			}
+		}
 	}
 	
 	
@@ -195,34 +392,15 @@ public class AutoCropCalling {
 	 */
 	public void runFile(String file) {
 		File currentFile = new File(file);
-		LOGGER.info("Current file: {}", currentFile.getAbsolutePath());
-		String     fileImg          = currentFile.toString();
-		FilesNames outPutFilesNames = new FilesNames(fileImg);
-		/* image prefix name */
-		String prefix = outPutFilesNames.prefixNameFile();
+		metrics = new RunMetrics(METRICS_NAME);
 		try {
-			AutoCrop autoCrop = new AutoCrop(currentFile, prefix, params);
-			autoCrop.thresholdKernels(typeThresholding);
-			autoCrop.computeConnectedComponent();
-			autoCrop.componentBorderFilter();
-			autoCrop.componentSizeFilter();
-			autoCrop.computeBoxes();
-			autoCrop.addCropParameter();
-			autoCrop.boxIntersection();
-			autoCrop.cropKernels();
-			LOGGER.info("ENDED CROPPING");
-			autoCrop.writeAnalyseInfo();
-			AnnotateAutoCrop annotate = new AnnotateAutoCrop(autoCrop.getFileCoordinates(),
-			                                                 currentFile,
-			                                                 params.getOutputFolder() + File.separator,
-			                                                 prefix,
-			                                                 params);
-			annotate.run();
-			this.outputCropGeneralInfo += autoCrop.getImageCropInfo();
+			String processingHash = cache == null ? null : params.getProcessingHash();
+			this.outputCropGeneralInfo += cropImage(currentFile, null, null, processingHash);
 		} catch (IOException | FormatException e) {
 			LOGGER.error("Cannot run autocrop on: {}", currentFile.getName(), e);
 			IJ.error("Cannot run autocrop on " + currentFile.getName());
 		}
+		metrics.save(params.getOutputFolder(), "result_Autocrop");
 	}
 	
 	
@@ -269,12 +447,7 @@ public class AutoCropCalling {
 	
 	public void runSeveralImageOMERO(Collection<? extends ImageWrapper> images, Long[] outputsDatImages, Client client)
 	throws AccessException, ServiceException, ExecutionException, InterruptedException, OMEROServerError {
-		ExecutorService downloadExecutor = Executors.newFixedThreadPool(DOWNLOADER_THREADS);
-		ExecutorService processExecutor  = Executors.newFixedThreadPool(executorThreads);
-		
-		CountDownLatch latch = new CountDownLatch(images.size());
-		
-		ConcurrentHashMap<String, String> cropInfo = new ConcurrentHashMap<>(images.size());
+		Map<String, String> cropInfo = new HashMap<>(images.size());
 		
 		long outputFound = -1;
 		DatasetWrapper outputDataset = client.getDataset(outputsDatImages[0]);
@@ -286,86 +459,27 @@ public class AutoCropCalling {
 		}
 		long outputProject = outputFound;
 		
-		class ImageProcessor implements Runnable {
-			private final AutoCrop     autoCrop;
-			private final ImageWrapper image;
-			
-			
-			ImageProcessor(AutoCrop autoCrop, ImageWrapper image) {
-				this.autoCrop = autoCrop;
-				this.image = image;
-			}
-			
-			
-			@Override
-			public void run() {
-				autoCrop.thresholdKernels(typeThresholding);
-				autoCrop.computeConnectedComponent();
-				autoCrop.componentBorderFilter();
-				autoCrop.componentSizeFilter();
-				autoCrop.computeBoxes();
-				autoCrop.addCropParameter();
-				autoCrop.boxIntersection();
-				try {
-					autoCrop.cropKernelsOMERO(image, outputsDatImages, client);
-					autoCrop.writeAnalyseInfoOMERO(outputsDatImages[params.getChannelToComputeThreshold()],
-					                               client);
-					
-					AnnotateAutoCrop annotate = new AnnotateAutoCrop(autoCrop.getFileCoordinates(),
-					                                                 autoCrop.getRawImage(),
-					                                                 params.getOutputFolder() +
-					                                                 File.separator,
-					                                                 FilenameUtils.removeExtension(image.getName()),
-					                                                 params);
-					annotate.run();
-					annotate.saveProjectionOMERO(client, outputProject);
-				} catch (AccessException | ServiceException | OMEROServerError | IOException | ExecutionException e) {
-					LOGGER.error("Cannot run autocrop on: {}", image.getName(), e);
-				}
-				
-				cropInfo.put(image.getName(), autoCrop.getImageCropInfo());
-				
-				latch.countDown();
-			}
-			
+		PipelineExecutor<ImageWrapper, AutoCrop, AutoCrop, String> pipeline =
+				new PipelineExecutor<>(image -> downloadImage(image, client),
+				                       this::detectNuclei,
+				                       (image, autoCrop) -> uploadCrops(image, autoCrop, outputsDatImages,
+				                                                        client, outputProject));
+		pipeline.setThreads(PipelineExecutor.Step.DOWNLOAD, transferThreads);
+		pipeline.setThreads(PipelineExecutor.Step.PROCESS, executorThreads);
+		pipeline.setThreads(PipelineExecutor.Step.UPLOAD, transferThreads);
+		pipeline.setRetries(PipelineExecutor.Step.DOWNLOAD, TRANSFER_ATTEMPTS, RETRY_DELAY, TimeUnit.SECONDS);
+		pipeline.setMaxInFlight(maxImagesInMemory);
+		Map<ImageWrapper, Throwable> failures = pipeline.run(new ArrayList<>(images),
+		                                                     (image, info) -> cropInfo.put(image.getName(), info));
+		if (!failures.isEmpty()) {
+			LOGGER.error("{} image(s) could not be cropped.", failures.size());
 		}
 		
-		
-		class ImageDownloader implements Runnable {
-			
-			private final ImageWrapper image;
-			
-			
-			ImageDownloader(ImageWrapper image) {
-				this.image = image;
-			}
-			
-			
-			@Override
-			public void run() {
-				String fileImg = image.getName();
-				LOGGER.info("Current file: {}", fileImg);
-				AutoCrop autoCrop = null;
-				try {
-					autoCrop = new AutoCrop(image, params, client);
-				} catch (ServiceException | AccessException | ExecutionException e) {
-					LOGGER.error("Cannot create AutoCrop for image: {}", fileImg, e);
-				}
-				processExecutor.submit(new ImageProcessor(autoCrop, image));
-			}
-			
-		}
-		
-		for (ImageWrapper image : images) {
-			downloadExecutor.submit(new ImageDownloader(image));
-		}
-		latch.await();
-		downloadExecutor.shutdownNow();
-		processExecutor.shutdownNow();
-		
 		StringBuilder generalInfoBuilder = new StringBuilder();
 		for (ImageWrapper image : images) {
-			generalInfoBuilder.append(cropInfo.get(image.getName()));
+			if (cropInfo.containsKey(image.getName())) {
+				generalInfoBuilder.append(cropInfo.get(image.getName()));
+			}
 		}
 		outputCropGeneralInfo += generalInfoBuilder.toString();
 		
@@ -373,6 +487,64 @@ public class AutoCropCalling {
 	}
 	
 	
+	/**
+	 * Downloads an OMERO image and prepares it for auto crop.
+	 *
+	 * @param image  image to download
+	 * @param client OMERO client
+	 *
+	 * @return the auto crop of the downloaded image
+	 */
+	private AutoCrop downloadImage(ImageWrapper image, Client client)
+	throws AccessException, ServiceException, ExecutionException {
+		LOGGER.info("Current file: {}", image.getName());
+		return new AutoCrop(image, params, client);
+	}
+	
+	
+	/**
+	 * Detects the nuclei of a downloaded image.
+	 *
+	 * @param image    OMERO image
+	 * @param autoCrop auto crop of the downloaded image
+	 *
+	 * @return the auto crop, with the boxes of the nuclei
+	 */
+	private AutoCrop detectNuclei(ImageWrapper image, AutoCrop autoCrop) {
+		autoCrop.thresholdKernels(typeThresholding);
+		autoCrop.computeConnectedComponent();
+		autoCrop.componentBorderFilter();
+		autoCrop.componentSizeFilter();
+		autoCrop.computeBoxes();
+		autoCrop.addCropParameter();
+		autoCrop.boxIntersection();
+		return autoCrop;
+	}
+	
+	
+	/**
+	 * Crops the nuclei and uploads the crops, the analysis information and the projection to OMERO. This stage is not
+	 * retried, as crops imported before a failure would be imported again.
+	 *
+	 * @return the crop information for this image
+	 */
+	private String uploadCrops(ImageWrapper image, AutoCrop autoCrop, Long[] outputsDatImages, Client client,
+	                           long outputProject)
+	throws AccessException, ServiceException, OMEROServerError, IOException, ExecutionException {
+		autoCrop.cropKernelsOMERO(image, outputsDatImages, client);
+		autoCrop.writeAnalyseInfoOMERO(outputsDatImages[params.getChannelToComputeThreshold()], client);
+		
+		AnnotateAutoCrop annotate = new AnnotateAutoCrop(autoCrop.getFileCoordinates(),
+		                                                 autoCrop.getRawImage(),
+		                                                 params.getOutputFolder() + File.separator,
+		                                                 FilenameUtils.removeExtension(image.getName()),
+		                                                 params);
+		annotate.run();
+		annotate.saveProjectionOMERO(client, outputProject);
+		return autoCrop.getImageCropInfo();
+	}
+	
+	
 	public void saveGeneralInfoOmero(Client client, Long[] outputsDatImages)
 	throws InterruptedException {
 		String         resultPath       = params.getOutputFolder() + "result_Autocrop_Analyse.csv";
@@ -60,6 +60,8 @@ public class AutocropParameters extends PluginParameters {
 	private int     boxesSurfacePercent = 50;
 	/** Activation of boxes regrouping */
 	private boolean boxesRegrouping     = true;
+	/** Size of the tiles used to detect nuclei in images larger than memory (0 to process the whole image) */
+	private int     tileSize;
 	
 	
 	/**
@@ -226,6 +228,9 @@ public class AutocropParameters extends PluginParameters {
 				case "boxesRegrouping":
 					this.boxesRegrouping = Boolean.parseBoolean(prop.getProperty("boxesRegrouping"));
 					break;
+				case "tileSize":
+					this.tileSize = parseInt(prop.getProperty("tileSize"));
+					break;
 				default:
 					LOGGER.warn("Unknown property in config file: {}", idProp);
 			}
@@ -256,7 +261,8 @@ public class AutocropParameters extends PluginParameters {
 		                 "#maxVolumeNucleus:" + maxVolumeNucleus + eol +
 		                 "#minVolumeNucleus: " + minVolumeNucleus + eol +
 		                 "#boxesRegrouping: " + boxesRegrouping + eol +
-		                 "#boxesPercentSurfaceToFilter: " + boxesSurfacePercent + eol;
+		                 "#boxesPercentSurfaceToFilter: " + boxesSurfacePercent + eol +
+		                 "#tileSize: " + tileSize + eol;
 		setHeaderInfo(getHeaderInfo() + newInfo);
 		
 		return getHeaderInfo();
@@ -372,4 +378,24 @@ public class AutocropParameters extends PluginParameters {
 		return boxesSurfacePercent;
 	}
 	
+	
+	/**
+	 * Getter for the size of the tiles used to detect nuclei.
+	 *
+	 * @return tile size in pixels, 0 if the whole image is processed at once
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	
+	/**
+	 * Setter for the size of the tiles used to detect nuclei.
+	 *
+	 * @param tileSize tile size in pixels, 0 to process the whole image at once
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+	
 }
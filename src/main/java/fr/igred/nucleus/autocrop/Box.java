@@ -26,17 +26,17 @@ package fr.igred.nucleus.autocrop;
  */
 public class Box {
 	/** The coordinate x min of the Box */
-	private short xMin;
+	private int xMin;
 	/** The coordinate x max of the Box */
-	private short xMax;
+	private int xMax;
 	/** The coordinate y min of the Box */
-	private short yMin;
+	private int yMin;
 	/** The coordinate y max of the Box */
-	private short yMax;
+	private int yMax;
 	/** The coordinate z min of the Box */
-	private short zMin;
+	private int zMin;
 	/** The coordinate z max of the Box */
-	private short zMax;
+	private int zMax;
 	
 	
 	/**
@@ -49,7 +49,7 @@ public class Box {
 	 * @param zMin: coordinate z min of the Box
 	 * @param zMax: coordinate z max of the Box
 	 */
-	public Box(short xMin, short xMax, short yMin, short yMax, short zMin, short zMax) {
+	public Box(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
 		this.xMin = xMin;
 		this.xMax = xMax;
 		this.yMin = yMin;
@@ -64,13 +64,13 @@ public class Box {
 	 *
 	 * @return the xMin
 	 */
-	public short getXMin() {
+	public int getXMin() {
 		return xMin;
 	}
 	
 	
 	/** @param xMin the xMin to set */
-	public void setXMin(short xMin) {
+	public void setXMin(int xMin) {
 		this.xMin = xMin;
 	}
 	
@@ -80,13 +80,13 @@ public class Box {
 	 *
 	 * @return the xMax
 	 */
-	public short getXMax() {
+	public int getXMax() {
 		return xMax;
 	}
 	
 	
 	/** @param xMax the xMax to set */
-	public void setXMax(short xMax) {
+	public void setXMax(int xMax) {
 		this.xMax = xMax;
 	}
 	
@@ -96,13 +96,13 @@ public class Box {
 	 *
 	 * @return the yMin
 	 */
-	public short getYMin() {
+	public int getYMin() {
 		return yMin;
 	}
 	
 	
 	/** @param yMin the yMin to set */
-	public void setYMin(short yMin) {
+	public void setYMin(int yMin) {
 		this.yMin = yMin;
 	}
 	
@@ -112,13 +112,13 @@ public class Box {
 	 *
 	 * @return the yMax
 	 */
-	public short getYMax() {
+	public int getYMax() {
 		return yMax;
 	}
 	
 	
 	/** @param yMax the yMax to set */
-	public void setYMax(short yMax) {
+	public void setYMax(int yMax) {
 		this.yMax = yMax;
 	}
 	
@@ -128,13 +128,13 @@ public class Box {
 	 *
 	 * @return the zMin
 	 */
-	public short getZMin() {
+	public int getZMin() {
 		return zMin;
 	}
 	
 	
 	/** @param zMin the zMin to set */
-	public void setZMin(short zMin) {
+	public void setZMin(int zMin) {
 		this.zMin = zMin;
 	}
 	
@@ -144,13 +144,13 @@ public class Box {
 	 *
 	 * @return the zMax
 	 */
-	public short getZMax() {
+	public int getZMax() {
 		return zMax;
 	}
 	
 	
 	/** @param zMax the zMax to set */
-	public void setZMax(short zMax) {
+	public void setZMax(int zMax) {
 		this.zMax = zMax;
 	}
 	
@@ -127,8 +127,9 @@ public class CropFromCoordinates {
 			Map<Double, Box>   boxes              = readCoordinatesTXT(coordinateFile);
 			FilesNames         outPutFilesNames   = new FilesNames(e.getValue().getName());
 			String             prefix             = outPutFilesNames.prefixNameFile();
-			AutoCrop           autoCrop           = new AutoCrop(rawImage, prefix, autocropParameters, boxes);
-			autoCrop.cropKernels();
+			try (AutoCrop autoCrop = new AutoCrop(rawImage, prefix, autocropParameters, boxes)) {
+				autoCrop.cropKernels();
+			}
 		}
 	}
 	
@@ -184,13 +185,13 @@ public class CropFromCoordinates {
 				if (!HEADERS.matcher(line).matches() && !COLNAME.matcher(line).matches()) {
 					String[] splitLine = TAB.split(line);
 					
-					short xMax = (short) (Integer.parseInt(splitLine[3]) + Integer.parseInt(splitLine[6]));
-					short yMax = (short) (Integer.parseInt(splitLine[4]) + Integer.parseInt(splitLine[7]));
-					short zMax = (short) (Integer.parseInt(splitLine[5]) + Integer.parseInt(splitLine[8]));
+					int xMax = Integer.parseInt(splitLine[3]) + Integer.parseInt(splitLine[6]);
+					int yMax = Integer.parseInt(splitLine[4]) + Integer.parseInt(splitLine[7]);
+					int zMax = Integer.parseInt(splitLine[5]) + Integer.parseInt(splitLine[8]);
 					
-					Box box = new Box(Short.parseShort(splitLine[3]), xMax,
-					                  Short.parseShort(splitLine[4]), yMax,
-					                  Short.parseShort(splitLine[5]), zMax);
+					Box box = new Box(Integer.parseInt(splitLine[3]), xMax,
+					                  Integer.parseInt(splitLine[4]), yMax,
+					                  Integer.parseInt(splitLine[5]), zMax);
 					
 					boxLists.put(Double.valueOf(splitLine[2]), box);
 				}
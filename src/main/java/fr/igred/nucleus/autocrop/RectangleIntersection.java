@@ -24,7 +24,8 @@ import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,9 @@ import java.util.TreeMap;
  * SurfaceB intersect SurfaceA >50%
  * <p> You can define the percent of surface intersection parameter in Autocrop parameters:
  * <p> Parameter : int boxesPercentSurfaceToFilter
+ * <p>
+ * Intersecting pairs are found with a sweep line along x, and grouped with a union-find structure: each group of
+ * connected boxes is merged at once into its bounding box. Merging is repeated until no pair of boxes intersects.
  */
 
 
@@ -47,43 +51,35 @@ public class RectangleIntersection {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
-	/** List of boxes Rectangle : xMin , yMin , width , height */
-	private final List<Rectangle> listRectangle;
-	/** Slice coordinate associated to the rectangles(boxes) */
-	private final List<String>    zSlices;
-	/** List of rectangle intersected detected */
-	private final List<String>    rectangleIntersect = new ArrayList<>(0);
-	
-	/** Number of intersections per rectangles */
-	private final Map<Integer, Integer> countIntersect     = new HashMap<>(0);
-	/** Final list of rectangles after re rectangle computations */
-	private final Collection<String>    finalListRectangle = new ArrayList<>(0);
-	
 	/** Autocrop parameter */
 	private final AutocropParameters autocropParameters;
 	
-	/** Boolean to check if new rectangles are computed */
-	private boolean newBoxesAdded;
+	/** List of boxes Rectangle : xMin , yMin , width , height */
+	private List<Rectangle> listRectangle;
+	/** First slice of each rectangle */
+	private int[]           zMin;
+	/** Last slice of each rectangle */
+	private int[]           zMax;
 	
 	
 	/**
-	 * Constructor getting list of boxes computed in autocrop class. Initialisation of a list of 2D rectangles and a
-	 * list of Z stack associated (zMin-zMax).
+	 * Constructor getting list of boxes computed in autocrop class. Initialisation of a list of 2D rectangles and the
+	 * z range associated (zMin-zMax).
 	 *
 	 * @param boxes  List of boxes
 	 * @param params Autocrop parameters
 	 */
 	public RectangleIntersection(Map<Double, Box> boxes, AutocropParameters params) {
 		this.autocropParameters = params;
-		zSlices = new ArrayList<>(boxes.size());
 		listRectangle = new ArrayList<>(boxes.size());
-		for (Map.Entry<Double, Box> entry : new TreeMap<>(boxes).entrySet()) {
-			Box box       = entry.getValue();
+		zMin = new int[boxes.size()];
+		zMax = new int[boxes.size()];
+		for (Box box : new TreeMap<>(boxes).values()) {
 			int boxWidth  = box.getXMax() - box.getXMin();
 			int boxHeight = box.getYMax() - box.getYMin();
-			int boxSlice  = box.getZMax() - box.getZMin();
 			
-			zSlices.add(box.getZMin() + "-" + boxSlice);
+			zMin[listRectangle.size()] = box.getZMin();
+			zMax[listRectangle.size()] = box.getZMax();
 			listRectangle.add(new Rectangle(box.getXMin(), box.getYMin(), boxWidth, boxHeight));
 		}
 	}
@@ -106,167 +102,151 @@ public class RectangleIntersection {
 	}
 	
 	
+	/**
+	 * Finds the root of a rectangle group, with path halving.
+	 */
+	private static int find(int[] parents, int index) {
+		int current = index;
+		while (parents[current] != current) {
+			parents[current] = parents[parents[current]];
+			current = parents[current];
+		}
+		return current;
+	}
+	
+	
+	/**
+	 * Merges two rectangle groups, the smallest root being kept.
+	 */
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if (rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+	
+	
 	/**
 	 * Class to run the boxes merge process
-	 * <ul><li> Step 1 : detecting boxes intersections</li>
-	 * <li> Step 2 : group rectangle intersecting</li>
-	 * <li> Step 3 : compile new rectangle</li></ul>
+	 * <ul><li> Step 1 : detecting boxes intersections and grouping them</li>
+	 * <li> Step 2 : compile new rectangles</li></ul>
+	 * Steps are repeated until no box is merged, as a merged box can intersect other boxes.
 	 */
 	public void runRectangleRecompilation() {
-		this.newBoxesAdded = true;
-		int i = 0;
+		boolean newBoxesAdded = true;
+		int     i             = 0;
 		while (newBoxesAdded) {
-			computeIntersection();
-			rectangleRegroup();
-			recompileRectangle();
+			int[] parents = computeIntersection();
+			newBoxesAdded = recompileRectangle(parents);
 			i++;
 			LOGGER.trace("Iteration {}: {} boxes detected", i, listRectangle.size());
 		}
 	}
 	
 	
-	/** Regroup list of rectangles intersecting */
-	public void computeIntersection() {
-		rectangleIntersect.clear();
+	/**
+	 * Groups intersecting rectangles. Rectangles are swept by increasing x: only the rectangles still open at the x of
+	 * the current one are compared to it.
+	 *
+	 * @return the parent of each rectangle in the union-find structure
+	 */
+	private int[] computeIntersection() {
+		int   n       = listRectangle.size();
+		int[] parents = new int[n];
+		for (int i = 0; i < n; i++) {
+			parents[i] = i;
+		}
 		
-		for (int i = 0; i < listRectangle.size(); i++) {
-			for (int y = 0; y < listRectangle.size(); y++) {
-				if (i != y &&
-				    !rectangleIntersect.contains(i + "-" + y) &&
-				    !rectangleIntersect.contains(y + "-" + i)) {
-					if (listRectangle.get(i).intersects(listRectangle.get(y))) {
-						if (percentOf2Rectangles(listRectangle.get(i), listRectangle.get(y)) >
-						    autocropParameters.getBoxesSurfacePercent() ||
-						    percentOf2Rectangles(listRectangle.get(y), listRectangle.get(i)) >
-						    autocropParameters.getBoxesSurfacePercent()) {
-							
-							rectangleIntersect.add(i + "-" + y);
-							rectangleIntersect.add(y + "-" + i);
-							if (countIntersect.containsKey(i)) {
-								countIntersect.put(i, countIntersect.get(i) + 1);
-							} else {
-								countIntersect.put(i, 1);
-							}
-						}
-					}
-				}
-			}
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
 		}
-	}
-	
-	
-	/** Regroup of rectangle intersecting recursively */
-	public void rectangleRegroup() {
-		finalListRectangle.clear();
-		for (Map.Entry<Integer, Integer> entry : countIntersect.entrySet()) {
-			StringBuilder connectedRectangles = new StringBuilder(String.valueOf(entry.getKey()));
-			String        connRectStartTurn   = String.valueOf(entry.getKey());
-			for (int i = 0; i < rectangleIntersect.size(); i++) {
-				String[] splitIntersect = rectangleIntersect.get(i).split("-");
-				if (splitIntersect[0].equals(Integer.toString(entry.getKey()))) {
-					String[] splitList = rectangleIntersect.get(i).split("-");
-					connectedRectangles.append("-").append(splitList[splitList.length - 1]);
-					rectangleIntersect.remove(i);
-					rectangleIntersect.remove(splitList[splitList.length - 1] + "-" + entry.getKey());
-					List<String> listToIterateThrough = new ArrayList<>();
-					listToIterateThrough.add(splitList[splitList.length - 1]);
-					while (!listToIterateThrough.isEmpty()) {
-						for (int y = 0; y < rectangleIntersect.size(); y++) {
-							String[] splitIntersect2 = rectangleIntersect.get(y).split("-");
-							if (splitIntersect2[0].equals(listToIterateThrough.get(0))) {
-								String[] splitList2 = rectangleIntersect.get(y).split("-");
-								listToIterateThrough.add(splitList2[splitList.length - 1]);
-								connectedRectangles.append("-").append(splitList2[splitList.length - 1]);
-								String[] splitCurrentRect = connectedRectangles.toString().split("-");
-								rectangleIntersect.remove(y);
-								rectangleIntersect.remove(splitList2[splitList.length - 1] +
-								                          "-" +
-								                          listToIterateThrough.get(0));
-								for (String s : splitCurrentRect) {
-									rectangleIntersect.remove(splitList2[splitList.length - 1] + "-" + s);
-									rectangleIntersect.remove(s + "-" + splitList2[splitList.length - 1]);
-								}
-								y = 0;
-							}
-						}
-						listToIterateThrough.remove(0);
+		Arrays.sort(order, Comparator.comparingInt(i -> listRectangle.get(i).x));
+		
+		double percent = autocropParameters.getBoxesSurfacePercent();
+		int[]  active  = new int[n];
+		int    nActive = 0;
+		for (int current : order) {
+			Rectangle rectangle = listRectangle.get(current);
+			if (rectangle.isEmpty()) {
+				continue;
+			}
+			int kept = 0;
+			for (int a = 0; a < nActive; a++) {
+				Rectangle other = listRectangle.get(active[a]);
+				if (other.x + other.width > rectangle.x) {
+					active[kept++] = active[a];
+					if (other.intersects(rectangle) &&
+					    (percentOf2Rectangles(rectangle, other) > percent ||
+					     percentOf2Rectangles(other, rectangle) > percent)) {
+						union(parents, current, active[a]);
 					}
 				}
-				if (!connectedRectangles.toString().equals(connRectStartTurn)) {
-					i--;
-					connRectStartTurn = connectedRectangles.toString();
-				}
 			}
-			finalListRectangle.add(connectedRectangles.toString());
+			active[kept] = current;
+			nActive = kept + 1;
 		}
+		return parents;
 	}
 	
 	
-	/** Compile of new rectangle by getting extreme coordinate of a group of rectangles. */
-	public void recompileRectangle() {
-		this.newBoxesAdded = false;
-		List<Rectangle> rectanglesToAdd      = new ArrayList<>();
-		List<String>    rectangleZSliceToAdd = new ArrayList<>();
-		List<Rectangle> rectanglesToRemove   = new ArrayList<>();
-		for (String value : finalListRectangle) {
-			String[] splitList2       = value.split("-");
-			int      xMixNewRectangle = 0;
-			int      yMinNewRectangle = 0;
-			int      maxWidth         = 0;
-			int      maxHeight        = 0;
-			int      minZSlice        = 0;
-			int      maxZSlice        = 0;
-			if (splitList2.length > 1) {
-				for (String s : splitList2) {
-					int tmp = Integer.parseInt(s);
-					if (listRectangle.get(tmp).getX() < xMixNewRectangle || xMixNewRectangle == 0) {
-						xMixNewRectangle = listRectangle.get(tmp).x;
-					}
-					if (listRectangle.get(tmp).getY() < yMinNewRectangle || yMinNewRectangle == 0) {
-						yMinNewRectangle = listRectangle.get(tmp).y;
-					}
-					if (listRectangle.get(tmp).getX() + listRectangle.get(tmp).getWidth() > maxWidth ||
-					    maxWidth == 0) {
-						maxWidth = listRectangle.get(tmp).x + listRectangle.get(tmp).width;
-					}
-					if (listRectangle.get(tmp).getY() + listRectangle.get(tmp).getHeight() > maxHeight ||
-					    maxHeight == 0) {
-						maxHeight = listRectangle.get(tmp).y + listRectangle.get(tmp).height;
-					}
-					
-					String[] zSliceTMP = zSlices.get(tmp).split("-");
-					if (Integer.parseInt(zSliceTMP[0]) < minZSlice || minZSlice == 0) {
-						minZSlice = Integer.parseInt(zSliceTMP[0]);
-					}
-					if (Integer.parseInt(zSliceTMP[0] + Integer.valueOf(zSliceTMP[1])) > maxZSlice || maxZSlice == 0) {
-						maxZSlice = Integer.parseInt(zSliceTMP[0]) + Integer.parseInt(zSliceTMP[1]);
-					}
-					rectanglesToRemove.add(new Rectangle(listRectangle.get(tmp)));
+	/**
+	 * Compile of new rectangles by getting extreme coordinates of each group of rectangles. Rectangles left alone keep
+	 * their order, and merged rectangles are added after them, by order of their first rectangle.
+	 *
+	 * @param parents groups of rectangles in the union-find structure
+	 *
+	 * @return true if rectangles were merged
+	 */
+	private boolean recompileRectangle(int[] parents) {
+		int   n     = listRectangle.size();
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++) {
+			sizes[find(parents, i)]++;
+		}
+		
+		List<Rectangle> rectangles = new ArrayList<>(n);
+		int[]           newZMin    = new int[n];
+		int[]           newZMax    = new int[n];
+		
+		Map<Integer, Rectangle> merged     = new TreeMap<>();
+		Map<Integer, int[]>     mergedZ    = new HashMap<>();
+		int                     nbInGroups = 0;
+		for (int i = 0; i < n; i++) {
+			int root = find(parents, i);
+			if (sizes[root] == 1) {
+				newZMin[rectangles.size()] = zMin[i];
+				newZMax[rectangles.size()] = zMax[i];
+				rectangles.add(listRectangle.get(i));
+			} else {
+				nbInGroups++;
+				Rectangle group = merged.get(root);
+				int[]     z     = mergedZ.get(root);
+				if (group == null) {
+					merged.put(root, new Rectangle(listRectangle.get(i)));
+					mergedZ.put(root, new int[]{zMin[i], zMax[i]});
+				} else {
+					group.add(listRectangle.get(i));
+					z[0] = Math.min(z[0], zMin[i]);
+					z[1] = Math.max(z[1], zMax[i]);
 				}
-				
-				maxZSlice -= minZSlice;
-				rectangleZSliceToAdd.add(minZSlice + "-" + maxZSlice);
-				maxWidth -= xMixNewRectangle;
-				maxHeight -= yMinNewRectangle;
-				rectanglesToAdd.add(new Rectangle(xMixNewRectangle, yMinNewRectangle, maxWidth, maxHeight));
 			}
 		}
-		LOGGER.debug("{} boxes will be merged in {} new boxes",
-		             rectanglesToRemove.size(),
-		             rectanglesToAdd.size());
-		for (int i = 0; i < rectanglesToAdd.size(); i++) {
-			this.newBoxesAdded = true;
-			listRectangle.add(rectanglesToAdd.get(i));
-			zSlices.add(rectangleZSliceToAdd.get(i));
-		}
-		for (Rectangle rectangle : rectanglesToRemove) {
-			this.newBoxesAdded = true;
-			int indexRectangleRemove = listRectangle.indexOf(rectangle);
-			if (indexRectangleRemove != -1) {
-				listRectangle.remove(indexRectangleRemove);
-				zSlices.remove(indexRectangleRemove);
-			}
+		LOGGER.debug("{} boxes will be merged in {} new boxes", nbInGroups, merged.size());
+		
+		for (Map.Entry<Integer, Rectangle> entry : merged.entrySet()) {
+			int[] z = mergedZ.get(entry.getKey());
+			newZMin[rectangles.size()] = z[0];
+			newZMax[rectangles.size()] = z[1];
+			rectangles.add(entry.getValue());
 		}
+		listRectangle = rectangles;
+		zMin = Arrays.copyOf(newZMin, rectangles.size());
+		zMax = Arrays.copyOf(newZMax, rectangles.size());
+		return !merged.isEmpty();
 	}
 	
 	
@@ -279,17 +259,17 @@ public class RectangleIntersection {
 		Map<Double, Box> boxes = new HashMap<>(listRectangle.size());
 		
 		for (int i = 0; i < listRectangle.size(); i++) {
-			String[] zSliceTMP = zSlices.get(i).split("-");
-			short    xMin   = (short) listRectangle.get(i).x;
-			short    yMin   = (short) listRectangle.get(i).y;
-			short    zMin   = Short.parseShort(zSliceTMP[0]);
-			short    xMax   = (short) (xMin + listRectangle.get(i).width);
-			short    yMax   = (short) (yMin + listRectangle.get(i).height);
-			short    zMax   = (short) (zMin + Short.parseShort(zSliceTMP[1]));
-			if (zMax == 0) {
-				zMax = 1;
+			Rectangle rectangle = listRectangle.get(i);
+			int       xMin      = rectangle.x;
+			int       yMin      = rectangle.y;
+			int       zMinBox   = zMin[i];
+			int       xMax      = xMin + rectangle.width;
+			int       yMax      = yMin + rectangle.height;
+			int       zMaxBox   = zMax[i];
+			if (zMaxBox == 0) {
+				zMaxBox = 1;
 			}
-			Box box = new Box(xMin, xMax, yMin, yMax, zMin, zMax);
+			Box box = new Box(xMin, xMax, yMin, yMax, zMinBox, zMaxBox);
 			boxes.put((double) i, box);
 		}
 		return boxes;
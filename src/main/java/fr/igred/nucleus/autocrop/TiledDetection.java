@@ -0,0 +1,613 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.autocrop;
+
+import fr.igred.nucleus.io.ImageSource;
+import fr.igred.nucleus.utils.ConnectedComponents;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.GaussianBlur3D;
+import ij.process.AutoThresholder;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import loci.formats.FormatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Detection of the nuclei of an image file tile by tile, for images which do not fit in memory.
+ * <p>
+ * The steps of the in-memory autocrop are applied on overlapping XY tiles spanning all the slices, read from the file
+ * with Bio-Formats: contrast stretch and conversion to 8 bits, Gaussian blur, thresholding and 26-connected components
+ * labelling. The contrast range and the threshold are computed from histograms accumulated over all the tiles, and the
+ * tiles are larger than their labelled area by the radius of the blur, so that each tile gives the same voxels as the
+ * whole image would.
+ * <p>
+ * Components crossing tile seams are joined with a union-find structure over the labels of the tiles: only the labels
+ * along the last row of tiles and the last column are kept, and the number of voxels and the bounding box of each
+ * component are merged with its label. Memory is thus bounded by a few tiles, plus one row of labels for each slice.
+ * <p>
+ * Components are numbered in raster order of their first voxel, as in the in-memory labelling, and are filtered on the
+ * image borders and on their volume in the same way.
+ */
+public class TiledDetection {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Margin around each tile, larger than the radius of the Gaussian blur */
+	private static final int    MARGIN    = 4;
+	/** Percentage of saturated voxels of the contrast stretch */
+	private static final double SATURATED = 0.05;
+	
+	/** Image file */
+	private final ImageSource        source;
+	/** Autocrop parameters */
+	private final AutocropParameters params;
+	/** Size of the tiles */
+	private final int                tileSize;
+	/** Channel used to compute the threshold */
+	private final int                channel;
+	/** Image width */
+	private final int                width;
+	/** Image height */
+	private final int                height;
+	/** Number of slices */
+	private final int                depth;
+	
+	/** Whether intensities are stretched and converted to 8 bits */
+	private boolean stretch;
+	/** Intensity mapped to 0 */
+	private double  low;
+	/** Intensity mapped to 255 */
+	private double  high;
+	
+	/** Threshold */
+	private int     threshold;
+	/** Slices used to compute the threshold */
+	private String  sliceUsedForOTSU = "default";
+	/** Whether the default threshold is used */
+	private boolean defaultThreshold;
+	
+	/** Number of labels over all the tiles */
+	private int    nbLabels;
+	/** Parent of each label in the union-find structure */
+	private int[]  parents     = new int[64];
+	/** Number of voxels of each label */
+	private long[] voxelCounts = new long[64];
+	/** Bounding box of each label: {xMin, xMax, yMin, yMax, zMin, zMax} */
+	private int[]  bounds      = new int[64 * 6];
+	/** Position (in raster order) of the first voxel of each label */
+	private long[] firstVoxels = new long[64];
+	
+	
+	/**
+	 * Prepares the detection of the nuclei of an image file.
+	 *
+	 * @param source image file
+	 * @param params autocrop parameters, with a tile size above 0
+	 */
+	public TiledDetection(ImageSource source, AutocropParameters params) {
+		this.source = source;
+		this.params = params;
+		this.tileSize = params.getTileSize();
+		this.channel = params.getChannelToComputeThreshold();
+		this.width = source.getWidth();
+		this.height = source.getHeight();
+		this.depth = source.getNSlices();
+	}
+	
+	
+	/**
+	 * Finds the root of a label, with path halving.
+	 */
+	private static int find(int[] parents, int label) {
+		int current = label;
+		while (parents[current] != current) {
+			parents[current] = parents[parents[current]];
+			current = parents[current];
+		}
+		return current;
+	}
+	
+	
+	/**
+	 * Merges two labels, the smallest root being kept.
+	 */
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if (rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+	
+	
+	/**
+	 * Computes a threshold from a histogram, scaled down if its counts do not fit in an int.
+	 *
+	 * @param method    thresholding method
+	 * @param histogram histogram
+	 *
+	 * @return the threshold
+	 */
+	private static int computeThreshold(String method, long[] histogram) {
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long  scale  = total / Integer.MAX_VALUE + 1;
+		int[] counts = new int[histogram.length];
+		for (int i = 0; i < histogram.length; i++) {
+			counts[i] = (int) (histogram[i] / scale);
+		}
+		return new AutoThresholder().getThreshold(AutoThresholder.Method.valueOf(method), counts);
+	}
+	
+	
+	/**
+	 * Detects the nuclei and computes their bounding boxes.
+	 *
+	 * @param typeThresholding thresholding method
+	 * @param voxelVolume      volume of a voxel, to filter components on their volume
+	 *
+	 * @return the bounding boxes, by component label
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	public Map<Double, Box> run(String typeThresholding, double voxelVolume) throws IOException, FormatException {
+		LOGGER.info("Detecting nuclei by tiles of {} pixels.", tileSize);
+		computeContrast();
+		computeThreshold(typeThresholding);
+		labelTiles();
+		return computeBoxes(voxelVolume);
+	}
+	
+	
+	/**
+	 * Applies a task on each tile, in raster order.
+	 *
+	 * @param task task applied on the tiles
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	private void forEachTile(TileTask task) throws IOException, FormatException {
+		for (int y = 0; y < height; y += tileSize) {
+			for (int x = 0; x < width; x += tileSize) {
+				task.process(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Computes the contrast stretch of images above 8 bits: the intensity range is cut at both ends by the
+	 * saturated percentage of the voxels, from a 256 bins histogram, as the ImageJ contrast enhancer does.
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	private void computeContrast() throws IOException, FormatException {
+		stretch = source.getBitDepth() > 8;
+		if (!stretch) {
+			return;
+		}
+		double[] range = {Double.MAX_VALUE, -Double.MAX_VALUE};
+		forEachTile((x, y, w, h) -> {
+			for (int slice = 0; slice < depth; slice++) {
+				ImageProcessor tile = source.readTile(channel, slice, x, y, w, h);
+				for (int i = 0; i < w * h; i++) {
+					double value = tile.getf(i);
+					range[0] = Math.min(range[0], value);
+					range[1] = Math.max(range[1], value);
+				}
+			}
+		});
+		double min = range[0];
+		double max = range[1];
+		if (max <= min) {
+			low = min;
+			high = min + 1;
+			return;
+		}
+		
+		double binSize   = (max - min) / 256;
+		long[] histogram = new long[256];
+		forEachTile((x, y, w, h) -> {
+			for (int slice = 0; slice < depth; slice++) {
+				ImageProcessor tile = source.readTile(channel, slice, x, y, w, h);
+				for (int i = 0; i < w * h; i++) {
+					histogram[Math.min(255, (int) ((tile.getf(i) - min) / binSize))]++;
+				}
+			}
+		});
+		long saturated = (long) ((double) width * height * depth * SATURATED / 200.0);
+		int  hMin      = -1;
+		long count     = 0;
+		do {
+			hMin++;
+			count += histogram[hMin];
+		} while (count <= saturated && hMin < 255);
+		int hMax = 256;
+		count = 0;
+		do {
+			hMax--;
+			count += histogram[hMax];
+		} while (count <= saturated && hMax > 0);
+		
+		low = min + hMin * binSize;
+		high = min + hMax * binSize;
+		if (high <= low) {
+			low = min;
+			high = max;
+		}
+		LOGGER.debug("Contrast stretched from [{}, {}] to 8 bits.", low, high);
+	}
+	
+	
+	/**
+	 * Reads a tile, converted to 8 bits and blurred, without its margin.
+	 *
+	 * @param x x start of the tile
+	 * @param y y start of the tile
+	 * @param w tile width
+	 * @param h tile height
+	 *
+	 * @return the voxels of the tile, slice by slice, in raster order
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	private byte[] readBlurredTile(int x, int y, int w, int h) throws IOException, FormatException {
+		int xStart  = Math.max(0, x - MARGIN);
+		int yStart  = Math.max(0, y - MARGIN);
+		int xEnd    = Math.min(width, x + w + MARGIN);
+		int yEnd    = Math.min(height, y + h + MARGIN);
+		int xRegion = xEnd - xStart;
+		int yRegion = yEnd - yStart;
+		
+		ImagePlus region = source.readRegion(channel, xStart, yStart, xRegion, yRegion);
+		if (stretch) {
+			ImageStack stack = new ImageStack(xRegion, yRegion);
+			double     scale = 1.0 / (high - low);
+			for (int slice = 1; slice <= depth; slice++) {
+				ImageProcessor plane  = region.getStack().getProcessor(slice);
+				byte[]         pixels = new byte[xRegion * yRegion];
+				for (int i = 0; i < pixels.length; i++) {
+					double normalized = Math.max(0, Math.min(1, (plane.getf(i) - low) * scale));
+					/* Normalization to 16 bits, then conversion to 8 bits, as contrastAnd8bits does for 16-bit images */
+					int value = (int) (normalized * 65535);
+					pixels[i] = (byte) Math.min(255, (int) (value / 256.0 + 0.5));
+				}
+				stack.addSlice(new ByteProcessor(xRegion, yRegion, pixels));
+			}
+			region = new ImagePlus(region.getTitle(), stack);
+		}
+		GaussianBlur3D.blur(region, 0.5, 0.5, 1);
+		
+		byte[] voxels = new byte[w * h * depth];
+		for (int slice = 0; slice < depth; slice++) {
+			byte[] pixels = (byte[]) region.getStack().getPixels(slice + 1);
+			for (int j = 0; j < h; j++) {
+				System.arraycopy(pixels, (y + j - yStart) * xRegion + x - xStart, voxels, (slice * h + j) * w, w);
+			}
+		}
+		return voxels;
+	}
+	
+	
+	/**
+	 * Computes the threshold from the histogram of all the tiles. If it is below the minimal threshold, it is computed
+	 * again on the last slices, then replaced by the minimal threshold.
+	 *
+	 * @param typeThresholding thresholding method
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	private void computeThreshold(String typeThresholding) throws IOException, FormatException {
+		long[][] histograms = new long[depth][256];
+		forEachTile((x, y, w, h) -> {
+			byte[] voxels = readBlurredTile(x, y, w, h);
+			for (int i = 0; i < voxels.length; i++) {
+				histograms[i / (w * h)][voxels[i] & 0xFF]++;
+			}
+		});
+		int thresh = computeThreshold(typeThresholding, sumHistograms(histograms, 0));
+		if (thresh < params.getThresholdOTSUComputing()) {
+			int first = params.getSlicesOTSUComputing() == 0 ? depth / 2 : params.getSlicesOTSUComputing();
+			this.sliceUsedForOTSU = "Start:" + first + "-" + depth;
+			int thresh2 = computeThreshold(typeThresholding, sumHistograms(histograms, Math.max(1, first) - 1));
+			if (thresh2 < params.getThresholdOTSUComputing()) {
+				thresh = params.getThresholdOTSUComputing();
+				this.defaultThreshold = true;
+			} else {
+				thresh = thresh2;
+			}
+		}
+		this.threshold = thresh;
+		LOGGER.debug("Threshold: {}", threshold);
+	}
+	
+	
+	/**
+	 * Sums the histograms of the slices from a given slice to the last one.
+	 *
+	 * @param histograms histogram of each slice
+	 * @param first      first slice (0-based)
+	 *
+	 * @return the histogram of the slices
+	 */
+	private static long[] sumHistograms(long[][] histograms, int first) {
+		long[] sum = new long[256];
+		for (int slice = first; slice < histograms.length; slice++) {
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] += histograms[slice][i];
+			}
+		}
+		return sum;
+	}
+	
+	
+	/**
+	 * Labels the tiles, and joins the labels of components crossing tile seams.
+	 *
+	 * @throws IOException     if the image cannot be read
+	 * @throws FormatException if the image cannot be decoded
+	 */
+	private void labelTiles() throws IOException, FormatException {
+		/* Labels of the last row of the previous row of tiles, and of the current one */
+		int[][] previousRow = new int[depth][width];
+		int[][] currentRow  = new int[depth][width];
+		for (int y = 0; y < height; y += tileSize) {
+			int     h          = Math.min(tileSize, height - y);
+			int[][] lastColumn = new int[depth][h];
+			for (int x = 0; x < width; x += tileSize) {
+				int w = Math.min(tileSize, width - x);
+				
+				byte[]    voxels = readBlurredTile(x, y, w, h);
+				boolean[] mask   = new boolean[voxels.length];
+				for (int i = 0; i < voxels.length; i++) {
+					mask[i] = (voxels[i] & 0xFF) >= threshold;
+				}
+				ConnectedComponents components = ConnectedComponents.label(mask, w, h, depth, 26, false);
+				int                 offset     = addLabels(components, x, y);
+				int[]               labels     = components.getLabels();
+				
+				for (int z = 0; z < depth; z++) {
+					for (int j = 0; j < h; j++) {
+						int label = labels[(z * h + j) * w];
+						if (label > 0 && x > 0) {
+							joinColumn(lastColumn, offset + label, j, z);
+						}
+					}
+					for (int i = 0; i < w; i++) {
+						int label = labels[z * h * w + i];
+						if (label > 0 && y > 0) {
+							joinRow(previousRow, offset + label, x + i, z);
+						}
+					}
+				}
+				for (int z = 0; z < depth; z++) {
+					for (int j = 0; j < h; j++) {
+						int label = labels[(z * h + j) * w + w - 1];
+						lastColumn[z][j] = label > 0 ? offset + label : 0;
+					}
+					for (int i = 0; i < w; i++) {
+						int label = labels[(z * h + h - 1) * w + i];
+						currentRow[z][x + i] = label > 0 ? offset + label : 0;
+					}
+				}
+			}
+			int[][] row = previousRow;
+			previousRow = currentRow;
+			currentRow = row;
+		}
+		LOGGER.debug("{} labels found in the tiles.", nbLabels);
+	}
+	
+	
+	/**
+	 * Joins a label of the first column of a tile with the 26-neighbours in the last column of the previous tile.
+	 *
+	 * @param lastColumn labels of the last column of the previous tile
+	 * @param label      label of the voxel
+	 * @param j          y of the voxel in the tile
+	 * @param z          slice of the voxel
+	 */
+	private void joinColumn(int[][] lastColumn, int label, int j, int z) {
+		for (int k = Math.max(0, z - 1); k <= Math.min(depth - 1, z + 1); k++) {
+			for (int n = Math.max(0, j - 1); n <= Math.min(lastColumn[k].length - 1, j + 1); n++) {
+				if (lastColumn[k][n] > 0) {
+					union(parents, label, lastColumn[k][n]);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Joins a label of the first row of a tile with the 26-neighbours in the last row of the tiles above.
+	 *
+	 * @param lastRow labels of the last row of the tiles above
+	 * @param label   label of the voxel
+	 * @param i       x of the voxel in the image
+	 * @param z       slice of the voxel
+	 */
+	private void joinRow(int[][] lastRow, int label, int i, int z) {
+		for (int k = Math.max(0, z - 1); k <= Math.min(depth - 1, z + 1); k++) {
+			for (int n = Math.max(0, i - 1); n <= Math.min(width - 1, i + 1); n++) {
+				if (lastRow[k][n] > 0) {
+					union(parents, label, lastRow[k][n]);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Adds the components of a tile to the labels, with their number of voxels, bounding box and first voxel in the
+	 * image.
+	 *
+	 * @param components components of the tile
+	 * @param x          x start of the tile
+	 * @param y          y start of the tile
+	 *
+	 * @return the offset of the labels of the tile
+	 */
+	private int addLabels(ConnectedComponents components, int x, int y) {
+		int offset = nbLabels;
+		int count  = components.getNbLabels();
+		if (offset + count >= parents.length) {
+			int capacity = Math.max(parents.length * 2, offset + count + 1);
+			parents = Arrays.copyOf(parents, capacity);
+			voxelCounts = Arrays.copyOf(voxelCounts, capacity);
+			bounds = Arrays.copyOf(bounds, capacity * 6);
+			firstVoxels = Arrays.copyOf(firstVoxels, capacity);
+		}
+		for (int label = 1; label <= count; label++) {
+			int   id  = offset + label;
+			int[] box = components.getBoundingBox(label);
+			parents[id] = id;
+			voxelCounts[id] = components.getVoxelCount(label);
+			bounds[id * 6] = box[0] + x;
+			bounds[id * 6 + 1] = box[1] + x;
+			bounds[id * 6 + 2] = box[2] + y;
+			bounds[id * 6 + 3] = box[3] + y;
+			bounds[id * 6 + 4] = box[4];
+			bounds[id * 6 + 5] = box[5];
+		}
+		/* Labels are numbered in raster order of their first voxel */
+		int[] labels = components.getLabels();
+		int   w      = components.getWidth();
+		int   h      = components.getHeight();
+		int   next   = 1;
+		for (int voxel = 0; voxel < labels.length && next <= count; voxel++) {
+			if (labels[voxel] == next) {
+				int z = voxel / (w * h);
+				int j = voxel / w % h;
+				int i = voxel % w;
+				firstVoxels[offset + next] = ((long) z * height + y + j) * width + x + i;
+				next++;
+			}
+		}
+		nbLabels += count;
+		return offset;
+	}
+	
+	
+	/**
+	 * Merges the labels of each component and computes the boxes of the components which do not touch the image
+	 * borders and whose volume is within the limits.
+	 *
+	 * @param voxelVolume volume of a voxel
+	 *
+	 * @return the bounding boxes, by component label
+	 */
+	private Map<Double, Box> computeBoxes(double voxelVolume) {
+		int nbComponents = 0;
+		for (int id = 1; id <= nbLabels; id++) {
+			int root = find(parents, id);
+			if (root == id) {
+				nbComponents++;
+			} else {
+				voxelCounts[root] += voxelCounts[id];
+				firstVoxels[root] = Math.min(firstVoxels[root], firstVoxels[id]);
+				for (int b = 0; b < 6; b += 2) {
+					bounds[root * 6 + b] = Math.min(bounds[root * 6 + b], bounds[id * 6 + b]);
+					bounds[root * 6 + b + 1] = Math.max(bounds[root * 6 + b + 1], bounds[id * 6 + b + 1]);
+				}
+			}
+		}
+		Integer[] roots = new Integer[nbComponents];
+		int       n     = 0;
+		for (int id = 1; id <= nbLabels; id++) {
+			if (parents[id] == id) {
+				roots[n++] = id;
+			}
+		}
+		/* Same numbering as the labelling of the whole image */
+		Arrays.sort(roots, Comparator.comparingLong(id -> firstVoxels[id]));
+		
+		Map<Double, Box> boxes = new HashMap<>();
+		for (int label = 1; label <= nbComponents; label++) {
+			int     id     = roots[label - 1];
+			int     offset = id * 6;
+			double  volume = voxelCounts[id] * voxelVolume;
+			boolean border = bounds[offset] == 0 || bounds[offset + 2] == 0 ||
+			                 bounds[offset + 1] == width - 1 || bounds[offset + 3] == height - 1 ||
+			                 depth > 1 && (bounds[offset + 4] == 0 || bounds[offset + 5] == depth - 1);
+			if (!border && voxelCounts[id] > 1 &&
+			    volume >= params.getMinVolumeNucleus() && volume <= params.getMaxVolumeNucleus()) {
+				boxes.put((double) label, new Box(bounds[offset], bounds[offset + 1],
+				                                  bounds[offset + 2], bounds[offset + 3],
+				                                  bounds[offset + 4], bounds[offset + 5]));
+			}
+		}
+		LOGGER.debug("Number of objects found: {}", boxes.size());
+		return boxes;
+	}
+	
+	
+	public int getThreshold() {
+		return threshold;
+	}
+	
+	
+	public String getSliceUsedForOTSU() {
+		return sliceUsedForOTSU;
+	}
+	
+	
+	public boolean isDefaultThreshold() {
+		return defaultThreshold;
+	}
+	
+	
+	/**
+	 * Task applied on a tile.
+	 */
+	@FunctionalInterface
+	private interface TileTask {
+		/**
+		 * Processes a tile.
+		 *
+		 * @param x x start of the tile
+		 * @param y y start of the tile
+		 * @param w tile width
+		 * @param h tile height
+		 *
+		 * @throws IOException     if the image cannot be read
+		 * @throws FormatException if the image cannot be decoded
+		 */
+		void process(int x, int y, int w, int h) throws IOException, FormatException;
+		
+	}
+	
+}
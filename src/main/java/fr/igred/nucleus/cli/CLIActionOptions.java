@@ -80,11 +80,41 @@ public class CLIActionOptions {
 	protected Option threads      = Option.builder("th")
 	                                      .longOpt("threads")
 	                                      .type(String.class)
-	                                      .desc("Number of threads used to split image processing during autocrop or nucleus segmentation (do not exceed the number of available CPUs  (=" +
+	                                      .desc("Number of threads used to split image processing during autocrop, nucleus segmentation, chromocenter segmentation or parameters computation (do not exceed the number of available CPUs  (=" +
 	                                            Runtime.getRuntime().availableProcessors() + " CPUs))" + EOL +
 	                                            "Default : 4 threads for several images (otherwise 1 thread for single image processing)")
 	                                      .numberOfArgs(1)
 	                                      .build();
+	/** Maximum processing time of one image */
+	protected Option timeout      = Option.builder("to")
+	                                      .longOpt("timeout")
+	                                      .type(String.class)
+	                                      .desc("Maximum processing time of one image in seconds during autocrop or nucleus segmentation of a folder (images exceeding it are cancelled and listed in the report)" + EOL +
+	                                            "Default : no limit")
+	                                      .numberOfArgs(1)
+	                                      .build();
+	/** Resume a previous run */
+	protected Option resume       = Option.builder("rs")
+	                                      .longOpt("resume")
+	                                      .type(boolean.class)
+	                                      .desc("Resume a previous autocrop or nucleus segmentation of a folder: images recorded as completed in the job manifest of the output folder, with the same parameters, are skipped and their results merged" + EOL)
+	                                      .build();
+	/** Result cache folder */
+	protected Option cache        = Option.builder("ca")
+	                                      .longOpt("cache")
+	                                      .type(String.class)
+	                                      .desc("Folder caching the results of each image during autocrop, nucleus segmentation or chromocenter segmentation of a folder: images already processed with the same content and parameters, in any run sharing the folder, are restored instead of being processed again" + EOL +
+	                                            "Default : no cache")
+	                                      .numberOfArgs(1)
+	                                      .build();
+	/** Maximum size of the result cache */
+	protected Option cacheSize    = Option.builder("cas")
+	                                      .longOpt("cacheSize")
+	                                      .type(String.class)
+	                                      .desc("Maximum size of the result cache in MB (the least recently used results are evicted beyond it)" + EOL +
+	                                            "Default : 10240 MB")
+	                                      .numberOfArgs(1)
+	                                      .build();
 	/** OMERO activate */
 	protected Option omero        = Option.builder("ome")
 	                                      .longOpt("omero")
@@ -128,6 +158,10 @@ public class CLIActionOptions {
 		options.addOption(configFile);
 		options.addOption(action);
 		options.addOption(threads);
+		options.addOption(timeout);
+		options.addOption(resume);
+		options.addOption(cache);
+		options.addOption(cacheSize);
 		options.addOption(omero);
 		options.addOption(thresholding);
 		try {
@@ -23,6 +23,7 @@ import fr.igred.nucleus.autocrop.CropFromCoordinates;
 import fr.igred.nucleus.autocrop.GenerateOverlay;
 import fr.igred.nucleus.autocrop.GenerateProjectionFromCoordinates;
 import fr.igred.nucleus.core.ComputeNucleiParameters;
+import fr.igred.nucleus.io.ResultCache;
 import fr.igred.nucleus.machinelearning.ComputeNucleiParametersML;
 import fr.igred.nucleus.process.ChromocenterParameters;
 import fr.igred.nucleus.process.ChromocenterCalling;
@@ -39,6 +40,7 @@ import java.lang.invoke.MethodHandles;
 
 import static java.lang.Double.parseDouble;
 import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 
 
 public class CLIRunAction {
@@ -86,6 +88,28 @@ public class CLIRunAction {
 	}
 	
 	
+	/**
+	 * Opens the result cache given on the command line, if any.
+	 *
+	 * @return the result cache, or null if it is not enabled or cannot be opened
+	 */
+	private ResultCache openCache() {
+		ResultCache resultCache = null;
+		if (cmd.hasOption("cache")) {
+			long maxSize = ResultCache.DEFAULT_MAX_SIZE;
+			if (cmd.hasOption("cacheSize")) {
+				maxSize = parseLong(cmd.getOptionValue("cacheSize")) * 1024 * 1024;
+			}
+			try {
+				resultCache = new ResultCache(cmd.getOptionValue("cache"), maxSize);
+			} catch (IOException e) {
+				LOGGER.error("Cannot open the result cache: {}", cmd.getOptionValue("cache"), e);
+			}
+		}
+		return resultCache;
+	}
+	
+	
 	private void runSegCC() {
 		ChromocenterParameters params = new ChromocenterParameters(cmd.getOptionValue("input"),
 		                                                           cmd.getOptionValue("input2"),
@@ -122,6 +146,10 @@ public class CLIRunAction {
 		}
 		
 		ChromocenterCalling ccCalling = new ChromocenterCalling(params);
+		if (cmd.hasOption("threads")) {
+			ccCalling.setExecutorThreads(parseInt(cmd.getOptionValue("threads")));
+		}
+		ccCalling.setCache(openCache());
 		try {
 			LOGGER.info("-input {} -input2 {} -output {}",
 			            params.getInputFolder(),
@@ -177,6 +205,7 @@ public class CLIRunAction {
 		File path = new File(cmd.getOptionValue("input"));
 		if (path.isFile()) {
 			AutoCropCalling autoCrop = new AutoCropCalling(params);
+			autoCrop.setCache(openCache());
 			autoCrop.runFile(cmd.getOptionValue("input"));
 			autoCrop.saveGeneralInfo();
 		} else {
@@ -184,6 +213,11 @@ public class CLIRunAction {
 			if (cmd.hasOption("threads")) {
 				autoCrop.setExecutorThreads(parseInt(cmd.getOptionValue("threads")));
 			}
+			if (cmd.hasOption("timeout")) {
+				autoCrop.setTimeout(parseLong(cmd.getOptionValue("timeout")));
+			}
+			autoCrop.setResume(cmd.hasOption("resume"));
+			autoCrop.setCache(openCache());
 			autoCrop.runFolder();
 		}
 	}
@@ -214,6 +248,11 @@ public class CLIRunAction {
 				if (cmd.hasOption("threads")) {
 					otsuModified.setExecutorThreads(parseInt(cmd.getOptionValue("threads")));
 				}
+				if (cmd.hasOption("timeout")) {
+					otsuModified.setTimeout(parseLong(cmd.getOptionValue("timeout")));
+				}
+				otsuModified.setResume(cmd.hasOption("resume"));
+				otsuModified.setCache(openCache());
 				String log = otsuModified.runSeveralImages();
 				if (!log.isEmpty()) {
 					LOGGER.error("Nuclei which didn't pass the segmentation:{}{}", System.lineSeparator(), log);
@@ -231,6 +270,9 @@ public class CLIRunAction {
 		if (cmd.hasOption("config")) {
 			generateParameters.addConfigParameters(cmd.getOptionValue("config"));
 		}
+		if (cmd.hasOption("threads")) {
+			generateParameters.setExecutorThreads(parseInt(cmd.getOptionValue("threads")));
+		}
 		generateParameters.run();
 	}
 	
@@ -239,6 +281,9 @@ public class CLIRunAction {
 	throws IOException, FormatException {
 		ComputeNucleiParametersML computeParameters = new ComputeNucleiParametersML(cmd.getOptionValue("input"),
 		                                                                            cmd.getOptionValue("input2"));
+		if (cmd.hasOption("threads")) {
+			computeParameters.setExecutorThreads(parseInt(cmd.getOptionValue("threads")));
+		}
 		computeParameters.run();
 	}
 	
@@ -18,12 +18,10 @@
 package fr.igred.nucleus.core;
 
 import fr.igred.nucleus.gradient.MyGradient;
-import fr.igred.nucleus.utils.RegionalExtremaFilter;
+import fr.igred.nucleus.utils.RegionAdjacencyGraph;
+import fr.igred.nucleus.utils.RegionalMinima;
 import ij.ImagePlus;
 import ij.ImageStack;
-import ij.measure.Calibration;
-import ij.process.ImageStatistics;
-import ij.process.StackStatistics;
 import inra.ijpb.binary.BinaryImages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,136 +56,22 @@ public final class ChromocenterEnhancement {
 	 * @return image of the contrasted region
 	 */
 	public static ImagePlus applyEnhanceChromocenters(ImagePlus imagePlusRaw, ImagePlus imagePlusSegmented) {
-		MyGradient            myGradient        = new MyGradient(imagePlusRaw, imagePlusSegmented);
-		ImagePlus             imagePlusGradient = myGradient.run();
-		RegionalExtremaFilter regExtremaFilter  = new RegionalExtremaFilter();
-		regExtremaFilter.setMask(imagePlusSegmented);
-		ImagePlus imagePlusExtrema   = regExtremaFilter.applyWithMask(imagePlusGradient);
-		ImagePlus imagePlusLabels    = BinaryImages.componentsLabeling(imagePlusExtrema, 26, 32);
-		ImagePlus imagePlusWatershed = computeWatershed(imagePlusGradient,
-		                                                imagePlusLabels,
-		                                                imagePlusSegmented,
-		                                                26, false, false);
+		MyGradient myGradient         = new MyGradient(imagePlusRaw, imagePlusSegmented);
+		ImagePlus  imagePlusGradient  = myGradient.run();
+		ImagePlus  imagePlusExtrema   = RegionalMinima.find(imagePlusGradient, imagePlusSegmented, 26);
+		ImagePlus  imagePlusLabels    = BinaryImages.componentsLabeling(imagePlusExtrema, 26, 32);
+		ImagePlus  imagePlusWatershed = computeWatershed(imagePlusGradient,
+		                                                 imagePlusLabels,
+		                                                 imagePlusSegmented,
+		                                                 26, false, false);
 		// Change -1 value in 0
 		// TODO remove this line after updating morpholib_J versions (>=1.4.3)
 		imagePlusWatershed = convertNegativeValue(imagePlusWatershed);
-		double[] contrast = computeContrast(imagePlusRaw, imagePlusWatershed);
+		double[] contrast = RegionAdjacencyGraph.build(imagePlusWatershed, imagePlusRaw).computeContrast();
 		return computeImage(imagePlusWatershed, contrast);
 	}
 	
 	
-	/**
-	 * Compute the region adjacency graph. The aim is to detect the  neighboring region.
-	 *
-	 * @param imagePlusWatershed image results of the watershed
-	 *
-	 * @return a float table which contain the value of the contrast between each region
-	 */
-	private static double[][] getRegionAdjacencyGraph(ImagePlus imagePlusWatershed) {
-		int             voxelValue;
-		int             neighborVoxelValue;
-		ImageStatistics imageStatistics = new StackStatistics(imagePlusWatershed);
-		
-		double[][] regAdjacencyGraph = new double[(int) imageStatistics.histMax + 1][(int) imageStatistics.histMax + 1];
-		
-		Calibration calibration         = imagePlusWatershed.getCalibration();
-		double      volumeVoxel         = calibration.pixelWidth * calibration.pixelHeight * calibration.pixelDepth;
-		ImageStack  imageStackWatershed = imagePlusWatershed.getStack();
-		for (int k = 1; k < imagePlusWatershed.getNSlices() - 1; ++k) {
-			for (int i = 1; i < imagePlusWatershed.getWidth() - 1; ++i) {
-				for (int j = 1; j < imagePlusWatershed.getHeight() - 1; ++j) {
-					voxelValue = (int) imageStackWatershed.getVoxel(i, j, k);
-					for (int kk = k - 1; kk <= k + 1; kk += 2) {
-						neighborVoxelValue = (int) imageStackWatershed.getVoxel(i, j, kk);
-						
-						if (neighborVoxelValue > 0 && voxelValue != neighborVoxelValue) {
-							regAdjacencyGraph[voxelValue][neighborVoxelValue] += volumeVoxel;
-						}
-					}
-					for (int jj = j - 1; jj <= j + 1; jj += 2) {
-						neighborVoxelValue = (int) imageStackWatershed.getVoxel(i, jj, k);
-						if (neighborVoxelValue > 0 && voxelValue != neighborVoxelValue) {
-							regAdjacencyGraph[voxelValue][neighborVoxelValue] += volumeVoxel;
-						}
-					}
-					for (int ii = i - 1; ii <= i + 1; ii += 2) {
-						neighborVoxelValue = (int) imageStackWatershed.getVoxel(ii, j, k);
-						if (neighborVoxelValue > 0 && voxelValue != neighborVoxelValue) {
-							regAdjacencyGraph[voxelValue][neighborVoxelValue] += volumeVoxel;
-						}
-					}
-				}
-			}
-		}
-		return regAdjacencyGraph;
-	}
-	
-	
-	/**
-	 * Compute the contrasts between neighboring region.
-	 *
-	 * @param imagePlusRaw     raw image
-	 * @param imagePlusRegions image of the contrasted regions
-	 *
-	 * @return table of contrast
-	 */
-	private static double[] computeContrast(ImagePlus imagePlusRaw, ImagePlus imagePlusRegions) {
-		double[][] tRegAdjacencyGraph = getRegionAdjacencyGraph(imagePlusRegions);
-		double[]   tMean              = computeMeanIntensity(imagePlusRaw, imagePlusRegions);
-		double[]   tContrast          = new double[tRegAdjacencyGraph.length + 1];
-		double     neighborVolumeTotal;
-		for (int i = 1; i < tRegAdjacencyGraph.length; ++i) {
-			neighborVolumeTotal = 0;
-			for (int j = 1; j < tRegAdjacencyGraph[i].length; ++j) {
-				if (tRegAdjacencyGraph[i][j] > 0 && i != j) {
-					tContrast[i] += tRegAdjacencyGraph[i][j] * (tMean[i] - tMean[j]);
-					neighborVolumeTotal += tRegAdjacencyGraph[i][j];
-				}
-			}
-			if (tContrast[i] <= 0 || neighborVolumeTotal == 0) {
-				tContrast[i] = 0;
-			} else {
-				tContrast[i] /= neighborVolumeTotal;
-			}
-		}
-		return tContrast;
-	}
-	
-	
-	/**
-	 * Compute the mean of value voxel for each region
-	 *
-	 * @param imagePlusInput     ImagePlus raw image
-	 * @param imagePlusWatershed ImagePlus of the results of the watershed
-	 *
-	 * @return table of double of average intensity for each watershed label
-	 */
-	private static double[] computeMeanIntensity(ImagePlus imagePlusInput, ImagePlus imagePlusWatershed) {
-		ImageStatistics imageStatistics      = new StackStatistics(imagePlusWatershed);
-		ImageStack      imageStackWatershed  = imagePlusWatershed.getStack();
-		ImageStack      imageStackInput      = imagePlusInput.getStack();
-		double[]        tIntensityTotal      = new double[(int) imageStatistics.histMax + 1];
-		double[]        tIntensityMean       = new double[(int) imageStatistics.histMax + 1];
-		int[]           tNbVoxelInEachRegion = new int[(int) imageStatistics.histMax + 1];
-		int             voxelValue;
-		for (int k = 0; k < imagePlusWatershed.getNSlices(); ++k) {
-			for (int i = 0; i < imagePlusWatershed.getWidth(); ++i) {
-				for (int j = 0; j < imagePlusWatershed.getHeight(); ++j) {
-					voxelValue = (int) imageStackWatershed.getVoxel(i, j, k);
-					if (voxelValue > 0) {
-						tIntensityTotal[voxelValue] += imageStackInput.getVoxel(i, j, k);
-						++tNbVoxelInEachRegion[voxelValue];
-					}
-				}
-			}
-		}
-		for (int i = 1; i < tIntensityTotal.length; ++i) {
-			tIntensityMean[i] = tIntensityTotal[i] / tNbVoxelInEachRegion[i];
-		}
-		return tIntensityMean;
-	}
-	
-	
 	/**
 	 * Creation of the image of contrasted regions
 	 *
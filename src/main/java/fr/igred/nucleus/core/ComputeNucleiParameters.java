@@ -24,6 +24,7 @@ import fr.igred.omero.repository.DatasetWrapper;
 import fr.igred.omero.repository.ImageWrapper;
 import fr.igred.nucleus.io.Directory;
 import fr.igred.nucleus.io.OutputTextFile;
+import fr.igred.nucleus.utils.BatchExecutor;
 import ij.ImagePlus;
 import ij.measure.Calibration;
 import loci.formats.FormatException;
@@ -52,6 +53,7 @@ public class ComputeNucleiParameters {
 	
 	private String segDatasetName;
 	private String currentTime;
+	private int    executorThreads = 1;
 	
 	
 	/**
@@ -109,21 +111,10 @@ public class ComputeNucleiParameters {
 		
 		cropInfoOTSU.append(pluginParameters.getAnalysisParameters()).append(getColNameResult());
 		
-		for (File f : segmentedImages) {
-			ImagePlus raw = new ImagePlus(pluginParameters.getInputFolder() + File.separator + f.getName());
-			try {
-				ImagePlus[] segmented = BF.openImagePlus(f.getAbsolutePath());
-				
-				Measure3D measure3D = new Measure3D(segmented,
-				                                    raw,
-				                                    pluginParameters.getXCalibration(raw),
-				                                    pluginParameters.getYCalibration(raw),
-				                                    pluginParameters.getZCalibration(raw));
-				cropInfoOTSU.append(measure3D.nucleusParameter3D()).append(eol);
-			} catch (IOException | FormatException e) {
-				LOGGER.error("An error occurred.", e);
-			}
-		}
+		BatchExecutor<File, String> batch = new BatchExecutor<>(executorThreads);
+		batch.run(segmentedImages,
+		          this::computeParameters,
+		          (f, parameters) -> cropInfoOTSU.append(parameters).append(eol));
 		LocalDateTime     date      = LocalDateTime.now();
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss", Locale.ROOT);
 		currentTime = formatter.format(date);
@@ -136,6 +127,29 @@ public class ComputeNucleiParameters {
 	}
 	
 	
+	/**
+	 * Computes the parameters of one segmented nucleus.
+	 *
+	 * @param f segmented image file (the raw image has the same name in the input folder)
+	 *
+	 * @return the nucleus parameters
+	 *
+	 * @throws IOException     if the segmented image could not be read
+	 * @throws FormatException Bio-formats exception
+	 */
+	private String computeParameters(File f) throws IOException, FormatException {
+		ImagePlus   raw       = new ImagePlus(pluginParameters.getInputFolder() + File.separator + f.getName());
+		ImagePlus[] segmented = BF.openImagePlus(f.getAbsolutePath());
+		
+		Measure3D measure3D = new Measure3D(segmented,
+		                                    raw,
+		                                    pluginParameters.getXCalibration(raw),
+		                                    pluginParameters.getYCalibration(raw),
+		                                    pluginParameters.getZCalibration(raw));
+		return measure3D.nucleusParameter3D();
+	}
+	
+	
 	public void runFromOMERO(String rawDatasetID, String segmentedDatasetID, Client client)
 	throws AccessException, ServiceException, ExecutionException, InterruptedException, IOException {
 		DatasetWrapper rawDataset       = client.getDataset(Long.parseLong(rawDatasetID));
@@ -163,6 +177,16 @@ public class ComputeNucleiParameters {
 	}
 	
 	
+	/**
+	 * Setter for the number of threads used to process images
+	 *
+	 * @param threadNumber number of executors threads
+	 */
+	public void setExecutorThreads(int threadNumber) {
+		this.executorThreads = threadNumber;
+	}
+	
+	
 	public void addConfigParameters(String pathToConfig) {
 		pluginParameters.addGeneralProperties(pathToConfig);
 		
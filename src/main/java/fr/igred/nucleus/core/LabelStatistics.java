@@ -0,0 +1,348 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.core;
+
+import fr.igred.nucleus.utils.VoxelRecord;
+import fr.igred.nucleus.utils.VoxelView;
+import ij.ImagePlus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Statistics of every object of a label image (positive values), gathered in a single pass:
+ * <ul>
+ *     <li>number of voxels</li>
+ *     <li>sum, minimum and maximum of the intensities of an associated image</li>
+ *     <li>raw moments of the voxel coordinates, up to order 2</li>
+ *     <li>bounding box</li>
+ * </ul>
+ * Objects are indexed by their rank in the sorted labels, as in {@link fr.igred.nucleus.utils.Histogram#getLabels()}.
+ * <p>
+ * The statistics are a snapshot of the images when they are computed: they do not follow later changes to the images.
+ */
+public final class LabelStatistics {
+	/** Accumulators of each object, sorted by label */
+	private final Accumulator[] objects;
+	
+	
+	/** Private constructor: use {@link #of(ImagePlus, ImagePlus)} */
+	private LabelStatistics(Accumulator[] objects) {
+		this.objects = objects;
+	}
+	
+	
+	/**
+	 * Returns the geometric statistics of the objects of a label image. The intensities are the label values.
+	 *
+	 * @param labels label image
+	 *
+	 * @return the label statistics
+	 */
+	public static LabelStatistics of(ImagePlus labels) {
+		return of(labels, labels);
+	}
+	
+	
+	/**
+	 * Computes the statistics of the objects of a label image.
+	 *
+	 * @param labels label image
+	 * @param values intensity image, of the same size
+	 *
+	 * @return the label statistics
+	 */
+	public static LabelStatistics of(ImagePlus labels, ImagePlus values) {
+		return new LabelStatistics(accumulate(VoxelView.of(labels), VoxelView.of(values)));
+	}
+	
+	
+	/**
+	 * Single pass over the label and intensity images, updating the accumulators of each object.
+	 *
+	 * @return the accumulators, sorted by label
+	 */
+	private static Accumulator[] accumulate(VoxelView labels, VoxelView values) {
+		int width  = labels.getWidth();
+		int height = labels.getHeight();
+		int depth  = labels.getDepth();
+		
+		Map<Float, Accumulator> byLabel = new HashMap<>();
+		Accumulator             current = null;
+		for (int k = 0; k < depth; ++k) {
+			int offset = 0;
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					float label = labels.get(k, offset);
+					if (label > 0) {
+						/* Neighbouring voxels mostly share their label: only look it up when it changes */
+						if (current == null || current.label != label) {
+							current = byLabel.computeIfAbsent(label, Accumulator::new);
+						}
+						current.add(i, j, k, values.get(k, offset));
+					}
+					++offset;
+				}
+			}
+		}
+		List<Accumulator> objects = new ArrayList<>(byLabel.values());
+		objects.sort(Comparator.comparingDouble(a -> a.label));
+		return objects.toArray(new Accumulator[0]);
+	}
+	
+	
+	/** @return the number of objects */
+	public int getNbLabels() {
+		return objects.length;
+	}
+	
+	
+	/** @return the labels of the objects, sorted */
+	public double[] getLabels() {
+		double[] labels = new double[objects.length];
+		for (int index = 0; index < objects.length; ++index) {
+			labels[index] = objects[index].label;
+		}
+		return labels;
+	}
+	
+	
+	/**
+	 * Returns the index of an object.
+	 *
+	 * @param label object label
+	 *
+	 * @return the index of the object, or -1 if there is no such label
+	 */
+	public int indexOf(double label) {
+		int index = Arrays.binarySearch(getLabels(), label);
+		return index >= 0 ? index : -1;
+	}
+	
+	
+	/**
+	 * Returns the number of voxels of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return the number of voxels
+	 */
+	public long getVoxelCount(int index) {
+		return objects[index].count;
+	}
+	
+	
+	/**
+	 * Returns the volume of an object.
+	 *
+	 * @param index object index
+	 * @param xCal  x calibration
+	 * @param yCal  y calibration
+	 * @param zCal  z calibration
+	 *
+	 * @return the volume
+	 */
+	public double getVolume(int index, double xCal, double yCal, double zCal) {
+		return objects[index].count * xCal * yCal * zCal;
+	}
+	
+	
+	/**
+	 * Returns the sum of the intensities of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return the intensity sum
+	 */
+	public double getIntensitySum(int index) {
+		return objects[index].sum;
+	}
+	
+	
+	/**
+	 * Returns the mean intensity of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return the mean intensity
+	 */
+	public double getIntensityMean(int index) {
+		return objects[index].sum / objects[index].count;
+	}
+	
+	
+	/**
+	 * Returns the minimum intensity of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return the minimum intensity
+	 */
+	public double getIntensityMin(int index) {
+		return objects[index].min;
+	}
+	
+	
+	/**
+	 * Returns the maximum intensity of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return the maximum intensity
+	 */
+	public double getIntensityMax(int index) {
+		return objects[index].max;
+	}
+	
+	
+	/**
+	 * Returns the barycenter of an object, rounded down to the voxel (as
+	 * {@link Measure3D#computeBarycenter3D(boolean, ImagePlus, double)} does).
+	 *
+	 * @param index object index
+	 *
+	 * @return the barycenter, in voxels
+	 */
+	public VoxelRecord getBarycenter(int index) {
+		Accumulator object     = objects[index];
+		VoxelRecord barycenter = new VoxelRecord();
+		barycenter.setLocation(object.sumX / object.count, object.sumY / object.count, object.sumZ / object.count);
+		return barycenter;
+	}
+	
+	
+	/**
+	 * Returns the bounding box of an object.
+	 *
+	 * @param index object index
+	 *
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}
+	 */
+	public int[] getBoundingBox(int index) {
+		return objects[index].box.clone();
+	}
+	
+	
+	/**
+	 * Returns the second-order central moments of the voxel coordinates of an object (covariance matrix).
+	 *
+	 * @param index object index
+	 * @param xCal  x calibration
+	 * @param yCal  y calibration
+	 * @param zCal  z calibration
+	 *
+	 * @return the 3x3 covariance matrix, in calibrated units
+	 */
+	public double[][] getCovariance(int index, double xCal, double yCal, double zCal) {
+		Accumulator object = objects[index];
+		double      n      = object.count;
+		double      mx     = object.sumX / n;
+		double      my     = object.sumY / n;
+		double      mz     = object.sumZ / n;
+		
+		double xx = xCal * xCal * (object.sumXX / n - mx * mx);
+		double yy = yCal * yCal * (object.sumYY / n - my * my);
+		double zz = zCal * zCal * (object.sumZZ / n - mz * mz);
+		double xy = xCal * yCal * (object.sumXY / n - mx * my);
+		double xz = xCal * zCal * (object.sumXZ / n - mx * mz);
+		double yz = yCal * zCal * (object.sumYZ / n - my * mz);
+		return new double[][]{{xx, xy, xz},
+		                      {xy, yy, yz},
+		                      {xz, yz, zz}};
+	}
+	
+	
+	/** Accumulators of one object. */
+	private static final class Accumulator {
+		/** Label of the object */
+		private final float label;
+		/** Bounding box: {xMin, xMax, yMin, yMax, zMin, zMax} */
+		private final int[] box = {Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1};
+		
+		/** Number of voxels */
+		private long   count;
+		/** Intensity sum */
+		private double sum;
+		/** Minimum intensity */
+		private double min = Double.MAX_VALUE;
+		/** Maximum intensity */
+		private double max = -Double.MAX_VALUE;
+		
+		/** Sum of the x coordinates */
+		private long sumX;
+		/** Sum of the y coordinates */
+		private long sumY;
+		/** Sum of the z coordinates */
+		private long sumZ;
+		/** Sum of x * x */
+		private long sumXX;
+		/** Sum of y * y */
+		private long sumYY;
+		/** Sum of z * z */
+		private long sumZZ;
+		/** Sum of x * y */
+		private long sumXY;
+		/** Sum of x * z */
+		private long sumXZ;
+		/** Sum of y * z */
+		private long sumYZ;
+		
+		
+		Accumulator(float label) {
+			this.label = label;
+		}
+		
+		
+		/**
+		 * Adds a voxel to the object.
+		 *
+		 * @param i     x coordinate
+		 * @param j     y coordinate
+		 * @param k     z coordinate
+		 * @param value intensity
+		 */
+		void add(int i, int j, int k, double value) {
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sumX += i;
+			sumY += j;
+			sumZ += k;
+			sumXX += (long) i * i;
+			sumYY += (long) j * j;
+			sumZZ += (long) k * k;
+			sumXY += (long) i * j;
+			sumXZ += (long) i * k;
+			sumYZ += (long) j * k;
+			box[0] = Math.min(box[0], i);
+			box[1] = Math.max(box[1], i);
+			box[2] = Math.min(box[2], j);
+			box[3] = Math.max(box[3], j);
+			box[4] = Math.min(box[4], k);
+			box[5] = Math.max(box[5], k);
+		}
+		
+	}
+	
+}
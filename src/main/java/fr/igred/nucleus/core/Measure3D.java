@@ -21,6 +21,7 @@ import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
 import fr.igred.nucleus.utils.Gradient;
 import fr.igred.nucleus.utils.Histogram;
+import fr.igred.nucleus.utils.VoxelView;
 import fr.igred.nucleus.utils.VoxelRecord;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -28,13 +29,13 @@ import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
+import ij.process.ImageProcessor;
 import ij.process.StackConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -78,6 +79,9 @@ public class Measure3D {
 	private double yCal;
 	private double zCal;
 	
+	/** Gradient of the raw image, computed on first use */
+	private Gradient gradient;
+	
 	
 	public Measure3D() {
 	}
@@ -99,6 +103,16 @@ public class Measure3D {
 	}
 	
 	
+	/**
+	 * Sets the gradient of the raw image, so that it is not computed again.
+	 *
+	 * @param gradient gradient computed from the raw image
+	 */
+	public void setGradient(Gradient gradient) {
+		this.gradient = gradient;
+	}
+	
+	
 	/**
 	 * This Method compute the volume of each segmented objects in imagePlus
 	 *
@@ -107,14 +121,10 @@ public class Measure3D {
 	 * @return double table which contain the volume of each image object
 	 */
 	public double[] computeVolumeOfAllObjects(ImagePlus imagePlusInput) {
-		Histogram histogram = new Histogram();
-		histogram.run(imagePlusInput);
-		double[]             tlabel        = histogram.getLabels();
-		double[]             tObjectVolume = new double[tlabel.length];
-		Map<Double, Integer> hist          = histogram.getHistogram();
-		for (int i = 0; i < tlabel.length; ++i) {
-			int nbVoxel = hist.get(tlabel[i]);
-			tObjectVolume[i] = nbVoxel * xCal * yCal * zCal;
+		LabelStatistics statistics    = LabelStatistics.of(imagePlusInput);
+		double[]        tObjectVolume = new double[statistics.getNbLabels()];
+		for (int i = 0; i < tObjectVolume.length; ++i) {
+			tObjectVolume[i] = statistics.getVolume(i, xCal, yCal, zCal);
 		}
 		return tObjectVolume;
 	}
@@ -130,21 +140,8 @@ public class Measure3D {
 	public double computeVolumeObject2(double label) {
 		Histogram histogram = new Histogram();
 		histogram.run(imageSegs[0]);
-		Map<Double, Integer> hashMapHistogram = histogram.getHistogram();
+		return histogram.getCount(label) * xCal * yCal * zCal;
 		
-		return hashMapHistogram.get(label) * xCal * yCal * zCal;
-		
-	}
-	
-	
-	private double computeVolumeObjectML() {
-		double volumeTMP = 0.0;
-		for (Map.Entry<Double, Integer> toto : segmentedNucleusHist.entrySet()) {
-			if (toto.getValue() > 0) {
-				volumeTMP += toto.getValue();
-			}
-		}
-		return volumeTMP * xCal * yCal * zCal;
 	}
 	
 	
@@ -165,15 +162,16 @@ public class Measure3D {
 		double xCalibration = calibration.pixelWidth;
 		double yCalibration = calibration.pixelHeight;
 		
-		ImageStack imageStackSegmented = imagePlusSegmented.getStack();
+		VoxelView segmented = VoxelView.of(imagePlusSegmented);
+		int       width     = imagePlusSegmented.getWidth();
 		
 		double areaMax = 0;
 		double area    = 0;
 		for (int k = 0; k < imagePlusSegmented.getNSlices(); ++k) {
 			int nbVoxel = 0;
-			for (int i = 1; i < imagePlusSegmented.getWidth(); ++i) {
-				for (int j = 1; j < imagePlusSegmented.getHeight(); ++j) {
-					if (imageStackSegmented.getVoxel(i, j, k) > 0) {
+			for (int j = 1; j < imagePlusSegmented.getHeight(); ++j) {
+				for (int offset = j * width + 1; offset < (j + 1) * width; ++offset) {
+					if (segmented.get(k, offset) > 0) {
 						++nbVoxel;
 					}
 				}
@@ -250,8 +248,7 @@ public class Measure3D {
 	public double computeVolumeObject(ImagePlus imagePlusInput, double label) {
 		Histogram histogram = new Histogram();
 		histogram.run(imagePlusInput);
-		Map<Double, Integer> hashMapHistogram = histogram.getHistogram();
-		return hashMapHistogram.get(label) * xCal * yCal * zCal;
+		return histogram.getCount(label) * xCal * yCal * zCal;
 	}
 	
 	
@@ -292,6 +289,9 @@ public class Measure3D {
 	 * @return double table containing the 3 eigen values
 	 */
 	public double[] computeEigenValue3D(double label) {
+		if (label == NucleusStatistics.NUCLEUS && rawImage != null) {
+			return NucleusStatistics.compute(rawImage, imageSegs[0]).getEigenValues(xCal, yCal, zCal);
+		}
 		ImageStack  imageStackInput = imageSegs[0].getImageStack();
 		VoxelRecord barycenter      = computeBarycenter3D(true, imageSegs[0], label);
 		
@@ -340,8 +340,19 @@ public class Measure3D {
 	 * @return double table containing in [0] flatness and in [1] elongation
 	 */
 	public double[] computeFlatnessAndElongation(double label) {
+		return computeFlatnessAndElongation(computeEigenValue3D(label));
+	}
+	
+	
+	/**
+	 * Compute the flatness and the elongation from the eigen values of the object of interest
+	 *
+	 * @param tEigenValues eigen values, in ascending order
+	 *
+	 * @return double table containing in [0] flatness and in [1] elongation
+	 */
+	private static double[] computeFlatnessAndElongation(double[] tEigenValues) {
 		double[] shapeParameters = new double[2];
-		double[] tEigenValues    = computeEigenValue3D(label);
 		shapeParameters[0] = tEigenValues[1] / tEigenValues[0];
 		shapeParameters[1] = tEigenValues[2] / tEigenValues[1];
 		return shapeParameters;
@@ -360,18 +371,17 @@ public class Measure3D {
 	public VoxelRecord computeBarycenter3D(boolean unit,
 	                                       ImagePlus imagePlusInput,
 	                                       double label) {
-		ImageStack  imageStackInput = imagePlusInput.getImageStack();
+		VoxelView   voxels          = VoxelView.of(imagePlusInput);
 		VoxelRecord voxelRecordBary = new VoxelRecord();
 		int         count           = 0;
 		int         sx              = 0;
 		int         sy              = 0;
 		int         sz              = 0;
-		double      voxelValue;
-		for (int k = 0; k < imagePlusInput.getStackSize(); ++k) {
-			for (int i = 0; i < imagePlusInput.getWidth(); ++i) {
-				for (int j = 0; j < imagePlusInput.getHeight(); ++j) {
-					voxelValue = imageStackInput.getVoxel(i, j, k);
-					if (voxelValue == label) {
+		for (int k = 0; k < voxels.getDepth(); ++k) {
+			int offset = 0;
+			for (int j = 0; j < voxels.getHeight(); ++j) {
+				for (int i = 0; i < voxels.getWidth(); ++i) {
+					if (voxels.get(k, offset++) == label) {
 						sx += i;
 						sy += j;
 						sz += k;
@@ -401,12 +411,13 @@ public class Measure3D {
 	 */
 	public VoxelRecord[] computeObjectBarycenter(ImagePlus imagePlusInput,
 	                                             boolean unit) {
-		Histogram histogram = new Histogram();
-		histogram.run(imagePlusInput);
-		double[]      tLabel       = histogram.getLabels();
-		VoxelRecord[] tVoxelRecord = new VoxelRecord[tLabel.length];
-		for (int i = 0; i < tLabel.length; ++i) {
-			tVoxelRecord[i] = computeBarycenter3D(unit, imagePlusInput, tLabel[i]);
+		LabelStatistics statistics   = LabelStatistics.of(imagePlusInput);
+		VoxelRecord[]   tVoxelRecord = new VoxelRecord[statistics.getNbLabels()];
+		for (int i = 0; i < tVoxelRecord.length; ++i) {
+			tVoxelRecord[i] = statistics.getBarycenter(i);
+			if (unit) {
+				tVoxelRecord[i].multiply(xCal, yCal, zCal);
+			}
 		}
 		return tVoxelRecord;
 	}
@@ -424,27 +435,20 @@ public class Measure3D {
 	public static double computeIntensityRHF(ImagePlus imagePlusInput,
 	                                         ImagePlus imagePlusSegmented,
 	                                         ImagePlus imagePlusCC) {
-		double     ccIntensity         = 0;
-		double     nucleusIntensity    = 0;
-		double     voxelValueCC;
-		double     voxelValueInput;
-		double     voxelValueSegmented;
-		ImageStack imageStackCC        = imagePlusCC.getStack();
-		ImageStack imageStackSegmented = imagePlusSegmented.getStack();
-		ImageStack imageStackInput     = imagePlusInput.getStack();
+		double    ccIntensity      = 0;
+		double    nucleusIntensity = 0;
+		VoxelView cc               = VoxelView.of(imagePlusCC);
+		VoxelView segmented        = VoxelView.of(imagePlusSegmented);
+		VoxelView input            = VoxelView.of(imagePlusInput);
+		int       size             = imagePlusInput.getWidth() * imagePlusInput.getHeight();
 		for (int z = 0; z < imagePlusInput.getNSlices(); ++z) {
-			for (int y = 0; y < imagePlusInput.getHeight(); ++y) {
-				for (int x = 0; x < imagePlusInput.getWidth(); ++x) {
-					voxelValueSegmented = imageStackSegmented.getVoxel(x, y, z);
-					voxelValueInput = imageStackInput.getVoxel(x, y, z);
-					voxelValueCC = imageStackCC.getVoxel(x, y, z);
-					
-					if (voxelValueSegmented > 0) {
-						if (voxelValueCC > 0) {
-							ccIntensity += voxelValueInput;
-						}
-						nucleusIntensity += voxelValueInput;
+			for (int offset = 0; offset < size; ++offset) {
+				if (segmented.get(z, offset) > 0) {
+					double voxelValueInput = input.get(z, offset);
+					if (cc.get(z, offset) > 0) {
+						ccIntensity += voxelValueInput;
 					}
+					nucleusIntensity += voxelValueInput;
 				}
 			}
 		}
@@ -487,65 +491,16 @@ public class Measure3D {
 	
 	
 	/**
-	 * Method to compute surface of the segmented object using gradient information.
+	 * Method to compute surface of the segmented object using gradient information. The gradient of the raw image is
+	 * computed once (in the boundary band of the segmented object) and reused by the following calls.
 	 *
 	 * @return
 	 */
 	public double computeComplexSurface() {
-		Gradient           gradient            = new Gradient(rawImage);
-		List<Double>[][][] tableUnitary        = gradient.getUnitNormals();
-		ImageStack         imageStackSegmented = imageSegs[0].getStack();
-		double             surfaceArea         = 0;
-		double             voxelValue;
-		double             neighborVoxelValue;
-		VoxelRecord        voxelRecordIn       = new VoxelRecord();
-		VoxelRecord        voxelRecordOut      = new VoxelRecord();
-		
-		for (int k = 2; k < imageSegs[0].getNSlices() - 2; ++k) {
-			for (int i = 2; i < imageSegs[0].getWidth() - 2; ++i) {
-				for (int j = 2; j < imageSegs[0].getHeight() - 2; ++j) {
-					voxelValue = imageStackSegmented.getVoxel(i, j, k);
-					if (voxelValue > 0) {
-						for (int kk = k - 1; kk <= k + 1; kk += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(i, j, kk);
-							if (voxelValue != neighborVoxelValue) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(i, j, kk);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[i][j][kk],
-								                                         voxelRecordIn,
-								                                         voxelRecordOut,
-								                                         xCal * yCal);
-							}
-						}
-						for (int ii = i - 1; ii <= i + 1; ii += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(ii, j, k);
-							if (voxelValue != neighborVoxelValue) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(ii, j, k);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[ii][j][k],
-								                                         voxelRecordIn, voxelRecordOut,
-								                                         yCal * zCal);
-							}
-						}
-						for (int jj = j - 1; jj <= j + 1; jj += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(i, jj, k);
-							if (voxelValue != neighborVoxelValue) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(i, jj, k);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[i][jj][k],
-								                                         voxelRecordIn,
-								                                         voxelRecordOut,
-								                                         xCal * zCal);
-							}
-						}
-					}
-				}
-			}
+		if (gradient == null) {
+			gradient = new Gradient(rawImage, imageSegs[0]);
 		}
-		return surfaceArea;
+		return computeComplexSurface(imageSegs[0].getStack(), gradient, xCal, yCal, zCal);
 	}
 	
 	
@@ -558,57 +513,69 @@ public class Measure3D {
 	 * @return
 	 */
 	public static double computeComplexSurface(ImagePlus imagePlusSegmented, Gradient gradient) {
-		List<Double>[][][] tableUnitary        = gradient.getUnitNormals();
-		ImageStack         imageStackSegmented = imagePlusSegmented.getStack();
-		double             surfaceArea         = 0;
-		double             voxelValue;
-		double             neighborVoxelValue;
-		VoxelRecord        voxelRecordIn       = new VoxelRecord();
-		VoxelRecord        voxelRecordOut      = new VoxelRecord();
-		Calibration        calibration         = imagePlusSegmented.getCalibration();
-		double             xCalibration        = calibration.pixelWidth;
-		double             yCalibration        = calibration.pixelHeight;
-		double             zCalibration        = calibration.pixelDepth;
-		for (int k = 2; k < imagePlusSegmented.getNSlices() - 2; ++k) {
-			for (int i = 2; i < imagePlusSegmented.getWidth() - 2; ++i) {
-				for (int j = 2; j < imagePlusSegmented.getHeight() - 2; ++j) {
-					voxelValue = imageStackSegmented.getVoxel(i, j, k);
+		Calibration calibration = imagePlusSegmented.getCalibration();
+		return computeComplexSurface(imagePlusSegmented.getStack(),
+		                             gradient,
+		                             calibration.pixelWidth,
+		                             calibration.pixelHeight,
+		                             calibration.pixelDepth);
+	}
+	
+	
+	/**
+	 * Method to compute surface of the segmented object using gradient information.
+	 *
+	 * @param imageStackSegmented segmented image
+	 * @param gradient            gradient computed from raw images
+	 * @param xCalibration        x calibration
+	 * @param yCalibration        y calibration
+	 * @param zCalibration        z calibration
+	 *
+	 * @return
+	 */
+	private static double computeComplexSurface(ImageStack imageStackSegmented,
+	                                            Gradient gradient,
+	                                            double xCalibration,
+	                                            double yCalibration,
+	                                            double zCalibration) {
+		int     width       = gradient.getWidth();
+		int     height      = gradient.getHeight();
+		int     depth       = gradient.getDepth();
+		int     wh          = width * height;
+		float[] normalX     = gradient.getUnitNormalsX();
+		float[] normalY     = gradient.getUnitNormalsY();
+		float[] normalZ     = gradient.getUnitNormalsZ();
+		double  xyArea      = xCalibration * yCalibration;
+		double  yzArea      = yCalibration * zCalibration;
+		double  xzArea      = xCalibration * zCalibration;
+		double  surfaceArea = 0;
+		for (int k = 2; k < depth - 2; ++k) {
+			ImageProcessor previous = imageStackSegmented.getProcessor(k);
+			ImageProcessor current  = imageStackSegmented.getProcessor(k + 1);
+			ImageProcessor next     = imageStackSegmented.getProcessor(k + 2);
+			for (int j = 2; j < height - 2; ++j) {
+				for (int i = 2; i < width - 2; ++i) {
+					int   index      = j * width + i;
+					int   voxel      = k * wh + index;
+					float voxelValue = current.getf(index);
 					if (voxelValue > 0) {
-						for (int kk = k - 1; kk <= k + 1; kk += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(i, j, kk);
-							if (voxelValue - neighborVoxelValue != 0) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(i, j, kk);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[i][j][kk],
-								                                         voxelRecordIn,
-								                                         voxelRecordOut,
-								                                         xCalibration * yCalibration);
-							}
+						if (previous.getf(index) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalZ, voxel, voxel - wh, xyArea);
+						}
+						if (next.getf(index) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalZ, voxel, voxel + wh, xyArea);
+						}
+						if (current.getf(index - 1) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalX, voxel, voxel - 1, yzArea);
 						}
-						for (int ii = i - 1; ii <= i + 1; ii += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(ii, j, k);
-							if (voxelValue - neighborVoxelValue != 0) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(ii, j, k);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[ii][j][k],
-								                                         voxelRecordIn,
-								                                         voxelRecordOut,
-								                                         yCalibration * zCalibration);
-							}
+						if (current.getf(index + 1) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalX, voxel, voxel + 1, yzArea);
 						}
-						for (int jj = j - 1; jj <= j + 1; jj += 2) {
-							neighborVoxelValue = imageStackSegmented.getVoxel(i, jj, k);
-							if (voxelValue - neighborVoxelValue != 0) {
-								voxelRecordIn.setLocation(i, j, k);
-								voxelRecordOut.setLocation(i, jj, k);
-								surfaceArea += computeSurfelContribution(tableUnitary[i][j][k],
-								                                         tableUnitary[i][jj][k],
-								                                         voxelRecordIn,
-								                                         voxelRecordOut,
-								                                         xCalibration * zCalibration);
-							}
+						if (current.getf(index - width) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalY, voxel, voxel - width, xzArea);
+						}
+						if (current.getf(index + width) != voxelValue) {
+							surfaceArea += computeSurfelContribution(normalY, voxel, voxel + width, xzArea);
 						}
 					}
 				}
@@ -619,28 +586,19 @@ public class Measure3D {
 	
 	
 	/**
-	 * Compute surface contribution of each voxels from gradients.
+	 * Compute surface contribution of a surfel from the unit normals of the voxels on both sides. Only the normal
+	 * component along the axis between the two voxels contributes.
 	 *
-	 * @param listUnitaryIn
-	 * @param listUnitaryOut
-	 * @param voxelRecordIn
-	 * @param voxelRecordOut
-	 * @param as
+	 * @param normals unit normals component along the axis between the two voxels
+	 * @param in      index of the voxel inside the object
+	 * @param out     index of the voxel outside the object
+	 * @param as      area of the surfel
 	 *
 	 * @return
 	 */
-	private static double computeSurfelContribution(List<Double> listUnitaryIn,
-	                                                List<Double> listUnitaryOut,
-	                                                VoxelRecord voxelRecordIn,
-	                                                VoxelRecord voxelRecordOut,
-	                                                double as) {
-		double dx = voxelRecordIn.getI() - voxelRecordOut.getI();
-		double dy = voxelRecordIn.getJ() - voxelRecordOut.getJ();
-		double dz = voxelRecordIn.getK() - voxelRecordOut.getK();
-		double nx = (listUnitaryIn.get(0) + listUnitaryOut.get(0)) / 2;
-		double ny = (listUnitaryIn.get(1) + listUnitaryOut.get(1)) / 2;
-		double nz = (listUnitaryIn.get(2) + listUnitaryOut.get(2)) / 2;
-		return Math.abs((dx * nx + dy * ny + dz * nz) * as);
+	private static double computeSurfelContribution(float[] normals, int in, int out, double as) {
+		double n = (normals[in] + normals[out]) / 2.0;
+		return Math.abs(n * as);
 	}
 	
 	
@@ -649,34 +607,14 @@ public class Measure3D {
 	 * voxels
 	 * <p>
 	 * If voxels ==255 in seg image add Hashmap (Voxels intensity ,+1)
+	 *
+	 * @param statistics nucleus statistics, holding the histograms
 	 */
-	private void histogramSegmentedNucleus() {
-		ImageStack imageStackRaw = rawImage.getStack();
-		ImageStack imageStackSeg = imageSegs[0].getStack();
-		Histogram  histogram     = new Histogram();
-		histogram.run(rawImage);
-		for (int k = 0; k < rawImage.getStackSize(); ++k) {
-			for (int i = 0; i < rawImage.getWidth(); ++i) {
-				for (int j = 0; j < rawImage.getHeight(); ++j) {
-					double voxelValue = imageStackSeg.getVoxel(i, j, k);
-					if (voxelValue == 255) {
-						if (segmentedNucleusHist.containsKey(imageStackRaw.getVoxel(i, j, k))) {
-							segmentedNucleusHist.put(imageStackRaw.getVoxel(i, j, k),
-							                         segmentedNucleusHist.get(imageStackRaw.getVoxel(i, j, k)) + 1);
-						} else {
-							segmentedNucleusHist.put(imageStackRaw.getVoxel(i, j, k), 1);
-						}
-					} else {
-						if (backgroundHist.containsKey(imageStackRaw.getVoxel(i, j, k))) {
-							backgroundHist.put(imageStackRaw.getVoxel(i, j, k),
-							                   backgroundHist.get(imageStackRaw.getVoxel(i, j, k)) + 1);
-						} else {
-							backgroundHist.put(imageStackRaw.getVoxel(i, j, k), 1);
-						}
-					}
-				}
-			}
-		}
+	private void histogramSegmentedNucleus(NucleusStatistics statistics) {
+		segmentedNucleusHist.clear();
+		segmentedNucleusHist.putAll(statistics.getNucleusHistogram());
+		backgroundHist.clear();
+		backgroundHist.putAll(statistics.getBackgroundHistogram());
 	}
 	
 	
@@ -697,30 +635,6 @@ public class Measure3D {
 	}
 	
 	
-	/**
-	 * Compute mean intensity of background
-	 *
-	 * @return mean intensity of background
-	 */
-	private double meanIntensityBackground() {
-		double     meanIntensity = 0;
-		int        voxelCounted  = 0;
-		ImageStack imageStackRaw = rawImage.getStack();
-		ImageStack imageStackSeg = imageSegs[0].getStack();
-		for (int k = 0; k < rawImage.getStackSize(); ++k) {
-			for (int i = 0; i < rawImage.getWidth(); ++i) {
-				for (int j = 0; j < rawImage.getHeight(); ++j) {
-					if (imageStackSeg.getVoxel(i, j, k) == 0) {
-						meanIntensity += imageStackRaw.getVoxel(i, j, k);
-						voxelCounted++;
-					}
-				}
-			}
-		}
-		return voxelCounted != 0 ? meanIntensity / voxelCounted : 0;
-	}
-	
-	
 	/**
 	 * Compute the standard deviation of the mean intensity
 	 *
@@ -779,14 +693,24 @@ public class Measure3D {
 	 * @return median intensity value of raw image voxel
 	 */
 	public double medianComputingImage() {
-		double    voxelMedianValue = 0;
-		Histogram histogram        = new Histogram();
+		Histogram histogram = new Histogram();
 		histogram.run(rawImage);
-		Map<Double, Integer> nucleusHistogram = histogram.getHistogram();
-		
-		int     size      = rawImage.getHeight() * rawImage.getWidth() * rawImage.getNSlices();
-		int     increment = 0;
-		boolean even      = false;
+		return medianComputingImage(histogram.getHistogram());
+	}
+	
+	
+	/**
+	 * Compute the median intensity value of raw image voxel from the histogram of its positive values
+	 *
+	 * @param nucleusHistogram histogram of the positive values of the raw image
+	 *
+	 * @return median intensity value of raw image voxel
+	 */
+	private double medianComputingImage(Map<Double, Integer> nucleusHistogram) {
+		double  voxelMedianValue = 0;
+		int     size             = rawImage.getHeight() * rawImage.getWidth() * rawImage.getNSlices();
+		int     increment        = 0;
+		boolean even             = false;
 		for (Entry<Double, Integer> entry : nucleusHistogram.entrySet()) {
 			increment += entry.getValue();
 			if (size == 2 * increment) {
@@ -860,27 +784,29 @@ public class Measure3D {
 	 * @return list of parameters compute in this method returned in tabulated format
 	 */
 	public String nucleusParameter3D() {
-		String results;
-		histogramSegmentedNucleus();
+		String            results;
+		NucleusStatistics statistics = NucleusStatistics.compute(rawImage, imageSegs[0]);
+		histogramSegmentedNucleus(statistics);
 		
-		double   volume         = computeVolumeObjectML();
+		double   volume         = statistics.getVolume(xCal, yCal, zCal);
 		double   surfaceAreaNew = computeComplexSurface();
-		double[] tEigenValues   = computeEigenValue3D(255);
+		double[] tEigenValues   = statistics.getEigenValues(xCal, yCal, zCal);
+		double[] shape          = computeFlatnessAndElongation(tEigenValues);
+		double   mean           = meanIntensity();
 		compute2dParameters();
 		results = rawImage.getTitle() + ","
-		          //  + computeVolumeObject2(255) + "\t"
-		          + computeVolumeObjectML() + ","
-		          + computeFlatnessAndElongation(255)[0] + ","
-		          + computeFlatnessAndElongation(255)[1] + ","
+		          + volume + ","
+		          + shape[0] + ","
+		          + shape[1] + ","
 		          + equivalentSphericalRadius(volume) + ","
 		          + surfaceAreaNew + ","
 		          + computeSphericity(volume, surfaceAreaNew) + ","
-		          + meanIntensity() + ","
-		          + meanIntensityBackground() + ","
-		          + standardDeviationIntensity(meanIntensity()) + ","
+		          + mean + ","
+		          + statistics.getBackgroundMean() + ","
+		          + standardDeviationIntensity(mean) + ","
 		          + minIntensity() + ","
 		          + maxIntensity() + ","
-		          + medianComputingImage() + ","
+		          + medianComputingImage(statistics.getImageHistogram()) + ","
 		          + medianIntensityNucleus() + ","
 		          + medianIntensityBackground() + ","
 		          + rawImage.getHeight() * rawImage.getWidth() * rawImage.getNSlices() + ","
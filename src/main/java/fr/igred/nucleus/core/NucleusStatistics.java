@@ -0,0 +1,259 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.core;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Accumulators describing a segmented nucleus (voxels at 255 in the mask) and its raw image, gathered in a single pass:
+ * <ul>
+ *     <li>raw moments of the nucleus voxel coordinates, up to order 2</li>
+ *     <li>intensity histogram of the nucleus and of the background</li>
+ *     <li>sum and number of the background voxels (0 in the mask)</li>
+ * </ul>
+ * Volume, moments of inertia and intensity parameters are derived from these accumulators, in voxel units so that any
+ * calibration can be applied.
+ * <p>
+ * The statistics are a snapshot of the images: they are not updated if the images are modified afterwards.
+ */
+public final class NucleusStatistics {
+	/** Mask value of the nucleus voxels */
+	public static final double NUCLEUS = 255;
+	
+	/** Number of nucleus voxels */
+	private long nbVoxels;
+	/** Sum of the x coordinates of the nucleus voxels */
+	private long sumX;
+	/** Sum of the y coordinates of the nucleus voxels */
+	private long sumY;
+	/** Sum of the z coordinates of the nucleus voxels */
+	private long sumZ;
+	/** Sum of x * x */
+	private long sumXX;
+	/** Sum of y * y */
+	private long sumYY;
+	/** Sum of z * z */
+	private long sumZZ;
+	/** Sum of x * y */
+	private long sumXY;
+	/** Sum of x * z */
+	private long sumXZ;
+	/** Sum of y * z */
+	private long sumYZ;
+	
+	/** Sum of the intensities of the background voxels (0 in the mask) */
+	private double backgroundSum;
+	/** Number of background voxels (0 in the mask) */
+	private long   backgroundCount;
+	/** Total number of voxels */
+	private long   size;
+	
+	/** Intensity histogram of the nucleus voxels */
+	private final Map<Double, Integer> nucleusHistogram    = new TreeMap<>();
+	/** Intensity histogram of the other voxels (not 255 in the mask) */
+	private final Map<Double, Integer> backgroundHistogram = new TreeMap<>();
+	
+	
+	/** Private constructor: use {@link #compute(ImagePlus, ImagePlus)} */
+	private NucleusStatistics() {
+	}
+	
+	
+	/**
+	 * Computes the statistics of a nucleus, in a single pass over the images.
+	 *
+	 * @param rawImage raw image
+	 * @param mask     segmented image (nucleus voxels at 255)
+	 *
+	 * @return the nucleus statistics
+	 */
+	public static NucleusStatistics compute(ImagePlus rawImage, ImagePlus mask) {
+		NucleusStatistics statistics = new NucleusStatistics();
+		statistics.accumulate(rawImage, rawImage.getStack(), mask.getStack());
+		return statistics;
+	}
+	
+	
+	/**
+	 * Single pass over the raw image and the mask, updating all the accumulators.
+	 */
+	private void accumulate(ImagePlus rawImage, ImageStack rawStack, ImageStack maskStack) {
+		int     width    = rawImage.getWidth();
+		int     height   = rawImage.getHeight();
+		int     depth    = rawImage.getStackSize();
+		int     bitDepth = rawImage.getBitDepth();
+		boolean integer  = bitDepth == 8 || bitDepth == 16;
+		
+		/* Integer images: dense histograms, converted to maps at the end */
+		int[] nucleusCounts    = integer ? new int[1 << bitDepth] : null;
+		int[] backgroundCounts = integer ? new int[1 << bitDepth] : null;
+		
+		size = (long) width * height * depth;
+		for (int k = 0; k < depth; ++k) {
+			ImageProcessor raw  = rawStack.getProcessor(k + 1);
+			ImageProcessor mask = maskStack.getProcessor(k + 1);
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					int    index     = j * width + i;
+					double value     = raw.getf(index);
+					double maskValue = mask.getf(index);
+					if (maskValue == NUCLEUS) {
+						nbVoxels++;
+						sumX += i;
+						sumY += j;
+						sumZ += k;
+						sumXX += (long) i * i;
+						sumYY += (long) j * j;
+						sumZZ += (long) k * k;
+						sumXY += (long) i * j;
+						sumXZ += (long) i * k;
+						sumYZ += (long) j * k;
+						if (integer) {
+							nucleusCounts[(int) value]++;
+						} else {
+							nucleusHistogram.merge(value, 1, Integer::sum);
+						}
+					} else {
+						if (maskValue == 0) {
+							backgroundSum += value;
+							backgroundCount++;
+						}
+						if (integer) {
+							backgroundCounts[(int) value]++;
+						} else {
+							backgroundHistogram.merge(value, 1, Integer::sum);
+						}
+					}
+				}
+			}
+		}
+		if (integer) {
+			for (int value = 0; value < nucleusCounts.length; ++value) {
+				if (nucleusCounts[value] > 0) {
+					nucleusHistogram.put((double) value, nucleusCounts[value]);
+				}
+				if (backgroundCounts[value] > 0) {
+					backgroundHistogram.put((double) value, backgroundCounts[value]);
+				}
+			}
+		}
+	}
+	
+	
+	/** @return the number of nucleus voxels */
+	public long getVoxelCount() {
+		return nbVoxels;
+	}
+	
+	
+	/**
+	 * Returns the volume of the nucleus.
+	 *
+	 * @param xCal x calibration
+	 * @param yCal y calibration
+	 * @param zCal z calibration
+	 *
+	 * @return the volume
+	 */
+	public double getVolume(double xCal, double yCal, double zCal) {
+		return nbVoxels * xCal * yCal * zCal;
+	}
+	
+	
+	/**
+	 * Computes the eigen values of the covariance matrix of the nucleus voxel coordinates, centered on the barycenter
+	 * rounded down to the voxel (as {@link Measure3D#computeBarycenter3D(boolean, ImagePlus, double)} does).
+	 *
+	 * @param xCal x calibration
+	 * @param yCal y calibration
+	 * @param zCal z calibration
+	 *
+	 * @return the 3 eigen values, in ascending order
+	 */
+	public double[] getEigenValues(double xCal, double yCal, double zCal) {
+		long bx = nbVoxels > 0 ? sumX / nbVoxels : 0;
+		long by = nbVoxels > 0 ? sumY / nbVoxels : 0;
+		long bz = nbVoxels > 0 ? sumZ / nbVoxels : 0;
+		
+		/* Central moments around the rounded barycenter, from the raw moments */
+		double n  = nbVoxels;
+		double xx = xCal * xCal * (sumXX - 2 * bx * sumX + nbVoxels * bx * bx) / n;
+		double yy = yCal * yCal * (sumYY - 2 * by * sumY + nbVoxels * by * by) / n;
+		double zz = zCal * zCal * (sumZZ - 2 * bz * sumZ + nbVoxels * bz * bz) / n;
+		double xy = xCal * yCal * (sumXY - bx * sumY - by * sumX + nbVoxels * bx * by) / n;
+		double xz = xCal * zCal * (sumXZ - bx * sumZ - bz * sumX + nbVoxels * bx * bz) / n;
+		double yz = yCal * zCal * (sumYZ - by * sumZ - bz * sumY + nbVoxels * by * bz) / n;
+		
+		double[][] tValues = {{xx, xy, xz},
+		                      {xy, yy, yz},
+		                      {xz, yz, zz}};
+		EigenvalueDecomposition eigenValDecomp = new Matrix(tValues).eig();
+		return eigenValDecomp.getRealEigenvalues();
+	}
+	
+	
+	/** @return the intensity histogram of the nucleus voxels */
+	public Map<Double, Integer> getNucleusHistogram() {
+		return Collections.unmodifiableMap(nucleusHistogram);
+	}
+	
+	
+	/** @return the intensity histogram of the voxels outside the nucleus */
+	public Map<Double, Integer> getBackgroundHistogram() {
+		return Collections.unmodifiableMap(backgroundHistogram);
+	}
+	
+	
+	/** @return the histogram of the positive intensities of the whole image */
+	public Map<Double, Integer> getImageHistogram() {
+		Map<Double, Integer> histogram = new TreeMap<>();
+		for (Map.Entry<Double, Integer> entry : nucleusHistogram.entrySet()) {
+			if (entry.getKey() > 0) {
+				histogram.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<Double, Integer> entry : backgroundHistogram.entrySet()) {
+			if (entry.getKey() > 0) {
+				histogram.merge(entry.getKey(), entry.getValue(), Integer::sum);
+			}
+		}
+		return histogram;
+	}
+	
+	
+	/** @return the mean intensity of the background (voxels at 0 in the mask), 0 if there is none */
+	public double getBackgroundMean() {
+		return backgroundCount != 0 ? backgroundSum / backgroundCount : 0;
+	}
+	
+	
+	/** @return the total number of voxels */
+	public long getSize() {
+		return size;
+	}
+	
+}
@@ -29,6 +29,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 import java.util.Properties;
@@ -40,6 +43,13 @@ public class PluginParameters {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
+	/** Header line giving the start time of the analysis */
+	private static final String START_TIME    = "#Start time analysis: ";
+	/** Header line giving the input folder */
+	private static final String INPUT_FOLDER  = "#Input folder: ";
+	/** Header line giving the output folder */
+	private static final String OUTPUT_FOLDER = "#Output folder: ";
+	
 	/** Activation of Gaussian Filter */
 	protected boolean gaussianIsOn;
 	/** Activation of manual calibration parameter */
@@ -214,9 +224,9 @@ public class PluginParameters {
 	public String getAnalysisParameters() {
 		String eol = System.lineSeparator();
 		this.headerInfo = "#Header" + eol +
-		                  "#Start time analysis: " + getLocalTime() + eol +
-		                  "#Input folder: " + inputFolder + eol +
-		                  "#Output folder: " + outputFolder + eol +
+		                  START_TIME + getLocalTime() + eol +
+		                  INPUT_FOLDER + inputFolder + eol +
+		                  OUTPUT_FOLDER + outputFolder + eol +
 		                  "#Calibration:" + getInfoCalibration() + eol;
 		return headerInfo;
 		
@@ -226,15 +236,94 @@ public class PluginParameters {
 	public String getAnalysisParametersNodeJ() {
 		String eol = System.lineSeparator();
 		this.headerInfo = "#Header" + eol +
-		                  "#Start time analysis: " + getLocalTime() + eol +
-		                  "#Input folder: " + inputFolder + eol +
-		                  "#Output folder: " + outputFolder + eol +
+		                  START_TIME + getLocalTime() + eol +
+		                  INPUT_FOLDER + inputFolder + eol +
+		                  OUTPUT_FOLDER + outputFolder + eol +
 		                  "#Gaussian Blur:" + getInfoGaussianBlur() + eol;
 		return headerInfo;
 		
 	}
 	
 	
+	/**
+	 * Computes the SHA-256 hash of a text.
+	 *
+	 * @param text text to hash
+	 *
+	 * @return the hash, in hexadecimal
+	 */
+	private static String sha256(String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[]        hash   = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex    = new StringBuilder(2 * hash.length);
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			/* Every Java platform supports SHA-256 */
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	/**
+	 * Removes the header lines starting with one of the given prefixes.
+	 *
+	 * @param parameters header lines
+	 * @param prefixes   prefixes of the lines to remove
+	 *
+	 * @return the remaining lines
+	 */
+	private static String filterLines(String parameters, String... prefixes) {
+		StringBuilder filtered = new StringBuilder(parameters.length());
+		for (String line : parameters.split("\\R")) {
+			boolean kept = true;
+			for (String prefix : prefixes) {
+				kept &= !line.startsWith(prefix);
+			}
+			if (kept) {
+				filtered.append(line).append('\n');
+			}
+		}
+		return filtered.toString();
+	}
+	
+	
+	/**
+	 * Computes a hash of the analysis parameters, which does not depend on the start time of the analysis: results
+	 * obtained with the same hash can be reused.
+	 *
+	 * @return the SHA-256 hash of the parameters, in hexadecimal
+	 */
+	public String getParametersHash() {
+		return sha256(filterLines(getAnalysisParameters(), START_TIME));
+	}
+	
+	
+	/**
+	 * Returns the parameters which change the results of the processing of an image, one per line: they do not
+	 * include the start time of the analysis nor the input and output folders.
+	 *
+	 * @return the processing parameters
+	 */
+	protected String getProcessingParameters() {
+		return filterLines(getAnalysisParameters(), START_TIME, INPUT_FOLDER, OUTPUT_FOLDER);
+	}
+	
+	
+	/**
+	 * Computes a hash of the processing parameters: unlike {@link #getParametersHash()}, it does not depend on the
+	 * input and output folders, so the results of an image can be shared between datasets.
+	 *
+	 * @return the SHA-256 hash of the processing parameters, in hexadecimal
+	 */
+	public String getProcessingHash() {
+		return sha256(getProcessingParameters());
+	}
+	
+	
 	public String getInfoGaussianBlur() {
 		String parametersInfo;
 		if (gaussianIsOn) {
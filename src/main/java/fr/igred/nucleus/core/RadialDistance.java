@@ -18,12 +18,9 @@
 package fr.igred.nucleus.core;
 
 import fr.igred.nucleus.utils.DistanceMap;
-import fr.igred.nucleus.utils.Histogram;
 import fr.igred.nucleus.utils.VoxelRecord;
 import ij.ImagePlus;
 import ij.ImageStack;
-import ij.measure.Calibration;
-import ij.plugin.Resizer;
 
 
 /**
@@ -42,15 +39,15 @@ public final class RadialDistance {
 	
 	
 	/**
-	 * Method which compute the distance map of binary nucleus Rescale the voxel to obtain cubic voxel
+	 * Method which compute the distance map of binary nucleus, in calibrated units (the voxels do not need to be
+	 * cubic).
 	 *
-	 * @param rescaledSegmentedImg
+	 * @param segmentedImg
 	 *
 	 * @return
 	 */
-	public static ImagePlus computeDistanceMap(ImagePlus rescaledSegmentedImg) {
-		DistanceMap.apply(rescaledSegmentedImg);
-		return rescaledSegmentedImg;
+	public static ImagePlus computeDistanceMap(ImagePlus segmentedImg) {
+		return DistanceMap.compute(segmentedImg);
 	}
 	
 	
@@ -63,33 +60,11 @@ public final class RadialDistance {
 	 * @return
 	 */
 	public static double[] computeBorderToBorderDistances(ImagePlus imagePlusSegmented, ImagePlus imagePlusCC) {
-		Histogram histogram = new Histogram();
-		histogram.run(imagePlusCC);
-		double[]    tLabel       = histogram.getLabels();
-		Calibration calibration  = imagePlusSegmented.getCalibration();
-		double      xCalibration = calibration.pixelWidth;
-		imagePlusCC = resizeImage(imagePlusCC);
-		ImageStack imageStackCC = imagePlusCC.getStack();
-		imagePlusSegmented = resizeImage(imagePlusSegmented);
-		ImagePlus  imagePlusDistanceMap = computeDistanceMap(imagePlusSegmented);
-		ImageStack imageStackDistMap    = imagePlusDistanceMap.getStack();
-		double     voxelValueMin;
-		double     voxelValue;
-		double[]   tDistanceRadial      = new double[tLabel.length];
-		for (int l = 0; l < tLabel.length; ++l) {
-			voxelValueMin = Double.MAX_VALUE;
-			for (int k = 0; k < imagePlusCC.getNSlices(); ++k) {
-				for (int i = 0; i < imagePlusCC.getWidth(); ++i) {
-					for (int j = 0; j < imagePlusCC.getHeight(); ++j) {
-						voxelValue = imageStackDistMap.getVoxel(i, j, k);
-						if (voxelValue < voxelValueMin &&
-						    tLabel[l] == imageStackCC.getVoxel(i, j, k)) {
-							voxelValueMin = voxelValue;
-						}
-					}
-				}
-			}
-			tDistanceRadial[l] = voxelValueMin * xCalibration;
+		ImagePlus       imagePlusDistanceMap = computeDistanceMap(imagePlusSegmented);
+		LabelStatistics statistics           = LabelStatistics.of(imagePlusCC, imagePlusDistanceMap);
+		double[]        tDistanceRadial      = new double[statistics.getNbLabels()];
+		for (int i = 0; i < tDistanceRadial.length; ++i) {
+			tDistanceRadial[i] = statistics.getIntensityMin(i);
 		}
 		return tDistanceRadial;
 	}
@@ -97,8 +72,8 @@ public final class RadialDistance {
 	
 	/**
 	 * Determines the radial distance of all chromocenter in the image of nucleus We realise the distance map on the
-	 * binary nucleus. This method measure the radial distance between the barycenter of chromocenter and the nuclear
-	 * envelope.
+	 * binary nucleus (in calibrated units). This method measure the radial distance between the barycenter of
+	 * chromocenter and the nuclear envelope.
 	 *
 	 * @param imagePlusSegmented
 	 * @param imagePlusCC
@@ -106,15 +81,11 @@ public final class RadialDistance {
 	 * @return
 	 */
 	public static double[] computeBarycenterToBorderDistances(ImagePlus imagePlusSegmented, ImagePlus imagePlusCC) {
-		Calibration calibration        = imagePlusSegmented.getCalibration();
-		double      xCalibration       = calibration.pixelWidth;
-		ImagePlus   imagePlusCCRescale = resizeImage(imagePlusCC);
-		imagePlusSegmented = resizeImage(imagePlusSegmented);
 		ImagePlus  imagePlusDistanceMap = computeDistanceMap(imagePlusSegmented);
 		ImageStack imageStackDistMap    = imagePlusDistanceMap.getStack();
 		Measure3D  measure3D            = new Measure3D();
 		
-		VoxelRecord[] tVoxelRecord    = measure3D.computeObjectBarycenter(imagePlusCCRescale, false);
+		VoxelRecord[] tVoxelRecord    = measure3D.computeObjectBarycenter(imagePlusCC, false);
 		double[]      tRadialDistance = new double[tVoxelRecord.length];
 		double        distance;
 		for (int i = 0; i < tVoxelRecord.length; ++i) {
@@ -122,27 +93,10 @@ public final class RadialDistance {
 			distance = imageStackDistMap.getVoxel((int) voxelRecord.getI(),
 			                                      (int) voxelRecord.getJ(),
 			                                      (int) voxelRecord.getK());
-			tRadialDistance[i] = xCalibration * distance;
+			tRadialDistance[i] = distance;
 		}
 		return tRadialDistance;
 	}
 	
 	
-	/**
-	 * Resize the input image to obtain isotropic voxel
-	 *
-	 * @param imagePlus
-	 *
-	 * @return resized image
-	 */
-	private static ImagePlus resizeImage(ImagePlus imagePlus) {
-		Resizer     resizer      = new Resizer();
-		Calibration calibration  = imagePlus.getCalibration();
-		double      xCalibration = calibration.pixelWidth;
-		double      zCalibration = calibration.pixelDepth;
-		double      zFactor      = zCalibration / xCalibration;
-		int         newDepth     = (int) (imagePlus.getNSlices() * zFactor);
-		return resizer.zScale(imagePlus, newDepth, 0);
-	}
-	
 }
\ No newline at end of file
@@ -0,0 +1,310 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.gradient;
+
+import fr.igred.nucleus.utils.SharedExecutor;
+import fr.igred.nucleus.utils.VoxelView;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+
+
+/**
+ * Gradient magnitude of a 3D image at a given Gaussian scale, restricted to a mask.
+ * <p>
+ * The three Gaussian derivatives are computed together with separable float convolutions (z, then y, then x), using
+ * mirror boundary conditions. Only the bounding box of the mask (plus the kernel radius) is processed, slices are
+ * processed in parallel, and voxels outside the mask are set to 0.
+ */
+public final class GaussianGradient {
+	/** Kernel radius, in standard deviations */
+	private static final double TRUNCATION = 4.0;
+	
+	
+	/** Private constructor to prevent instantiation */
+	private GaussianGradient() {
+		// This class should not be instantiated
+	}
+	
+	
+	/**
+	 * Computes the gradient magnitude of an image inside a mask.
+	 *
+	 * @param imagePlus image
+	 * @param mask      mask (non-zero voxels are computed), or null to compute the whole image
+	 * @param sigmaX    standard deviation of the Gaussian along x, in voxels
+	 * @param sigmaY    standard deviation of the Gaussian along y, in voxels
+	 * @param sigmaZ    standard deviation of the Gaussian along z, in voxels
+	 *
+	 * @return the 32-bit gradient magnitude image
+	 */
+	public static ImagePlus run(ImagePlus imagePlus, ImagePlus mask, double sigmaX, double sigmaY, double sigmaZ) {
+		if (sigmaX <= 0 || sigmaY <= 0 || sigmaZ <= 0) {
+			throw new IllegalArgumentException("Smoothing scale less than or equal to 0");
+		}
+		VoxelView  input  = VoxelView.of(imagePlus);
+		VoxelView  inside = mask == null ? null : VoxelView.of(mask);
+		int        width  = input.getWidth();
+		int        height = input.getHeight();
+		int        depth  = input.getDepth();
+		ImageStack stack  = new ImageStack(width, height);
+		for (int z = 0; z < depth; ++z) {
+			stack.addSlice(new FloatProcessor(width, height));
+		}
+		ImagePlus result = new ImagePlus(imagePlus.getTitle() + " edges", stack);
+		result.setCalibration(imagePlus.getCalibration());
+		
+		int[] box = boundingBox(inside, width, height, depth);
+		if (box != null) {
+			new Convolution(input, inside, box, sigmaX, sigmaY, sigmaZ).run(VoxelView.of(result));
+		}
+		
+		float[] minMax = {Float.MAX_VALUE, -Float.MAX_VALUE};
+		for (int z = 0; z < depth; ++z) {
+			for (float value : (float[]) stack.getPixels(z + 1)) {
+				minMax[0] = Math.min(minMax[0], value);
+				minMax[1] = Math.max(minMax[1], value);
+			}
+		}
+		result.setDisplayRange(minMax[0], minMax[1]);
+		return result;
+	}
+	
+	
+	/**
+	 * Computes the bounding box of the non-zero voxels of a mask.
+	 *
+	 * @param mask   mask, or null for the whole image
+	 * @param width  image width
+	 * @param height image height
+	 * @param depth  image depth
+	 *
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax} (inclusive), or null if the mask is empty
+	 */
+	private static int[] boundingBox(VoxelView mask, int width, int height, int depth) {
+		if (mask == null) {
+			return new int[]{0, width - 1, 0, height - 1, 0, depth - 1};
+		}
+		int[] box = {width, -1, height, -1, depth, -1};
+		for (int z = 0; z < depth; ++z) {
+			for (int y = 0; y < height; ++y) {
+				for (int x = 0; x < width; ++x) {
+					if (mask.get(z, y * width + x) > 0) {
+						box[0] = Math.min(box[0], x);
+						box[1] = Math.max(box[1], x);
+						box[2] = Math.min(box[2], y);
+						box[3] = Math.max(box[3], y);
+						box[4] = Math.min(box[4], z);
+						box[5] = Math.max(box[5], z);
+					}
+				}
+			}
+		}
+		return box[1] < 0 ? null : box;
+	}
+	
+	
+	/**
+	 * Builds a sampled Gaussian kernel, or its first derivative, for correlation: {@code kernel[o + radius]} weights
+	 * the sample at offset {@code o}.
+	 *
+	 * @param sigma      standard deviation
+	 * @param radius     kernel radius
+	 * @param derivative whether to build the first derivative
+	 *
+	 * @return the kernel
+	 */
+	private static float[] kernel(double sigma, int radius, boolean derivative) {
+		float[] kernel = new float[2 * radius + 1];
+		double  norm   = 1 / (Math.sqrt(2 * Math.PI) * sigma);
+		for (int o = -radius; o <= radius; ++o) {
+			double gaussian = norm * Math.exp(-0.5 * o * o / (sigma * sigma));
+			kernel[o + radius] = (float) (derivative ? o / (sigma * sigma) * gaussian : gaussian);
+		}
+		return kernel;
+	}
+	
+	
+	/**
+	 * Maps the samples needed along one axis to indices in the processed box, applying mirror boundary conditions.
+	 *
+	 * @param min    first output index
+	 * @param max    last output index
+	 * @param radius kernel radius
+	 * @param start  first index of the processed box
+	 * @param length image length along the axis
+	 *
+	 * @return the box index of each sample, from {@code min - radius} to {@code max + radius}
+	 */
+	private static int[] mirrorMap(int min, int max, int radius, int start, int length) {
+		int[] map    = new int[max - min + 1 + 2 * radius];
+		int   period = 2 * (length - 1);
+		for (int i = 0; i < map.length; ++i) {
+			int index = 0;
+			if (length > 1) {
+				index = Math.floorMod(min - radius + i, period);
+				if (index >= length) {
+					index = period - index;
+				}
+			}
+			map[i] = index - start;
+		}
+		return map;
+	}
+	
+	
+	/** Separable convolutions of a box of the image. */
+	private static final class Convolution {
+		/** Input image */
+		private final VoxelView input;
+		/** Mask, or null */
+		private final VoxelView mask;
+		/** Output box: {xMin, xMax, yMin, yMax, zMin, zMax} */
+		private final int[]     box;
+		/** Image width */
+		private final int       width;
+		
+		/** Gaussian kernels along x, y and z */
+		private final float[] gaussX, gaussY, gaussZ;
+		/** Derivative kernels along x, y and z */
+		private final float[] derivX, derivY, derivZ;
+		
+		/** Start of the input box along x, y and z */
+		private final int startX, startY, startZ;
+		/** Size of the input box along x, y and z */
+		private final int sizeX, sizeY, sizeZ;
+		/** Size of the output box along x, y and z */
+		private final int outX, outY, outZ;
+		/** Sample maps along x, y and z */
+		private final int[] mapX, mapY, mapZ;
+		
+		
+		Convolution(VoxelView input, VoxelView mask, int[] box, double sigmaX, double sigmaY, double sigmaZ) {
+			this.input = input;
+			this.mask = mask;
+			this.box = box.clone();
+			this.width = input.getWidth();
+			int radiusX = (int) Math.ceil(TRUNCATION * sigmaX);
+			int radiusY = (int) Math.ceil(TRUNCATION * sigmaY);
+			int radiusZ = (int) Math.ceil(TRUNCATION * sigmaZ);
+			gaussX = kernel(sigmaX, radiusX, false);
+			gaussY = kernel(sigmaY, radiusY, false);
+			gaussZ = kernel(sigmaZ, radiusZ, false);
+			derivX = kernel(sigmaX, radiusX, true);
+			derivY = kernel(sigmaY, radiusY, true);
+			derivZ = kernel(sigmaZ, radiusZ, true);
+			
+			startX = Math.max(0, box[0] - radiusX);
+			startY = Math.max(0, box[2] - radiusY);
+			startZ = Math.max(0, box[4] - radiusZ);
+			sizeX = Math.min(width - 1, box[1] + radiusX) - startX + 1;
+			sizeY = Math.min(input.getHeight() - 1, box[3] + radiusY) - startY + 1;
+			sizeZ = Math.min(input.getDepth() - 1, box[5] + radiusZ) - startZ + 1;
+			outX = box[1] - box[0] + 1;
+			outY = box[3] - box[2] + 1;
+			outZ = box[5] - box[4] + 1;
+			mapX = mirrorMap(box[0], box[1], radiusX, startX, width);
+			mapY = mirrorMap(box[2], box[3], radiusY, startY, input.getHeight());
+			mapZ = mirrorMap(box[4], box[5], radiusZ, startZ, input.getDepth());
+		}
+		
+		
+		/**
+		 * Computes the gradient magnitude in the box.
+		 *
+		 * @param output output image
+		 */
+		void run(VoxelView output) {
+			int plane = sizeX * sizeY;
+			
+			float[] source = new float[plane * sizeZ];
+			SharedExecutor.parallelFor(0, sizeZ, z -> {
+				for (int y = 0; y < sizeY; ++y) {
+					int offset = (startY + y) * width + startX;
+					int index  = (z * sizeY + y) * sizeX;
+					for (int x = 0; x < sizeX; ++x) {
+						source[index + x] = input.get(startZ + z, offset + x);
+					}
+				}
+			});
+			
+			/* Along z: smoothed and derivative planes */
+			float[] smoothZ = new float[plane * outZ];
+			float[] slopeZ  = new float[plane * outZ];
+			SharedExecutor.parallelFor(0, outZ, z -> {
+				int out = z * plane;
+				for (int k = 0; k < gaussZ.length; ++k) {
+					float gauss = gaussZ[k];
+					float deriv = derivZ[k];
+					int   in    = mapZ[z + k] * plane;
+					for (int p = 0; p < plane; ++p) {
+						float value = source[in + p];
+						smoothZ[out + p] += gauss * value;
+						slopeZ[out + p] += deriv * value;
+					}
+				}
+			});
+			
+			/* Along y: rows smoothed in y and z, derived in y, and derived in z */
+			int     rows     = outY * sizeX;
+			float[] smoothYZ = new float[rows * outZ];
+			float[] slopeY   = new float[rows * outZ];
+			float[] smoothY  = new float[rows * outZ];
+			SharedExecutor.parallelFor(0, outZ, z -> {
+				for (int y = 0; y < outY; ++y) {
+					int out = (z * outY + y) * sizeX;
+					for (int k = 0; k < gaussY.length; ++k) {
+						float gauss = gaussY[k];
+						float deriv = derivY[k];
+						int   in    = (z * sizeY + mapY[y + k]) * sizeX;
+						for (int x = 0; x < sizeX; ++x) {
+							float value = smoothZ[in + x];
+							smoothYZ[out + x] += gauss * value;
+							slopeY[out + x] += deriv * value;
+							smoothY[out + x] += gauss * slopeZ[in + x];
+						}
+					}
+				}
+			});
+			
+			/* Along x, fused with the magnitude */
+			SharedExecutor.parallelFor(0, outZ, z -> {
+				for (int y = 0; y < outY; ++y) {
+					int in     = (z * outY + y) * sizeX;
+					int offset = (box[2] + y) * width + box[0];
+					for (int x = 0; x < outX; ++x) {
+						if (mask == null || mask.get(box[4] + z, offset + x) > 0) {
+							float ix = 0;
+							float iy = 0;
+							float iz = 0;
+							for (int k = 0; k < gaussX.length; ++k) {
+								int sample = in + mapX[x + k];
+								ix += derivX[k] * smoothYZ[sample];
+								iy += gaussX[k] * slopeY[sample];
+								iz += gaussX[k] * smoothY[sample];
+							}
+							output.set(box[4] + z, offset + x, Math.sqrt(ix * ix + iy * iy + iz * iz));
+						}
+					}
+				}
+			});
+		}
+		
+	}
+	
+}
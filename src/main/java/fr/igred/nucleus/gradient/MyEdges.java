@@ -167,17 +167,16 @@ public class MyEdges {
 						ix.get(coordinates, aIx);
 						iy.get(coordinates, aIy);
 						iz.get(coordinates, aIz);
-						for (int x = 0; x < dims.x; ++x) {
-							if (tabMask != null) {
+						if (tabMask != null) {
+							for (int x = 0; x < dims.x; ++x) {
 								if (tabMask[x][coordinates.y][coordinates.z] > 0) {
 									aIx[x] = Math.sqrt(aIx[x] * aIx[x] + aIy[x] * aIy[x] + aIz[x] * aIz[x]);
-									edgeImage.set(coordinates, aIx);
 									progressor.step();
 								} else {
 									aIx[x] = 0;
-									edgeImage.set(coordinates, aIx);
 								}
 							}
+							edgeImage.set(coordinates, aIx);
 						}
 					}
 				}
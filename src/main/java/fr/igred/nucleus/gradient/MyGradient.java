@@ -19,6 +19,7 @@ package fr.igred.nucleus.gradient;
 
 import ij.ImagePlus;
 import ij.Prefs;
+import ij.measure.Calibration;
 import imagescience.image.Aspects;
 import imagescience.image.FloatImage;
 import imagescience.image.Image;
@@ -55,7 +56,7 @@ public class MyGradient {
 	
 	
 	/**
-	 * Run the gradient computation.
+	 * Run the gradient computation. Without non-maxima suppression, the fused {@link GaussianGradient} kernel is used.
 	 *
 	 * @return a new ImagePlus with the gradient image
 	 */
@@ -66,6 +67,9 @@ public class MyGradient {
 		} catch (NumberFormatException e) {
 			throw new IllegalArgumentException("Invalid smoothing scale value", e);
 		}
+		if (!SUPPRESS) {
+			return runFused(scaleVal);
+		}
 		Image      image      = Image.wrap(imagePlus);
 		Image      newImage   = new FloatImage(image);
 		double[]   pls        = {0, 1};
@@ -98,4 +102,26 @@ public class MyGradient {
 		return newImagePlus;
 	}
 	
+	
+	/**
+	 * Computes the Gaussian-derivative gradient magnitude of {@link MyEdges} without non-maxima suppression, using the
+	 * fused kernel of {@link GaussianGradient}.
+	 *
+	 * @param scale smoothing scale
+	 *
+	 * @return a new ImagePlus with the gradient image
+	 */
+	private ImagePlus runFused(double scale) {
+		double sigmaX = scale;
+		double sigmaY = scale;
+		double sigmaZ = scale;
+		if (ISOTROPIC) {
+			Calibration calibration = imagePlus.getCalibration();
+			sigmaX /= calibration.pixelWidth;
+			sigmaY /= calibration.pixelHeight;
+			sigmaZ /= calibration.pixelDepth;
+		}
+		return GaussianGradient.run(imagePlus, mask ? imagePlusBinary : null, sigmaX, sigmaY, sigmaZ);
+	}
+	
 }
@@ -18,7 +18,7 @@
 package fr.igred.nucleus.gui;
 
 import fr.igred.nucleus.Version;
-import fr.igred.nucleus.utils.ConvexHullDetection;
+import fr.igred.nucleus.utils.ConvexHullSegmentation;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -67,8 +67,8 @@ public class SegmentationConfigDialog extends JFrame implements ItemListener {
 		
 		container.setLayout(gridBagLayout);
 		super.getRootPane().setDefaultButton(buttonOK);
-
-
+		
+		
         /*/\*\
         -------------------------- Crop Box -----------------------------------
         \*\/*/
@@ -102,7 +102,7 @@ public class SegmentationConfigDialog extends JFrame implements ItemListener {
 		JPanel convexHullPane = new JPanel();
 		convexHullPane.setLayout(new BoxLayout(convexHullPane, BoxLayout.LINE_AXIS));
 		convexHullPane.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
-		JLabel zBox = new JLabel("Convex Hull Detection (" + ConvexHullDetection.CONVEX_HULL_ALGORITHM + ":");
+		JLabel zBox = new JLabel("Convex Hull Detection (" + ConvexHullSegmentation.CONVEX_HULL_ALGORITHM + ":");
 		convexHullPane.add(zBox);
 		convexHullPane.add(Box.createRigidArea(new Dimension(10, 0)));
 		convexHullDetection.setSelected(true);
@@ -117,8 +117,8 @@ public class SegmentationConfigDialog extends JFrame implements ItemListener {
 		volumePane.add(maxVolumePane);
 		volumePane.add(convexHullPane);
 		volumePane.add(Box.createRigidArea(new Dimension(0, 20)));
-
-
+		
+		
         /*/\*\
         -------------------------- Calibration -----------------------------------
         \*\/*/
@@ -133,8 +133,8 @@ public class SegmentationConfigDialog extends JFrame implements ItemListener {
 		addCalibrationBox.addItemListener(this);
 		calibrationPanel.add(addCalibrationBox);
 		volumePane.add(calibrationPanel);
-
-
+		
+		
         /*/\*\
         -------------------------- Validation Button -----------------------------------
         \*\/*/
@@ -251,8 +251,8 @@ public class SegmentationConfigDialog extends JFrame implements ItemListener {
 		validate();
 		repaint();
 	}
-		
-		
+	
+	
 	private void start(ActionEvent actionEvent) {
 		setVisible(false);
 	}
@@ -17,9 +17,12 @@
  */
 package fr.igred.nucleus.io;
 
+import fr.igred.nucleus.utils.RunMetrics;
 import ij.ImagePlus;
 import ij.io.FileSaver;
 
+import java.io.File;
+
 
 public final class ImageSaver {
 	
@@ -38,7 +41,9 @@ public final class ImageSaver {
 	 */
 	public static void saveFile(ImagePlus imagePlusInput, String pathFile) {
 		FileSaver fileSaver = new FileSaver(imagePlusInput);
-		fileSaver.saveAsTiff(pathFile);
+		if (fileSaver.saveAsTiff(pathFile)) {
+			RunMetrics.addBytesWritten(new File(pathFile).length());
+		}
 	}
 	
 }
@@ -0,0 +1,457 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.io;
+
+import fr.igred.nucleus.utils.RunMetrics;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.measure.Calibration;
+import ij.process.ImageProcessor;
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.MetadataTools;
+import loci.formats.meta.IMetadata;
+import loci.plugins.util.ImageProcessorReader;
+import loci.plugins.util.LociPrefs;
+import ome.units.UNITS;
+import ome.units.quantity.Length;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+
+
+/**
+ * Image file opened once with Bio-Formats, whose planes are read on demand.
+ * <p>
+ * Channels are read one plane at a time. The planes of the last channel read are kept in memory, so that the steps
+ * working on the same channel (thresholding, cropping, projection) share the reads, while the memory used is bounded by
+ * one channel instead of the whole hyperstack.
+ * <p>
+ * Within a channel, slices are ordered as in a channel split by ImageJ: all the z slices of the first time point,
+ * then the next time point.
+ * <p>
+ * Caching can be disabled for images whose channels do not fit in memory: planes are then read each time they are
+ * accessed, and crops only read the region they span.
+ */
+public class ImageSource implements Closeable {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Reader of the image file */
+	private final ImageProcessorReader reader;
+	/** Path of the image file */
+	private final String               path;
+	/** Calibration of the image */
+	private final Calibration          calibration;
+	
+	/** Whether the planes read are kept in memory */
+	private boolean          caching       = true;
+	/** Channel of the cached planes, -1 if none */
+	private int              cachedChannel = -1;
+	/** Cached planes of the last channel read */
+	private ImageProcessor[] cachedPlanes  = new ImageProcessor[0];
+	
+	
+	/**
+	 * Opens an image file. Only the metadata is read.
+	 *
+	 * @param path path of the image file
+	 *
+	 * @throws IOException     if the file cannot be read
+	 * @throws FormatException if the file format is not supported
+	 */
+	public ImageSource(String path) throws IOException, FormatException {
+		this.path = path;
+		this.reader = new ImageProcessorReader(new ChannelSeparator(LociPrefs.makeImageReader()));
+		IMetadata metadata = MetadataTools.createOMEXMLMetadata();
+		reader.setMetadataStore(metadata);
+		reader.setId(path);
+		this.calibration = readCalibration(metadata);
+	}
+	
+	
+	/**
+	 * Reads the physical size of the voxels from the metadata.
+	 *
+	 * @param metadata image metadata
+	 *
+	 * @return the calibration (in microns when known)
+	 */
+	private static Calibration readCalibration(IMetadata metadata) {
+		Calibration cal = new Calibration();
+		if (metadata == null || metadata.getImageCount() == 0) {
+			return cal;
+		}
+		Double width  = micrometers(metadata.getPixelsPhysicalSizeX(0));
+		Double height = micrometers(metadata.getPixelsPhysicalSizeY(0));
+		Double depth  = micrometers(metadata.getPixelsPhysicalSizeZ(0));
+		if (width != null) {
+			cal.pixelWidth = width;
+			cal.setUnit("micron");
+		}
+		if (height != null) {
+			cal.pixelHeight = height;
+		}
+		if (depth != null) {
+			cal.pixelDepth = depth;
+		}
+		return cal;
+	}
+	
+	
+	/**
+	 * Converts a length to micrometers.
+	 *
+	 * @return the length in micrometers, or null if unknown
+	 */
+	private static Double micrometers(Length length) {
+		if (length == null) {
+			return null;
+		}
+		Number value = length.value(UNITS.MICROMETER);
+		return value == null ? null : value.doubleValue();
+	}
+	
+	
+	/**
+	 * Getter for the path of the image file
+	 *
+	 * @return the path
+	 */
+	public String getPath() {
+		return path;
+	}
+	
+	
+	/**
+	 * Getter for the name of the image file
+	 *
+	 * @return the file name
+	 */
+	public String getName() {
+		return new File(path).getName();
+	}
+	
+	
+	public int getWidth() {
+		return reader.getSizeX();
+	}
+	
+	
+	public int getHeight() {
+		return reader.getSizeY();
+	}
+	
+	
+	/**
+	 * Returns the number of slices of a channel (z slices times time points).
+	 *
+	 * @return the number of slices
+	 */
+	public int getNSlices() {
+		return reader.getSizeZ() * reader.getSizeT();
+	}
+	
+	
+	public int getNChannels() {
+		return reader.getSizeC();
+	}
+	
+	
+	/**
+	 * Returns the bit depth of the image, as in ImageJ (8, 16 or 32).
+	 *
+	 * @return the bit depth
+	 */
+	public int getBitDepth() {
+		return FormatTools.getBytesPerPixel(reader.getPixelType()) * 8;
+	}
+	
+	
+	/**
+	 * Setter for the caching of the planes read. Disabling it releases the cached planes.
+	 *
+	 * @param caching whether the planes of the last channel read are kept in memory
+	 */
+	public synchronized void setCaching(boolean caching) {
+		this.caching = caching;
+		if (!caching) {
+			cachedChannel = -1;
+			cachedPlanes = new ImageProcessor[0];
+		}
+	}
+	
+	
+	/**
+	 * Getter for the calibration of the image
+	 *
+	 * @return a copy of the calibration
+	 */
+	public Calibration getCalibration() {
+		return calibration.copy();
+	}
+	
+	
+	/**
+	 * Returns the index of a plane in the file.
+	 *
+	 * @param channel channel (0-based)
+	 * @param slice   slice (0-based)
+	 *
+	 * @return the plane index
+	 */
+	private int getIndex(int channel, int slice) {
+		int z = slice % reader.getSizeZ();
+		int t = slice / reader.getSizeZ();
+		return reader.getIndex(z, channel, t);
+	}
+	
+	
+	/**
+	 * Returns a plane of a channel. When caching is enabled, the planes of the channel are kept in memory until another
+	 * channel is read: the returned processor is then shared and must not be modified.
+	 *
+	 * @param channel channel (0-based)
+	 * @param slice   slice (0-based)
+	 *
+	 * @return the plane
+	 *
+	 * @throws IOException     if the plane cannot be read
+	 * @throws FormatException if the plane cannot be decoded
+	 */
+	public synchronized ImageProcessor getPlane(int channel, int slice) throws IOException, FormatException {
+		if (!caching) {
+			return counted(reader.openProcessors(getIndex(channel, slice))[0]);
+		}
+		if (channel != cachedChannel) {
+			cachedChannel = channel;
+			cachedPlanes = new ImageProcessor[getNSlices()];
+		}
+		if (cachedPlanes[slice] == null) {
+			cachedPlanes[slice] = counted(reader.openProcessors(getIndex(channel, slice))[0]);
+		}
+		return cachedPlanes[slice];
+	}
+	
+	
+	/**
+	 * Counts the bytes of a plane read from the file in the current stage of the run metrics.
+	 *
+	 * @param plane plane (or region) read
+	 *
+	 * @return the plane
+	 */
+	private static ImageProcessor counted(ImageProcessor plane) {
+		int bytesPerPixel = plane.getBitDepth() == 24 ? 4 : plane.getBitDepth() / 8;
+		RunMetrics.addBytesRead((long) plane.getPixelCount() * bytesPerPixel);
+		return plane;
+	}
+	
+	
+	/**
+	 * Reads a region of a plane, without caching it.
+	 *
+	 * @param channel channel (0-based)
+	 * @param slice   slice (0-based)
+	 * @param x       x start (0-based)
+	 * @param y       y start (0-based)
+	 * @param width   width of the region, within the image
+	 * @param height  height of the region, within the image
+	 *
+	 * @return the region, which can be modified
+	 *
+	 * @throws IOException     if the plane cannot be read
+	 * @throws FormatException if the plane cannot be decoded
+	 */
+	public synchronized ImageProcessor readTile(int channel, int slice, int x, int y, int width, int height)
+	throws IOException, FormatException {
+		return counted(reader.openProcessors(getIndex(channel, slice), x, y, width, height)[0]);
+	}
+	
+	
+	/**
+	 * Reads a region of a channel through all the slices, without caching it.
+	 *
+	 * @param channel channel (0-based)
+	 * @param x       x start (0-based)
+	 * @param y       y start (0-based)
+	 * @param width   width of the region, within the image
+	 * @param height  height of the region, within the image
+	 *
+	 * @return the region, with the calibration of the file
+	 *
+	 * @throws IOException     if a plane cannot be read
+	 * @throws FormatException if a plane cannot be decoded
+	 */
+	public ImagePlus readRegion(int channel, int x, int y, int width, int height)
+	throws IOException, FormatException {
+		ImageStack stack = new ImageStack(width, height);
+		for (int slice = 0; slice < getNSlices(); slice++) {
+			stack.addSlice(readTile(channel, slice, x, y, width, height));
+		}
+		ImagePlus image = new ImagePlus(getName(), stack);
+		image.setCalibration(getCalibration());
+		return image;
+	}
+	
+	
+	/**
+	 * Reads a channel into a new image, which can be modified. The planes are read through the cache, so that the
+	 * following reads of the same channel do not decode them again.
+	 *
+	 * @param channel channel (0-based)
+	 *
+	 * @return the channel image, with the calibration of the file
+	 *
+	 * @throws IOException     if the channel cannot be read
+	 * @throws FormatException if the channel cannot be decoded
+	 */
+	public ImagePlus readChannel(int channel) throws IOException, FormatException {
+		ImageStack stack = new ImageStack(getWidth(), getHeight());
+		for (int slice = 0; slice < getNSlices(); slice++) {
+			stack.addSlice(getPlane(channel, slice).duplicate());
+		}
+		ImagePlus image = new ImagePlus(getName(), stack);
+		image.setCalibration(getCalibration());
+		return image;
+	}
+	
+	
+	/**
+	 * Returns a channel as a virtual image: planes are read when they are accessed and cached as in
+	 * {@link #getPlane(int, int)}. The image must not be modified.
+	 *
+	 * @param channel channel (0-based)
+	 *
+	 * @return the channel image, with the calibration of the file
+	 */
+	public ImagePlus getChannel(int channel) {
+		ImagePlus image = new ImagePlus(getName(), new ChannelStack(channel));
+		image.setCalibration(getCalibration());
+		return image;
+	}
+	
+	
+	/**
+	 * Crops a box in a channel, reading only the planes it spans. Unless the channel is cached, only the region of the
+	 * box is read.
+	 *
+	 * @param channel channel (0-based)
+	 * @param xMin    x start (0-based)
+	 * @param yMin    y start (0-based)
+	 * @param zMin    first slice (1-based, as in ImageJ stacks)
+	 * @param width   width of the box
+	 * @param height  height of the box
+	 * @param depth   number of slices of the box
+	 *
+	 * @return the cropped image, with the calibration of the file
+	 *
+	 * @throws IOException     if a plane cannot be read
+	 * @throws FormatException if a plane cannot be decoded
+	 */
+	public ImagePlus crop(int channel, int xMin, int yMin, int zMin, int width, int height, int depth)
+	throws IOException, FormatException {
+		int first  = Math.max(1, zMin);
+		int last   = Math.min(getNSlices(), zMin + depth - 1);
+		int xCount = Math.min(width, getWidth() - xMin);
+		int yCount = Math.min(height, getHeight() - yMin);
+		
+		boolean cached;
+		synchronized (this) {
+			cached = caching && channel == cachedChannel;
+		}
+		ImageStack stack = new ImageStack(xCount, yCount);
+		for (int slice = first; slice <= last; slice++) {
+			if (cached) {
+				ImageProcessor plane = getPlane(channel, slice - 1);
+				synchronized (plane) {
+					plane.setRoi(xMin, yMin, width, height);
+					stack.addSlice(plane.crop());
+					plane.resetRoi();
+				}
+			} else {
+				stack.addSlice(readTile(channel, slice - 1, xMin, yMin, xCount, yCount));
+			}
+		}
+		ImagePlus image = new ImagePlus(getName(), stack);
+		image.setCalibration(getCalibration());
+		return image;
+	}
+	
+	
+	/**
+	 * Closes the file and releases the cached planes.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		cachedChannel = -1;
+		cachedPlanes = new ImageProcessor[0];
+		reader.close();
+	}
+	
+	
+	/**
+	 * Virtual stack reading the planes of one channel from the file.
+	 */
+	private final class ChannelStack extends VirtualStack {
+		/** Channel (0-based) */
+		private final int channel;
+		
+		
+		ChannelStack(int channel) {
+			super(ImageSource.this.getWidth(), ImageSource.this.getHeight(), null, ImageSource.this.path);
+			this.channel = channel;
+		}
+		
+		
+		@Override
+		public ImageProcessor getProcessor(int n) {
+			try {
+				return getPlane(channel, n - 1);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (FormatException e) {
+				LOGGER.error("Cannot decode plane {} of channel {} in: {}", n, channel, path, e);
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		
+		@Override
+		public int getSize() {
+			return getNSlices();
+		}
+		
+		
+		@Override
+		public String getSliceLabel(int n) {
+			return null;
+		}
+		
+	}
+	
+}
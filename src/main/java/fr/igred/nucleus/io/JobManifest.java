@@ -0,0 +1,352 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Manifest of a batch run: records the status of each image, its output files, the hash of the parameters used and
+ * its result rows, so that an interrupted run can be resumed without processing the completed images again.
+ * <p>
+ * Each image is appended to the manifest file as soon as it is processed, as one line written and synced in a single
+ * operation: a run killed while writing can only leave an incomplete last line, which is ignored. When a manifest is
+ * resumed, it is rewritten with one line per image (the last one recorded), replacing the previous file atomically.
+ * <p>
+ * The manifest is a tab-separated file: item, status, parameters hash, number of outputs, outputs, then results.
+ * Tabulations, line breaks and backslashes in the values are escaped.
+ */
+public class JobManifest {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** First line of the manifest file */
+	private static final String HEADER = "#NucleusJ job manifest\n" +
+	                                     "#Item\tStatus\tParameters\tNbOutputs\tOutputs\tResults";
+	
+	/** Number of columns before the outputs */
+	private static final int FIXED_COLUMNS = 4;
+	
+	/** Manifest file */
+	private final Path path;
+	
+	/** Last entry recorded for each item */
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+	
+	
+	/**
+	 * Opens the manifest of a run. When resuming, the entries of the existing manifest are loaded; otherwise, any
+	 * existing manifest is replaced by an empty one.
+	 *
+	 * @param path   path of the manifest file
+	 * @param resume whether the entries of the existing manifest should be kept
+	 *
+	 * @throws IOException if the manifest cannot be read or written
+	 */
+	public JobManifest(String path, boolean resume) throws IOException {
+		this.path = Paths.get(path);
+		if (resume && Files.exists(this.path)) {
+			load();
+			LOGGER.info("Resuming from {}: {} image(s) recorded", path, entries.size());
+		}
+		rewrite();
+	}
+	
+	
+	/**
+	 * Escapes tabulations, line breaks and backslashes.
+	 *
+	 * @param value value to escape
+	 *
+	 * @return the escaped value
+	 */
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\")
+		            .replace("\t", "\\t")
+		            .replace("\n", "\\n")
+		            .replace("\r", "\\r");
+	}
+	
+	
+	/**
+	 * Reverts {@link #escape(String)}.
+	 *
+	 * @param value escaped value
+	 *
+	 * @return the original value
+	 */
+	private static String unescape(String value) {
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				switch (next) {
+					case 't':
+						unescaped.append('\t');
+						break;
+					case 'n':
+						unescaped.append('\n');
+						break;
+					case 'r':
+						unescaped.append('\r');
+						break;
+					default:
+						unescaped.append(next);
+				}
+			} else {
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+	
+	
+	/**
+	 * Parses a line of the manifest.
+	 *
+	 * @param line line, without line break
+	 *
+	 * @return the entry, or null if the line is not valid
+	 */
+	private static Entry parse(String line) {
+		String[] columns = line.split("\t", -1);
+		if (columns.length < FIXED_COLUMNS) {
+			return null;
+		}
+		Status status;
+		int    nbOutputs;
+		try {
+			status = Status.valueOf(columns[1]);
+			nbOutputs = Integer.parseInt(columns[3]);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (nbOutputs < 0 || columns.length < FIXED_COLUMNS + nbOutputs) {
+			return null;
+		}
+		List<String> outputs = new ArrayList<>(nbOutputs);
+		for (int i = FIXED_COLUMNS; i < FIXED_COLUMNS + nbOutputs; i++) {
+			outputs.add(unescape(columns[i]));
+		}
+		List<String> results = new ArrayList<>(columns.length - FIXED_COLUMNS - nbOutputs);
+		for (int i = FIXED_COLUMNS + nbOutputs; i < columns.length; i++) {
+			results.add(unescape(columns[i]));
+		}
+		return new Entry(unescape(columns[0]), status, columns[2], outputs, results);
+	}
+	
+	
+	/**
+	 * Loads the entries of the manifest file. Invalid lines, such as an incomplete last line, are ignored.
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	private void load() throws IOException {
+		String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+		/* Only complete lines are read: the last one may have been interrupted */
+		int      end   = content.lastIndexOf('\n');
+		String[] lines = end < 0 ? new String[0] : content.substring(0, end).split("\n");
+		for (String line : lines) {
+			if (!line.isEmpty() && line.charAt(0) != '#') {
+				Entry entry = parse(line);
+				if (entry == null) {
+					LOGGER.warn("Invalid line ignored in {}: {}", path, line);
+				} else {
+					entries.remove(entry.item);
+					entries.put(entry.item, entry);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Writes the loaded entries to a temporary file, then replaces the manifest file with it.
+	 *
+	 * @throws IOException if the manifest cannot be written
+	 */
+	private synchronized void rewrite() throws IOException {
+		StringBuilder content = new StringBuilder(HEADER).append('\n');
+		for (Entry entry : entries.values()) {
+			content.append(entry.toLine());
+		}
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.write(temporary, content.toString().getBytes(StandardCharsets.UTF_8));
+		try {
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	
+	/**
+	 * Records the processing of an image, appending it to the manifest file.
+	 *
+	 * @param item       image name
+	 * @param status     processing status
+	 * @param parameters hash of the parameters used
+	 * @param outputs    paths of the output files
+	 * @param results    result rows of the image
+	 *
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public synchronized void record(String item, Status status, String parameters,
+	                                Collection<String> outputs, String... results)
+	throws IOException {
+		Entry entry = new Entry(item, status, parameters, new ArrayList<>(outputs), Arrays.asList(results));
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+		                                            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer line = ByteBuffer.wrap(entry.toLine().getBytes(StandardCharsets.UTF_8));
+			while (line.hasRemaining()) {
+				channel.write(line);
+			}
+			channel.force(false);
+		}
+		entries.remove(item);
+		entries.put(item, entry);
+	}
+	
+	
+	/**
+	 * Returns the images that were completed with the given parameters and whose outputs still exist: they do not
+	 * need to be processed again.
+	 *
+	 * @param parameters hash of the current parameters
+	 *
+	 * @return the completed entries, for each image, in the order they were recorded
+	 */
+	public synchronized Map<String, Entry> getCompleted(String parameters) {
+		Map<String, Entry> completed = new LinkedHashMap<>(entries.size());
+		for (Entry entry : entries.values()) {
+			if (entry.status == Status.DONE && entry.parameters.equals(parameters) && entry.outputsExist()) {
+				completed.put(entry.item, entry);
+			}
+		}
+		return completed;
+	}
+	
+	
+	/** Processing status of an image. */
+	public enum Status {
+		/** The image was processed and its results recorded */
+		DONE,
+		/** The image could not be processed */
+		FAILED
+	}
+	
+	
+	/** Processing of an image recorded in the manifest. */
+	public static final class Entry {
+		/** Image name */
+		private final String       item;
+		/** Processing status */
+		private final Status       status;
+		/** Hash of the parameters */
+		private final String       parameters;
+		/** Paths of the output files */
+		private final List<String> outputs;
+		/** Result rows */
+		private final List<String> results;
+		
+		
+		private Entry(String item, Status status, String parameters, List<String> outputs, List<String> results) {
+			this.item = item;
+			this.status = status;
+			this.parameters = parameters;
+			this.outputs = Collections.unmodifiableList(outputs);
+			this.results = Collections.unmodifiableList(results);
+		}
+		
+		
+		/** @return the line of the entry in the manifest file, with its line break */
+		private String toLine() {
+			StringBuilder line = new StringBuilder(escape(item)).append('\t')
+			                                                    .append(status).append('\t')
+			                                                    .append(parameters).append('\t')
+			                                                    .append(outputs.size());
+			for (String output : outputs) {
+				line.append('\t').append(escape(output));
+			}
+			for (String result : results) {
+				line.append('\t').append(escape(result));
+			}
+			return line.append('\n').toString();
+		}
+		
+		
+		/** @return whether all the output files exist */
+		private boolean outputsExist() {
+			for (String output : outputs) {
+				if (!new File(output).exists()) {
+					LOGGER.info("Output of {} is missing, it will be processed again: {}", item, output);
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		
+		/** @return the image name */
+		public String getItem() {
+			return item;
+		}
+		
+		
+		/** @return the paths of the output files */
+		public List<String> getOutputs() {
+			return outputs;
+		}
+		
+		
+		/**
+		 * Returns a result row of the image.
+		 *
+		 * @param index index of the result
+		 *
+		 * @return the result row
+		 */
+		public String getResult(int index) {
+			return results.get(index);
+		}
+		
+	}
+	
+}
@@ -17,11 +17,13 @@
  */
 package fr.igred.nucleus.io;
 
+import fr.igred.nucleus.utils.RunMetrics;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
@@ -55,6 +57,7 @@ public class OutputTextFile extends FilesNames {
 		} catch (IOException e) {
 			LOGGER.error("{} creation failed", fullPathFile, e);
 		}
+		RunMetrics.addBytesWritten(new File(fullPathFile).length());
 		LOGGER.info("{} created", fullPathFile);
 	}
 	
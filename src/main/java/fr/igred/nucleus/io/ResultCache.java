@@ -0,0 +1,370 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.io;
+
+import fr.igred.nucleus.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * On-disk cache of the results of an image, so that unchanged images are not processed again, even in another output
+ * folder.
+ * <p>
+ * Entries are keyed by the hash of the content of the input files, of the processing parameters and of the NucleusJ
+ * version. Each entry is a directory holding the result rows of the image and copies of its output files. Entries are
+ * written in a temporary directory, then renamed: concurrent workers (or processes) sharing the cache never see an
+ * incomplete entry. When the cache grows larger than its maximum size, the least recently used entries are evicted.
+ */
+public class ResultCache {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Default maximum size of the cache, in bytes */
+	public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+	
+	/** Directory where the entries are written, then evicted */
+	private static final String TEMPORARY = ".tmp";
+	
+	/** Prefix of the files holding the rows of an entry */
+	private static final String ROW = "row";
+	
+	/** Size of the cache after eviction, relative to its maximum size */
+	private static final double EVICTION_RATIO = 0.9;
+	
+	/** Cache directory */
+	private final Path directory;
+	
+	/** Maximum size of the cache, in bytes */
+	private final long maxSize;
+	
+	/** Estimated size of the cache, in bytes */
+	private final AtomicLong size;
+	
+	/** NucleusJ version */
+	private final String version;
+	
+	
+	/**
+	 * Opens a cache directory, creating it if needed.
+	 *
+	 * @param directory cache directory
+	 * @param maxSize   maximum size of the cache, in bytes
+	 *
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ResultCache(String directory, long maxSize) throws IOException {
+		this.directory = Paths.get(directory);
+		this.maxSize = maxSize;
+		this.version = Version.get();
+		Files.createDirectories(this.directory.resolve(TEMPORARY));
+		this.size = new AtomicLong(sizeOf(this.directory));
+		LOGGER.info("Result cache: {} ({} MB used)", directory, size.get() >> 20);
+	}
+	
+	
+	/**
+	 * Converts bytes to their hexadecimal representation.
+	 *
+	 * @param bytes bytes
+	 *
+	 * @return the hexadecimal string
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+	
+	
+	/** @return a new SHA-256 digest */
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			/* Every Java platform supports SHA-256 */
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	/**
+	 * Computes the hash of the content of a file.
+	 *
+	 * @param file file
+	 *
+	 * @return the SHA-256 hash of the file, in hexadecimal
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String hashFile(File file) throws IOException {
+		MessageDigest digest = sha256();
+		byte[]        buffer = new byte[1 << 16];
+		try (InputStream input = Files.newInputStream(file.toPath())) {
+			int read = input.read(buffer);
+			while (read >= 0) {
+				digest.update(buffer, 0, read);
+				read = input.read(buffer);
+			}
+		}
+		return toHex(digest.digest());
+	}
+	
+	
+	/**
+	 * Computes the total size of the files in a directory.
+	 *
+	 * @param path directory
+	 *
+	 * @return the size, in bytes
+	 *
+	 * @throws IOException if the directory cannot be read
+	 */
+	private static long sizeOf(Path path) throws IOException {
+		long total = 0;
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+			for (Path child : children) {
+				try {
+					total += Files.isDirectory(child) ? sizeOf(child) : Files.size(child);
+				} catch (NoSuchFileException e) {
+					/* Deleted concurrently */
+				}
+			}
+		}
+		return total;
+	}
+	
+	
+	/**
+	 * Deletes a directory and its content.
+	 *
+	 * @param path directory
+	 *
+	 * @throws IOException if a file cannot be deleted
+	 */
+	private static void delete(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+				for (Path child : children) {
+					delete(child);
+				}
+			}
+		}
+		Files.deleteIfExists(path);
+	}
+	
+	
+	/**
+	 * Returns the last time an entry was used.
+	 *
+	 * @param entry entry directory
+	 *
+	 * @return the last modification time of the entry, or 0 if it cannot be read
+	 */
+	private static long lastUsed(Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+	
+	
+	/**
+	 * Renames a file or directory atomically if possible.
+	 *
+	 * @param source source path
+	 * @param target target path
+	 *
+	 * @throws IOException if the file cannot be renamed, or the target already exists
+	 */
+	private static void rename(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target);
+		}
+	}
+	
+	
+	/**
+	 * Computes the key of the results of a tool on some input files.
+	 *
+	 * @param tool       name of the tool
+	 * @param parameters parameters which change the results (see {@code PluginParameters.getProcessingHash()})
+	 * @param inputs     input files
+	 *
+	 * @return the key
+	 *
+	 * @throws IOException if an input file cannot be read
+	 */
+	public String key(String tool, String parameters, File... inputs) throws IOException {
+		MessageDigest digest = sha256();
+		digest.update((tool + '\n' + version + '\n' + parameters + '\n').getBytes(StandardCharsets.UTF_8));
+		for (File input : inputs) {
+			digest.update((hashFile(input) + '\n').getBytes(StandardCharsets.UTF_8));
+		}
+		return toHex(digest.digest());
+	}
+	
+	
+	/**
+	 * Restores the results of an entry: its files are copied to their targets, and its rows are returned.
+	 *
+	 * @param key   key of the entry
+	 * @param files targets of the files to restore, for each file name; files missing from the entry are skipped
+	 *
+	 * @return the rows of the entry, or null if there is no such entry or it could not be read
+	 */
+	public List<String> restore(String key, Map<String, String> files) {
+		Path entry = directory.resolve(key);
+		if (!Files.isDirectory(entry)) {
+			return null;
+		}
+		try {
+			List<String> rows = new ArrayList<>(2);
+			Path         row  = entry.resolve(ROW + 0);
+			while (Files.exists(row)) {
+				rows.add(new String(Files.readAllBytes(row), StandardCharsets.UTF_8));
+				row = entry.resolve(ROW + rows.size());
+			}
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				Path cached = entry.resolve(file.getKey());
+				if (Files.exists(cached)) {
+					Files.copy(cached, Paths.get(file.getValue()), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			/* The entry is marked as recently used, so that it is evicted last */
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			LOGGER.debug("Cache hit: {}", key);
+			return rows;
+		} catch (IOException e) {
+			/* The entry may have been evicted concurrently: the image is processed again */
+			LOGGER.debug("Could not restore cache entry: {}", key, e);
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Stores the results of an image. Failures are logged, as they do not change the results of the run.
+	 *
+	 * @param key   key of the entry
+	 * @param rows  result rows
+	 * @param files paths of the files to store, for each file name; missing files are skipped
+	 */
+	public void store(String key, List<String> rows, Map<String, String> files) {
+		Path temporary = directory.resolve(TEMPORARY).resolve(key + '-' + UUID.randomUUID());
+		try {
+			Files.createDirectories(temporary);
+			long bytes = 0;
+			for (int i = 0; i < rows.size(); i++) {
+				byte[] row = rows.get(i).getBytes(StandardCharsets.UTF_8);
+				Files.write(temporary.resolve(ROW + i), row);
+				bytes += row.length;
+			}
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				Path source = Paths.get(file.getValue());
+				if (Files.exists(source)) {
+					Files.copy(source, temporary.resolve(file.getKey()));
+					bytes += Files.size(source);
+				}
+			}
+			try {
+				rename(temporary, directory.resolve(key));
+				size.addAndGet(bytes);
+			} catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+				/* Another worker stored the same results first */
+				delete(temporary);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not store cache entry: {}", key, e);
+			try {
+				delete(temporary);
+			} catch (IOException ignored) {
+				//IGNORE
+			}
+		}
+		if (size.get() > maxSize) {
+			evict();
+		}
+	}
+	
+	
+	/**
+	 * Evicts the least recently used entries until the cache is smaller than its maximum size. The actual size is
+	 * computed again first, as other processes may share the cache.
+	 */
+	private synchronized void evict() {
+		List<Path> entries = new ArrayList<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+			for (Path child : children) {
+				if (!TEMPORARY.equals(child.getFileName().toString())) {
+					entries.add(child);
+				}
+			}
+			size.set(sizeOf(directory));
+		} catch (IOException e) {
+			LOGGER.warn("Could not list cache entries in: {}", directory, e);
+			return;
+		}
+		entries.sort(Comparator.comparingLong(ResultCache::lastUsed));
+		long target = (long) (EVICTION_RATIO * maxSize);
+		for (int i = 0; i < entries.size() && size.get() > target; i++) {
+			Path entry = entries.get(i);
+			/* Entries are renamed before being deleted: readers never see a partially deleted entry */
+			Path evicted = directory.resolve(TEMPORARY).resolve(entry.getFileName() + "-evicted-" + UUID.randomUUID());
+			try {
+				rename(entry, evicted);
+				long bytes = sizeOf(evicted);
+				delete(evicted);
+				size.addAndGet(-bytes);
+			} catch (IOException e) {
+				LOGGER.debug("Could not evict cache entry: {}", entry, e);
+			}
+		}
+		LOGGER.info("Result cache evicted to {} MB", size.get() >> 20);
+	}
+	
+}
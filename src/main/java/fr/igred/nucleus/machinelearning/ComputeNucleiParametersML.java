@@ -21,6 +21,7 @@ import fr.igred.nucleus.core.Measure3D;
 import fr.igred.nucleus.io.Directory;
 import fr.igred.nucleus.io.OutputTextFile;
 import fr.igred.nucleus.core.PluginParameters;
+import fr.igred.nucleus.utils.BatchExecutor;
 import fr.igred.nucleus.utils.Histogram;
 import ij.ImagePlus;
 import inra.ijpb.binary.BinaryImages;
@@ -45,6 +46,8 @@ public class ComputeNucleiParametersML {
 	private final String rawImagesInputDirectory;
 	private final String segmentedImagesDirectory;
 	
+	private int executorThreads = 1;
+	
 	
 	/**
 	 * Constructor
@@ -77,28 +80,14 @@ public class ComputeNucleiParametersML {
 		
 		StringBuilder cropInfoOtsu = new StringBuilder(pluginParameters.getAnalysisParameters() +
 		                                               getResultsColumnNames());
-		for (File currentFile : segImages) {
-			LOGGER.info("Current File: {}", currentFile.getName());
-			ImagePlus raw = new ImagePlus(pluginParameters.getInputFolder() +
-			                              directoryInput.getSeparator() +
-			                              currentFile.getName());
-			ImagePlus[] segmented = BF.openImagePlus(pluginParameters.getOutputFolder() + currentFile.getName());
-			// TODO TRANSFORMATION FACTORISABLE AVEC METHODE DU DESSUS !!!!!
-			binarize(segmented[0], 1);
-			segmented[0] = BinaryImages.componentsLabeling(segmented[0], 26, 32);
-			LabelImages.removeBorderLabels(segmented[0]);
-			binarize(segmented[0], 1);
-			Histogram histogram = new Histogram();
-			histogram.run(segmented[0]);
-			if (histogram.getNbLabels() > 0) {
-				Measure3D measure3D = new Measure3D(segmented,
-				                                    raw,
-				                                    pluginParameters.getXCalibration(raw),
-				                                    pluginParameters.getYCalibration(raw),
-				                                    pluginParameters.getZCalibration(raw));
-				cropInfoOtsu.append(measure3D.nucleusParameter3D()).append(eol);
-			}
-		}
+		BatchExecutor<File, String> batch = new BatchExecutor<>(executorThreads);
+		batch.run(segImages,
+		          currentFile -> computeParameters(pluginParameters, directoryInput, currentFile),
+		          (currentFile, parameters) -> {
+			          if (parameters != null) {
+				          cropInfoOtsu.append(parameters).append(eol);
+			          }
+		          });
 		
 		OutputTextFile resultFileOutputOTSU = new OutputTextFile(pluginParameters.getOutputFolder()
 		                                                         + directoryInput.getSeparator()
@@ -107,6 +96,55 @@ public class ComputeNucleiParametersML {
 	}
 	
 	
+	/**
+	 * Computes the parameters of the nucleus in one segmented image, once the nuclei touching the borders are removed.
+	 *
+	 * @param pluginParameters input and output folders, calibration
+	 * @param directoryInput   directory of the segmented images
+	 * @param currentFile      segmented image file
+	 *
+	 * @return the nucleus parameters, or null if no nucleus is left
+	 *
+	 * @throws IOException     if the segmented image could not be read
+	 * @throws FormatException Bio-formats exception
+	 */
+	private static String computeParameters(PluginParameters pluginParameters,
+	                                        Directory directoryInput,
+	                                        File currentFile) throws IOException, FormatException {
+		LOGGER.info("Current File: {}", currentFile.getName());
+		ImagePlus raw = new ImagePlus(pluginParameters.getInputFolder() +
+		                              directoryInput.getSeparator() +
+		                              currentFile.getName());
+		ImagePlus[] segmented = BF.openImagePlus(pluginParameters.getOutputFolder() + currentFile.getName());
+		// TODO TRANSFORMATION FACTORISABLE AVEC METHODE DU DESSUS !!!!!
+		binarize(segmented[0], 1);
+		segmented[0] = BinaryImages.componentsLabeling(segmented[0], 26, 32);
+		LabelImages.removeBorderLabels(segmented[0]);
+		binarize(segmented[0], 1);
+		Histogram histogram = new Histogram();
+		histogram.run(segmented[0]);
+		if (histogram.getNbLabels() > 0) {
+			Measure3D measure3D = new Measure3D(segmented,
+			                                    raw,
+			                                    pluginParameters.getXCalibration(raw),
+			                                    pluginParameters.getYCalibration(raw),
+			                                    pluginParameters.getZCalibration(raw));
+			return measure3D.nucleusParameter3D();
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Setter for the number of threads used to process images
+	 *
+	 * @param threadNumber number of executors threads
+	 */
+	public void setExecutorThreads(int threadNumber) {
+		this.executorThreads = threadNumber;
+	}
+	
+	
 	/**
 	 * @return columns names for results
 	 */
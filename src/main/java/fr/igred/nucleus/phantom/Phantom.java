@@ -0,0 +1,158 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.phantom;
+
+import fr.igred.nucleus.autocrop.Box;
+import fr.igred.nucleus.io.OutputTextFile;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static fr.igred.nucleus.io.ImageSaver.saveFile;
+
+
+/**
+ * Synthetic image produced by {@link PhantomGenerator}, with its ground truth: the label images of the nuclei and of
+ * the chromocenters, and the description of each nucleus.
+ */
+public class Phantom {
+	/** Raw image of each channel */
+	private final ImagePlus[]          channels;
+	/** Raw image, with all the channels */
+	private final ImagePlus            image;
+	/** Label of the nucleus of each voxel (0 for background) */
+	private final ImagePlus            nucleusLabels;
+	/** Label of the chromocenter of each voxel (0 outside chromocenters) */
+	private final ImagePlus            chromocenterLabels;
+	/** Nuclei drawn in the image */
+	private final List<PhantomNucleus> nuclei;
+	
+	
+	Phantom(ImagePlus[] channels,
+	        ImagePlus image,
+	        ImagePlus nucleusLabels,
+	        ImagePlus chromocenterLabels,
+	        List<PhantomNucleus> nuclei) {
+		this.channels = channels.clone();
+		this.image = image;
+		this.nucleusLabels = nucleusLabels;
+		this.chromocenterLabels = chromocenterLabels;
+		this.nuclei = new ArrayList<>(nuclei);
+	}
+	
+	
+	/** @return the raw image, as a hyperstack when there are several channels */
+	public ImagePlus getImage() {
+		return image;
+	}
+	
+	
+	/**
+	 * Returns the raw image of a channel.
+	 *
+	 * @param channel channel index (from 0)
+	 *
+	 * @return the image of the channel
+	 */
+	public ImagePlus getChannel(int channel) {
+		return channels[channel];
+	}
+	
+	
+	/** @return the number of channels */
+	public int getNbChannels() {
+		return channels.length;
+	}
+	
+	
+	/** @return the 16-bit label image of the nuclei (0 for background) */
+	public ImagePlus getNucleusLabels() {
+		return nucleusLabels;
+	}
+	
+	
+	/** @return the 16-bit label image of the chromocenters (0 outside chromocenters) */
+	public ImagePlus getChromocenterLabels() {
+		return chromocenterLabels;
+	}
+	
+	
+	/** @return the nuclei drawn in the image, by label */
+	public List<PhantomNucleus> getNuclei() {
+		return Collections.unmodifiableList(nuclei);
+	}
+	
+	
+	/**
+	 * Returns the ground truth as a tab-separated table, with one line for each nucleus.
+	 *
+	 * @return the ground truth table
+	 */
+	public String getGroundTruth() {
+		double        voxelVolume = image.getCalibration().pixelWidth *
+		                            image.getCalibration().pixelHeight *
+		                            image.getCalibration().pixelDepth;
+		StringBuilder table       = new StringBuilder();
+		table.append("Label\tXCentre\tYCentre\tZCentre\t")
+		     .append("XMin\tXMax\tYMin\tYMax\tZMin\tZMax\t")
+		     .append("VoxelCount\tVolume\tBorder\tChromocenters\tChromocenterVoxelCount")
+		     .append(System.lineSeparator());
+		for (PhantomNucleus nucleus : nuclei) {
+			double[] centre = nucleus.getCentre();
+			Box      box    = nucleus.getBox();
+			table.append(nucleus.getLabel()).append('\t')
+			     .append(centre[0]).append('\t')
+			     .append(centre[1]).append('\t')
+			     .append(centre[2]).append('\t')
+			     .append(box.getXMin()).append('\t')
+			     .append(box.getXMax()).append('\t')
+			     .append(box.getYMin()).append('\t')
+			     .append(box.getYMax()).append('\t')
+			     .append(box.getZMin()).append('\t')
+			     .append(box.getZMax()).append('\t')
+			     .append(nucleus.getVoxelCount()).append('\t')
+			     .append(nucleus.getVoxelCount() * voxelVolume).append('\t')
+			     .append(nucleus.isOnBorder()).append('\t')
+			     .append(nucleus.getNbChromocenters()).append('\t')
+			     .append(nucleus.getChromocenterVoxelCount())
+			     .append(System.lineSeparator());
+		}
+		return table.toString();
+	}
+	
+	
+	/**
+	 * Saves the phantom in a folder: the raw image (name.tif), the label images (name_nuclei.tif and
+	 * name_chromocenters.tif) and the ground truth table (name_groundTruth.txt).
+	 *
+	 * @param folder output folder
+	 * @param name   prefix of the file names
+	 */
+	public void save(String folder, String name) {
+		String prefix = folder + File.separator + name;
+		saveFile(image, prefix + ".tif");
+		saveFile(nucleusLabels, prefix + "_nuclei.tif");
+		saveFile(chromocenterLabels, prefix + "_chromocenters.tif");
+		OutputTextFile groundTruth = new OutputTextFile(prefix + "_groundTruth.txt");
+		groundTruth.saveTextFile(getGroundTruth(), false);
+	}
+	
+}
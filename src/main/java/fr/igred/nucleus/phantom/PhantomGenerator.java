@@ -0,0 +1,487 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.phantom;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij.plugin.GaussianBlur3D;
+import ij.process.ShortProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Generator of synthetic 3D nuclei images (phantoms) with a known ground truth, to test and benchmark the processing
+ * without microscope data.
+ * <p>
+ * Nuclei are ellipsoids, flattened along z, placed at random in a 16-bit stack with an anisotropic calibration. Each
+ * nucleus may hold brighter chromocenters. The image is blurred by a Gaussian point spread function, then Gaussian
+ * noise is added. Sizes are given in calibrated units (µm), so the same parameters give comparable objects for any
+ * calibration. Nuclei may be allowed to touch each other and the image borders, as in wide-field images.
+ * <p>
+ * Channel 0 holds the nuclei and their chromocenters. Additional channels hold a second stain, in which nuclei are
+ * half as bright and chromocenters as bright as in channel 0.
+ * <p>
+ * The random generator is seeded, so the same parameters always give the same phantom.
+ */
+public class PhantomGenerator {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Number of random positions tried for each nucleus before giving up */
+	private static final int    MAX_ATTEMPTS = 1000;
+	/** Smallest distance between touching nuclei, relative to the sum of their radii */
+	private static final double CONTACT      = 0.75;
+	
+	/** Image width */
+	private int     width                 = 256;
+	/** Image height */
+	private int     height                = 256;
+	/** Image depth */
+	private int     depth                 = 32;
+	/** Number of channels */
+	private int     channels              = 1;
+	/** Voxel width (µm) */
+	private double  xCal                  = 0.1;
+	/** Voxel height (µm) */
+	private double  yCal                  = 0.1;
+	/** Voxel depth (µm) */
+	private double  zCal                  = 0.2;
+	/** Number of nuclei */
+	private int     nbNuclei              = 1;
+	/** Mean radius of the nuclei in x and y (µm) */
+	private double  nucleusRadius         = 4;
+	/** Ratio between the z radius and the x and y radii of the nuclei */
+	private double  zRatio                = 0.6;
+	/** Relative variation of the nuclei radii */
+	private double  radiusVariation       = 0.2;
+	/** Number of chromocenters in each nucleus */
+	private int     nbChromocenters;
+	/** Radius of the chromocenters (µm) */
+	private double  chromocenterRadius    = 0.4;
+	/** Background intensity */
+	private int     backgroundIntensity   = 200;
+	/** Nucleus intensity */
+	private int     nucleusIntensity      = 1200;
+	/** Chromocenter intensity */
+	private int     chromocenterIntensity = 2500;
+	/** Standard deviation of the noise */
+	private double  noise                 = 60;
+	/** Standard deviation of the point spread function (µm), 0 for no blur */
+	private double  blur                  = 0.15;
+	/** Whether nuclei may touch each other */
+	private boolean touching;
+	/** Whether nuclei may touch the image borders */
+	private boolean border;
+	/** Random seed */
+	private long    seed                  = 42L;
+	
+	
+	/**
+	 * Sets the image size.
+	 *
+	 * @param width  image width
+	 * @param height image height
+	 * @param depth  image depth
+	 */
+	public void setSize(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+	}
+	
+	
+	/**
+	 * Sets the voxel calibration.
+	 *
+	 * @param xCal voxel width (µm)
+	 * @param yCal voxel height (µm)
+	 * @param zCal voxel depth (µm)
+	 */
+	public void setCalibration(double xCal, double yCal, double zCal) {
+		this.xCal = xCal;
+		this.yCal = yCal;
+		this.zCal = zCal;
+	}
+	
+	
+	/** @param channels number of channels */
+	public void setChannels(int channels) {
+		this.channels = channels;
+	}
+	
+	
+	/** @param nbNuclei number of nuclei to place in the image */
+	public void setNbNuclei(int nbNuclei) {
+		this.nbNuclei = nbNuclei;
+	}
+	
+	
+	/**
+	 * Sets the shape of the nuclei.
+	 *
+	 * @param radius    mean radius in x and y (µm)
+	 * @param zRatio    ratio between the z radius and the x and y radii
+	 * @param variation relative variation of the radii (0 for identical nuclei)
+	 */
+	public void setNucleusShape(double radius, double zRatio, double variation) {
+		this.nucleusRadius = radius;
+		this.zRatio = zRatio;
+		this.radiusVariation = variation;
+	}
+	
+	
+	/**
+	 * Sets the chromocenters drawn in each nucleus.
+	 *
+	 * @param number number of chromocenters in each nucleus (0 for none)
+	 * @param radius radius of the chromocenters (µm)
+	 */
+	public void setChromocenters(int number, double radius) {
+		this.nbChromocenters = number;
+		this.chromocenterRadius = radius;
+	}
+	
+	
+	/**
+	 * Sets the intensities, before blur and noise.
+	 *
+	 * @param background   background intensity
+	 * @param nucleus      nucleus intensity
+	 * @param chromocenter chromocenter intensity
+	 */
+	public void setIntensities(int background, int nucleus, int chromocenter) {
+		this.backgroundIntensity = background;
+		this.nucleusIntensity = nucleus;
+		this.chromocenterIntensity = chromocenter;
+	}
+	
+	
+	/** @param noise standard deviation of the Gaussian noise */
+	public void setNoise(double noise) {
+		this.noise = noise;
+	}
+	
+	
+	/** @param blur standard deviation of the point spread function (µm), 0 for no blur */
+	public void setBlur(double blur) {
+		this.blur = blur;
+	}
+	
+	
+	/** @param touching whether nuclei may touch or overlap each other */
+	public void setTouching(boolean touching) {
+		this.touching = touching;
+	}
+	
+	
+	/** @param border whether nuclei may cross the image borders */
+	public void setBorder(boolean border) {
+		this.border = border;
+	}
+	
+	
+	/** @param seed random seed */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	
+	/**
+	 * Generates a phantom. When a nucleus cannot be placed (not enough room left without touching the others or the
+	 * borders), fewer nuclei are drawn: the ground truth only lists the nuclei actually drawn.
+	 *
+	 * @return the phantom image and its ground truth
+	 */
+	public Phantom generate() {
+		Random               random        = new Random(seed);
+		List<PhantomNucleus> nuclei        = placeNuclei(random);
+		short[][]            nucleusMap    = new short[depth][width * height];
+		short[][]            chromocenters = new short[depth][width * height];
+		drawNuclei(nuclei, nucleusMap);
+		drawChromocenters(nuclei, nucleusMap, chromocenters, random);
+		
+		ImagePlus[] images = new ImagePlus[channels];
+		for (int c = 0; c < channels; ++c) {
+			int intensity = c == 0 ? nucleusIntensity : nucleusIntensity / 2;
+			images[c] = render(nucleusMap, chromocenters, intensity, new Random(seed + c + 1));
+			images[c].setTitle("phantom-C" + c);
+		}
+		ImagePlus image = images[0];
+		if (channels > 1) {
+			ImageStack stack = new ImageStack(width, height);
+			for (int z = 1; z <= depth; ++z) {
+				for (ImagePlus channel : images) {
+					stack.addSlice(channel.getStack().getProcessor(z));
+				}
+			}
+			image = new ImagePlus("phantom", stack);
+			image.setDimensions(channels, depth, 1);
+			image.setOpenAsHyperStack(true);
+			image.setCalibration(calibration());
+		}
+		return new Phantom(images,
+		                   image,
+		                   toImage("nuclei", nucleusMap),
+		                   toImage("chromocenters", chromocenters),
+		                   nuclei);
+	}
+	
+	
+	/**
+	 * Chooses the centre and radii of the nuclei.
+	 *
+	 * @param random random generator
+	 *
+	 * @return the nuclei, labelled from 1
+	 */
+	private List<PhantomNucleus> placeNuclei(Random random) {
+		List<PhantomNucleus> nuclei = new ArrayList<>(nbNuclei);
+		for (int n = 0; n < nbNuclei; ++n) {
+			double   scale  = 1 + radiusVariation * (2 * random.nextDouble() - 1);
+			double   radius = nucleusRadius * scale;
+			double[] radii  = {radius / xCal, radius / yCal, radius * zRatio / zCal};
+			double[] centre = null;
+			for (int attempt = 0; attempt < MAX_ATTEMPTS && centre == null; ++attempt) {
+				double[] candidate = border ?
+				                     new double[]{random.nextDouble() * width,
+				                                  random.nextDouble() * height,
+				                                  (depth - 1) / 2.0} :
+				                     new double[]{radii[0] + 1 + random.nextDouble() * (width - 2 * radii[0] - 3),
+				                                  radii[1] + 1 + random.nextDouble() * (height - 2 * radii[1] - 3),
+				                                  (depth - 1) / 2.0};
+				if (fits(candidate, radii) && isApart(candidate, radius, nuclei)) {
+					centre = candidate;
+				}
+			}
+			if (centre == null) {
+				LOGGER.warn("Not enough room for nucleus {}: {} nuclei drawn.", n + 1, nuclei.size());
+				break;
+			}
+			nuclei.add(new PhantomNucleus(nuclei.size() + 1, centre, radii));
+		}
+		return nuclei;
+	}
+	
+	
+	/**
+	 * Checks if an ellipsoid is inside the image (if nuclei may not cross the borders) and if it fits in its depth.
+	 *
+	 * @return true if the ellipsoid can be placed at this position
+	 */
+	private boolean fits(double[] centre, double[] radii) {
+		boolean inside = centre[0] - radii[0] > 0 && centre[0] + radii[0] < width - 1 &&
+		                 centre[1] - radii[1] > 0 && centre[1] + radii[1] < height - 1;
+		return (border || inside) && centre[2] - radii[2] > 0 && centre[2] + radii[2] < depth - 1;
+	}
+	
+	
+	/**
+	 * Checks if a nucleus is apart from the nuclei already placed, comparing the spheres enclosing them. When nuclei may
+	 * touch, they may overlap a little, but never enough for a nucleus to hide another one.
+	 *
+	 * @param centre centre of the nucleus, in voxels
+	 * @param radius radius of the nucleus in x and y (µm)
+	 * @param nuclei nuclei already placed
+	 *
+	 * @return true if the nucleus is far enough from the others
+	 */
+	private boolean isApart(double[] centre, double radius, List<PhantomNucleus> nuclei) {
+		for (PhantomNucleus nucleus : nuclei) {
+			double[] other = nucleus.getCentre();
+			double   dx    = (centre[0] - other[0]) * xCal;
+			double   dy    = (centre[1] - other[1]) * yCal;
+			double   dz    = (centre[2] - other[2]) * zCal;
+			double   gap   = radius + nucleus.getRadii()[0] * xCal;
+			gap = touching ? CONTACT * gap : gap + 2 * Math.max(xCal, Math.max(yCal, zCal));
+			if (dx * dx + dy * dy + dz * dz < gap * gap) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Draws the nuclei in the label map. A nucleus drawn over another one covers it.
+	 *
+	 * @param nuclei     nuclei to draw
+	 * @param nucleusMap label map of the nuclei
+	 */
+	private void drawNuclei(List<PhantomNucleus> nuclei, short[][] nucleusMap) {
+		for (PhantomNucleus nucleus : nuclei) {
+			int[] bounds = bounds(nucleus.getCentre(), nucleus.getRadii());
+			for (int z = bounds[4]; z <= bounds[5]; ++z) {
+				for (int y = bounds[2]; y <= bounds[3]; ++y) {
+					for (int x = bounds[0]; x <= bounds[1]; ++x) {
+						if (nucleus.contains(x, y, z)) {
+							int offset   = y * width + x;
+							int previous = nucleusMap[z][offset] & 0xFFFF;
+							if (previous > 0) {
+								nuclei.get(previous - 1).removeVoxel();
+							}
+							nucleusMap[z][offset] = (short) nucleus.getLabel();
+							nucleus.addVoxel(x, y, z);
+							if (x == 0 || y == 0 || z == 0 || x == width - 1 || y == height - 1 || z == depth - 1) {
+								nucleus.setOnBorder(true);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Draws the chromocenters in the label map of the chromocenters, inside the voxels of their nucleus.
+	 *
+	 * @param nuclei        nuclei
+	 * @param nucleusMap    label map of the nuclei
+	 * @param chromocenters label map of the chromocenters
+	 * @param random        random generator
+	 */
+	private void drawChromocenters(List<PhantomNucleus> nuclei,
+	                               short[][] nucleusMap,
+	                               short[][] chromocenters,
+	                               Random random) {
+		double[] radii = {chromocenterRadius / xCal, chromocenterRadius / yCal, chromocenterRadius / zCal};
+		int      label = 0;
+		for (PhantomNucleus nucleus : nuclei) {
+			double[] centre       = nucleus.getCentre();
+			double[] nucleusRadii = nucleus.getRadii();
+			for (int c = 0; c < nbChromocenters; ++c) {
+				double[] position = new double[3];
+				double   norm;
+				do {
+					for (int i = 0; i < 3; ++i) {
+						position[i] = 2 * random.nextDouble() - 1;
+					}
+					norm = position[0] * position[0] + position[1] * position[1] + position[2] * position[2];
+				} while (norm > 1);
+				for (int i = 0; i < 3; ++i) {
+					position[i] = centre[i] + 0.6 * position[i] * nucleusRadii[i];
+				}
+				++label;
+				nucleus.addChromocenter();
+				int[] bounds = bounds(position, radii);
+				for (int z = bounds[4]; z <= bounds[5]; ++z) {
+					for (int y = bounds[2]; y <= bounds[3]; ++y) {
+						for (int x = bounds[0]; x <= bounds[1]; ++x) {
+							int    offset = y * width + x;
+							double dx     = (x - position[0]) / radii[0];
+							double dy     = (y - position[1]) / radii[1];
+							double dz     = (z - position[2]) / radii[2];
+							if (dx * dx + dy * dy + dz * dz <= 1 &&
+							    nucleusMap[z][offset] == nucleus.getLabel() &&
+							    chromocenters[z][offset] == 0) {
+								chromocenters[z][offset] = (short) label;
+								nucleus.addChromocenterVoxel();
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the voxels covered by the bounding box of an ellipsoid, clipped to the image.
+	 *
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}
+	 */
+	private int[] bounds(double[] centre, double[] radii) {
+		return new int[]{Math.max(0, (int) Math.floor(centre[0] - radii[0])),
+		                 Math.min(width - 1, (int) Math.ceil(centre[0] + radii[0])),
+		                 Math.max(0, (int) Math.floor(centre[1] - radii[1])),
+		                 Math.min(height - 1, (int) Math.ceil(centre[1] + radii[1])),
+		                 Math.max(0, (int) Math.floor(centre[2] - radii[2])),
+		                 Math.min(depth - 1, (int) Math.ceil(centre[2] + radii[2]))};
+	}
+	
+	
+	/**
+	 * Renders the raw image of a channel: intensities, blur, then noise.
+	 *
+	 * @param nucleusMap    label map of the nuclei
+	 * @param chromocenters label map of the chromocenters
+	 * @param intensity     nucleus intensity in this channel
+	 * @param random        random generator of the noise
+	 *
+	 * @return the 16-bit image
+	 */
+	private ImagePlus render(short[][] nucleusMap, short[][] chromocenters, int intensity, Random random) {
+		short[][] pixels = new short[depth][width * height];
+		for (int z = 0; z < depth; ++z) {
+			for (int i = 0; i < width * height; ++i) {
+				int value = backgroundIntensity;
+				if (chromocenters[z][i] != 0) {
+					value = chromocenterIntensity;
+				} else if (nucleusMap[z][i] != 0) {
+					value = intensity;
+				}
+				pixels[z][i] = (short) Math.min(65535, value);
+			}
+		}
+		ImagePlus image = toImage("phantom", pixels);
+		if (blur > 0) {
+			GaussianBlur3D.blur(image, blur / xCal, blur / yCal, blur / zCal);
+		}
+		if (noise > 0) {
+			for (int z = 1; z <= depth; ++z) {
+				short[] slice = (short[]) image.getStack().getPixels(z);
+				for (int i = 0; i < slice.length; ++i) {
+					long value = Math.round((slice[i] & 0xFFFF) + random.nextGaussian() * noise);
+					slice[i] = (short) Math.max(0, Math.min(65535, value));
+				}
+			}
+		}
+		return image;
+	}
+	
+	
+	/** @return the calibration of the phantom images */
+	private Calibration calibration() {
+		Calibration calibration = new Calibration();
+		calibration.pixelWidth = xCal;
+		calibration.pixelHeight = yCal;
+		calibration.pixelDepth = zCal;
+		calibration.setUnit("µm");
+		return calibration;
+	}
+	
+	
+	/** @return a calibrated 16-bit image made of the given slices */
+	private ImagePlus toImage(String title, short[][] slices) {
+		ImageStack stack = new ImageStack(width, height);
+		for (short[] slice : slices) {
+			stack.addSlice(new ShortProcessor(width, height, slice, null));
+		}
+		ImagePlus image = new ImagePlus(title, stack);
+		image.setCalibration(calibration());
+		return image;
+	}
+	
+}
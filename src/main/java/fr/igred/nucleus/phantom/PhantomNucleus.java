@@ -0,0 +1,165 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.phantom;
+
+import fr.igred.nucleus.autocrop.Box;
+
+
+/**
+ * Ground truth of a nucleus drawn in a phantom image: its ellipsoid, and the voxels it actually covers once drawn
+ * (clipped by the image borders and by the nuclei drawn after it).
+ */
+public class PhantomNucleus {
+	/** Label of the nucleus in the label image */
+	private final int      label;
+	/** Centre of the ellipsoid, in voxels (x, y, z) */
+	private final double[] centre;
+	/** Radii of the ellipsoid, in voxels (x, y, z) */
+	private final double[] radii;
+	/** Bounding box of the voxels of the nucleus */
+	private final Box      box;
+	
+	/** Number of voxels of the nucleus */
+	private int     voxelCount;
+	/** Number of chromocenters drawn in the nucleus */
+	private int     nbChromocenters;
+	/** Number of chromocenter voxels in the nucleus */
+	private int     chromocenterVoxelCount;
+	/** Whether the nucleus touches the image borders */
+	private boolean onBorder;
+	
+	
+	PhantomNucleus(int label, double[] centre, double[] radii) {
+		this.label = label;
+		this.centre = centre.clone();
+		this.radii = radii.clone();
+		this.box = new Box(Integer.MAX_VALUE,
+		                   Integer.MIN_VALUE,
+		                   Integer.MAX_VALUE,
+		                   Integer.MIN_VALUE,
+		                   Integer.MAX_VALUE,
+		                   Integer.MIN_VALUE);
+	}
+	
+	
+	/**
+	 * Checks if a voxel lies inside the ellipsoid.
+	 *
+	 * @param x column
+	 * @param y row
+	 * @param z slice (from 0)
+	 *
+	 * @return true if the voxel centre is inside the ellipsoid
+	 */
+	boolean contains(int x, int y, int z) {
+		double dx = (x - centre[0]) / radii[0];
+		double dy = (y - centre[1]) / radii[1];
+		double dz = (z - centre[2]) / radii[2];
+		return dx * dx + dy * dy + dz * dz <= 1;
+	}
+	
+	
+	/** Adds a voxel to the nucleus. */
+	void addVoxel(int x, int y, int z) {
+		++voxelCount;
+		box.setXMin(Math.min(x, box.getXMin()));
+		box.setXMax(Math.max(x, box.getXMax()));
+		box.setYMin(Math.min(y, box.getYMin()));
+		box.setYMax(Math.max(y, box.getYMax()));
+		box.setZMin(Math.min(z, box.getZMin()));
+		box.setZMax(Math.max(z, box.getZMax()));
+	}
+	
+	
+	/** Removes a voxel from the nucleus, when it is covered by another nucleus. */
+	void removeVoxel() {
+		--voxelCount;
+	}
+	
+	
+	/** Records a chromocenter drawn in the nucleus. */
+	void addChromocenter() {
+		++nbChromocenters;
+	}
+	
+	
+	/** Adds a voxel to the chromocenters of the nucleus. */
+	void addChromocenterVoxel() {
+		++chromocenterVoxelCount;
+	}
+	
+	
+	/** Sets whether the nucleus touches the image borders. */
+	void setOnBorder(boolean onBorder) {
+		this.onBorder = onBorder;
+	}
+	
+	
+	/** @return the label of the nucleus in the label image */
+	public int getLabel() {
+		return label;
+	}
+	
+	
+	/** @return the centre of the ellipsoid, in voxels (x, y, z) */
+	public double[] getCentre() {
+		return centre.clone();
+	}
+	
+	
+	/** @return the radii of the ellipsoid, in voxels (x, y, z) */
+	public double[] getRadii() {
+		return radii.clone();
+	}
+	
+	
+	/**
+	 * Returns the bounding box of the voxels of the nucleus. It may be larger than the voxels left visible when the
+	 * nucleus is partly covered by another one.
+	 *
+	 * @return the bounding box
+	 */
+	public Box getBox() {
+		return new Box(box.getXMin(), box.getXMax(), box.getYMin(), box.getYMax(), box.getZMin(), box.getZMax());
+	}
+	
+	
+	/** @return the number of voxels of the nucleus */
+	public int getVoxelCount() {
+		return voxelCount;
+	}
+	
+	
+	/** @return the number of chromocenters drawn in the nucleus */
+	public int getNbChromocenters() {
+		return nbChromocenters;
+	}
+	
+	
+	/** @return the number of chromocenter voxels in the nucleus */
+	public int getChromocenterVoxelCount() {
+		return chromocenterVoxelCount;
+	}
+	
+	
+	/** @return true if the nucleus touches the image borders */
+	public boolean isOnBorder() {
+		return onBorder;
+	}
+	
+}
@@ -20,6 +20,9 @@ package fr.igred.nucleus.process;
 import fr.igred.nucleus.gui.Progress;
 import fr.igred.nucleus.io.Directory;
 import fr.igred.nucleus.io.FilesNames;
+import fr.igred.nucleus.io.ResultCache;
+import fr.igred.nucleus.utils.BatchExecutor;
+import fr.igred.nucleus.utils.RunMetrics;
 import fr.igred.nucleus.utils2.NucleusChromocentersAnalysis;
 import fr.igred.omero.Client;
 import fr.igred.omero.exception.AccessException;
@@ -39,7 +42,10 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 
@@ -47,6 +53,9 @@ public class ChromocenterCalling {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
+	/** Name of the run in the metrics */
+	private static final String METRICS_NAME = "chromocenter";
+	
 	private final ChromocenterParameters params;
 	
 	private String         prefix;
@@ -57,6 +66,10 @@ public class ChromocenterCalling {
 	private DatasetWrapper outDataset;
 	private String         segImg;
 	private String         gradImg;
+	private int            executorThreads = 1;
+	private int            nbProcessed;
+	private RunMetrics     metrics         = new RunMetrics(METRICS_NAME);
+	private ResultCache    cache;
 	
 	
 	/**
@@ -101,44 +114,142 @@ public class ChromocenterCalling {
 			progress = new Progress("Images Analysis: ", directoryInput.getNumberFiles());
 			progress.setValue(0);
 		}
-		for (short i = 0; i < directoryInput.getNumberFiles(); ++i) {
-			File       currentFile      = directoryInput.getFile(i);
-			String     fileImg          = currentFile.toString();
-			FilesNames outPutFilesNames = new FilesNames(fileImg);
-			FilesNames segCC = new FilesNames(params.getSegmentedInputFolder() +
-			                                  File.separator + currentFile.getName());
-			this.prefix = outPutFilesNames.prefixNameFile();
-			ImagePlus[] raw = BF.openImagePlus(currentFile.getAbsolutePath());
+		List<File> files = directoryInput.listFiles();
+		nbProcessed = 0;
+		
+		/* Computed here: building the parameters text is not thread-safe */
+		String processingHash = cache == null ? null : params.getProcessingHash();
+		
+		metrics = new RunMetrics(METRICS_NAME);
+		BatchExecutor<File, String[]> batch = new BatchExecutor<>(executorThreads);
+		Map<File, Throwable> failures = batch.run(files,
+		                                          currentFile -> runOneImage(currentFile, segCcDir, diffDir,
+		                                                                     processingHash),
+		                                          this::saveResults);
+		if (!failures.isEmpty()) {
+			LOGGER.error("{} image(s) could not be processed: {}", failures.size(), failures.keySet());
+		}
+		metrics.save(params.getOutputFolder(), "result_Chromocenter");
+		if (isGui) {
+			progress.dispose();
+		}
+	}
+	
+	
+	/**
+	 * Segments the chromocenters of one image and computes its parameters.
+	 *
+	 * @param currentFile    raw image file
+	 * @param segCcDir       output directory for segmented chromocenters
+	 * @param diffDir        output directory for gradient images
+	 * @param processingHash hash of the processing parameters, for the cache
+	 *
+	 * @return the nucleus and chromocenters parameters, null if the segmented nucleus is missing
+	 *
+	 * @throws IOException     if an image could not be read or written
+	 * @throws FormatException Bio-formats exception
+	 */
+	private String[] runOneImage(File currentFile, String segCcDir, String diffDir, String processingHash)
+	throws IOException, FormatException {
+		FilesNames segCC = new FilesNames(params.getSegmentedInputFolder() +
+		                                  File.separator + currentFile.getName());
+		if (!segCC.fileExists()) {
+			IJ.log(segCC.getPathFile() + " is missing");
+			return null;
+		}
+		String outputFileName   = segCcDir + File.separator + currentFile.getName();
+		String gradientFileName = diffDir + File.separator + currentFile.getName();
+		
+		try (RunMetrics.Tracking tracking = metrics.track(currentFile.getName())) {
+			File                segmented   = new File(params.getSegmentedInputFolder() + File.separator +
+			                                           currentFile.getName());
+			Map<String, String> outputFiles = new LinkedHashMap<>(2);
+			outputFiles.put("SegCC", outputFileName);
+			outputFiles.put("gradientImage", gradientFileName);
 			
-			String outputFileName   = segCcDir + File.separator + currentFile.getName();
-			String gradientFileName = diffDir + File.separator + currentFile.getName();
+			String key = null;
+			if (cache != null) {
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.CACHE)) {
+					/* The result rows include the image name, so it is part of the key */
+					key = cache.key(METRICS_NAME, processingHash + '\t' + currentFile.getName(),
+					                currentFile, segmented);
+					List<String> rows = cache.restore(key, outputFiles);
+					if (rows != null && rows.size() == 2) {
+						LOGGER.info("Chromocenters restored from the cache: {}", currentFile.getName());
+						return rows.toArray(new String[0]);
+					}
+				}
+			}
 			
-			if (segCC.fileExists()) {
-				ImagePlus[] segNuc = BF.openImagePlus(params.getSegmentedInputFolder() +
-				                                      File.separator + currentFile.getName());
-				ChromocenterSegmentation segmentation = new ChromocenterSegmentation(raw,
-				                                                                     segNuc,
-				                                                                     outputFileName,
-				                                                                     params);
-				segmentation.runCC3D(gradientFileName);
-				NucleusChromocentersAnalysis.compute3DParameters(raw[0],
-				                                                 segNuc[0],
-				                                                 IJ.openImage(outputFileName),
-				                                                 params);
-			} else {
-				IJ.log(segCC.getPathFile() + " is missing");
+			ImagePlus[] raw;
+			ImagePlus[] segNuc;
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.OPEN)) {
+				raw = BF.openImagePlus(currentFile.getAbsolutePath());
+				segNuc = BF.openImagePlus(segmented.getAbsolutePath());
+				RunMetrics.addBytesRead(currentFile.length() + segmented.length());
 			}
-			if (isGui) {
-				progress.setValue(1 + i);
+			ChromocenterSegmentation segmentation = new ChromocenterSegmentation(raw,
+			                                                                     segNuc,
+			                                                                     outputFileName,
+			                                                                     params);
+			segmentation.runCC3D(gradientFileName);
+			String[] results;
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.MEASURE)) {
+				results = NucleusChromocentersAnalysis.compute3DParametersText(raw[0],
+				                                                               segNuc[0],
+				                                                               IJ.openImage(outputFileName));
+			}
+			if (key != null) {
+				cache.store(key, Arrays.asList(results), outputFiles);
+			}
+			return results;
+		}
+	}
+	
+	
+	/**
+	 * Appends the parameters computed for one image to the result files and updates the progress bar.
+	 *
+	 * @param currentFile raw image file
+	 * @param results     nucleus and chromocenters parameters (null if the image was skipped)
+	 */
+	private void saveResults(File currentFile, String[] results) {
+		if (results != null) {
+			this.prefix = new FilesNames(currentFile.toString()).prefixNameFile();
+			try (RunMetrics.Tracking tracking = metrics.track(currentFile.getName());
+			     RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+				NucleusChromocentersAnalysis.save3DParameters(results, params);
+			} catch (IOException e) {
+				LOGGER.error("Could not save the parameters of: {}", currentFile.getName(), e);
 			}
-			
 		}
 		if (isGui) {
-			progress.dispose();
+			progress.setValue(++nbProcessed);
 		}
 	}
 	
 	
+	/**
+	 * Setter for the number of threads used to process images
+	 *
+	 * @param threadNumber number of executors threads
+	 */
+	public void setExecutorThreads(int threadNumber) {
+		this.executorThreads = threadNumber;
+	}
+	
+	
+	/**
+	 * Setter for the result cache: images already processed with the same content, segmented nucleus and parameters,
+	 * in any run sharing the cache, are restored from it instead of being processed again.
+	 *
+	 * @param cache result cache (null to disable it)
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+	
+	
 	public void segmentationOMERO(String inputDirectoryRaw,
 	                              String inputDirectorySeg,
 	                              String outputDirectory,
@@ -318,4 +318,16 @@ public class ChromocenterParameters extends PluginParameters {
 		this.noChange = noChange;
 	}
 	
+	
+	@Override
+	protected String getProcessingParameters() {
+		return super.getProcessingParameters() +
+		       "#Gaussian on raw: " + gaussianOnRaw + '\n' +
+		       "#Gaussian sigmas: " + xGaussianSigma + ' ' + yGaussianSigma + ' ' + zGaussianSigma + '\n' +
+		       "#Gradient factor: " + factor + '\n' +
+		       "#Neighbours: " + neighbours + '\n' +
+		       "#Size filter: " + sizeFiltered + ' ' + minSize + ' ' + maxSize + '\n' +
+		       "#No change: " + noChange + '\n';
+	}
+	
 }
\ No newline at end of file
@@ -19,17 +19,22 @@ package fr.igred.nucleus.process;
 
 import fr.igred.nucleus.utils.Histogram;
 import fr.igred.nucleus.io.ImageSaver;
+import fr.igred.nucleus.utils.LocalStatistics;
+import fr.igred.nucleus.utils.RunMetrics;
+import fr.igred.nucleus.utils.SharedExecutor;
+import fr.igred.nucleus.utils.VoxelView;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.measure.Calibration;
 import ij.plugin.GaussianBlur3D;
 import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
 import inra.ijpb.binary.BinaryImages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
-import java.util.Map;
+import java.util.Arrays;
 
 import static fr.igred.nucleus.utils.Thresholding.binarize;
 
@@ -48,8 +53,8 @@ public class ChromocenterSegmentation {
 	
 	private final String output;
 	
-	private final int    neigh;
-	private final double factor;
+	private int    neigh;
+	private double factor;
 	
 	private int nbPixelNuc;
 	
@@ -71,17 +76,8 @@ public class ChromocenterSegmentation {
 		this.raw = raw;
 		this.segNuc = segNuc;
 		this.output = outputFileName;
-		setNbPixelNuc3D();
-		int initialV = params.getNeighbours();
-		LOGGER.info("\t{}", initialV);
-		if (!this.params.isNoChange() && nbPixelNuc * getVoxelVolume3D() > 50) {
-			this.neigh = (int) (this.params.getNeighbours() * 2.5);
-			this.factor = this.params.getFactor() + 1;
-		} else {
-			this.neigh = this.params.getNeighbours();
-			this.factor = this.params.getFactor();
-		}
-		LOGGER.info("\t{} {}{}", neigh, factor, System.lineSeparator());
+		this.neigh = params.getNeighbours();
+		this.factor = params.getFactor();
 	}
 	
 	
@@ -93,84 +89,108 @@ public class ChromocenterSegmentation {
 	 */
 	
 	public void runCC3D(String pathGradient) {
-		if (params.useGaussianOnRaw()) {
-			GaussianBlur3D.blur(raw[0],
+		ImagePlus   imageGradient;
+		Calibration cal = raw[0].getCalibration();
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.PREPROCESS)) {
+			if (params.useGaussianOnRaw()) {
+				GaussianBlur3D.blur(raw[0],
+				                    params.getXGaussianSigma(),
+				                    params.getYGaussianSigma(),
+				                    params.getZGaussianSigma());
+			}
+			
+			LocalStatistics local = new LocalStatistics(raw[0], segNuc[0], false);
+			setNeighbourhood(countNucleusVoxels(local, raw[0]));
+			imageGradient = imgGradient3D(local);
+			GaussianBlur3D.blur(imageGradient,
 			                    params.getXGaussianSigma(),
 			                    params.getYGaussianSigma(),
 			                    params.getZGaussianSigma());
+			imageGradient.setCalibration(cal);
 		}
-		
-		ImagePlus   imageGradient = imgGradient3D();
-		Calibration cal           = raw[0].getCalibration();
-		GaussianBlur3D.blur(imageGradient,
-		                    params.getXGaussianSigma(),
-		                    params.getYGaussianSigma(),
-		                    params.getZGaussianSigma());
-		imageGradient.setCalibration(cal);
-		ImageSaver.saveFile(imageGradient, pathGradient);
-		computeAverage3D(imageGradient);
-		computeStdDev3D(imageGradient);
-		double threshold = avgNucIntensity + factor * stdDevNucIntensity;
-		LOGGER.info("{} {} avg {} std {}", output, threshold, avgNucIntensity, stdDevNucIntensity);
-		binarize(imageGradient, threshold);
-		imageGradient = BinaryImages.componentsLabeling(imageGradient, 26, 16);
-		imageGradient.setCalibration(cal);
-		if (params.isSizeFiltered()) {
-			imageGradient = componentSizeFilter3D(imageGradient);
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+			ImageSaver.saveFile(imageGradient, pathGradient);
+		}
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.THRESHOLD)) {
+			computeStatistics3D(imageGradient);
+			double threshold = avgNucIntensity + factor * stdDevNucIntensity;
+			LOGGER.info("{} {} avg {} std {}", output, threshold, avgNucIntensity, stdDevNucIntensity);
+			binarize(imageGradient, threshold);
+		}
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.MORPHOLOGY)) {
+			imageGradient = BinaryImages.componentsLabeling(imageGradient, 26, 16);
 			imageGradient.setCalibration(cal);
+			if (params.isSizeFiltered()) {
+				imageGradient = componentSizeFilter3D(imageGradient);
+				imageGradient.setCalibration(cal);
+			}
 		}
 		
-		ImageSaver.saveFile(imageGradient, output);
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+			ImageSaver.saveFile(imageGradient, output);
+		}
 	}
 	
 	
 	/**
 	 * Create and save the diff image. for each pixel compute the new value computing the average subtraction between
 	 * the pixel of interest and all pixel inside the neighbor 3
+	 * <p>
+	 * The current neighbourhood size is used: the one from the parameters, unless {@link #runCC3D(String)} widened it.
 	 *
 	 * @return : gradient image
 	 */
 	public ImagePlus imgGradient3D() {
-		ImageStack is     = raw[0].getStack();
-		ImageStack isBin  = segNuc[0].getStack();
-		ImageStack isDiff = new ImageStack(raw[0].getWidth(), raw[0].getHeight(), raw[0].getNSlices());
-		for (int z = 0; z < raw[0].getNSlices(); ++z) {
-			FloatProcessor ipDiff = new FloatProcessor(is.getWidth(), is.getHeight());
-			for (int x = 0; x < raw[0].getWidth(); ++x) {
-				for (int y = 0; y < raw[0].getHeight(); ++y) {
-					double sum    = 0;
-					int    nb     = 0;
-					double valueA = is.getVoxel(x, y, z);
-					if (isBin.getVoxel(x, y, z) > 0) {
-						for (int zz = z - neigh; zz < z + neigh; ++zz) {
-							for (int xx = x - neigh; xx < x + neigh; ++xx) {
-								for (int yy = y - neigh; yy < y + neigh; ++yy) {
-									if (xx < raw[0].getWidth() &&
-									    yy < raw[0].getHeight() &&
-									    zz < raw[0].getNSlices()) {
-										if (isBin.getVoxel(xx, yy, zz) > 0) {
-											double valueB = is.getVoxel(xx, yy, zz);
-											if (Double.isNaN(is.getVoxel(x, y, z))) {
-												valueA = 0;
-											}
-											if (Double.isNaN(is.getVoxel(xx, yy, zz))) {
-												valueB = 0;
-											}
-											double plop = valueA - valueB;
-											sum += plop;
-										}
-										nb++;
-									}
-								}
-							}
+		return imgGradient3D(new LocalStatistics(raw[0], segNuc[0], false));
+	}
+	
+	
+	/**
+	 * Create the diff image from the summed-area tables of the raw image on the nucleus mask: the sums over the
+	 * neighbourhoods are read in constant time for each voxel.
+	 *
+	 * @param local summed-area tables of the raw image on the nucleus mask
+	 *
+	 * @return : gradient image
+	 */
+	private ImagePlus imgGradient3D(LocalStatistics local) {
+		int              width  = raw[0].getWidth();
+		int              height = raw[0].getHeight();
+		int              depth  = raw[0].getNSlices();
+		ImageStack       is     = raw[0].getStack();
+		ImageStack       isBin  = segNuc[0].getStack();
+		ImageStack       isDiff = new ImageStack(width, height, depth);
+		FloatProcessor[] diffs  = new FloatProcessor[depth];
+		SharedExecutor.parallelFor(0, depth, z -> {
+			ImageProcessor ip     = is.getProcessor(z + 1);
+			ImageProcessor ipBin  = isBin.getProcessor(z + 1);
+			FloatProcessor ipDiff = new FloatProcessor(width, height);
+			// Neighbourhood positions counted along z: those below 0 are included, those after the last slice are not
+			long nbZ = Math.min(z + neigh, depth) - (z - neigh);
+			for (int y = 0; y < height; ++y) {
+				long nbYZ = nbZ * (Math.min(y + neigh, height) - (y - neigh));
+				for (int x = 0; x < width; ++x) {
+					if (ipBin.getf(x, y) > 0) {
+						long   nb     = nbYZ * (Math.min(x + neigh, width) - (x - neigh));
+						double valueA = ip.getf(x, y);
+						if (Double.isNaN(valueA)) {
+							valueA = 0;
 						}
-						sum = nb != 0 ? sum / nb : Double.NaN;
+						int nbMasked = local.count(x - neigh, x + neigh,
+						                           y - neigh, y + neigh,
+						                           z - neigh, z + neigh);
+						double sum = nbMasked * valueA - local.sum(x - neigh, x + neigh,
+						                                           y - neigh, y + neigh,
+						                                           z - neigh, z + neigh);
+						sum = nb > 0 ? sum / nb : Double.NaN;
 						ipDiff.setf(x, y, (float) sum);
 					}
-					
 				}
 			}
-			isDiff.setProcessor(ipDiff, z + 1);
+			diffs[z] = ipDiff;
+		});
+		for (int z = 0; z < depth; ++z) {
+			isDiff.setProcessor(diffs[z], z + 1);
 		}
 		ImagePlus imgDiff = new ImagePlus();
 		imgDiff.setStack(isDiff);
@@ -179,65 +199,49 @@ public class ChromocenterSegmentation {
 	
 	
 	/**
-	 * Method to compute image mean intensity only on nucleus mask.
+	 * Method to compute the number of voxels, the mean intensity and the standard deviation of intensity on the
+	 * nucleus mask, in a single pass.
 	 *
-	 * @param : raw image
+	 * @param imgDiff image gradient
 	 */
-	private void computeAverage3D(ImagePlus imgDiff) {
-		ImageStack isRaw = imgDiff.getStack();
-		ImageStack isSeg = segNuc[0].getStack();
-		double     sum   = 0;
-		for (int k = 0; k < raw[0].getNSlices(); ++k) {
-			for (int i = 0; i < raw[0].getWidth(); ++i) {
-				for (int j = 0; j < raw[0].getHeight(); ++j) {
-					if (isSeg.getVoxel(i, j, k) > 1) {
-						sum += isRaw.getVoxel(i, j, k);
-					}
-				}
-			}
-		}
-		this.avgNucIntensity = sum / nbPixelNuc;
+	private void computeStatistics3D(ImagePlus imgDiff) {
+		double[] statistics = LocalStatistics.maskedMeanAndStdDev(imgDiff, segNuc[0], 1);
+		this.nbPixelNuc = (int) statistics[0];
+		this.avgNucIntensity = statistics[1];
+		this.stdDevNucIntensity = statistics[2];
 	}
 	
 	
 	/**
-	 * Method to compute standard deviation of intensity average from nucleus mask.
+	 * Counts the nucleus voxels over the whole image from the summed-area tables of the mask.
+	 *
+	 * @param local summed-area tables built on the nucleus mask
+	 * @param image image the tables were built from
 	 *
-	 * @param : image gradient
+	 * @return number of nucleus voxels
 	 */
-	private void computeStdDev3D(ImagePlus imgDiff) {
-		ImageStack is    = imgDiff.getStack();
-		ImageStack isSeg = segNuc[0].getStack();
-		double     sum   = 0;
-		for (int k = 0; k < raw[0].getNSlices(); ++k) {
-			for (int i = 0; i < raw[0].getWidth(); ++i) {
-				for (int j = 0; j < raw[0].getHeight(); ++j) {
-					if (isSeg.getVoxel(i, j, k) > 1) {
-						sum += (is.getVoxel(i, j, k) - avgNucIntensity) *
-						       (is.getVoxel(i, j, k) - avgNucIntensity);
-					}
-				}
-			}
-		}
-		this.stdDevNucIntensity = Math.sqrt(sum / nbPixelNuc);
+	static int countNucleusVoxels(LocalStatistics local, ImagePlus image) {
+		return local.count(0, image.getWidth(), 0, image.getHeight(), 0, image.getNSlices());
 	}
 	
 	
 	/**
+	 * Chooses the neighbourhood size and the threshold factor: large nuclei use a wider neighbourhood and a higher
+	 * factor, unless the parameters forbid it.
 	 *
+	 * @param nbVoxels number of nucleus voxels
 	 */
-	private void setNbPixelNuc3D() {
-		this.nbPixelNuc = 0;
-		ImageStack isSeg = segNuc[0].getStack();
-		for (int k = 0; k < raw[0].getNSlices(); ++k) {
-			for (int i = 0; i < raw[0].getWidth(); ++i) {
-				for (int j = 0; j < raw[0].getHeight(); ++j) {
-					if (isSeg.getVoxel(i, j, k) > 1) {
-						this.nbPixelNuc++;
-					}
-				}
-			}
+	private void setNeighbourhood(int nbVoxels) {
+		this.nbPixelNuc = nbVoxels;
+		LOGGER.info("\t{}", params.getNeighbours());
+		if (!params.isNoChange() && nbPixelNuc * getVoxelVolume3D() > 50) {
+			this.neigh = (int) (params.getNeighbours() * 2.5);
+			this.factor = params.getFactor() + 1;
+		} else {
+			this.neigh = params.getNeighbours();
+			this.factor = params.getFactor();
 		}
+		LOGGER.info("\t{} {}{}", neigh, factor, System.lineSeparator());
 	}
 	
 	
@@ -249,27 +253,25 @@ public class ChromocenterSegmentation {
 	private ImagePlus componentSizeFilter3D(ImagePlus imageGradient) {
 		Histogram histogram = new Histogram();
 		histogram.run(imageGradient);
-		histogram.getHistogram();
-		Map<Double, Integer> parcour = histogram.getHistogram();
-		ImagePlus            imgCc   = imageGradient.duplicate();
-		ImageStack           is      = imgCc.getStack();
-		for (Map.Entry<Double, Integer> entry : parcour.entrySet()) {
-			Double  cle    = entry.getKey();
-			Integer valeur = entry.getValue();
-			if ((valeur * getVoxelVolume3D() < params.getMinSize() ||
-			     valeur * getVoxelVolume3D() > params.getMaxSize()) &&
-			    valeur > 1) {
-				for (int k = 0; k < raw[0].getNSlices(); ++k) {
-					for (int i = 0; i < raw[0].getWidth(); ++i) {
-						for (int j = 0; j < raw[0].getHeight(); ++j) {
-							if (is.getVoxel(i, j, k) == cle) {
-								is.setVoxel(i, j, k, 0);
-							}
-						}
-					}
+		double[]  labels  = histogram.getLabels();
+		boolean[] removed = new boolean[labels.length];
+		for (int l = 0; l < labels.length; ++l) {
+			int valeur = histogram.getCountAt(l);
+			removed[l] = (valeur * getVoxelVolume3D() < params.getMinSize() ||
+			              valeur * getVoxelVolume3D() > params.getMaxSize()) &&
+			             valeur > 1;
+		}
+		ImagePlus imgCc  = imageGradient.duplicate();
+		VoxelView voxels = VoxelView.of(imgCc);
+		int       size   = raw[0].getWidth() * raw[0].getHeight();
+		voxels.forEachSlice(k -> {
+			for (int offset = 0; offset < size; ++offset) {
+				int l = Arrays.binarySearch(labels, voxels.get(k, offset));
+				if (l >= 0 && removed[l]) {
+					voxels.set(k, offset, 0);
 				}
 			}
-		}
+		});
 		imgCc = BinaryImages.componentsLabeling(imgCc, 26, 16);
 		return imgCc;
 	}
@@ -18,8 +18,8 @@
 package fr.igred.nucleus.segmentation;
 
 import fr.igred.nucleus.core.Measure3D;
-import fr.igred.nucleus.utils.ConvexHullDetection;
 import fr.igred.nucleus.utils.ConvexHullSegmentation;
+import fr.igred.nucleus.utils.RunMetrics;
 import fr.igred.nucleus.utils.FillingHoles;
 import fr.igred.omero.Client;
 import fr.igred.omero.annotations.TagAnnotationWrapper;
@@ -56,9 +56,9 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 
 import static fr.igred.nucleus.io.ImageSaver.saveFile;
@@ -89,6 +89,10 @@ public class NucleusSegmentation {
 	private       boolean                badCrop;
 	/** Segmented image */
 	private       ImagePlus[]            imageSeg;
+	/** Gradient of the raw image, shared by the threshold sweep and the measures */
+	private       Gradient               gradient;
+	/** Temporary folder holding the segmentations of this image until their import in OMERO */
+	private       Path                   exportFolder;
 	
 	
 	/**
@@ -112,7 +116,7 @@ public class NucleusSegmentation {
 		dirOutputOTSU.checkAndCreateDir();
 		if (params.getConvexHullDetection()) {
 			Directory dirOutputConvexHull = new Directory(params.getOutputFolder() +
-			                                              ConvexHullDetection.CONVEX_HULL_ALGORITHM);
+			                                              ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
 			dirOutputConvexHull.checkAndCreateDir();
 		}
 	}
@@ -131,6 +135,20 @@ public class NucleusSegmentation {
 	}
 	
 	
+	/**
+	 * Constructor for the segmentation analysis of an image already in memory.
+	 *
+	 * @param imp    image to segment
+	 * @param params list the parameters for the analyse
+	 */
+	public NucleusSegmentation(ImagePlus imp, SegmentationParameters params) {
+		this.segmentationParameters = params;
+		this.imgRaw = imp;
+		this.imgRawTransformed = imgRaw.duplicate();
+		imgRawTransformed.setTitle(imgRaw.getTitle());
+	}
+	
+	
 	// Changed HERE TO RETRIEVE ONLY ID, ALLOWING MULTI THREADING DOWNLOAD
 	public NucleusSegmentation(ImageWrapper image, ImagePlus imp, SegmentationParameters params) {
 		this.segmentationParameters = params;
@@ -191,6 +209,7 @@ public class NucleusSegmentation {
 	 */
 	public static ImagePlus getImageChannel(File imageFile, int channel) throws IOException, FormatException {
 		ImagePlus[] currentImage = BF.openImagePlus(imageFile.getAbsolutePath());
+		RunMetrics.addBytesRead(imageFile.length());
 		currentImage = ChannelSplitter.split(currentImage[channel]);
 		return currentImage[0];
 	}
@@ -206,7 +225,10 @@ public class NucleusSegmentation {
 	public String saveImageResult(ImagePlus[] segmentedImage) {
 		Measure3D measure3D = new Measure3D(segmentedImage, imgRaw,
 		                                    getXCalibration(), getYCalibration(), getZCalibration());
-		return measure3D.nucleusParameter3D();
+		measure3D.setGradient(gradient);
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.MEASURE)) {
+			return measure3D.nucleusParameter3D();
+		}
 	}
 	
 	
@@ -229,99 +251,119 @@ public class NucleusSegmentation {
 		LOGGER.info("Finding OTSU to maximize sphericity.");
 		double imageVolume = getVoxelVolume() * imgRaw.getWidth() *
 		                     imgRaw.getHeight() * imgRaw.getStackSize();
-		Gradient gradient       = new Gradient(imgRaw);
-		double   bestSphericity = -1;
+		double bestSphericity = -1;
 		
-		List<Integer> arrayListThreshold = computeMinMaxThreshold(imgRawTransformed);  // methode OTSU
-		for (int t = arrayListThreshold.get(0); t <= arrayListThreshold.get(1); ++t) {
-			ImagePlus tempSeg;
-			tempSeg = createMask(imgRawTransformed, t);
+		Calibration cal = imgRaw.getCalibration();
+		if (segmentationParameters.isManualParameter()) {
+			//TODO ADD UNITS
+			cal.setXUnit("µm");
+			cal.pixelWidth = segmentationParameters.getXCal();
+			cal.setYUnit("µm");
+			cal.pixelHeight = segmentationParameters.getYCal();
+			cal.setZUnit("µm");
+			cal.pixelDepth = segmentationParameters.getZCal();
+		} else {
+			cal.setXUnit("µm");
+			cal.setYUnit("µm");
+			cal.setZUnit("µm");
+		}
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.THRESHOLD_SWEEP)) {
+			/* Computed once the calibration is set, then reused by the measures */
+			this.gradient = new Gradient(imgRaw);
 			
-			tempSeg = BinaryImages.componentsLabeling(tempSeg, 26, 32);
-			Calibration cal = imgRaw.getCalibration();
-			if (segmentationParameters.isManualParameter()) {
-				//TODO ADD UNITS
-				cal.setXUnit("µm");
-				cal.pixelWidth = segmentationParameters.getXCal();
-				cal.setYUnit("µm");
-				cal.pixelHeight = segmentationParameters.getYCal();
-				cal.setZUnit("µm");
-				cal.pixelDepth = segmentationParameters.getZCal();
-			} else {
-				cal.setXUnit("µm");
-				cal.pixelWidth = imgRaw.getCalibration().pixelWidth;
-				cal.setYUnit("µm");
-				cal.pixelHeight = imgRaw.getCalibration().pixelHeight;
-				cal.setZUnit("µm");
-				cal.pixelDepth = imgRaw.getCalibration().pixelDepth;
-			}
-			tempSeg.setCalibration(cal);
-			ImagePlus[] tempSegPlus = new ImagePlus[1];
-			tempSegPlus[0] = tempSeg;
-			Measure3D measure = new Measure3D(tempSegPlus,
-			                                  imgRawTransformed,
-			                                  getXCalibration(),
-			                                  getYCalibration(),
-			                                  getZCalibration());
-			deleteArtefact(tempSeg);
-			double  volume     = measure.computeVolumeObject2(255);
-			boolean firstStack = isVoxelThresholded(tempSeg, 255, 0);
-			boolean lastStack  = isVoxelThresholded(tempSeg, 255, tempSeg.getStackSize() - 1);
-			if (testRelativeObjectVolume(volume, imageVolume) &&
-			    volume >= segmentationParameters.getMinVolumeNucleus() &&
-			    volume <= segmentationParameters.getMaxVolumeNucleus() &&
-			    !firstStack && !lastStack) {
-				double sphericity = Measure3D.computeSphericity(volume, Measure3D.computeComplexSurface(tempSeg, gradient));
-				if (sphericity > bestSphericity) {
-					this.bestThreshold = t;
-					bestSphericity = sphericity;
-					this.imageSeg = tempSegPlus;
-					imageSeg[0].setTitle(imgRawTransformed.getTitle());
+			List<Integer> arrayListThreshold = computeMinMaxThreshold(imgRawTransformed);  // methode OTSU
+			int           minThreshold       = arrayListThreshold.get(0);
+			int           maxThreshold       = arrayListThreshold.get(1);
+			
+			/* Every threshold is evaluated in one pass, from the highest to the lowest */
+			ThresholdSweep sweep = new ThresholdSweep(imgRawTransformed, gradient,
+			                                          cal.pixelWidth, cal.pixelHeight, cal.pixelDepth);
+			sweep.run(minThreshold, maxThreshold);
+			double voxelVolume = getXCalibration() * getYCalibration() * getZCalibration();
+			for (int t = minThreshold; t <= maxThreshold; ++t) {
+				int     nbVoxels   = sweep.getVoxelCount(t);
+				double  volume     = nbVoxels * voxelVolume;
+				boolean firstStack = sweep.isFirstSliceThresholded(t);
+				boolean lastStack  = sweep.isLastSliceThresholded(t);
+				if (nbVoxels > 0 &&
+				    testRelativeObjectVolume(volume, imageVolume) &&
+				    volume >= segmentationParameters.getMinVolumeNucleus() &&
+				    volume <= segmentationParameters.getMaxVolumeNucleus() &&
+				    !firstStack && !lastStack) {
+					double sphericity = Measure3D.computeSphericity(volume, sweep.getSurface(t));
+					if (sphericity > bestSphericity) {
+						this.bestThreshold = t;
+						bestSphericity = sphericity;
+					}
 				}
 			}
 		}
 		
 		if (bestThreshold != -1) {
-			imageSeg[0] = morphologicalCorrection(imageSeg[0]);
-			checkBorder(imageSeg[0]);
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.MORPHOLOGY)) {
+				imageSeg = new ImagePlus[1];
+				imageSeg[0] = segmentLargestObject(bestThreshold, cal);
+				imageSeg[0] = morphologicalCorrection(imageSeg[0]);
+				checkBorder(imageSeg[0]);
+			}
 		}
 	}
 	
 	
+	/**
+	 * Thresholds the transformed image and keeps the largest object.
+	 *
+	 * @param threshold   threshold value
+	 * @param calibration calibration of the segmented image
+	 *
+	 * @return segmented image
+	 */
+	private ImagePlus segmentLargestObject(int threshold, Calibration calibration) {
+		ImagePlus segmented = createMask(imgRawTransformed, threshold);
+		segmented = BinaryImages.componentsLabeling(segmented, 26, 32);
+		segmented.setCalibration(calibration);
+		deleteArtefact(segmented);
+		segmented.setTitle(imgRawTransformed.getTitle());
+		return segmented;
+	}
+	
+	
 	/**
 	 * Pre process ot the raw image : - Gaussian blur - LUT application
 	 * <p> TODO object function image transformation
 	 */
 	public void preProcessImage() {
 		LOGGER.info("Preprocessing image.");
-		GaussianBlur3D.blur(imgRawTransformed, 0.1, 0.1, 1);
-		ImageStack imageStack = imgRawTransformed.getStack();
-		
-		int max = 0;
-		for (int k = 0; k < imgRawTransformed.getStackSize(); ++k) {
-			for (int b = 0; b < imgRawTransformed.getWidth(); ++b) {
-				for (int j = 0; j < imgRawTransformed.getHeight(); ++j) {
-					if (max < imageStack.getVoxel(b, j, k)) {
-						max = (int) imageStack.getVoxel(b, j, k);
+		try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.PREPROCESS)) {
+			GaussianBlur3D.blur(imgRawTransformed, 0.1, 0.1, 1);
+			ImageStack imageStack = imgRawTransformed.getStack();
+			
+			int max = 0;
+			for (int k = 0; k < imgRawTransformed.getStackSize(); ++k) {
+				for (int b = 0; b < imgRawTransformed.getWidth(); ++b) {
+					for (int j = 0; j < imgRawTransformed.getHeight(); ++j) {
+						if (max < imageStack.getVoxel(b, j, k)) {
+							max = (int) imageStack.getVoxel(b, j, k);
+						}
 					}
 				}
 			}
-		}
-		imgRawTransformed.setDisplayRange(0, max);
-		/* Prepare LutApplier */
-		PlugInFilter lutApplier = new LutApplier();
-		lutApplier.setup("", imgRawTransformed);
-		/* Set stack mode with Macro class, but thread has to be renamed */
-		String threadName = Thread.currentThread().getName();
-		Thread.currentThread().setName("Run$_" + threadName);
-		Macro.setOptions("stack");
-		/* Apply LUT */
-		lutApplier.run(imgRawTransformed.getProcessor());
-		/* Restore thread name */
-		Thread.currentThread().setName(threadName);
-		if (imgRaw.getType() == ImagePlus.GRAY16) {
-			StackConverter stackConverter = new StackConverter(imgRawTransformed);
-			stackConverter.convertToGray8();
+			imgRawTransformed.setDisplayRange(0, max);
+			/* Prepare LutApplier */
+			PlugInFilter lutApplier = new LutApplier();
+			lutApplier.setup("", imgRawTransformed);
+			/* Set stack mode with Macro class, but thread has to be renamed */
+			String threadName = Thread.currentThread().getName();
+			Thread.currentThread().setName("Run$_" + threadName);
+			Macro.setOptions("stack");
+			/* Apply LUT */
+			lutApplier.run(imgRawTransformed.getProcessor());
+			/* Restore thread name */
+			Thread.currentThread().setName(threadName);
+			if (imgRaw.getType() == ImagePlus.GRAY16) {
+				StackConverter stackConverter = new StackConverter(imgRawTransformed);
+				stackConverter.convertToGray8();
+			}
 		}
 	}
 	
@@ -400,35 +442,6 @@ public class NucleusSegmentation {
 	}
 	
 	
-	/**
-	 * Determines the number of pixel on the stack index in input return true if the number of pixel>=10.
-	 *
-	 * @param imagePlusSegmented ImagePlus segmented image
-	 * @param threshold          int number of pixel
-	 * @param stackIndex         index of the slice of interest
-	 *
-	 * @return boolean true if the nb of pixel is > to threshold else false
-	 */
-	private static boolean isVoxelThresholded(ImagePlus imagePlusSegmented,
-	                                          int threshold,
-	                                          int stackIndex) {
-		boolean    voxelThresolded     = false;
-		int        nbVoxelThresholded  = 0;
-		ImageStack imageStackSegmented = imagePlusSegmented.getStack();
-		for (int i = 0; i < imagePlusSegmented.getWidth(); ++i) {
-			for (int j = 0; j < imagePlusSegmented.getHeight(); ++j) {
-				if (imageStackSegmented.getVoxel(i, j, stackIndex) >= threshold) {
-					nbVoxelThresholded++;
-				}
-			}
-		}
-		if (nbVoxelThresholded >= 10) {
-			voxelThresolded = true;
-		}
-		return voxelThresolded;
-	}
-	
-	
 	/**
 	 * method to realise morphological correction (filling holes and top hat)
 	 *
@@ -514,14 +527,14 @@ public class NucleusSegmentation {
 	private static double getLabelOfLargestObject(ImagePlus imgSeg) {
 		Histogram histogram = new Histogram();
 		histogram.run(imgSeg);
-		double labelMax   = 0;
-		double nbVoxelMax = -1;
-		for (Entry<Double, Integer> entry : histogram.getHistogram().entrySet()) {
-			double label   = entry.getKey();
-			int    nbVoxel = entry.getValue();
+		double[] labels     = histogram.getLabels();
+		double   labelMax   = 0;
+		double   nbVoxelMax = -1;
+		for (int i = 0; i < labels.length; ++i) {
+			int nbVoxel = histogram.getCountAt(i);
 			if (nbVoxel > nbVoxelMax) {
 				nbVoxelMax = nbVoxel;
-				labelMax = label;
+				labelMax = labels[i];
 			}
 		}
 		return labelMax;
@@ -607,19 +620,30 @@ public class NucleusSegmentation {
 	public void checkBadCrop(String inputPathDir) {
 		LOGGER.info("Checking bad crop.");
 		if (badCrop || bestThreshold == -1) {
-			File badCropFolder = new File(inputPathDir + File.separator + "BadCrop");
-			LOGGER.debug("Saving bad crops to: {}", badCropFolder);
-			
-			if (badCropFolder.exists() || badCropFolder.mkdir()) {
-				File    fileToMove = new File(inputPathDir + File.separator + imgRawTransformed.getTitle());
-				File    newFile    = new File(badCropFolder + File.separator + imgRawTransformed.getTitle());
-				boolean renamed    = fileToMove.renameTo(newFile);
-				if (!renamed) {
-					LOGGER.info("File not renamed: {}", fileToMove.getAbsolutePath());
-				}
-			} else {
-				LOGGER.error("Directory does not exist and could not be created: {}", badCropFolder);
+			moveToBadCrop(inputPathDir, imgRawTransformed.getTitle());
+		}
+	}
+	
+	
+	/**
+	 * Moves an input image to the badcrop folder.
+	 *
+	 * @param inputPathDir folder of the input to create badcrop folder.
+	 * @param fileName     name of the input image
+	 */
+	public static void moveToBadCrop(String inputPathDir, String fileName) {
+		File badCropFolder = new File(inputPathDir + File.separator + "BadCrop");
+		LOGGER.debug("Saving bad crops to: {}", badCropFolder);
+		
+		if (badCropFolder.exists() || badCropFolder.mkdir()) {
+			File    fileToMove = new File(inputPathDir + File.separator + fileName);
+			File    newFile    = new File(badCropFolder + File.separator + fileName);
+			boolean renamed    = fileToMove.renameTo(newFile);
+			if (!renamed) {
+				LOGGER.info("File not renamed: {}", fileToMove.getAbsolutePath());
 			}
+		} else {
+			LOGGER.error("Directory does not exist and could not be created: {}", badCropFolder);
 		}
 	}
 	
@@ -687,7 +711,9 @@ public class NucleusSegmentation {
 			                     "OTSU" +
 			                     File.separator +
 			                     imageSeg[0].getTitle();
-			saveFile(imageSeg[0], pathSegOTSU);
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+				saveFile(imageSeg[0], pathSegOTSU);
+			}
 			
 		}
 	}
@@ -699,21 +725,73 @@ public class NucleusSegmentation {
 	 */
 	public void saveOTSUSegmentedOMERO(Client client, Long output)
 	throws IOException, AccessException, ServiceException, ExecutionException, OMEROServerError {
+		String path = exportOTSUSegmented();
+		if (path != null) {
+			importImageOMERO(client, output, path);
+		}
+	}
+	
+	
+	/**
+	 * Saves the OTSU segmented image in a temporary folder, before its import in OMERO.
+	 *
+	 * @return the path of the saved file, or null if the nucleus was not segmented
+	 *
+	 * @throws IOException if the temporary folder cannot be created
+	 */
+	public String exportOTSUSegmented() throws IOException {
 		LOGGER.info("Computing and saving OTSU segmentation.");
+		String path = null;
 		if (!badCrop && bestThreshold != -1) {
-			String path = new java.io.File(".").getCanonicalPath() +
-			              // File.separator + "OTSU" +
-			              File.separator + imageSeg[0].getTitle();
-			saveFile(imageSeg[0], path);
-			
-			client.getDataset(output).importImages(client, path);
-			
-			File file = new File(path);
-			try {
-				Files.deleteIfExists(file.toPath());
-			} catch (IOException e) {
-				LOGGER.error("Could not delete file: {}", path);
-			}
+			path = export(imageSeg[0], "OTSU");
+		}
+		return path;
+	}
+	
+	
+	/**
+	 * Saves a segmentation in its own subfolder of the temporary folder of this image, so that the segmentations of
+	 * an image, which share its title, do not overwrite each other.
+	 *
+	 * @param segmentation segmented image
+	 * @param method       segmentation method, used as subfolder name
+	 *
+	 * @return the path of the saved file
+	 *
+	 * @throws IOException if the folder cannot be created
+	 */
+	String export(ImagePlus segmentation, String method) throws IOException {
+		if (exportFolder == null) {
+			exportFolder = Files.createTempDirectory("nucleusj-");
+			exportFolder.toFile().deleteOnExit();
+		}
+		Path folder = exportFolder.resolve(method);
+		if (!Files.isDirectory(folder)) {
+			Files.createDirectory(folder);
+			folder.toFile().deleteOnExit();
+		}
+		String path = folder.resolve(segmentation.getTitle()).toString();
+		saveFile(segmentation, path);
+		return path;
+	}
+	
+	
+	/**
+	 * Imports an image file in an OMERO dataset, then deletes the file.
+	 *
+	 * @param client OMERO client
+	 * @param output ID of the dataset
+	 * @param path   path of the image file
+	 */
+	public static void importImageOMERO(Client client, Long output, String path)
+	throws IOException, AccessException, ServiceException, ExecutionException, OMEROServerError {
+		client.getDataset(output).importImages(client, path);
+		
+		File file = new File(path);
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			LOGGER.error("Could not delete file: {}", path);
 		}
 	}
 	
@@ -725,11 +803,16 @@ public class NucleusSegmentation {
 	public void saveConvexHullSeg() {
 		LOGGER.info("Computing and saving Convex Hull segmentation.");
 		if (!badCrop && bestThreshold != -1 && segmentationParameters.getConvexHullDetection()) {
-			imageSeg[0] = ConvexHullSegmentation.convexHullDetection(imageSeg[0]);
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.CONVEX_HULL)) {
+				imageSeg[0] = ConvexHullSegmentation.convexHullDetection(imageSeg[0]);
+			}
 			String pathConvexHullSeg = segmentationParameters.getOutputFolder() +
-			                           ConvexHullDetection.CONVEX_HULL_ALGORITHM + File.separator + imageSeg[0].getTitle();
+			                           ConvexHullSegmentation.CONVEX_HULL_ALGORITHM + File.separator +
+			                           imageSeg[0].getTitle();
 			imageSeg[0].setTitle(pathConvexHullSeg);
-			saveFile(imageSeg[0], pathConvexHullSeg);
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.SAVE)) {
+				saveFile(imageSeg[0], pathConvexHullSeg);
+			}
 		}
 	}
 	
@@ -740,23 +823,31 @@ public class NucleusSegmentation {
 	 */
 	public void saveConvexHullSegOMERO(Client client, Long output)
 	throws IOException, AccessException, ServiceException, ExecutionException, OMEROServerError {
+		String path = exportConvexHullSeg();
+		if (path != null) {
+			importImageOMERO(client, output, path);
+		}
+	}
+	
+	
+	/**
+	 * Computes the convex hull segmentation and saves it in a temporary folder, before its import in OMERO.
+	 *
+	 * @return the path of the saved file, or null if the nucleus was not segmented or convex hull detection is disabled
+	 *
+	 * @throws IOException if the temporary folder cannot be created
+	 */
+	public String exportConvexHullSeg() throws IOException {
 		LOGGER.info("Computing and saving Convex Hull segmentation.");
+		String path = null;
 		if (!badCrop && bestThreshold != -1 && segmentationParameters.getConvexHullDetection()) {
-			imageSeg[0] = ConvexHullSegmentation.convexHullDetection(imageSeg[0]);
-			
-			String path = new java.io.File(".").getCanonicalPath() //+ File.separator + CONVEX_HULL_ALGORITHM
-			              + File.separator + imageSeg[0].getTitle();
-			saveFile(imageSeg[0], path);
-			
-			client.getDataset(output).importImages(client, path);
-			
-			File file = new File(path);
-			try {
-				Files.deleteIfExists(file.toPath());
-			} catch (IOException e) {
-				LOGGER.error("Could not delete file: {}", path);
+			try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.CONVEX_HULL)) {
+				imageSeg[0] = ConvexHullSegmentation.convexHullDetection(imageSeg[0]);
 			}
+			
+			path = export(imageSeg[0], ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
 		}
+		return path;
 	}
 	
 	
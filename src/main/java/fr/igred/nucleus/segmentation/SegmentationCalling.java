@@ -17,9 +17,14 @@
  */
 package fr.igred.nucleus.segmentation;
 
-import fr.igred.nucleus.utils.ConvexHullDetection;
+import fr.igred.nucleus.utils.BatchExecutor;
+import fr.igred.nucleus.utils.ConvexHullSegmentation;
+import fr.igred.nucleus.utils.PipelineExecutor;
+import fr.igred.nucleus.utils.RunMetrics;
 import fr.igred.nucleus.io.Directory;
+import fr.igred.nucleus.io.JobManifest;
 import fr.igred.nucleus.io.OutputTextFile;
+import fr.igred.nucleus.io.ResultCache;
 import fr.igred.omero.Client;
 import fr.igred.omero.exception.AccessException;
 import fr.igred.omero.exception.OMEROServerError;
@@ -40,15 +45,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.lineSeparator;
@@ -70,8 +77,15 @@ public class SegmentationCalling {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
-	/** Number of threads used to download images */
-	private static final int DOWNLOADER_THREADS = 1;
+	/** Number of attempts to download or upload an OMERO image */
+	private static final int  TRANSFER_ATTEMPTS = 3;
+	/** Delay before the first new attempt to download or upload an OMERO image, in seconds */
+	private static final long RETRY_DELAY       = 2;
+	
+	/** Name of the run in the metrics */
+	private static final String METRICS_NAME = "segmentation";
+	/** Name of the job manifest in the output folder */
+	private static final String MANIFEST     = "result_Segmentation_Manifest.tsv";
 	
 	/** SegmentationParameters object containing the parameters for the segmentation */
 	private final SegmentationParameters params;
@@ -91,6 +105,24 @@ public class SegmentationCalling {
 	/** Number of threads used to process images */
 	private int executorThreads = 1;
 	
+	/** Resources used by each stage of the current run */
+	private RunMetrics metrics = new RunMetrics(METRICS_NAME);
+	
+	/** Maximum processing time of one image, in seconds (0: no limit) */
+	private long timeout;
+	
+	/** Whether images completed by a previous run of the folder are skipped */
+	private boolean resume;
+	
+	/** Cache of the results of unchanged images (null: disabled) */
+	private ResultCache cache;
+	
+	/** Number of threads used to download and upload OMERO images */
+	private int transferThreads = 1;
+	
+	/** Maximum number of OMERO images in memory at the same time (0: depends on the number of threads) */
+	private int maxImagesInMemory;
+	
 	/** ID of the input dataset in OMERO */
 	private Long tID;
 	
@@ -174,6 +206,59 @@ public class SegmentationCalling {
 	}
 	
 	
+	/**
+	 * Setter for the maximum processing time of one image when processing a folder
+	 *
+	 * @param seconds maximum duration in seconds (0 for no limit)
+	 */
+	public void setTimeout(long seconds) {
+		this.timeout = seconds;
+	}
+	
+	
+	/**
+	 * Setter for the resumption of a previous run when processing a folder: images recorded as completed in the job
+	 * manifest of the output folder, with the same parameters, are not processed again and their previous results are
+	 * merged in the result tables.
+	 *
+	 * @param resume whether the previous run is resumed
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+	
+	
+	/**
+	 * Setter for the result cache: images already segmented with the same content and parameters, in any run sharing
+	 * the cache, are restored from it instead of being segmented again.
+	 *
+	 * @param cache result cache (null to disable it)
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+	
+	
+	/**
+	 * Setter for the number of threads used to download and upload OMERO images
+	 *
+	 * @param threadNumber number of threads for each transfer direction
+	 */
+	public void setTransferThreads(int threadNumber) {
+		this.transferThreads = threadNumber;
+	}
+	
+	
+	/**
+	 * Setter for the maximum number of OMERO images held in memory at the same time
+	 *
+	 * @param imageNumber maximum number of images (0 to derive it from the number of threads)
+	 */
+	public void setMaxImagesInMemory(int imageNumber) {
+		this.maxImagesInMemory = imageNumber;
+	}
+	
+	
 	/**
 	 * Method to run the nuclear segmentation of images stocked in input dir. First listing of the tif files contained
 	 * in input dir. then for each images: the method will call method in NucleusSegmentation and ConvexHullSegmentation
@@ -192,8 +277,6 @@ public class SegmentationCalling {
 	public String runSeveralImages() throws IOException, FormatException {
 		String log = "";
 		
-		ExecutorService processExecutor = Executors.newFixedThreadPool(executorThreads);
-		
 		Directory directoryInput = new Directory(params.getInputFolder());
 		directoryInput.listImageFiles(params.getInputFolder());
 		directoryInput.checkIfEmpty();
@@ -201,7 +284,7 @@ public class SegmentationCalling {
 		// Create output directories
 		Path otsuDirectory = Paths.get(params.getOutputFolder() + File.separator + "OTSU");
 		Path convexHullDirectory = Paths.get(params.getOutputFolder() + File.separator +
-		                                     ConvexHullDetection.CONVEX_HULL_ALGORITHM);
+		                                     ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
 		File otsuDir = new File(otsuDirectory.toString());
 		if (!otsuDir.exists()) {
 			Files.createDirectory(otsuDirectory);
@@ -211,67 +294,65 @@ public class SegmentationCalling {
 			Files.createDirectory(convexHullDirectory);
 		}
 		
-		List<File>     files = directoryInput.listFiles();
-		CountDownLatch latch = new CountDownLatch(files.size());
+		List<File> files = directoryInput.listFiles();
 		
-		Map<String, String> otsuResults       = new ConcurrentHashMap<>(files.size());
-		Map<String, String> convexHullResults = new ConcurrentHashMap<>(files.size());
+		metrics = new RunMetrics(METRICS_NAME);
+		Map<String, String> otsuResults       = new HashMap<>(files.size());
+		Map<String, String> convexHullResults = new HashMap<>(files.size());
 		
-		class ImageProcessor implements Runnable {
-			
-			private final File file;
-			
-			
-			ImageProcessor(File file) {
-				this.file = file;
-			}
-			
-			
-			@Override
-			public void run() {
-				try {
-					String fileImg = file.toString();
-					
-					String start = currentDateTime();
-					LOGGER.info("Current image in process: {} {} Start : {}", fileImg, lineSeparator(), start);
-					NucleusSegmentation nucleusSegmentation = new NucleusSegmentation(file, params);
-					
-					nucleusSegmentation.preProcessImage();
-					nucleusSegmentation.findOTSUMaximisingSphericity();
-					nucleusSegmentation.checkBadCrop(params.getInputFolder());
-					nucleusSegmentation.saveOTSUSegmented();
-					otsuResults.put(file.getName(),
-					                nucleusSegmentation.getImageCropInfoOTSU()); // Put in thread safe collection
-					nucleusSegmentation.saveConvexHullSeg();
-					convexHullResults.put(file.getName(),
-					                      nucleusSegmentation.getImageCropInfoConvexHull()); // Put in thread safe collection
-					
-					String end = currentDateTime();
-					LOGGER.info("End: {} at {}", fileImg, end);
-					latch.countDown();
-				} catch (IOException | FormatException e) {
-					LOGGER.error("Error processing image: {}", file.getName(), e);
-				}
+		/* Images completed by a previous run with the same parameters are not segmented again */
+		String                         hash      = params.getParametersHash();
+		JobManifest                    manifest  = new JobManifest(params.getOutputFolder() + MANIFEST, resume);
+		Map<String, JobManifest.Entry> completed = manifest.getCompleted(hash);
+		for (JobManifest.Entry entry : completed.values()) {
+			otsuResults.put(entry.getItem(), entry.getResult(0));
+			convexHullResults.put(entry.getItem(), entry.getResult(1));
+		}
+		List<File> toSegment = new ArrayList<>(files.size());
+		for (File file : files) {
+			if (!completed.containsKey(file.getName())) {
+				toSegment.add(file);
 			}
-			
 		}
-		
-		for (File currentFile : files) {
-			processExecutor.submit(new ImageProcessor(currentFile));
+		if (!completed.isEmpty()) {
+			LOGGER.info("{} image(s) already segmented are skipped.", completed.size());
 		}
-		try {
-			latch.await();
-		} catch (InterruptedException e) {
-			LOGGER.error("Error waiting for image processing to finish", e);
-			Thread.currentThread().interrupt();
+		
+		/* Computed here: building the parameters text is not thread-safe */
+		String processingHash = cache == null ? null : params.getProcessingHash();
+		
+		BatchExecutor<File, String[]> batch = new BatchExecutor<>(executorThreads);
+		batch.setTimeout(timeout, TimeUnit.SECONDS);
+		Map<File, Throwable> failures = batch.run(toSegment,
+		                                          file -> segmentImage(file, manifest, hash, processingHash),
+		                                          (file, results) -> {
+			                                          otsuResults.put(file.getName(), results[0]);
+			                                          convexHullResults.put(file.getName(), results[1]);
+		                                          });
+		StringBuilder failedImages = new StringBuilder();
+		for (Map.Entry<File, Throwable> failure : failures.entrySet()) {
+			failedImages.append(failure.getKey().getName()).append(": ").append(failure.getValue())
+			            .append(lineSeparator());
+			manifest.record(failure.getKey().getName(), JobManifest.Status.FAILED, hash,
+			                Collections.emptyList(), String.valueOf(failure.getValue()));
 		}
-		processExecutor.shutdownNow();
+		log = failedImages.toString();
+		OutputTextFile reportFile = new OutputTextFile(params.getOutputFolder() + "result_Segmentation_Report.tsv");
+		reportFile.saveTextFile(batch.getReport(), true);
 		
+		/* Images completed previously may have been moved to the bad crop folder since */
+		Collection<String> names = new LinkedHashSet<>(files.size() + completed.size());
+		for (File file : files) {
+			names.add(file.getName());
+		}
+		names.addAll(completed.keySet());
 		StringBuilder otsuInfoBuilder     = new StringBuilder();
 		StringBuilder convHullInfoBuilder = new StringBuilder();
-		for (File file : files) {
-			otsuInfoBuilder.append(otsuResults.get(file.getName()));
-			convHullInfoBuilder.append(convexHullResults.get(file.getName()));
+		for (String name : names) {
+			if (otsuResults.containsKey(name)) {
+				otsuInfoBuilder.append(otsuResults.get(name));
+				convHullInfoBuilder.append(convexHullResults.get(name));
+			}
 		}
 		this.outputCropGeneralInfoOTSU += getResultsColumnNames();
 		outputCropGeneralInfoOTSU += otsuInfoBuilder.toString();
@@ -279,11 +360,144 @@ public class SegmentationCalling {
 		outputCropGeneralInfoConvexHull += convHullInfoBuilder.toString();
 		
 		saveCropGeneralInfo();
+		metrics.save(params.getOutputFolder(), "result_Segmentation");
 		
 		return log;
 	}
 	
 	
+	/**
+	 * Segments one image of a folder, saves the results and records them in the job manifest.
+	 *
+	 * @param file           image file
+	 * @param manifest       job manifest of the run
+	 * @param hash           hash of the parameters
+	 * @param processingHash hash of the processing parameters, for the cache
+	 *
+	 * @return the Otsu and convex hull results for this image
+	 *
+	 * @throws IOException     if the image could not be read or the results saved
+	 * @throws FormatException if the image format is not supported
+	 */
+	private String[] segmentImage(File file, JobManifest manifest, String hash, String processingHash)
+	throws IOException, FormatException {
+		String fileImg = file.toString();
+		
+		String start = currentDateTime();
+		LOGGER.info("Current image in process: {} {} Start : {}", fileImg, lineSeparator(), start);
+		try (RunMetrics.Tracking tracking = metrics.track(file.getName())) {
+			Map<String, String> outputFiles = getOutputFiles(file);
+			
+			String   key     = null;
+			String[] results = null;
+			if (cache != null) {
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.CACHE)) {
+					key = cache.key(METRICS_NAME, processingHash, file);
+					results = restoreSegmentation(key, file, outputFiles);
+				}
+			}
+			
+			boolean segmented;
+			if (results == null) {
+				NucleusSegmentation nucleusSegmentation;
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.OPEN)) {
+					nucleusSegmentation = new NucleusSegmentation(file, params);
+				}
+				
+				nucleusSegmentation.preProcessImage();
+				nucleusSegmentation.findOTSUMaximisingSphericity();
+				nucleusSegmentation.checkBadCrop(params.getInputFolder());
+				nucleusSegmentation.saveOTSUSegmented();
+				String otsuResult = nucleusSegmentation.getImageCropInfoOTSU();
+				nucleusSegmentation.saveConvexHullSeg();
+				String convexHullResult = nucleusSegmentation.getImageCropInfoConvexHull();
+				
+				results = new String[]{otsuResult, convexHullResult};
+				segmented = !nucleusSegmentation.isBadCrop() && nucleusSegmentation.getBestThreshold() != -1;
+				if (key != null) {
+					storeSegmentation(key, file, results, segmented, outputFiles);
+				}
+			} else {
+				segmented = !results[2].isEmpty();
+			}
+			
+			List<String> outputs = segmented ? new ArrayList<>(outputFiles.values()) : Collections.emptyList();
+			manifest.record(file.getName(), JobManifest.Status.DONE, hash, outputs, results[0], results[1]);
+			
+			String end = currentDateTime();
+			LOGGER.info("End: {} at {}", fileImg, end);
+			return new String[]{results[0], results[1]};
+		}
+	}
+	
+	
+	/**
+	 * Returns the masks saved when an image of a folder is segmented.
+	 *
+	 * @param file image file
+	 *
+	 * @return the path of each mask, for each segmentation method
+	 */
+	private Map<String, String> getOutputFiles(File file) {
+		Map<String, String> outputFiles = new LinkedHashMap<>(2);
+		outputFiles.put("OTSU", params.getOutputFolder() + "OTSU" + File.separator + file.getName());
+		if (params.getConvexHullDetection()) {
+			outputFiles.put(ConvexHullSegmentation.CONVEX_HULL_ALGORITHM,
+			                params.getOutputFolder() + ConvexHullSegmentation.CONVEX_HULL_ALGORITHM +
+			                File.separator + file.getName());
+		}
+		return outputFiles;
+	}
+	
+	
+	/**
+	 * Restores the segmentation of an image from the cache: its masks are copied to the output folder, and it is moved
+	 * to the bad crop folder if no nucleus was segmented.
+	 *
+	 * @param key         cache key of the image
+	 * @param file        image file
+	 * @param outputFiles paths of the masks
+	 *
+	 * @return the Otsu and convex hull results, then a non-empty string if a nucleus was segmented, or null if the
+	 * image is not in the cache
+	 */
+	private String[] restoreSegmentation(String key, File file, Map<String, String> outputFiles) {
+		List<String> rows = cache.restore(key, outputFiles);
+		if (rows == null || rows.size() != 3) {
+			return null;
+		}
+		LOGGER.info("Segmentation restored from the cache: {}", file.getName());
+		if (rows.get(2).isEmpty()) {
+			NucleusSegmentation.moveToBadCrop(params.getInputFolder(), file.getName());
+		}
+		/* Cached rows do not include the image name, as the same image may have another name */
+		return new String[]{file.getName() + rows.get(0), file.getName() + rows.get(1), rows.get(2)};
+	}
+	
+	
+	/**
+	 * Stores the segmentation of an image in the cache.
+	 *
+	 * @param key         cache key of the image
+	 * @param file        image file
+	 * @param results     Otsu and convex hull results
+	 * @param segmented   whether a nucleus was segmented
+	 * @param outputFiles paths of the masks
+	 */
+	private void storeSegmentation(String key, File file, String[] results, boolean segmented,
+	                               Map<String, String> outputFiles) {
+		String name = file.getName();
+		if (results[0].startsWith(name) && results[1].startsWith(name)) {
+			List<String> rows = Arrays.asList(results[0].substring(name.length()),
+			                                  results[1].substring(name.length()),
+			                                  segmented ? "segmented" : "");
+			cache.store(key, rows, segmented ? outputFiles : Collections.emptyMap());
+		} else {
+			LOGGER.debug("Results not cached, as they do not start with the image name: {}", name);
+		}
+	}
+	
+	
 	public String runOneImage(String filePath) throws IOException, FormatException {
 		String log         = "";
 		File   currentFile = new File(filePath);
@@ -293,16 +507,23 @@ public class SegmentationCalling {
 		if (currentFile.exists()) {
 			String start = currentDateTime();
 			LOGGER.info("Start: {}", start);
-			NucleusSegmentation nucleusSegmentation = new NucleusSegmentation(currentFile, params);
-			nucleusSegmentation.preProcessImage();
-			nucleusSegmentation.findOTSUMaximisingSphericity();
-			nucleusSegmentation.checkBadCrop(params.getInputFolder());
-			nucleusSegmentation.saveOTSUSegmented();
-			this.outputCropGeneralInfoOTSU += getResultsColumnNames();
-			this.outputCropGeneralInfoOTSU += nucleusSegmentation.getImageCropInfoOTSU();
-			nucleusSegmentation.saveConvexHullSeg();
-			this.outputCropGeneralInfoConvexHull += getResultsColumnNames();
-			this.outputCropGeneralInfoConvexHull += nucleusSegmentation.getImageCropInfoConvexHull();
+			metrics = new RunMetrics(METRICS_NAME);
+			try (RunMetrics.Tracking tracking = metrics.track(currentFile.getName())) {
+				NucleusSegmentation nucleusSegmentation;
+				try (RunMetrics.Stage stage = RunMetrics.stage(RunMetrics.OPEN)) {
+					nucleusSegmentation = new NucleusSegmentation(currentFile, params);
+				}
+				nucleusSegmentation.preProcessImage();
+				nucleusSegmentation.findOTSUMaximisingSphericity();
+				nucleusSegmentation.checkBadCrop(params.getInputFolder());
+				nucleusSegmentation.saveOTSUSegmented();
+				this.outputCropGeneralInfoOTSU += getResultsColumnNames();
+				this.outputCropGeneralInfoOTSU += nucleusSegmentation.getImageCropInfoOTSU();
+				nucleusSegmentation.saveConvexHullSeg();
+				this.outputCropGeneralInfoConvexHull += getResultsColumnNames();
+				this.outputCropGeneralInfoConvexHull += nucleusSegmentation.getImageCropInfoConvexHull();
+			}
+			metrics.save(params.getOutputFolder(), "result_Segmentation");
 			
 			String end = currentDateTime();
 			LOGGER.info("End: {}", end);
@@ -325,11 +546,11 @@ public class SegmentationCalling {
 		resultFileOutputOTSU.saveTextFile(outputCropGeneralInfoOTSU, true);
 		if (params.getConvexHullDetection()) {
 			OutputTextFile outputConvexHull = new OutputTextFile(params.getOutputFolder() +
-			                                                     ConvexHullDetection.CONVEX_HULL_ALGORITHM +
+			                                                     ConvexHullSegmentation.CONVEX_HULL_ALGORITHM +
 			                                                     File.separator +
 			                                                     date +
 			                                                     "-result_Segmentation_Analyse_" +
-			                                                     ConvexHullDetection.CONVEX_HULL_ALGORITHM +
+			                                                     ConvexHullSegmentation.CONVEX_HULL_ALGORITHM +
 			                                                     ".csv");
 			outputConvexHull.saveTextFile(outputCropGeneralInfoConvexHull, true);
 		}
@@ -345,10 +566,10 @@ public class SegmentationCalling {
 		resultFileOutputOTSU.saveTextFile(outputCropGeneralInfoOTSU, true);
 		if (params.getConvexHullDetection()) {
 			OutputTextFile outputConvexHull = new OutputTextFile(params.getOutputFolder() +
-			                                                     ConvexHullDetection.CONVEX_HULL_ALGORITHM +
+			                                                     ConvexHullSegmentation.CONVEX_HULL_ALGORITHM +
 			                                                     File.separator +
 			                                                     "result_Segmentation_Analyse_" +
-			                                                     ConvexHullDetection.CONVEX_HULL_ALGORITHM +
+			                                                     ConvexHullSegmentation.CONVEX_HULL_ALGORITHM +
 			                                                     ".csv");
 			outputConvexHull.saveTextFile(outputCropGeneralInfoConvexHull, true);
 		}
@@ -375,9 +596,10 @@ public class SegmentationCalling {
 		project.reload(client);
 		// Get Convex Hull dataset ID
 		if (params.getConvexHullDetection()) {
-			datasets = project.getDatasets(ConvexHullDetection.CONVEX_HULL_ALGORITHM);
+			datasets = project.getDatasets(ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
 			if (datasets.isEmpty()) {
-				convexHullDataset = project.addDataset(client, ConvexHullDetection.CONVEX_HULL_ALGORITHM, "").getId();
+				convexHullDataset = project.addDataset(client, ConvexHullSegmentation.CONVEX_HULL_ALGORITHM, "")
+				                           .getId();
 				project.reload(client);
 			} else {
 				convexHullDataset = datasets.get(0).getId();
@@ -413,8 +635,6 @@ public class SegmentationCalling {
 	                                    Client client,
 	                                    Long inputID)
 	throws AccessException, ServiceException, ExecutionException, InterruptedException {
-		ExecutorService downloadExecutor = Executors.newFixedThreadPool(DOWNLOADER_THREADS);
-		ExecutorService processExecutor  = Executors.newFixedThreadPool(executorThreads);
 		tID = inputID;
 		
 		ProjectWrapper project = client.getProject(output);
@@ -431,9 +651,10 @@ public class SegmentationCalling {
 		project.reload(client);
 		// Get Convex Hull dataset ID
 		if (params.getConvexHullDetection()) {
-			datasets = project.getDatasets(ConvexHullDetection.CONVEX_HULL_ALGORITHM);
+			datasets = project.getDatasets(ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
 			if (datasets.isEmpty()) {
-				convexHullDataset = project.addDataset(client, ConvexHullDetection.CONVEX_HULL_ALGORITHM, "").getId();
+				convexHullDataset = project.addDataset(client, ConvexHullSegmentation.CONVEX_HULL_ALGORITHM, "")
+				                           .getId();
 				project.reload(client);
 			} else {
 				convexHullDataset = datasets.get(0).getId();
@@ -442,92 +663,28 @@ public class SegmentationCalling {
 			convexHullDataset = -1;
 		}
 		
-		Map<Long, String> otsuResults       = new ConcurrentHashMap<>(images.size());
-		Map<Long, String> convexHullResults = new ConcurrentHashMap<>(images.size());
-		
-		CountDownLatch latch       = new CountDownLatch(images.size());
-		CountDownLatch uploadLatch = new CountDownLatch(1);
-		class ImageProcessorOMERO implements Runnable {
-			
-			private final ImageWrapper img;
-			private final ImagePlus    imp;
-			
-			
-			ImageProcessorOMERO(ImageWrapper img, ImagePlus imp) {
-				this.img = img;
-				this.imp = imp;
-			}
-			
-			
-			@Override
-			public void run() {
-				try {
-					String fileImg = img.getName();
-					
-					String start = currentDateTime();
-					LOGGER.info("Current image in process: {} {} Start : {}", fileImg, lineSeparator(), start);
-					NucleusSegmentation nucleusSegmentation = new NucleusSegmentation(img, imp, params);
-					nucleusSegmentation.preProcessImage();
-					nucleusSegmentation.findOTSUMaximisingSphericity();
-					nucleusSegmentation.checkBadCrop(img, client);
-					
-					nucleusSegmentation.saveOTSUSegmentedOMERO(client, otsuDataset); // Upload
-					otsuResults.put(img.getId(),
-					                nucleusSegmentation.getImageCropInfoOTSU()); // Put in thread safe collection
-					nucleusSegmentation.saveConvexHullSegOMERO(client, convexHullDataset); // Upload
-					convexHullResults.put(img.getId(),
-					                      nucleusSegmentation.getImageCropInfoConvexHull()); // Put in thread safe collection
-					
-					String end = currentDateTime();
-					LOGGER.info("End: {} at {}", fileImg, end);
-					
-					latch.countDown();
-				} catch (AccessException | OMEROServerError | ServiceException | IOException | ExecutionException e) {
-					LOGGER.error("Error processing image: {}", img.getName(), e);
-				}
-			}
-			
-		}
-		
-		class ImageDownloaderOMERO implements Runnable {
-			
-			private final ImageWrapper img;
-			
-			
-			ImageDownloaderOMERO(ImageWrapper img) {
-				this.img = img;
-			}
-			
-			
-			@Override
-			public void run() {
-				try {
-					LOGGER.info("Acquiring image");
-					
-					int[]     cBound = {0, 0}; // For each image
-					ImagePlus imp    = img.toImagePlus(client, null, null, cBound, null, null); // Download image
-					
-					processExecutor.submit(new ImageProcessorOMERO(img, imp)); // Pass img to executor
-					uploadLatch.countDown();
-					LOGGER.info("Resource returned ({}).", img.getName());
-				} catch (AccessException | ExecutionException | ServiceException e) {
-					LOGGER.error("Error downloading image: {}", img.getName(), e);
-				}
-			}
-			
-		}
-		
-		for (ImageWrapper img : images) {
-			if(!uploadLatch.await(1, TimeUnit.MINUTES)) {
-				LOGGER.warn("Timeout while waiting for image download to start for: {}", img.getName());
-			}
-			downloadExecutor.submit(new ImageDownloaderOMERO(img));
-		}
-		
-		latch.await();
+		Map<Long, String> otsuResults       = new HashMap<>(images.size());
+		Map<Long, String> convexHullResults = new HashMap<>(images.size());
+		
+		PipelineExecutor<ImageWrapper, ImagePlus, SegmentedImage, String[]> pipeline =
+				new PipelineExecutor<>(img -> downloadImage(img, client),
+				                       this::segmentImage,
+				                       (img, segmented) -> segmented.upload(img, client,
+				                                                            otsuDataset, convexHullDataset));
+		pipeline.setThreads(PipelineExecutor.Step.DOWNLOAD, transferThreads);
+		pipeline.setThreads(PipelineExecutor.Step.PROCESS, executorThreads);
+		pipeline.setThreads(PipelineExecutor.Step.UPLOAD, transferThreads);
+		pipeline.setRetries(PipelineExecutor.Step.DOWNLOAD, TRANSFER_ATTEMPTS, RETRY_DELAY, TimeUnit.SECONDS);
+		pipeline.setRetries(PipelineExecutor.Step.UPLOAD, TRANSFER_ATTEMPTS, RETRY_DELAY, TimeUnit.SECONDS);
+		pipeline.setMaxInFlight(maxImagesInMemory);
+		Map<ImageWrapper, Throwable> failures = pipeline.run(new ArrayList<>(images), (img, results) -> {
+			otsuResults.put(img.getId(), results[0]);
+			convexHullResults.put(img.getId(), results[1]);
+		});
 		LOGGER.info("Finished processing");
-		downloadExecutor.shutdownNow();
-		processExecutor.shutdownNow();
+		if (!failures.isEmpty()) {
+			LOGGER.error("{} image(s) could not be segmented.", failures.size());
+		}
 		
 		StringBuilder otsuInfoBuilder     = new StringBuilder();
 		StringBuilder convHullInfoBuilder = new StringBuilder();
@@ -535,6 +692,9 @@ public class SegmentationCalling {
 			/* create results file compatible with OMERO.Parade*/
 			imgDatasetName = client.getDataset(inputID).getName();
 			imgDatasetId = client.getDataset(inputID).getId();
+			if (!otsuResults.containsKey(img.getId())) {
+				continue;
+			}
 			otsuInfoBuilder.append(img.getId()).append(",");
 			otsuInfoBuilder.append(imgDatasetName).append(",");
 			otsuInfoBuilder.append(otsuResults.get(img.getId()));
@@ -556,6 +716,51 @@ public class SegmentationCalling {
 	}
 	
 	
+	/**
+	 * Downloads an OMERO image.
+	 *
+	 * @param image  image to download
+	 * @param client OMERO client
+	 *
+	 * @return the downloaded image
+	 */
+	private static ImagePlus downloadImage(ImageWrapper image, Client client)
+	throws AccessException, ServiceException, ExecutionException {
+		LOGGER.info("Acquiring image: {}", image.getName());
+		int[] cBound = {0, 0}; // For each image
+		return image.toImagePlus(client, null, null, cBound, null, null);
+	}
+	
+	
+	/**
+	 * Segments a downloaded OMERO image and saves the segmentations in the working directory.
+	 *
+	 * @param image OMERO image
+	 * @param imp   downloaded image
+	 *
+	 * @return the segmentation results, to upload
+	 */
+	private SegmentedImage segmentImage(ImageWrapper image, ImagePlus imp) throws IOException {
+		String fileImg = image.getName();
+		
+		String start = currentDateTime();
+		LOGGER.info("Current image in process: {} {} Start : {}", fileImg, lineSeparator(), start);
+		NucleusSegmentation nucleusSegmentation = new NucleusSegmentation(image, imp, params);
+		nucleusSegmentation.preProcessImage();
+		nucleusSegmentation.findOTSUMaximisingSphericity();
+		
+		SegmentedImage segmented = new SegmentedImage(nucleusSegmentation);
+		segmented.otsuPath = nucleusSegmentation.exportOTSUSegmented();
+		segmented.otsuInfo = nucleusSegmentation.getImageCropInfoOTSU();
+		segmented.convexHullPath = nucleusSegmentation.exportConvexHullSeg();
+		segmented.convexHullInfo = nucleusSegmentation.getImageCropInfoConvexHull();
+		
+		String end = currentDateTime();
+		LOGGER.info("End: {} at {}", fileImg, end);
+		return segmented;
+	}
+	
+	
 	public void saveCropGeneralInfoOmero(Client client, Long output)
 	throws ServiceException, AccessException, ExecutionException, InterruptedException {
 		String date = currentDateTime("yyyy-MM-dd_HH-mm-ss");
@@ -626,7 +831,7 @@ public class SegmentationCalling {
 			} catch (IOException e) {
 				LOGGER.error("Could not get canonical path for: {}", pathGraham, e);
 			}
-			dataset = client.getProject(output).getDatasets(ConvexHullDetection.CONVEX_HULL_ALGORITHM).get(0);
+			dataset = client.getProject(output).getDatasets(ConvexHullSegmentation.CONVEX_HULL_ALGORITHM).get(0);
 			OutputTextFile outputConvexHull = new OutputTextFile(pathGraham);
 			outputConvexHull.saveTextFile(outputCropGeneralInfoConvexHull, false);
 			
@@ -699,7 +904,7 @@ public class SegmentationCalling {
 		}
 		
 		if (params.getConvexHullDetection()) {
-			dataset = client.getProject(output).getDatasets(ConvexHullDetection.CONVEX_HULL_ALGORITHM).get(0);
+			dataset = client.getProject(output).getDatasets(ConvexHullSegmentation.CONVEX_HULL_ALGORITHM).get(0);
 			OutputTextFile outputConvexHull = new OutputTextFile(path);
 			outputConvexHull.saveTextFile(outputCropGeneralInfoConvexHull, false);
 			
@@ -727,4 +932,48 @@ public class SegmentationCalling {
 		return log.toString();
 	}
 	
+	
+	/**
+	 * Segmentations of an OMERO image, saved in the working directory until they are uploaded.
+	 */
+	private static final class SegmentedImage {
+		/** Segmentation of the image, used to tag bad crops */
+		private final NucleusSegmentation segmentation;
+		
+		/** Path of the OTSU segmentation file, null once uploaded */
+		private String otsuPath;
+		/** Path of the convex hull segmentation file, null once uploaded */
+		private String convexHullPath;
+		/** Results of the OTSU segmentation */
+		private String otsuInfo;
+		/** Results of the convex hull segmentation */
+		private String convexHullInfo;
+		
+		
+		SegmentedImage(NucleusSegmentation segmentation) {
+			this.segmentation = segmentation;
+		}
+		
+		
+		/**
+		 * Uploads the segmentations which have not been uploaded yet, so that a failed upload can be retried.
+		 *
+		 * @return the OTSU and convex hull results
+		 */
+		String[] upload(ImageWrapper image, Client client, long otsuDataset, long convexHullDataset)
+		throws IOException, AccessException, ServiceException, ExecutionException, OMEROServerError {
+			segmentation.checkBadCrop(image, client);
+			if (otsuPath != null) {
+				NucleusSegmentation.importImageOMERO(client, otsuDataset, otsuPath);
+				otsuPath = null;
+			}
+			if (convexHullPath != null) {
+				NucleusSegmentation.importImageOMERO(client, convexHullDataset, convexHullPath);
+				convexHullPath = null;
+			}
+			return new String[]{otsuInfo, convexHullInfo};
+		}
+		
+	}
+	
 }
\ No newline at end of file
@@ -19,7 +19,7 @@ package fr.igred.nucleus.segmentation;
 
 
 import fr.igred.nucleus.core.PluginParameters;
-import fr.igred.nucleus.utils.ConvexHullDetection;
+import fr.igred.nucleus.utils.ConvexHullSegmentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -122,7 +122,7 @@ public class SegmentationParameters extends PluginParameters {
 		String eol = System.lineSeparator();
 		String newInfo = "#maxVolumeNucleus:" + maxVolumeNucleus + eol +
 		                 "#minVolumeNucleus: " + minVolumeNucleus + eol +
-		                 "#ConvexHullDetection (" + ConvexHullDetection.CONVEX_HULL_ALGORITHM + "): " +
+		                 "#ConvexHullDetection (" + ConvexHullSegmentation.CONVEX_HULL_ALGORITHM + "): " +
 		                 convexHullDetection + eol;
 		setHeaderInfo(getHeaderInfo() + newInfo);
 		return getHeaderInfo();
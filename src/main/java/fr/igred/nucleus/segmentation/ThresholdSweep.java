@@ -0,0 +1,347 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.segmentation;
+
+import fr.igred.nucleus.utils.Gradient;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+
+/**
+ * Incremental evaluation of every threshold of an interval in a single pass.
+ * <p>
+ * Voxels are sorted once by intensity (counting sort on integer thresholds) and added from the brightest to the
+ * darkest. A union-find structure (26-connectivity) keeps, for each connected component, its number of voxels, its
+ * number of voxels on the first and last slices, and its surface as computed by
+ * {@link fr.igred.nucleus.core.Measure3D#computeComplexSurface(ImagePlus, Gradient)}. After each threshold, the
+ * statistics of the largest component are recorded, which gives the same values as thresholding the image, labelling
+ * it and keeping the largest object, for every threshold of the interval.
+ *
+ * @author Tristan Dubos and Axel Poulet
+ */
+public class ThresholdSweep {
+	/** Number of voxels on a slice above which the object is considered to touch that slice */
+	private static final int SLICE_VOXELS = 10;
+	
+	/** Image to threshold */
+	private final ImagePlus image;
+	/** Unit normals used to compute the surface contributions */
+	private final Gradient  gradient;
+	/** Area of the faces orthogonal to x */
+	private final double    xFace;
+	/** Area of the faces orthogonal to y */
+	private final double    yFace;
+	/** Area of the faces orthogonal to z */
+	private final double    zFace;
+	
+	/** Lowest threshold evaluated */
+	private int       minThreshold;
+	/** Number of voxels of the largest object for each threshold */
+	private int[]     voxelCounts = new int[0];
+	/** Surface of the largest object for each threshold */
+	private double[]  surfaces    = new double[0];
+	/** Whether the largest object has at least 10 voxels on the first slice, for each threshold */
+	private boolean[] firstSlices = new boolean[0];
+	/** Whether the largest object has at least 10 voxels on the last slice, for each threshold */
+	private boolean[] lastSlices  = new boolean[0];
+	
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param image    image to threshold
+	 * @param gradient gradient computed from the raw image
+	 * @param xCal     x calibration
+	 * @param yCal     y calibration
+	 * @param zCal     z calibration
+	 */
+	public ThresholdSweep(ImagePlus image, Gradient gradient, double xCal, double yCal, double zCal) {
+		this.image = image;
+		this.gradient = gradient;
+		this.xFace = yCal * zCal;
+		this.yFace = xCal * zCal;
+		this.zFace = xCal * yCal;
+	}
+	
+	
+	/**
+	 * Evaluates all the thresholds from maxThreshold down to minThreshold.
+	 *
+	 * @param minThreshold lowest threshold (inclusive)
+	 * @param maxThreshold highest threshold (inclusive)
+	 */
+	public void run(int minThreshold, int maxThreshold) {
+		this.minThreshold = minThreshold;
+		int nThresholds = Math.max(0, maxThreshold - minThreshold + 1);
+		voxelCounts = new int[nThresholds];
+		surfaces = new double[nThresholds];
+		firstSlices = new boolean[nThresholds];
+		lastSlices = new boolean[nThresholds];
+		if (nThresholds == 0) {
+			return;
+		}
+		
+		int        w     = image.getWidth();
+		int        h     = image.getHeight();
+		int        d     = image.getStackSize();
+		int        wh    = w * h;
+		ImageStack stack = image.getStack();
+		
+		/* Counting sort of the voxels above the lowest threshold, in raster order within each bucket */
+		int[] bucketStarts = new int[nThresholds + 1];
+		for (int k = 0; k < d; ++k) {
+			ImageProcessor ip = stack.getProcessor(k + 1);
+			for (int index = 0; index < wh; ++index) {
+				int bucket = bucket(ip.getf(index), nThresholds);
+				if (bucket >= 0) {
+					bucketStarts[bucket + 1]++;
+				}
+			}
+		}
+		for (int b = 0; b < nThresholds; ++b) {
+			bucketStarts[b + 1] += bucketStarts[b];
+		}
+		int   nVoxels = bucketStarts[nThresholds];
+		int[] sorted  = new int[nVoxels];
+		int[] next    = bucketStarts.clone();
+		for (int k = 0; k < d; ++k) {
+			ImageProcessor ip = stack.getProcessor(k + 1);
+			for (int index = 0; index < wh; ++index) {
+				int bucket = bucket(ip.getf(index), nThresholds);
+				if (bucket >= 0) {
+					sorted[next[bucket]++] = k * wh + index;
+				}
+			}
+		}
+		
+		/* Node of each voxel in the union-find structure, -1 while the voxel is below the threshold */
+		int[] nodes = new int[w * h * d];
+		Arrays.fill(nodes, -1);
+		int[]    parents     = new int[nVoxels];
+		int[]    sizes       = new int[nVoxels];
+		int[]    firstVoxels = new int[nVoxels];
+		int[]    firstCounts = new int[nVoxels];
+		int[]    lastCounts  = new int[nVoxels];
+		double[] areas       = new double[nVoxels];
+		
+		int largest = -1;
+		for (int b = nThresholds - 1; b >= 0; --b) {
+			for (int node = bucketStarts[b]; node < bucketStarts[b + 1]; ++node) {
+				int voxel = sorted[node];
+				int k     = voxel / wh;
+				int j     = voxel % wh / w;
+				int i     = voxel % w;
+				
+				nodes[voxel] = node;
+				parents[node] = node;
+				sizes[node] = 1;
+				firstVoxels[node] = voxel;
+				firstCounts[node] = k == 0 ? 1 : 0;
+				lastCounts[node] = k == d - 1 ? 1 : 0;
+				areas[node] = 0;
+				
+				/* Surface: faces with background neighbours are added, faces with object neighbours removed */
+				boolean inner = isInner(i, j, k, w, h, d);
+				double  delta = 0;
+				for (int axis = 0; axis < 3; ++axis) {
+					for (int step = -1; step <= 1; step += 2) {
+						int ii = axis == 0 ? i + step : i;
+						int jj = axis == 1 ? j + step : j;
+						int kk = axis == 2 ? k + step : k;
+						if (ii < 0 || jj < 0 || kk < 0 || ii >= w || jj >= h || kk >= d) {
+							continue;
+						}
+						int neighbour = kk * wh + jj * w + ii;
+						if (nodes[neighbour] >= 0) {
+							if (isInner(ii, jj, kk, w, h, d)) {
+								delta -= contribution(neighbour, voxel, axis);
+							}
+						} else if (inner) {
+							delta += contribution(voxel, neighbour, axis);
+						}
+					}
+				}
+				
+				/* Union with the 26 neighbours already above the threshold */
+				int root = node;
+				for (int kk = Math.max(0, k - 1); kk <= Math.min(d - 1, k + 1); ++kk) {
+					for (int jj = Math.max(0, j - 1); jj <= Math.min(h - 1, j + 1); ++jj) {
+						for (int ii = Math.max(0, i - 1); ii <= Math.min(w - 1, i + 1); ++ii) {
+							int neighbour = nodes[kk * wh + jj * w + ii];
+							if (neighbour >= 0 && neighbour != node) {
+								root = union(parents, sizes, firstVoxels, firstCounts, lastCounts, areas,
+								             root, find(parents, neighbour));
+							}
+						}
+					}
+				}
+				areas[root] += delta;
+				
+				if (largest >= 0) {
+					largest = find(parents, largest);
+				}
+				if (largest < 0 || sizes[root] > sizes[largest] ||
+				    sizes[root] == sizes[largest] && firstVoxels[root] < firstVoxels[largest]) {
+					largest = root;
+				}
+			}
+			if (largest >= 0) {
+				largest = find(parents, largest);
+				voxelCounts[b] = sizes[largest];
+				surfaces[b] = areas[largest];
+				firstSlices[b] = firstCounts[largest] >= SLICE_VOXELS;
+				lastSlices[b] = lastCounts[largest] >= SLICE_VOXELS;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the bucket (threshold index) of a voxel value, or -1 if the value is below the lowest threshold.
+	 *
+	 * @param value       voxel value
+	 * @param nThresholds number of thresholds
+	 *
+	 * @return the index of the highest threshold lower or equal to the value
+	 */
+	private int bucket(double value, int nThresholds) {
+		double offset = Math.floor(value) - minThreshold;
+		if (offset < 0) {
+			return -1;
+		}
+		return (int) Math.min(offset, nThresholds - 1);
+	}
+	
+	
+	/**
+	 * Checks if a voxel is taken into account for the surface computation (2 voxels away from the borders).
+	 */
+	private static boolean isInner(int i, int j, int k, int w, int h, int d) {
+		return i >= 2 && j >= 2 && k >= 2 && i < w - 2 && j < h - 2 && k < d - 2;
+	}
+	
+	
+	/**
+	 * Computes the surface contribution of the face between an object voxel and a background voxel.
+	 *
+	 * @param inside  index of the object voxel
+	 * @param outside index of the background voxel
+	 * @param axis    axis orthogonal to the face (0: x, 1: y, 2: z)
+	 *
+	 * @return the surface contribution
+	 */
+	private double contribution(int inside, int outside, int axis) {
+		double normal = (gradient.getUnitNormal(axis, inside) + gradient.getUnitNormal(axis, outside)) / 2.0;
+		double area;
+		if (axis == 0) {
+			area = xFace;
+		} else if (axis == 1) {
+			area = yFace;
+		} else {
+			area = zFace;
+		}
+		return Math.abs(normal * area);
+	}
+	
+	
+	/**
+	 * Finds the root of a node, with path halving.
+	 */
+	private static int find(int[] parents, int node) {
+		int current = node;
+		while (parents[current] != current) {
+			parents[current] = parents[parents[current]];
+			current = parents[current];
+		}
+		return current;
+	}
+	
+	
+	/**
+	 * Merges two components (by size) and their statistics.
+	 *
+	 * @return the root of the merged component
+	 */
+	private static int union(int[] parents, int[] sizes, int[] firstVoxels, int[] firstCounts, int[] lastCounts,
+	                         double[] areas, int a, int b) {
+		if (a == b) {
+			return a;
+		}
+		int root  = sizes[a] >= sizes[b] ? a : b;
+		int child = root == a ? b : a;
+		parents[child] = root;
+		sizes[root] += sizes[child];
+		firstVoxels[root] = Math.min(firstVoxels[root], firstVoxels[child]);
+		firstCounts[root] += firstCounts[child];
+		lastCounts[root] += lastCounts[child];
+		areas[root] += areas[child];
+		return root;
+	}
+	
+	
+	/**
+	 * Returns the number of voxels of the largest object for a threshold.
+	 *
+	 * @param threshold threshold
+	 *
+	 * @return the number of voxels
+	 */
+	public int getVoxelCount(int threshold) {
+		return voxelCounts[threshold - minThreshold];
+	}
+	
+	
+	/**
+	 * Returns the surface of the largest object for a threshold.
+	 *
+	 * @param threshold threshold
+	 *
+	 * @return the surface computed from the gradient
+	 */
+	public double getSurface(int threshold) {
+		return surfaces[threshold - minThreshold];
+	}
+	
+	
+	/**
+	 * Checks if the largest object has at least 10 voxels on the first slice for a threshold.
+	 *
+	 * @param threshold threshold
+	 *
+	 * @return true if the object touches the first slice
+	 */
+	public boolean isFirstSliceThresholded(int threshold) {
+		return firstSlices[threshold - minThreshold];
+	}
+	
+	
+	/**
+	 * Checks if the largest object has at least 10 voxels on the last slice for a threshold.
+	 *
+	 * @param threshold threshold
+	 *
+	 * @return true if the object touches the last slice
+	 */
+	public boolean isLastSliceThresholded(int threshold) {
+		return lastSlices[threshold - minThreshold];
+	}
+	
+}
@@ -0,0 +1,433 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Runs a task on each item of a batch (typically image files) with a fixed number of threads.
+ * <p>
+ * Each item is processed independently: an exception thrown for one item is logged and recorded, and the other items
+ * are still processed. An optional timeout bounds the processing time of each item: when it expires, the processing
+ * thread is interrupted and the item is recorded as timed out. Results are handed over on the calling thread, in the
+ * order of the items, so that they can be aggregated (written to a file, shown in a progress bar...) without
+ * synchronisation.
+ * <p>
+ * Most image processing loops ignore interruptions, so a timed out item may keep its thread busy. That thread is then
+ * abandoned and a replacement thread is started, so that the other items keep being processed with the same number of
+ * threads. Abandoned threads keep running until their item returns, but they are daemon threads: they do not prevent
+ * the JVM from exiting.
+ * <p>
+ * Every item is accounted for in the outcomes of the last run, which can be saved as a tab-separated report.
+ *
+ * @param <T> type of the items
+ * @param <R> type of the results
+ */
+public class BatchExecutor<T, R> {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Column names of the report */
+	private static final String REPORT_HEADERS = "Item\tStatus\tDuration(ms)\tError\tMessage" +
+	                                             System.lineSeparator();
+	
+	/** Number of threads created, to name them */
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+	
+	/** Number of threads processing the items */
+	private final int threads;
+	
+	/** Outcomes of the last run, in the order of the items */
+	private final List<Outcome<T>> outcomes = new ArrayList<>(0);
+	
+	/** Maximum processing time of one item, in milliseconds (0: no limit) */
+	private long timeout;
+	
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param threads number of threads processing the items (at least 1)
+	 */
+	public BatchExecutor(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	
+	/**
+	 * Setter for the maximum processing time of one item. A duration of 0 or less disables the timeout.
+	 *
+	 * @param duration maximum duration
+	 * @param unit     unit of the duration
+	 */
+	public void setTimeout(long duration, TimeUnit unit) {
+		this.timeout = Math.max(0, unit.toMillis(duration));
+	}
+	
+	
+	/**
+	 * Processes all the items.
+	 *
+	 * @param items    items to process
+	 * @param task     task run on each item
+	 * @param onResult called on the calling thread with each item and its result, in the order of the items (not
+	 *                 called for items that failed)
+	 *
+	 * @return the items that failed, timed out or were cancelled, in their original order, with the cause
+	 */
+	public Map<T, Throwable> run(List<? extends T> items, Task<? super T, ? extends R> task,
+	                             BiConsumer<? super T, ? super R> onResult) {
+		outcomes.clear();
+		Map<T, Throwable> failures = new LinkedHashMap<>();
+		
+		int                         poolSize = Math.min(threads, Math.max(1, items.size()));
+		ThreadPoolExecutor          executor = new ThreadPoolExecutor(poolSize, poolSize,
+		                                                              1, TimeUnit.SECONDS,
+		                                                              new LinkedBlockingQueue<>(),
+		                                                              BatchExecutor::newDaemonThread);
+		ScheduledThreadPoolExecutor watchdog = null;
+		if (timeout > 0) {
+			watchdog = new ScheduledThreadPoolExecutor(1, BatchExecutor::newDaemonThread);
+			watchdog.setRemoveOnCancelPolicy(true);
+		}
+		List<Job<T, R>> jobs = new ArrayList<>(items.size());
+		try {
+			for (T item : items) {
+				Job<T, R> job = new Job<>(item, task, executor, watchdog, timeout);
+				jobs.add(job);
+				executor.execute(job.future);
+			}
+			boolean interrupted = false;
+			for (Job<T, R> job : jobs) {
+				Throwable error = interrupted ? new CancellationException("Batch interrupted") : null;
+				Status    status = interrupted ? Status.CANCELLED : Status.SUCCESS;
+				if (!interrupted) {
+					try {
+						onResult.accept(job.item, job.future.get());
+					} catch (ExecutionException e) {
+						status = Status.FAILED;
+						error = e.getCause();
+					} catch (CancellationException e) {
+						status = job.timedOut ? Status.TIMEOUT : Status.CANCELLED;
+						error = job.timedOut ?
+						        new TimeoutException("Processing took more than " + timeout + " ms") : e;
+					} catch (InterruptedException e) {
+						LOGGER.error("Interrupted while waiting for the batch to finish.", e);
+						Thread.currentThread().interrupt();
+						interrupted = true;
+						status = Status.CANCELLED;
+						error = e;
+					} catch (RuntimeException e) {
+						status = Status.FAILED;
+						error = e;
+					}
+				}
+				if (status != Status.SUCCESS) {
+					job.future.cancel(true);
+					if (!interrupted) {
+						LOGGER.error("Error processing ({}): {}", status, job.item, error);
+					}
+					failures.put(job.item, error);
+				}
+				outcomes.add(new Outcome<>(job.item, status, job.getDuration(), error));
+			}
+		} finally {
+			executor.shutdownNow();
+			if (watchdog != null) {
+				watchdog.shutdownNow();
+			}
+		}
+		return failures;
+	}
+	
+	
+	/**
+	 * Creates a daemon thread, so that threads abandoned after a timeout do not prevent the JVM from exiting.
+	 *
+	 * @param runnable task of the thread
+	 *
+	 * @return the thread
+	 */
+	private static Thread newDaemonThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, "batch-" + THREAD_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+	
+	/**
+	 * Changes the number of threads of a pool, to replace a thread abandoned after a timeout or to remove the extra
+	 * thread once the abandoned one is done.
+	 *
+	 * @param executor thread pool
+	 * @param delta    number of threads to add (or remove, if negative)
+	 */
+	private static void resize(ThreadPoolExecutor executor, int delta) {
+		synchronized (executor) {
+			int size = executor.getCorePoolSize() + delta;
+			if (delta > 0) {
+				executor.setMaximumPoolSize(size);
+				executor.setCorePoolSize(size);
+			} else {
+				executor.setCorePoolSize(size);
+				executor.setMaximumPoolSize(size);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the outcomes of the last run, in the order of the items.
+	 *
+	 * @return an unmodifiable list of outcomes
+	 */
+	public List<Outcome<T>> getOutcomes() {
+		return Collections.unmodifiableList(outcomes);
+	}
+	
+	
+	/**
+	 * Returns the report of the last run: one tab-separated line per item, with its status, processing duration and
+	 * error (if any).
+	 *
+	 * @return the report, with column names
+	 */
+	public String getReport() {
+		StringBuilder report = new StringBuilder(REPORT_HEADERS);
+		for (Outcome<T> outcome : outcomes) {
+			Throwable error = outcome.getError();
+			report.append(clean(String.valueOf(outcome.getItem()))).append('\t')
+			      .append(outcome.getStatus()).append('\t')
+			      .append(outcome.getDuration()).append('\t')
+			      .append(error == null ? "" : error.getClass().getName()).append('\t')
+			      .append(error == null ? "" : clean(String.valueOf(error.getMessage())))
+			      .append(System.lineSeparator());
+		}
+		return report.toString();
+	}
+	
+	
+	/**
+	 * Replaces tabulations and line breaks so that a value fits in one cell of the report.
+	 */
+	private static String clean(String value) {
+		return value.replaceAll("[\\t\\r\\n]+", " ");
+	}
+	
+	
+	/** Status of an item after a run */
+	public enum Status {
+		/** Item processed */
+		SUCCESS,
+		/** Task threw an exception */
+		FAILED,
+		/** Processing took longer than the timeout */
+		TIMEOUT,
+		/** Item not processed because the batch was interrupted */
+		CANCELLED
+	}
+	
+	
+	/**
+	 * Outcome of the processing of one item.
+	 *
+	 * @param <T> type of the item
+	 */
+	public static final class Outcome<T> {
+		/** Item */
+		private final T         item;
+		/** Status */
+		private final Status    status;
+		/** Processing duration, in milliseconds */
+		private final long      duration;
+		/** Cause of the failure, null on success */
+		private final Throwable error;
+		
+		
+		Outcome(T item, Status status, long duration, Throwable error) {
+			this.item = item;
+			this.status = status;
+			this.duration = duration;
+			this.error = error;
+		}
+		
+		
+		public T getItem() {
+			return item;
+		}
+		
+		
+		public Status getStatus() {
+			return status;
+		}
+		
+		
+		public long getDuration() {
+			return duration;
+		}
+		
+		
+		public Throwable getError() {
+			return error;
+		}
+		
+	}
+	
+	
+	/**
+	 * Processing of one item, cancelled by the watchdog if it takes longer than the timeout.
+	 *
+	 * @param <T> type of the item
+	 * @param <R> type of the result
+	 */
+	private static final class Job<T, R> {
+		/** Item */
+		private final T             item;
+		/** Future of the processing */
+		private final FutureTask<R> future;
+		
+		/** Thread pool running the job */
+		private final ThreadPoolExecutor executor;
+		
+		/** Start of the processing (System.nanoTime), 0 if not started */
+		private volatile long    start;
+		/** End of the processing (System.nanoTime), 0 if not finished */
+		private volatile long    end;
+		/** Whether the processing was cancelled by the watchdog */
+		private volatile boolean timedOut;
+		
+		/** Whether the task is running on a thread of the pool */
+		private boolean running;
+		/** Whether the thread was abandoned after a timeout, and replaced in the pool */
+		private boolean abandoned;
+		
+		
+		Job(T item, Task<? super T, ? extends R> task,
+		    ThreadPoolExecutor executor, ScheduledThreadPoolExecutor watchdog, long timeout) {
+			this.item = item;
+			this.executor = executor;
+			this.future = new FutureTask<>(() -> {
+				start = System.nanoTime();
+				ScheduledFuture<?> alarm = null;
+				synchronized (this) {
+					running = true;
+				}
+				if (watchdog != null) {
+					alarm = watchdog.schedule(this::expire, timeout, TimeUnit.MILLISECONDS);
+				}
+				try {
+					return task.process(item);
+				} finally {
+					end = System.nanoTime();
+					if (alarm != null) {
+						alarm.cancel(false);
+					}
+					finish();
+				}
+			});
+		}
+		
+		
+		/**
+		 * Cancels the processing when the timeout expires, and replaces its thread in the pool: the task may ignore
+		 * the interruption and keep the thread busy.
+		 */
+		private synchronized void expire() {
+			if (!future.isDone()) {
+				timedOut = true;
+				future.cancel(true);
+				if (running) {
+					abandoned = true;
+					resize(executor, 1);
+				}
+			}
+		}
+		
+		
+		/**
+		 * Marks the task as returned, and removes the replacement thread if the thread had been abandoned.
+		 */
+		private synchronized void finish() {
+			running = false;
+			if (abandoned) {
+				abandoned = false;
+				resize(executor, -1);
+			}
+		}
+		
+		
+		/**
+		 * Returns the processing duration (so far, if the processing is still running after a timeout).
+		 *
+		 * @return the duration in milliseconds, 0 if the processing did not start
+		 */
+		long getDuration() {
+			long started = start;
+			if (started == 0) {
+				return 0;
+			}
+			long ended = end;
+			return TimeUnit.NANOSECONDS.toMillis((ended == 0 ? System.nanoTime() : ended) - started);
+		}
+		
+	}
+	
+	
+	/**
+	 * Task run on each item of a batch.
+	 *
+	 * @param <T> type of the items
+	 * @param <R> type of the results
+	 */
+	@FunctionalInterface
+	public interface Task<T, R> {
+		
+		/**
+		 * Processes one item.
+		 *
+		 * @param item item to process
+		 *
+		 * @return the result for this item
+		 *
+		 * @throws Exception if the item could not be processed
+		 */
+		R process(T item) throws Exception;
+		
+	}
+	
+}
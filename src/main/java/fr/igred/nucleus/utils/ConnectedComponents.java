@@ -17,244 +17,422 @@
  */
 package fr.igred.nucleus.utils;
 
-import java.util.ArrayList;
-import java.util.List;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
 
+import java.util.Arrays;
 
-public class ConnectedComponents {
-	private final List<Double> listLabel = new ArrayList<>();
-	private       double[][]   image;
+
+/**
+ * Connected components labelling of 2D and 3D binary images, with a two-pass union-find algorithm on primitive
+ * arrays.
+ * <p>
+ * Labels go from 1 to {@link #getNbLabels()} and are numbered in raster order (z, then y, then x) of the first voxel
+ * of each component. The number of voxels and the bounding box of each component are collected during the labelling,
+ * as well as, optionally, its boundary voxels (voxels with a 4-neighbour in 2D, or a 6-neighbour in 3D, outside the
+ * component or outside the image).
+ * <p>
+ * Voxel (i, j, k) is at index {@code (k * height + j) * width + i} in the label array.
+ */
+public final class ConnectedComponents {
+	/** Image width */
+	private final int   width;
+	/** Image height */
+	private final int   height;
+	/** Image depth */
+	private final int   depth;
+	/** Label of each voxel (0 for background) */
+	private final int[] labels;
+	
+	/** Number of labels */
+	private int     nbLabels;
+	/** Number of voxels for each label */
+	private int[]   voxelCounts;
+	/** Bounding boxes: x min for each label */
+	private int[]   xMins;
+	/** Bounding boxes: x max for each label */
+	private int[]   xMaxs;
+	/** Bounding boxes: y min for each label */
+	private int[]   yMins;
+	/** Bounding boxes: y max for each label */
+	private int[]   yMaxs;
+	/** Bounding boxes: z min for each label */
+	private int[]   zMins;
+	/** Bounding boxes: z max for each label */
+	private int[]   zMaxs;
+	/** Boundary voxels indices for each label (null if not collected) */
+	private int[][] boundaries;
+	/** Number of boundary voxels for each label */
+	private int[]   boundarySizes;
+	
+	
+	private ConnectedComponents(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.labels = new int[width * height * depth];
+	}
 	
 	
 	/**
-	 * Iterates over the image pixels and look for these connected components
+	 * Labels the voxels above 0 of an image.
+	 *
+	 * @param imagePlusInput     binary image
+	 * @param connectivity       4 or 8 (in each slice), 6 or 26 (3D)
+	 * @param collectBoundaries  whether the boundary voxels of each component are listed
 	 *
-	 * @param labelIni
+	 * @return the labelled components
 	 */
-	void computeLabel(double labelIni) {
-		int currentLabel = 2;
-		// Iterate over the image pixels
-		for (int i = 0; i < image.length; ++i) {
-			for (int j = 0; j < image[i].length; ++j) {
-				if (image[i][j] == labelIni) {
-					image[i][j] = currentLabel;
-					VoxelRecord voxelRecord = new VoxelRecord();
-					voxelRecord.setLocation(i, j, 0);
-					breadthFirstSearch(labelIni, voxelRecord, currentLabel);
-					listLabel.add((double) currentLabel);
-					currentLabel++;
-				}
+	public static ConnectedComponents label(ImagePlus imagePlusInput, int connectivity, boolean collectBoundaries) {
+		int        w     = imagePlusInput.getWidth();
+		int        h     = imagePlusInput.getHeight();
+		int        d     = imagePlusInput.getStackSize();
+		int        wh    = w * h;
+		ImageStack stack = imagePlusInput.getStack();
+		boolean[]  mask  = new boolean[wh * d];
+		for (int k = 0; k < d; ++k) {
+			ImageProcessor ip = stack.getProcessor(k + 1);
+			for (int index = 0; index < wh; ++index) {
+				mask[k * wh + index] = ip.getf(index) > 0;
 			}
 		}
+		return label(mask, w, h, d, connectivity, collectBoundaries);
 	}
 	
 	
 	/**
-	 * @param labelIni
-	 * @param voxelRecord
-	 * @param currentLabel
+	 * Labels the foreground voxels of a binary mask.
+	 *
+	 * @param mask              foreground voxels
+	 * @param width             image width
+	 * @param height            image height
+	 * @param depth             image depth (1 for 2D images)
+	 * @param connectivity      4 or 8 (in each slice), 6 or 26 (3D)
+	 * @param collectBoundaries whether the boundary voxels of each component are listed
+	 *
+	 * @return the labelled components
 	 */
-	private void breadthFirstSearch(double labelIni, VoxelRecord voxelRecord, int currentLabel) {
-		List<VoxelRecord> voxelBoundary = detectVoxelBoundary(labelIni);
-		voxelBoundary.add(0, voxelRecord);
-		image[(int) voxelRecord.getI()][(int) voxelRecord.getJ()] = currentLabel;
-		while (!voxelBoundary.isEmpty()) {
-			VoxelRecord voxelRemove = voxelBoundary.remove(0);
-			for (int ii = (int) voxelRemove.getI() - 1; ii <= (int) voxelRemove.getI() + 1; ii++) {
-				for (int jj = (int) voxelRemove.getJ() - 1; jj <= (int) voxelRemove.getJ() + 1; jj++) {
-					if (ii >= 0 && ii <= image.length - 1 && jj >= 0 && jj <= image[0].length - 1) {
-						if (ii > 0 && ii < image.length - 1 && jj > 0 && jj < image[0].length - 1) {
-							if (image[ii][jj] == labelIni &&
-							    (image[ii - 1][jj] == currentLabel ||
-							     image[ii + 1][jj] == currentLabel ||
-							     image[ii][jj - 1] == currentLabel ||
-							     image[ii][jj + 1] == currentLabel)) {
-								image[ii][jj] = currentLabel;
-								VoxelRecord voxel = new VoxelRecord();
-								voxel.setLocation(ii, jj, 0);
-								voxelBoundary.add(0, voxel);
-							}
-						} else if (ii == 0) {
-							if (jj == 0) {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii + 1][jj] == currentLabel || image[ii][jj + 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							} else if (jj == image[0].length - 1) {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii + 1][jj] == currentLabel || image[ii][jj - 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							} else {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii + 1][jj] == currentLabel ||
-								     image[ii][jj - 1] == currentLabel ||
-								     image[ii][jj + 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							}
-						} else if (ii == image.length - 1) {
-							if (jj == 0) {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii - 1][jj] == currentLabel || image[ii][jj + 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							} else if (jj == image[0].length - 1) {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii - 1][jj] == currentLabel || image[ii][jj - 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							} else {
-								if (image[ii][jj] == labelIni &&
-								    (image[ii - 1][jj] == currentLabel ||
-								     image[ii][jj - 1] == currentLabel ||
-								     image[ii][jj + 1] == currentLabel)) {
-									image[ii][jj] = currentLabel;
-									VoxelRecord voxel = new VoxelRecord();
-									voxel.setLocation(ii, jj, 0);
-									voxelBoundary.add(0, voxel);
-								}
-							}
-						} else if (jj == 0) {
-							if (image[ii][jj] == labelIni &&
-							    (image[ii - 1][jj] == currentLabel ||
-							     image[ii + 1][jj] == currentLabel ||
-							     image[ii][jj + 1] == currentLabel)) {
-								image[ii][jj] = currentLabel;
-								VoxelRecord voxel = new VoxelRecord();
-								voxel.setLocation(ii, jj, 0);
-								voxelBoundary.add(0, voxel);
+	public static ConnectedComponents label(boolean[] mask,
+	                                        int width,
+	                                        int height,
+	                                        int depth,
+	                                        int connectivity,
+	                                        boolean collectBoundaries) {
+		ConnectedComponents components = new ConnectedComponents(width, height, depth);
+		components.run(mask, backwardOffsets(connectivity), collectBoundaries);
+		return components;
+	}
+	
+	
+	/**
+	 * Returns the neighbours already visited in raster order for a connectivity, as {dx, dy, dz} triplets.
+	 *
+	 * @param connectivity 4, 8, 6 or 26
+	 *
+	 * @return the offsets of the previous neighbours
+	 */
+	private static int[][] backwardOffsets(int connectivity) {
+		switch (connectivity) {
+			case 4:
+				return new int[][]{{-1, 0, 0}, {0, -1, 0}};
+			case 8:
+				return new int[][]{{-1, 0, 0}, {-1, -1, 0}, {0, -1, 0}, {1, -1, 0}};
+			case 6:
+				return new int[][]{{-1, 0, 0}, {0, -1, 0}, {0, 0, -1}};
+			case 26:
+				int[][] offsets = new int[13][];
+				int n = 0;
+				for (int dz = -1; dz <= 0; ++dz) {
+					for (int dy = -1; dy <= 1; ++dy) {
+						for (int dx = -1; dx <= 1; ++dx) {
+							if (dz < 0 || dy < 0 || dy == 0 && dx < 0) {
+								offsets[n++] = new int[]{dx, dy, dz};
 							}
-						} else if (jj == image[0].length - 1 &&
-						           image[ii][jj] == labelIni &&
-						           (image[ii - 1][jj] == currentLabel ||
-						            image[ii + 1][jj] == currentLabel ||
-						            image[ii][jj - 1] == currentLabel)) {
-							image[ii][jj] = currentLabel;
-							VoxelRecord voxel = new VoxelRecord();
-							voxel.setLocation(ii, jj, 0);
-							voxelBoundary.add(0, voxel);
 						}
 					}
 				}
-			}
+				return offsets;
+			default:
+				throw new IllegalArgumentException("Invalid connectivity: " + connectivity);
 		}
 	}
 	
 	
 	/**
-	 * @param label
+	 * Two-pass labelling: provisional labels and their equivalences, then final labels and component statistics.
 	 *
-	 * @return
+	 * @param mask              foreground voxels
+	 * @param offsets           previous neighbours
+	 * @param collectBoundaries whether the boundary voxels of each component are listed
 	 */
-	private List<VoxelRecord> detectVoxelBoundary(double label) {
-		List<VoxelRecord> lVoxelBoundary = new ArrayList<>();
-		for (int i = 0; i < image.length; ++i) {
-			for (int j = 0; j < image[i].length; ++j) {
-				if (image[i][j] == label) {
-					if (i > 0 && i < image.length - 1 && j > 0 && j < image[i].length - 1) {
-						if (image[i - 1][j] == 0 ||
-						    image[i + 1][j] == 0 ||
-						    image[i][j - 1] == 0 ||
-						    image[i][j + 1] == 0) {
-							VoxelRecord voxelTest = new VoxelRecord();
-							voxelTest.setLocation(i, j, 0);
-							lVoxelBoundary.add(voxelTest);
+	private void run(boolean[] mask, int[][] offsets, boolean collectBoundaries) {
+		int   wh      = width * height;
+		int[] parents = new int[64];
+		int   nbTemp  = 0;
+		
+		/* First pass: provisional labels, merged with union-find */
+		for (int k = 0; k < depth; ++k) {
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					int voxel = k * wh + j * width + i;
+					if (!mask[voxel]) {
+						continue;
+					}
+					int current = 0;
+					for (int[] offset : offsets) {
+						int ii = i + offset[0];
+						int jj = j + offset[1];
+						int kk = k + offset[2];
+						if (ii < 0 || jj < 0 || kk < 0 || ii >= width || jj >= height) {
+							continue;
 						}
-					} else if (i == 0) {
-						if (j == 0) {
-							if (image[i + 1][j] == 0 || image[i][j + 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
-						} else if (j == image[0].length - 1) {
-							if (image[i + 1][j] == 0 || image[i][j - 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
-						} else {
-							if (image[i + 1][j] == 0 || image[i][j - 1] == 0 || image[i][j + 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
+						int neighbour = labels[kk * wh + jj * width + ii];
+						if (neighbour == 0) {
+							continue;
 						}
-					} else if (i == image.length - 1) {
-						if (j == 0) {
-							if (image[i - 1][j] == 0 || image[i][j + 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
-						} else if (j == image[0].length - 1) {
-							if (image[i - 1][j] == 0 || image[i][j - 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
-						} else {
-							if (image[i - 1][j] == 0 || image[i][j - 1] == 0 || image[i][j + 1] == 0) {
-								VoxelRecord voxelTest = new VoxelRecord();
-								voxelTest.setLocation(i, j, 0);
-								lVoxelBoundary.add(voxelTest);
-							}
+						if (current == 0) {
+							current = neighbour;
+						} else if (neighbour != current) {
+							union(parents, current, neighbour);
 						}
-					} else if (j == 0) {
-						if (image[i - 1][j] == 0 || image[i + 1][j] == 0 || image[i][j + 1] == 0) {
-							VoxelRecord voxelTest = new VoxelRecord();
-							voxelTest.setLocation(i, j, 0);
-							lVoxelBoundary.add(voxelTest);
+					}
+					if (current == 0) {
+						++nbTemp;
+						if (nbTemp >= parents.length) {
+							parents = Arrays.copyOf(parents, parents.length * 2);
 						}
-					} else if (j == image[0].length - 1 &&
-					           (image[i - 1][j] == 0 || image[i + 1][j] == 0 || image[i][j - 1] == 0)) {
-						VoxelRecord voxelTest = new VoxelRecord();
-						voxelTest.setLocation(i, j, 0);
-						lVoxelBoundary.add(voxelTest);
+						parents[nbTemp] = nbTemp;
+						current = nbTemp;
+					}
+					labels[voxel] = current;
+				}
+			}
+		}
+		
+		/* Second pass: final labels in raster order, statistics and boundaries */
+		int[] finalLabels = new int[nbTemp + 1];
+		allocate(nbTemp, collectBoundaries);
+		for (int k = 0; k < depth; ++k) {
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					int voxel = k * wh + j * width + i;
+					if (labels[voxel] == 0) {
+						continue;
+					}
+					int root = find(parents, labels[voxel]);
+					if (finalLabels[root] == 0) {
+						finalLabels[root] = ++nbLabels;
+						xMins[nbLabels] = i;
+						xMaxs[nbLabels] = i;
+						yMins[nbLabels] = j;
+						yMaxs[nbLabels] = j;
+						zMins[nbLabels] = k;
+						zMaxs[nbLabels] = k;
+					}
+					int label = finalLabels[root];
+					labels[voxel] = label;
+					voxelCounts[label]++;
+					xMins[label] = Math.min(xMins[label], i);
+					xMaxs[label] = Math.max(xMaxs[label], i);
+					yMins[label] = Math.min(yMins[label], j);
+					yMaxs[label] = Math.max(yMaxs[label], j);
+					zMaxs[label] = Math.max(zMaxs[label], k);
+					if (collectBoundaries && isBoundary(mask, i, j, k)) {
+						addBoundary(label, voxel);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Allocates the per-label arrays for a maximum number of labels.
+	 *
+	 * @param maxLabels         maximum number of labels
+	 * @param collectBoundaries whether the boundary voxels of each component are listed
+	 */
+	private void allocate(int maxLabels, boolean collectBoundaries) {
+		voxelCounts = new int[maxLabels + 1];
+		xMins = new int[maxLabels + 1];
+		xMaxs = new int[maxLabels + 1];
+		yMins = new int[maxLabels + 1];
+		yMaxs = new int[maxLabels + 1];
+		zMins = new int[maxLabels + 1];
+		zMaxs = new int[maxLabels + 1];
+		if (collectBoundaries) {
+			boundaries = new int[maxLabels + 1][];
+			boundarySizes = new int[maxLabels + 1];
+		}
+	}
+	
+	
+	/**
+	 * Checks if a foreground voxel has a 4-neighbour (2D) or a 6-neighbour (3D) outside the foreground or the image.
+	 */
+	private boolean isBoundary(boolean[] mask, int i, int j, int k) {
+		int wh    = width * height;
+		int voxel = k * wh + j * width + i;
+		return i == 0 || !mask[voxel - 1] ||
+		       i == width - 1 || !mask[voxel + 1] ||
+		       j == 0 || !mask[voxel - width] ||
+		       j == height - 1 || !mask[voxel + width] ||
+		       depth > 1 && (k == 0 || !mask[voxel - wh] ||
+		                     k == depth - 1 || !mask[voxel + wh]);
+	}
+	
+	
+	/**
+	 * Adds a voxel to the boundary of a label.
+	 */
+	private void addBoundary(int label, int voxel) {
+		int[] boundary = boundaries[label];
+		int   size     = boundarySizes[label];
+		if (boundary == null) {
+			boundary = new int[16];
+		} else if (size == boundary.length) {
+			boundary = Arrays.copyOf(boundary, size * 2);
+		}
+		boundary[size] = voxel;
+		boundaries[label] = boundary;
+		boundarySizes[label] = size + 1;
+	}
+	
+	
+	/**
+	 * Finds the root of a provisional label, with path halving.
+	 */
+	private static int find(int[] parents, int label) {
+		int current = label;
+		while (parents[current] != current) {
+			parents[current] = parents[parents[current]];
+			current = parents[current];
+		}
+		return current;
+	}
+	
+	
+	/**
+	 * Merges two provisional labels, the smallest root being kept.
+	 */
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if (rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+	
+	
+	/**
+	 * Removes the components touching the borders of the image (in z too for 3D images). Labels are not renumbered.
+	 */
+	public void removeBorderLabels() {
+		for (int label = 1; label <= nbLabels; ++label) {
+			if (voxelCounts[label] > 0 &&
+			    (xMins[label] == 0 || yMins[label] == 0 ||
+			     xMaxs[label] == width - 1 || yMaxs[label] == height - 1 ||
+			     depth > 1 && (zMins[label] == 0 || zMaxs[label] == depth - 1))) {
+				removeLabel(label);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Removes a component: its voxels are set to 0 and its voxel count too. Labels are not renumbered.
+	 *
+	 * @param label label to remove
+	 */
+	public void removeLabel(int label) {
+		int wh = width * height;
+		for (int k = zMins[label]; k <= zMaxs[label]; ++k) {
+			for (int j = yMins[label]; j <= yMaxs[label]; ++j) {
+				for (int i = xMins[label]; i <= xMaxs[label]; ++i) {
+					int voxel = k * wh + j * width + i;
+					if (labels[voxel] == label) {
+						labels[voxel] = 0;
 					}
 				}
 			}
 		}
-		return lVoxelBoundary;
+		voxelCounts[label] = 0;
+		if (boundaries != null) {
+			boundaries[label] = null;
+			boundarySizes[label] = 0;
+		}
+	}
+	
+	
+	/** @return the number of labels (including removed ones) */
+	public int getNbLabels() {
+		return nbLabels;
+	}
+	
+	
+	/** @return the label of each voxel */
+	public int[] getLabels() {
+		return labels;
 	}
 	
 	
 	/**
-	 * @param labelIni
+	 * Returns the number of voxels of a component.
+	 *
+	 * @param label label of the component
 	 *
-	 * @return
+	 * @return the number of voxels (0 if the component was removed)
 	 */
-	public List<Double> getListLabel(double labelIni) {
-		computeLabel(labelIni);
-		return new ArrayList<>(listLabel);
+	public int getVoxelCount(int label) {
+		return voxelCounts[label];
+	}
+	
+	
+	/**
+	 * Returns the bounding box of a component.
+	 *
+	 * @param label label of the component
+	 *
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}
+	 */
+	public int[] getBoundingBox(int label) {
+		return new int[]{xMins[label], xMaxs[label], yMins[label], yMaxs[label], zMins[label], zMaxs[label]};
+	}
+	
+	
+	/**
+	 * Returns the boundary voxels of a component, if they were collected.
+	 *
+	 * @param label label of the component
+	 *
+	 * @return the indices of the boundary voxels
+	 */
+	public int[] getBoundary(int label) {
+		if (boundaries == null || boundaries[label] == null) {
+			return new int[0];
+		}
+		return Arrays.copyOf(boundaries[label], boundarySizes[label]);
+	}
+	
+	
+	/** @return the image width */
+	public int getWidth() {
+		return width;
 	}
 	
 	
-	/** @return  */
-	public double[][] getImageTable() {
-		return image;
+	/** @return the image height */
+	public int getHeight() {
+		return height;
 	}
 	
 	
-	/** @param image  */
-	public void setImageTable(double[][] image) {
-		this.image = image;
+	/** @return the image depth */
+	public int getDepth() {
+		return depth;
 	}
 	
-}
\ No newline at end of file
+}
@@ -34,16 +34,25 @@ import java.util.TreeSet;
  * Class which run a 2D convex hull algorithm to a set of voxels
  * <p>
  * Currently uses an implementation of the Graham Scan
+ *
+ * @deprecated Only used by {@link ConvexHullImageMaker}: convex hulls are computed by
+ * {@link ConvexHullSweep#monotoneChain(int[], int[], int)}.
  */
+@Deprecated
 public final class ConvexHullDetection {
 	
-	/** Currently used algorithm to calculate nuclei convex hull */
-	public static final String CONVEX_HULL_ALGORITHM = "GRAHAM";
+	/**
+	 * Currently used algorithm to calculate nuclei convex hull
+	 *
+	 * @deprecated Use {@link ConvexHullSegmentation#CONVEX_HULL_ALGORITHM}.
+	 */
+	@Deprecated
+	public static final String CONVEX_HULL_ALGORITHM = ConvexHullSegmentation.CONVEX_HULL_ALGORITHM;
 	
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
-
+	
 	/** Private constructor to prevent instantiation */
 	private ConvexHullDetection() {
 		// Private constructor to prevent instantiation
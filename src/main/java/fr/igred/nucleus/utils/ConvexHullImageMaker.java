@@ -37,15 +37,16 @@ import java.util.regex.Pattern;
  * Running a convex hull algorithm for each axis combined
  *
  * @author Tristan Dubos and Axel Poulet
+ * @deprecated Use {@link ConvexHullSweep#run(ImagePlus)}, which processes the three planes at once and gives the same
+ * result as the union of the images of the three axes.
  */
+@Deprecated
 public class ConvexHullImageMaker {
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
 	private static final int BINARY_WHITE = 255;
 	
-	private List<Double> listLabel = new ArrayList<>(0);
-	
 	// Axes name used to determine the order of axes, default is "xy"
 	private String axesName = "xy";
 	
@@ -119,16 +120,16 @@ public class ConvexHullImageMaker {
 	private ImageProcessor convexHullSlice(ImagePlus imagePlusBinary, int k, int depth, int width, int height) {
 		LOGGER.trace("Processing slice {}/{} of plane \"{}\"", k, depth, axesName);
 		
-		// Return image with labelled components (& initialize listLabel)
-		double[][] image = giveTable(imagePlusBinary, width, height, k);
+		// Label the connected components of the slice and list their boundaries
+		ConnectedComponents components = giveTable(imagePlusBinary, width, height, k);
+		int                 nbLabels   = components.getNbLabels();
 		
 		ImageProcessor ip;
 		// Calculate boundaries
-		if (listLabel.size() == 1) {  // If 1 single connected component
-			LOGGER.trace("Processing the only label {} on slice {}/{}",
-			             listLabel.get(0), k, depth);
+		if (nbLabels == 1) {  // If 1 single connected component
+			LOGGER.trace("Processing the only label 1 on slice {}/{}", k, depth);
 			// List the voxels of boundary of the component
-			List<VoxelRecord> lVoxelBoundary = detectVoxelBoundary(image, listLabel.get(0), k);
+			List<VoxelRecord> lVoxelBoundary = detectVoxelBoundary(components, 1, k);
 			// If component is big enough
 			if (lVoxelBoundary.size() > 5) {
 				// Create temporary image of the component using the convex hull detection algorithm
@@ -136,12 +137,11 @@ public class ConvexHullImageMaker {
 			} else {
 				ip = new ByteProcessor(width, height);
 			}
-		} else if (listLabel.size() > 1) { // If several connected components
+		} else if (nbLabels > 1) { // If several connected components
 			ip = new ByteProcessor(width, height);
-			for (Double label : listLabel) {
-				LOGGER.trace("Processing label {} ({}/{}) on slice: {}/{}",
-				             label, listLabel.indexOf(label) + 1, listLabel.size(), k, depth);
-				convexHullSliceLabel(k, width, height, label, image, ip);
+			for (int label = 1; label <= nbLabels; ++label) {
+				LOGGER.trace("Processing label {}/{} on slice: {}/{}", label, nbLabels, k, depth);
+				convexHullSliceLabel(k, width, height, label, components, ip);
 			}
 		} else { // In case nothing is found return black image
 			ip = new ByteProcessor(width, height);
@@ -153,16 +153,21 @@ public class ConvexHullImageMaker {
 	/**
 	 * Compute the convex hull for the given slice and label
 	 *
-	 * @param k      index of the slice
-	 * @param width  width of the slice
-	 * @param height height of the slice
-	 * @param label  label of the component
-	 * @param image  image used
-	 * @param ip     image processor to fill with the convex hull
+	 * @param k          index of the slice
+	 * @param width      width of the slice
+	 * @param height     height of the slice
+	 * @param label      label of the component
+	 * @param components labelled components of the slice
+	 * @param ip         image processor to fill with the convex hull
 	 */
-	private void convexHullSliceLabel(int k, int width, int height, Double label, double[][] image, ImageProcessor ip) {
+	private void convexHullSliceLabel(int k,
+	                                  int width,
+	                                  int height,
+	                                  int label,
+	                                  ConnectedComponents components,
+	                                  ImageProcessor ip) {
 		// List the voxels of boundary of the component
-		List<VoxelRecord> lVoxelBoundary = detectVoxelBoundary(image, label, k);
+		List<VoxelRecord> lVoxelBoundary = detectVoxelBoundary(components, label, k);
 		// When the component is big enough make image
 		if (lVoxelBoundary.size() > 5) {
 			// Create temporary image of the component using the convex hull detection algorithm
@@ -181,17 +186,20 @@ public class ConvexHullImageMaker {
 	
 	
 	/**
-	 * Find all the voxels of the boundaries (near black pixels)
+	 * Converts the boundary pixels of a component (pixels with a 4-neighbour outside the component or the slice) to
+	 * voxels.
 	 *
-	 * @param image image used
-	 * @param label current label
-	 * @param index slice index
+	 * @param components labelled components of the slice
+	 * @param label      current label
+	 * @param index      slice index
 	 *
 	 * @return list of boundary voxels
 	 */
-	List<VoxelRecord> detectVoxelBoundary(double[][] image, double label, int index) {
+	List<VoxelRecord> detectVoxelBoundary(ConnectedComponents components, int label, int index) {
 		LOGGER.trace("Detecting voxel boundary.");
-		List<VoxelRecord> lVoxelBoundary = new ArrayList<>();
+		int[]             boundary       = components.getBoundary(label);
+		int               width          = components.getWidth();
+		List<VoxelRecord> lVoxelBoundary = new ArrayList<>(boundary.length);
 		
 		// Use axesName to determine the order of axes
 		// 0: x, 1: y, 2: z
@@ -207,29 +215,17 @@ public class ConvexHullImageMaker {
 			axeIndex = new int[]{0, 1, 2};
 		}
 		
-		// Browse through the pixels of the 2D image
-		int[] xyz = {1, 1, index};
-		for (int i = 1; i < image.length; ++i) {
-			for (int j = 1; j < image[i].length; ++j) {
-				if (image[i][j] == label) {
-					// Check if the current pixel is a boundary pixel
-					boolean isBoundary = image[i - 1][j] == 0 ||
-					                     image[i + 1][j] == 0 ||
-					                     image[i][j - 1] == 0 ||
-					                     image[i][j + 1] == 0;
-					if (isBoundary) {
-						xyz[0] = i;
-						xyz[1] = j;
-						int x = xyz[axeIndex[0]];
-						int y = xyz[axeIndex[1]];
-						int z = xyz[axeIndex[2]];
-						
-						VoxelRecord voxelTest = new VoxelRecord();
-						voxelTest.setLocation(x, y, z);
-						lVoxelBoundary.add(voxelTest);
-					}
-				}
-			}
+		int[] xyz = {0, 0, index};
+		for (int pixel : boundary) {
+			xyz[0] = pixel % width;
+			xyz[1] = pixel / width;
+			int x = xyz[axeIndex[0]];
+			int y = xyz[axeIndex[1]];
+			int z = xyz[axeIndex[2]];
+			
+			VoxelRecord voxelTest = new VoxelRecord();
+			voxelTest.setLocation(x, y, z);
+			lVoxelBoundary.add(voxelTest);
 		}
 		return lVoxelBoundary;
 	}
@@ -316,28 +312,29 @@ public class ConvexHullImageMaker {
 	 * @param height         height of the slice
 	 * @param index          index of the slice
 	 *
-	 * @return list of label
+	 * @return labelled components (4-connectivity) with their boundaries
 	 */
-	double[][] giveTable(ImagePlus imagePlusInput, int width, int height, int index) {
+	ConnectedComponents giveTable(ImagePlus imagePlusInput, int width, int height, int index) {
 		ImageStack imageStackInput = imagePlusInput.getStack();
-		double[][] image           = new double[width][height];
-		for (int i = 0; i < width; ++i) {
+		boolean[]  mask            = new boolean[width * height];
+		if ("xy".equals(axesName)) {
+			ImageProcessor ip = imageStackInput.getProcessor(index + 1);
+			for (int pixel = 0; pixel < mask.length; ++pixel) {
+				mask[pixel] = ip.getf(pixel) == BINARY_WHITE;
+			}
+		} else {
 			for (int j = 0; j < height; ++j) {
-				if ("xy".equals(axesName)) {
-					image[i][j] = imageStackInput.getVoxel(i, j, index);
-				} else if ("xz".equals(axesName)) {
-					image[i][j] = imageStackInput.getVoxel(i, index, j);
-				} else {
-					image[i][j] = imageStackInput.getVoxel(index, i, j);
+				ImageProcessor ip = imageStackInput.getProcessor(j + 1);
+				for (int i = 0; i < width; ++i) {
+					if ("xz".equals(axesName)) {
+						mask[j * width + i] = ip.getf(i, index) == BINARY_WHITE;
+					} else {
+						mask[j * width + i] = ip.getf(index, i) == BINARY_WHITE;
+					}
 				}
 			}
 		}
-		ConnectedComponents connectedComponents = new ConnectedComponents();
-		connectedComponents.setImageTable(image);
-		// One label per connected components
-		listLabel = connectedComponents.getListLabel(BINARY_WHITE);
-		// Return the image where all connected components have a different label (value)
-		return connectedComponents.getImageTable();
+		return ConnectedComponents.label(mask, width, height, 1, 4, true);
 	}
 	
 	
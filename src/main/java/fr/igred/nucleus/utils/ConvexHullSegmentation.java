@@ -18,7 +18,6 @@
 package fr.igred.nucleus.utils;
 
 import ij.ImagePlus;
-import ij.ImageStack;
 import inra.ijpb.morphology.Morphology;
 import inra.ijpb.morphology.Strel3D;
 import org.slf4j.Logger;
@@ -38,6 +37,9 @@ import java.lang.invoke.MethodHandles;
  */
 public final class ConvexHullSegmentation {
 	
+	/** Name of the convex hull segmentation, used for its output folder and dataset */
+	public static final String CONVEX_HULL_ALGORITHM = "GRAHAM";
+	
 	/** Logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	
@@ -57,62 +59,12 @@ public final class ConvexHullSegmentation {
 	 */
 	public static ImagePlus convexHullDetection(ImagePlus imagePlusInput) {
 		LOGGER.info("Running Convex Hull Algorithm.");
-		ConvexHullImageMaker nuc = new ConvexHullImageMaker();
-		nuc.setAxes("xy");
-		ImagePlus imagePlusXY = nuc.runConvexHullDetection(imagePlusInput);
-		LOGGER.trace("XY done");
-		nuc.setAxes("xz");
-		ImagePlus imagePlusXZ = nuc.runConvexHullDetection(imagePlusInput);
-		LOGGER.trace("XZ done");
-		nuc.setAxes("yz");
-		ImagePlus imagePlusYZ = nuc.runConvexHullDetection(imagePlusInput);
-		LOGGER.trace("YZ done");
-		
-		ImagePlus result  = imageMakingUnion(imagePlusInput, imagePlusXY, imagePlusXZ, imagePlusYZ);
+		/* The slices of the three planes are processed in parallel, and merged with the input image */
+		ImagePlus result  = ConvexHullSweep.run(imagePlusInput);
 		Strel3D   strel3D = Strel3D.Shape.CUBE.fromDiameter(5);
 		result.setStack(Morphology.opening(result.getStack(), strel3D));
 		
 		return result;
 	}
 	
-	
-	/**
-	 * Make an union of segmented images from the different plans
-	 *
-	 * @param imagePlusXY Segmented image in XY dimension
-	 * @param imagePlusXZ Segmented image in XZ dimension
-	 * @param imagePlusYZ Segmented image in YZ dimension
-	 *
-	 * @return ImagePlus image results of the convex hull algorithm
-	 *
-	 * @see #convexHullDetection(ImagePlus)
-	 */
-	private static ImagePlus imageMakingUnion(ImagePlus imagePlusInput,
-	                                          ImagePlus imagePlusXY,
-	                                          ImagePlus imagePlusXZ,
-	                                          ImagePlus imagePlusYZ) {
-		ImagePlus imagePlusOutput = imagePlusInput.duplicate();
-		imagePlusOutput.setTitle(imagePlusInput.getTitle());
-		
-		ImageStack imageStackXY     = imagePlusXY.getStack();
-		ImageStack imageStackXZ     = imagePlusXZ.getStack();
-		ImageStack imageStackYZ     = imagePlusYZ.getStack();
-		ImageStack imageStackOutput = imagePlusOutput.getStack();
-		
-		for (int d = 0; d < imagePlusXY.getNSlices(); ++d) {
-			for (int w = 0; w < imagePlusXY.getWidth(); ++w) {
-				for (int h = 0; h < imagePlusXY.getHeight(); ++h) {
-					if ((imageStackXY.getVoxel(w, h, d) != 0 ||
-					    imageStackYZ.getVoxel(h, d, w) != 0 ||
-					    imageStackXZ.getVoxel(w, d, h) != 0) &&
-					    imageStackOutput.getVoxel(w, h, d) == 0) {
-							imageStackOutput.setVoxel(w, h, d, 255);
-						}
-					
-				}
-			}
-		}
-		return imagePlusOutput;
-	}
-	
 }
@@ -0,0 +1,319 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+
+/**
+ * Convex hull correction of a 3D binary image, computed slice by slice in the XY, XZ and YZ planes.
+ * <p>
+ * In each slice of each plane, the 4-connected components are labelled, and the convex hull of the boundary pixels of
+ * each component (more than 5 pixels) is filled. The result is the union of the input image and of the filled hulls
+ * of the three planes. All the slices of the three planes are processed in parallel with the {@link SharedExecutor}.
+ * <p>
+ * Hulls are computed with Andrew's monotone chain algorithm on integer coordinates, and filled with a scanline
+ * rasteriser: a pixel is filled when its centre is inside the hull, as ImageJ fills polygon ROIs, the hull vertices
+ * being the top-left corners of the boundary pixels.
+ */
+public final class ConvexHullSweep {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Value of the foreground voxels */
+	private static final int BINARY_WHITE = 255;
+	
+	/** Minimum number of boundary pixels for a component to be filled */
+	private static final int MIN_BOUNDARY = 6;
+	
+	/** XY plane: slices along z */
+	private static final int XY = 0;
+	/** XZ plane: slices along y */
+	private static final int XZ = 1;
+	/** YZ plane: slices along x */
+	private static final int YZ = 2;
+	
+	
+	/** Private constructor to prevent instantiation */
+	private ConvexHullSweep() {
+		// Private constructor to prevent instantiation
+	}
+	
+	
+	/**
+	 * Computes the union of a binary image and of the convex hulls of its components in the XY, XZ and YZ planes.
+	 *
+	 * @param imagePlusInput binary image (foreground voxels at 255)
+	 *
+	 * @return a new image, with the same title
+	 */
+	public static ImagePlus run(ImagePlus imagePlusInput) {
+		ImagePlus imagePlusOutput = imagePlusInput.duplicate();
+		imagePlusOutput.setTitle(imagePlusInput.getTitle());
+		
+		VoxelView input  = VoxelView.of(imagePlusInput);
+		VoxelView output = VoxelView.of(imagePlusOutput);
+		int       width  = input.getWidth();
+		int       height = input.getHeight();
+		int       depth  = input.getDepth();
+		
+		/* Tasks: the XY slices, then the XZ slices, then the YZ slices */
+		SharedExecutor.parallelFor(0, depth + height + width, task -> {
+			if (task < depth) {
+				sweepSlice(input, output, XY, task);
+			} else if (task < depth + height) {
+				sweepSlice(input, output, XZ, task - depth);
+			} else {
+				sweepSlice(input, output, YZ, task - depth - height);
+			}
+		});
+		return imagePlusOutput;
+	}
+	
+	
+	/**
+	 * Fills the convex hulls of the components of one slice of a plane in the output image. Slices of different planes
+	 * cross each other, but voxels are only ever set to the foreground value, so they can be processed concurrently.
+	 *
+	 * @param input  binary image
+	 * @param output output image
+	 * @param plane  plane of the slice ({@link #XY}, {@link #XZ} or {@link #YZ})
+	 * @param index  slice index, along the axis orthogonal to the plane
+	 */
+	private static void sweepSlice(VoxelView input, VoxelView output, int plane, int index) {
+		/* Slice coordinates (u, v): (x, y) in XY, (x, z) in XZ and (y, z) in YZ */
+		int uSize = plane == YZ ? input.getHeight() : input.getWidth();
+		int vSize = plane == XY ? input.getHeight() : input.getDepth();
+		
+		boolean[] mask  = new boolean[uSize * vSize];
+		boolean   empty = true;
+		for (int v = 0; v < vSize; ++v) {
+			for (int u = 0; u < uSize; ++u) {
+				boolean foreground = voxel(input, plane, index, u, v) == BINARY_WHITE;
+				mask[v * uSize + u] = foreground;
+				empty &= !foreground;
+			}
+		}
+		if (empty) {
+			return;
+		}
+		LOGGER.trace("Processing slice {} of plane {}", index, plane);
+		
+		ConnectedComponents components = ConnectedComponents.label(mask, uSize, vSize, 1, 4, true);
+		boolean[]           hulls      = new boolean[mask.length];
+		for (int label = 1; label <= components.getNbLabels(); ++label) {
+			int[] boundary = components.getBoundary(label);
+			if (boundary.length >= MIN_BOUNDARY) {
+				int[] us = new int[boundary.length];
+				int[] vs = new int[boundary.length];
+				for (int i = 0; i < boundary.length; ++i) {
+					us[i] = boundary[i] % uSize;
+					vs[i] = boundary[i] / uSize;
+				}
+				int nbVertices = monotoneChain(us, vs, boundary.length);
+				fillConvexPolygon(us, vs, nbVertices, hulls, uSize, vSize);
+			}
+		}
+		
+		for (int v = 0; v < vSize; ++v) {
+			for (int u = 0; u < uSize; ++u) {
+				if (hulls[v * uSize + u] && voxel(output, plane, index, u, v) == 0) {
+					setVoxel(output, plane, index, u, v);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the value of a voxel given by its coordinates in a slice of a plane.
+	 *
+	 * @param view  image
+	 * @param plane plane of the slice
+	 * @param index slice index
+	 * @param u     first coordinate in the slice
+	 * @param v     second coordinate in the slice
+	 *
+	 * @return the voxel value
+	 */
+	private static float voxel(VoxelView view, int plane, int index, int u, int v) {
+		switch (plane) {
+			case XY:
+				return view.get(u, v, index);
+			case XZ:
+				return view.get(u, index, v);
+			default:
+				return view.get(index, u, v);
+		}
+	}
+	
+	
+	/**
+	 * Sets a voxel, given by its coordinates in a slice of a plane, to the foreground value.
+	 *
+	 * @param view  image
+	 * @param plane plane of the slice
+	 * @param index slice index
+	 * @param u     first coordinate in the slice
+	 * @param v     second coordinate in the slice
+	 */
+	private static void setVoxel(VoxelView view, int plane, int index, int u, int v) {
+		switch (plane) {
+			case XY:
+				view.set(u, v, index, BINARY_WHITE);
+				break;
+			case XZ:
+				view.set(u, index, v, BINARY_WHITE);
+				break;
+			default:
+				view.set(index, u, v, BINARY_WHITE);
+		}
+	}
+	
+	
+	/**
+	 * Computes the convex hull of a set of points with Andrew's monotone chain algorithm. Duplicate points are ignored,
+	 * and collinear points are not kept on the hull.
+	 *
+	 * @param xs x coordinates of the points, replaced by the x coordinates of the hull vertices
+	 * @param ys y coordinates of the points, replaced by the y coordinates of the hull vertices
+	 * @param n  number of points
+	 *
+	 * @return the number of hull vertices, in counter-clockwise order (for a y axis pointing up), without repeating the
+	 * first one
+	 */
+	public static int monotoneChain(int[] xs, int[] ys, int n) {
+		/* Points are sorted by x, then y, as (x, y) pairs packed in longs */
+		long[] sorted = new long[n];
+		for (int i = 0; i < n; ++i) {
+			sorted[i] = (long) xs[i] << 32 | ys[i] & 0xFFFFFFFFL;
+		}
+		Arrays.sort(sorted);
+		
+		int   nbUnique = 0;
+		int[] px       = new int[n];
+		int[] py       = new int[n];
+		for (int i = 0; i < n; ++i) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				px[nbUnique] = (int) (sorted[i] >> 32);
+				py[nbUnique] = (int) sorted[i];
+				nbUnique++;
+			}
+		}
+		if (nbUnique < 3) {
+			System.arraycopy(px, 0, xs, 0, nbUnique);
+			System.arraycopy(py, 0, ys, 0, nbUnique);
+			return nbUnique;
+		}
+		
+		/* Lower hull, then upper hull: each ends with the first point of the other */
+		int[] hullX = new int[2 * nbUnique];
+		int[] hullY = new int[2 * nbUnique];
+		int   k     = 0;
+		for (int i = 0; i < nbUnique; ++i) {
+			while (k >= 2 && cross(hullX, hullY, k, px[i], py[i]) <= 0) {
+				k--;
+			}
+			hullX[k] = px[i];
+			hullY[k++] = py[i];
+		}
+		for (int i = nbUnique - 2, lower = k + 1; i >= 0; --i) {
+			while (k >= lower && cross(hullX, hullY, k, px[i], py[i]) <= 0) {
+				k--;
+			}
+			hullX[k] = px[i];
+			hullY[k++] = py[i];
+		}
+		/* The last point is the first one */
+		int nbVertices = k - 1;
+		System.arraycopy(hullX, 0, xs, 0, nbVertices);
+		System.arraycopy(hullY, 0, ys, 0, nbVertices);
+		return nbVertices;
+	}
+	
+	
+	/**
+	 * Computes the cross product of the last two hull vertices and a new point.
+	 *
+	 * @param hullX x coordinates of the hull vertices
+	 * @param hullY y coordinates of the hull vertices
+	 * @param k     number of hull vertices
+	 * @param x     x coordinate of the new point
+	 * @param y     y coordinate of the new point
+	 *
+	 * @return positive for a counter-clockwise turn, negative for a clockwise turn, 0 if the points are collinear
+	 */
+	private static long cross(int[] hullX, int[] hullY, int k, int x, int y) {
+		long ax = hullX[k - 2];
+		long ay = hullY[k - 2];
+		return (hullX[k - 1] - ax) * (y - ay) - (hullY[k - 1] - ay) * (x - ax);
+	}
+	
+	
+	/**
+	 * Fills a convex polygon: a pixel is filled when its centre is inside the polygon (left and top edges included,
+	 * right and bottom edges excluded). Polygons with less than 3 vertices have no area and are not filled.
+	 *
+	 * @param xs     x coordinates of the vertices
+	 * @param ys     y coordinates of the vertices
+	 * @param n      number of vertices
+	 * @param pixels pixels to fill, in row-major order
+	 * @param width  image width
+	 * @param height image height
+	 */
+	public static void fillConvexPolygon(int[] xs, int[] ys, int n, boolean[] pixels, int width, int height) {
+		if (n < 3) {
+			return;
+		}
+		int yMin = Integer.MAX_VALUE;
+		int yMax = Integer.MIN_VALUE;
+		for (int i = 0; i < n; ++i) {
+			yMin = Math.min(yMin, ys[i]);
+			yMax = Math.max(yMax, ys[i]);
+		}
+		/* Rows whose centre y + 0.5 is between yMin and yMax */
+		int rowStart = Math.max(0, yMin);
+		int rowEnd   = Math.min(height, yMax);
+		for (int y = rowStart; y < rowEnd; ++y) {
+			double center = y + 0.5;
+			double left   = Double.POSITIVE_INFINITY;
+			double right  = Double.NEGATIVE_INFINITY;
+			for (int i = 0, j = n - 1; i < n; j = i++) {
+				int y1 = ys[j];
+				int y2 = ys[i];
+				if (y1 < center && y2 > center || y2 < center && y1 > center) {
+					double x = xs[j] + (center - y1) * (xs[i] - xs[j]) / (y2 - y1);
+					left = Math.min(left, x);
+					right = Math.max(right, x);
+				}
+			}
+			/* Pixels whose centre x + 0.5 is in [left, right) */
+			int start = Math.max(0, (int) Math.ceil(left - 0.5));
+			int end   = Math.min(width, (int) Math.ceil(right - 0.5));
+			if (start < end) {
+				Arrays.fill(pixels, y * width + start, y * width + end, true);
+			}
+		}
+	}
+	
+}
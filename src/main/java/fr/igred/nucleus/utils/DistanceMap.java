@@ -17,17 +17,29 @@
  */
 package fr.igred.nucleus.utils;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.measure.Calibration;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.StackConverter;
 
 
+/**
+ * 3D Euclidean distance transform: each foreground voxel gets the distance to the nearest background voxel.
+ * <p>
+ * The transform is separable (x, then y, then z) and each 1D pass computes the lower envelope of parabolas
+ * (Felzenszwalb and Huttenlocher), which is linear in the length of the line. The voxel spacing can be anisotropic, so
+ * that distances are computed in calibrated units without rescaling the image. Lines are processed in parallel on the
+ * {@link SharedExecutor} pool.
+ */
 public class DistanceMap implements PlugInFilter {
-	private static final int THRESHOLD = 126;
+	/** Default threshold: voxels above or equal to this value are foreground */
+	public static final int DEFAULT_THRESHOLD = 126;
+	
+	/** Squared distance of voxels which have not been reached yet */
+	private static final float INF = Float.POSITIVE_INFINITY;
 	
 	private ImagePlus image;
 	
@@ -43,99 +55,104 @@ public class DistanceMap implements PlugInFilter {
 	}
 	
 	
+	/**
+	 * Replaces the stack of an 8-bit binary image by its distance map, in voxel units.
+	 *
+	 * @param imagePlus binary image (foreground above or equal to {@link #DEFAULT_THRESHOLD})
+	 */
 	public static void apply(ImagePlus imagePlus) {
 		StackConverter stackConverter = new StackConverter(imagePlus);
 		if (imagePlus.getType() != ImagePlus.GRAY8) {
 			stackConverter.convertToGray8();
 		}
-		ImageStack stack    = imagePlus.getStack();
-		int        w        = stack.getWidth();
-		int        h        = stack.getHeight();
-		int        d        = imagePlus.getStackSize();
-		int        nThreads = Runtime.getRuntime().availableProcessors();
+		ImagePlus distanceMap = compute(imagePlus, DEFAULT_THRESHOLD, 1, 1, 1);
+		imagePlus.setStack(distanceMap.getStack());
+	}
+	
+	
+	/**
+	 * Computes the distance map of a binary image, in the units of its calibration.
+	 *
+	 * @param imagePlus binary image (foreground above or equal to {@link #DEFAULT_THRESHOLD})
+	 *
+	 * @return the distance map (32-bit)
+	 */
+	public static ImagePlus compute(ImagePlus imagePlus) {
+		Calibration calibration = imagePlus.getCalibration();
+		ImagePlus distanceMap = compute(imagePlus,
+		                                DEFAULT_THRESHOLD,
+		                                calibration.pixelWidth,
+		                                calibration.pixelHeight,
+		                                calibration.pixelDepth);
+		distanceMap.setCalibration(calibration);
+		return distanceMap;
+	}
+	
+	
+	/**
+	 * Computes the distance map of a binary image. Voxels that cannot reach any background voxel (no background in the
+	 * image) are set to infinity.
+	 *
+	 * @param imagePlus binary image
+	 * @param threshold voxels above or equal to this value are foreground
+	 * @param xSpacing  voxel width
+	 * @param ySpacing  voxel height
+	 * @param zSpacing  voxel depth
+	 *
+	 * @return the distance map (32-bit)
+	 */
+	public static ImagePlus compute(ImagePlus imagePlus,
+	                                double threshold,
+	                                double xSpacing,
+	                                double ySpacing,
+	                                double zSpacing) {
+		ImageStack stack = imagePlus.getStack();
+		int        w     = stack.getWidth();
+		int        h     = stack.getHeight();
+		int        d     = imagePlus.getStackSize();
 		
-		//Create references to input data
-		byte[][] data = new byte[d][];
-		for (int k = 0; k < d; k++) {
-			data[k] = (byte[]) stack.getPixels(k + 1);
-		}
-		//Create 32 bit floating point stack for output, s.  Will also use it for g in Transformation 1.
-		ImageStack sStack = new ImageStack(w, h);
 		float[][]  s      = new float[d][];
+		ImageStack sStack = new ImageStack(w, h);
 		for (int k = 0; k < d; k++) {
-			ImageProcessor ipk = new FloatProcessor(w, h);
+			FloatProcessor ipk = new FloatProcessor(w, h);
 			sStack.addSlice(null, ipk);
 			s[k] = (float[]) ipk.getPixels();
 		}
-		float[] sk;
-		//Transformation 1.  Use s to store g.
-		IJ.showStatus("EDT transformation 1/3");
-		Step1Thread[] s1t = new Step1Thread[nThreads];
-		for (int thread = 0; thread < nThreads; thread++) {
-			s1t[thread] = new Step1Thread(thread, nThreads, w, h, d, THRESHOLD, s, data);
-			s1t[thread].start();
-		}
-		try {
-			for (int thread = 0; thread < nThreads; thread++) {
-				s1t[thread].join();
+		
+		/* Transformation 1 and 2: x and y in each slice */
+		SharedExecutor.parallelFor(0, d, k -> {
+			ImageProcessor ip    = stack.getProcessor(k + 1);
+			float[]        sk    = s[k];
+			Envelope       lines = new Envelope(Math.max(w, h));
+			for (int index = 0; index < w * h; index++) {
+				sk[index] = ip.getf(index) >= threshold ? INF : 0;
 			}
-		} catch (InterruptedException ie) {
-			IJ.error("A thread was interrupted in step 1 .");
-			Thread.currentThread().interrupt();
-		}
-		//Transformation 2.  g (in s) -> h (in s)
-		IJ.showStatus("EDT transformation 2/3");
-		Step2Thread[] s2t = new Step2Thread[nThreads];
-		for (int thread = 0; thread < nThreads; thread++) {
-			s2t[thread] = new Step2Thread(thread, nThreads, w, h, d, s);
-			s2t[thread].start();
-		}
-		try {
-			for (int thread = 0; thread < nThreads; thread++) {
-				s2t[thread].join();
+			for (int j = 0; j < h; j++) {
+				lines.transform(sk, j * w, 1, w, xSpacing);
 			}
-		} catch (InterruptedException ie) {
-			IJ.error("A thread was interrupted in step 2 .");
-			Thread.currentThread().interrupt();
-		}
-		//Transformation 3. h (in s) -> s
-		IJ.showStatus("EDT transformation 3/3");
-		Step3Thread[] s3t = new Step3Thread[nThreads];
-		for (int thread = 0; thread < nThreads; thread++) {
-			s3t[thread] = new Step3Thread(thread, nThreads, w, h, d, s, data);
-			s3t[thread].start();
-		}
-		try {
-			for (int thread = 0; thread < nThreads; thread++) {
-				s3t[thread].join();
+			for (int i = 0; i < w; i++) {
+				lines.transform(sk, i, w, h, ySpacing);
 			}
-		} catch (InterruptedException ie) {
-			IJ.error("A thread was interrupted in step 3 .");
-			Thread.currentThread().interrupt();
-		}
-		//Find the largest distance for scaling
-		//Also fill in the background values.
-		float distMax = 0;
-		int   wh      = w * h;
-		float dist;
-		for (int k = 0; k < d; k++) {
-			sk = s[k];
-			for (int ind = 0; ind < wh; ind++) {
-				if ((data[k][ind] & 255) < THRESHOLD) {
-					sk[ind] = 0;
-				} else {
-					dist = (float) StrictMath.sqrt(sk[ind]);
-					sk[ind] = dist;
-					distMax = StrictMath.max(dist, distMax);
+		});
+		
+		/* Transformation 3: z for each column, then square root */
+		SharedExecutor.parallelFor(0, h, j -> {
+			Envelope column = new Envelope(d);
+			float[]  line   = new float[d];
+			for (int i = 0; i < w; i++) {
+				int index = i + w * j;
+				for (int k = 0; k < d; k++) {
+					line[k] = s[k][index];
+				}
+				column.transform(line, 0, 1, d, zSpacing);
+				for (int k = 0; k < d; k++) {
+					s[k][index] = (float) StrictMath.sqrt(line[k]);
 				}
 			}
-		}
+		});
 		
-		IJ.showProgress(1.0);
-		String    title  = stripExtension(imagePlus.getTitle());
-		ImagePlus impOut = new ImagePlus(title + "EDT", sStack);
-		impOut.getProcessor().setMinAndMax(0, distMax);
-		imagePlus.setStack(sStack);
+		String title = stripExtension(imagePlus.getTitle());
+		return new ImagePlus(title + "EDT", sStack);
 	}
 	
 	
@@ -152,248 +169,77 @@ public class DistanceMap implements PlugInFilter {
 	}
 	
 	
-	private static class Step2Thread extends Thread {
-		int       thread;
-		int       nThreads;
-		int       w;
-		int       h;
-		int       d;
-		float[][] s;
-		
-		
-		Step2Thread(int thread, int nThreads, int w, int h, int d, float[][] s) {
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.s = s;
+	/**
+	 * 1D squared distance transform of sampled functions, by lower envelope of parabolas. The buffers are allocated once
+	 * and reused for every line of the same thread.
+	 */
+	private static final class Envelope {
+		/** Samples of the current line */
+		private final float[]  f;
+		/** Positions of the parabolas in the lower envelope */
+		private final int[]    v;
+		/** Boundaries between the parabolas of the lower envelope */
+		private final double[] z;
+		
+		
+		Envelope(int n) {
+			f = new float[n];
+			v = new int[n];
+			z = new double[n + 1];
 		}
 		
 		
-		@Override
-		public void run() {
-			float[] sk;
-			int     n = w;
-			if (h > n) {
-				n = h;
-			}
-			if (d > n) {
-				n = d;
+		/**
+		 * Transforms a line in place: each value becomes min over q of (f(q) + ((p - q) * spacing)²).
+		 *
+		 * @param data    values
+		 * @param offset  index of the first element of the line
+		 * @param stride  distance between two consecutive elements of the line
+		 * @param n       number of elements
+		 * @param spacing distance between two consecutive elements, in calibrated units
+		 */
+		void transform(float[] data, int offset, int stride, int n, double spacing) {
+			for (int q = 0; q < n; q++) {
+				f[q] = data[offset + q * stride];
 			}
-			int     noResult = 3 * (n + 1) * (n + 1);
-			int[]   tempInt  = new int[n];
-			int[]   tempS    = new int[n];
-			boolean nonempty;
-			int     test;
-			int     min;
-			int     delta;
-			for (int k = thread; k < d; k += nThreads) {
-				IJ.showProgress(k / (1.0 * d));
-				sk = s[k];
-				for (int i = 0; i < w; i++) {
-					nonempty = false;
-					for (int j = 0; j < h; j++) {
-						tempS[j] = (int) sk[i + w * j];
-						if (tempS[j] > 0) {
-							nonempty = true;
-						}
-					}
-					if (nonempty) {
-						for (int j = 0; j < h; j++) {
-							min = noResult;
-							delta = j;
-							for (int y = 0; y < h; y++) {
-								test = tempS[y] + delta * delta;
-								delta--;
-								if (test < min) {
-									min = test;
-								}
-							}
-							tempInt[j] = min;
-						}
-						for (int j = 0; j < h; j++) {
-							sk[i + w * j] = tempInt[j];
-						}
-					}
+			
+			int k = -1;
+			for (int q = 0; q < n; q++) {
+				if (f[q] == INF) {
+					continue;
 				}
-			}
-		}//run
-		
-	}//Step2Thread
-	
-	private static class Step1Thread extends Thread {
-		int       thread;
-		int       nThreads;
-		int       w;
-		int       h;
-		int       d;
-		int       thresh;
-		float[][] s;
-		byte[][]  data;
-		
-		
-		Step1Thread(int thread, int nThreads, int w, int h, int d, int thresh, float[][] s, byte[][] data) {
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.thresh = thresh;
-			this.data = data;
-			this.s = s;
-		}
-		
-		
-		@Override
-		public void run() {
-			float[] sk;
-			byte[]  dk;
-			int     n = w;
-			if (h > n) {
-				n = h;
-			}
-			if (d > n) {
-				n = d;
-			}
-			int       noResult   = 3 * (n + 1) * (n + 1);
-			boolean[] background = new boolean[n];
-			int       test;
-			int       min;
-			for (int k = thread; k < d; k += nThreads) {
-				IJ.showProgress(k / (1.0 * d));
-				sk = s[k];
-				dk = data[k];
-				for (int j = 0; j < h; j++) {
-					for (int i = 0; i < w; i++) {
-						background[i] = (dk[i + w * j] & 255) < thresh;
-					}
-					for (int i = 0; i < w; i++) {
-						min = noResult;
-						for (int x = i; x < w; x++) {
-							if (background[x]) {
-								test = i - x;
-								test *= test;
-								min = test;
-								break;
-							}
-						}
-						for (int x = i - 1; x >= 0; x--) {
-							if (background[x]) {
-								test = i - x;
-								test *= test;
-								if (test < min) {
-									min = test;
-								}
-								break;
-							}
-						}
-						sk[i + w * j] = min;
+				double position = q * spacing;
+				double fq       = f[q] + position * position;
+				double boundary = Double.NEGATIVE_INFINITY;
+				while (k >= 0) {
+					double pv = v[k] * spacing;
+					boundary = (fq - (f[v[k]] + pv * pv)) / (2 * (position - pv));
+					if (boundary > z[k]) {
+						break;
 					}
+					k--;
 				}
+				k++;
+				v[k] = q;
+				z[k] = k == 0 ? Double.NEGATIVE_INFINITY : boundary;
+				z[k + 1] = Double.POSITIVE_INFINITY;
 			}
-		}//run
-		
-	}//Step1Thread
-	
-	private static class Step3Thread extends Thread {
-		int       thread;
-		int       nThreads;
-		int       w;
-		int       h;
-		int       d;
-		float[][] s;
-		byte[][]  data;
-		
-		
-		Step3Thread(int thread, int nThreads, int w, int h, int d, float[][] s, byte[][] data) {
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.s = s;
-			this.data = data;
-		}
-		
-		
-		@Override
-		public void run() {
-			int     zStart;
-			int     zStop;
-			int     zBegin;
-			int     zEnd;
-			int     n = w;
-			if (h > n) {
-				n = h;
-			}
-			if (d > n) {
-				n = d;
+			
+			if (k < 0) {
+				/* No finite value on this line: nothing to propagate */
+				return;
 			}
-			int     noResult = 3 * (n + 1) * (n + 1);
-			int[]   tempInt  = new int[n];
-			int[]   tempS    = new int[n];
-			boolean nonempty;
-			int     test;
-			int     min;
-			int     delta;
-			for (int j = thread; j < h; j += nThreads) {
-				IJ.showProgress(j / (1.0 * h));
-				for (int i = 0; i < w; i++) {
-					nonempty = false;
-					for (int k = 0; k < d; k++) {
-						tempS[k] = (int) s[k][i + w * j];
-						if (tempS[k] > 0) {
-							nonempty = true;
-						}
-					}
-					if (nonempty) {
-						zStart = 0;
-						while (zStart < d - 1 && tempS[zStart] == 0) {
-							zStart++;
-						}
-						if (zStart > 0) {
-							zStart--;
-						}
-						zStop = d - 1;
-						while (zStop > 0 && tempS[zStop] == 0) {
-							zStop--;
-						}
-						if (zStop < d - 1) {
-							zStop++;
-						}
-						
-						for (int k = 0; k < d; k++) {
-							//Limit to the non-background to save time,
-							if ((data[k][i + w * j] & 255) >= THRESHOLD) {
-								min = noResult;
-								zBegin = zStart;
-								zEnd = zStop;
-								if (zBegin > k) {
-									zBegin = k;
-								}
-								if (zEnd < k) {
-									zEnd = k;
-								}
-								delta = k - zBegin;
-								for (int z = zBegin; z <= zEnd; z++) {
-									test = tempS[z] + delta * delta;
-									delta--;
-									if (test < min) {
-										min = test;
-									}
-								}
-								tempInt[k] = min;
-							}
-						}
-						for (int k = 0; k < d; k++) {
-							s[k][i + w * j] = tempInt[k];
-						}
-					}
+			k = 0;
+			for (int q = 0; q < n; q++) {
+				double position = q * spacing;
+				while (z[k + 1] < position) {
+					k++;
 				}
+				double delta = position - v[k] * spacing;
+				data[offset + q * stride] = (float) (delta * delta + f[v[k]]);
 			}
-		}//run
+		}
 		
-	}//Step2Thread
+	}
 	
-}
\ No newline at end of file
+}
@@ -20,91 +20,247 @@ package fr.igred.nucleus.utils;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.measure.Calibration;
+import ij.process.ImageProcessor;
 
-import java.util.ArrayList;
-import java.util.List;
 
-
-/** @author Tristan Dubos and Axel Poulet */
+/**
+ * Gradient and unit normals of a 3D image, stored in flat float arrays (one array per component). The value for voxel
+ * (i, j, k) is at index {@code (k * height + j) * width + i}.
+ * <p>
+ * The gradient can be computed for the whole image, or only in the boundary band of a mask (voxels with at least one
+ * 6-neighbour of a different value), which is all that is needed to compute the surface of that mask.
+ *
+ * @author Tristan Dubos and Axel Poulet
+ */
 public class Gradient {
-	/**  */
-	private final List<Double>[][][] tableGradient;
-	/**  */
-	private final List<Double>[][][] tableUnitNormals;
+	/** Image width */
+	private final int width;
+	/** Image height */
+	private final int height;
+	/** Image depth */
+	private final int depth;
+	
+	/** Gradient along x */
+	private final float[] gradientX;
+	/** Gradient along y */
+	private final float[] gradientY;
+	/** Gradient along z */
+	private final float[] gradientZ;
+	/** Unit normal along x */
+	private final float[] normalX;
+	/** Unit normal along y */
+	private final float[] normalY;
+	/** Unit normal along z */
+	private final float[] normalZ;
 	
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Computes the gradient on the whole image.
+	 *
+	 * @param imagePlusInput raw image
+	 */
 	public Gradient(ImagePlus imagePlusInput) {
-		int w = imagePlusInput.getWidth();
-		int h = imagePlusInput.getHeight();
-		int d = imagePlusInput.getStackSize();
-		tableGradient = new ArrayList[w][h][d];
-		tableUnitNormals = new ArrayList[w][h][d];
-		computeGradient(imagePlusInput);
+		this(imagePlusInput, null);
+	}
+	
+	
+	/**
+	 * Computes the gradient in the boundary band of a mask only. If the mask is null, the whole image is computed.
+	 *
+	 * @param imagePlusInput raw image
+	 * @param mask           segmented image
+	 */
+	public Gradient(ImagePlus imagePlusInput, ImagePlus mask) {
+		this.width = imagePlusInput.getWidth();
+		this.height = imagePlusInput.getHeight();
+		this.depth = imagePlusInput.getStackSize();
+		int size = width * height * depth;
+		gradientX = new float[size];
+		gradientY = new float[size];
+		gradientZ = new float[size];
+		normalX = new float[size];
+		normalY = new float[size];
+		normalZ = new float[size];
+		computeGradient(imagePlusInput, mask == null ? null : computeBand(mask));
+	}
+	
+	
+	/**
+	 * Returns the voxels with at least one 6-neighbour of a different value in the mask.
+	 *
+	 * @param mask segmented image
+	 *
+	 * @return the boundary band as a flat array
+	 */
+	private boolean[] computeBand(ImagePlus mask) {
+		int        wh    = width * height;
+		boolean[]  band  = new boolean[wh * depth];
+		ImageStack stack = mask.getStack();
+		float[][]  data  = new float[depth][];
+		for (int k = 0; k < depth; ++k) {
+			ImageProcessor ip = stack.getProcessor(k + 1);
+			data[k] = new float[wh];
+			for (int index = 0; index < wh; ++index) {
+				data[k][index] = ip.getf(index);
+			}
+		}
+		for (int k = 0; k < depth; ++k) {
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					int   index = j * width + i;
+					float value = data[k][index];
+					if (i > 0 && data[k][index - 1] != value ||
+					    i < width - 1 && data[k][index + 1] != value ||
+					    j > 0 && data[k][index - width] != value ||
+					    j < height - 1 && data[k][index + width] != value ||
+					    k > 0 && data[k - 1][index] != value ||
+					    k < depth - 1 && data[k + 1][index] != value) {
+						band[k * wh + index] = true;
+					}
+				}
+			}
+		}
+		return band;
 	}
 	
 	
 	/**
-	 * @param imagePlusInput
+	 * Computes the gradient and the unit normals by central differences.
 	 *
-	 * @return
+	 * @param imagePlusInput raw image
+	 * @param band           voxels to compute (all if null)
 	 */
-	private void computeGradient(ImagePlus imagePlusInput) {
+	private void computeGradient(ImagePlus imagePlusInput, boolean[] band) {
 		Calibration calibration     = imagePlusInput.getCalibration();
 		ImageStack  imageStackInput = imagePlusInput.getStack();
 		double      xCalibration    = calibration.pixelWidth;
 		double      yCalibration    = calibration.pixelHeight;
 		double      zCalibration    = calibration.pixelDepth;
-		for (int k = 1; k < imagePlusInput.getStackSize() - 1; ++k) {
-			for (int i = 1; i < imagePlusInput.getWidth() - 1; ++i) {
-				for (int j = 1; j < imagePlusInput.getHeight() - 1; ++j) {
-					List<Double> list = new ArrayList<>();
-					double       dx   = 0;
-					double       dy   = 0;
-					double       dz   = 0;
-					if (k - 1 > 1 || j - 1 > 1 || i - 1 > 1 || k + 1 < imagePlusInput.getStackSize() - 1 ||
-					    j + 1 < imagePlusInput.getHeight() - 1 || i + 1 < imagePlusInput.getWidth() - 1) {
-						dx = 1 / xCalibration *
-						     ((imageStackInput.getVoxel(i + 1, j, k) - imageStackInput.getVoxel(i - 1, j, k)) / 2);
-						dy = 1 / yCalibration *
-						     ((imageStackInput.getVoxel(i, j + 1, k) - imageStackInput.getVoxel(i, j - 1, k)) / 2);
-						dz = 1 / zCalibration *
-						     ((imageStackInput.getVoxel(i, j, k + 1) - imageStackInput.getVoxel(i, j, k - 1)) / 2);
+		
+		int              wh     = width * height;
+		ImageProcessor[] slices = new ImageProcessor[depth];
+		for (int k = 0; k < depth; ++k) {
+			slices[k] = imageStackInput.getProcessor(k + 1);
+		}
+		for (int k = 1; k < depth - 1; ++k) {
+			ImageProcessor previous = slices[k - 1];
+			ImageProcessor current  = slices[k];
+			ImageProcessor next     = slices[k + 1];
+			for (int j = 1; j < height - 1; ++j) {
+				for (int i = 1; i < width - 1; ++i) {
+					int index = j * width + i;
+					int voxel = k * wh + index;
+					if (band != null && !band[voxel]) {
+						continue;
+					}
+					double dx = 0;
+					double dy = 0;
+					double dz = 0;
+					if (k - 1 > 1 || j - 1 > 1 || i - 1 > 1 || k + 1 < depth - 1 ||
+					    j + 1 < height - 1 || i + 1 < width - 1) {
+						dx = 1 / xCalibration * ((current.getf(index + 1) - current.getf(index - 1)) / 2);
+						dy = 1 / yCalibration * ((current.getf(index + width) - current.getf(index - width)) / 2);
+						dz = 1 / zCalibration * ((next.getf(index) - previous.getf(index)) / 2);
 					}
-					list.add(dx);
-					list.add(dy);
-					list.add(dz);
-					tableGradient[i][j][k] = list;
-					/* temp variable */
+					gradientX[voxel] = (float) dx;
+					gradientY[voxel] = (float) dy;
+					gradientZ[voxel] = (float) dz;
 					double norm = StrictMath.sqrt(dx * dx + dy * dy + dz * dz);
-					double nx   = 0;
-					double ny   = 0;
-					double nz   = 0;
 					if (norm > 1.0e-15) {
-						nx = dx / norm;
-						ny = dy / norm;
-						nz = dz / norm;
+						normalX[voxel] = (float) (dx / norm);
+						normalY[voxel] = (float) (dy / norm);
+						normalZ[voxel] = (float) (dz / norm);
 					}
-					List<Double> listN = new ArrayList<>(3);
-					listN.add(nx);
-					listN.add(ny);
-					listN.add(nz);
-					tableUnitNormals[i][j][k] = listN;
 				}
 			}
 		}
 	}
 	
 	
-	/** @return  */
-	public List<Double>[][][] getUnitNormals() {
-		return tableUnitNormals;
+	/**
+	 * Returns the flat index of a voxel.
+	 *
+	 * @param i x coordinate
+	 * @param j y coordinate
+	 * @param k z coordinate
+	 *
+	 * @return the index in the component arrays
+	 */
+	public int index(int i, int j, int k) {
+		return (k * height + j) * width + i;
+	}
+	
+	
+	/**
+	 * Returns one component of the unit normal of a voxel.
+	 *
+	 * @param axis  0 for x, 1 for y and 2 for z
+	 * @param index flat index of the voxel
+	 *
+	 * @return the component of the unit normal
+	 */
+	public float getUnitNormal(int axis, int index) {
+		if (axis == 0) {
+			return normalX[index];
+		} else if (axis == 1) {
+			return normalY[index];
+		} else {
+			return normalZ[index];
+		}
+	}
+	
+	
+	/** @return the x components of the unit normals */
+	public float[] getUnitNormalsX() {
+		return normalX;
+	}
+	
+	
+	/** @return the y components of the unit normals */
+	public float[] getUnitNormalsY() {
+		return normalY;
+	}
+	
+	
+	/** @return the z components of the unit normals */
+	public float[] getUnitNormalsZ() {
+		return normalZ;
+	}
+	
+	
+	/** @return the x components of the gradient */
+	public float[] getGradientX() {
+		return gradientX;
+	}
+	
+	
+	/** @return the y components of the gradient */
+	public float[] getGradientY() {
+		return gradientY;
+	}
+	
+	
+	/** @return the z components of the gradient */
+	public float[] getGradientZ() {
+		return gradientZ;
+	}
+	
+	
+	/** @return the image width */
+	public int getWidth() {
+		return width;
+	}
+	
+	
+	/** @return the image height */
+	public int getHeight() {
+		return height;
 	}
 	
 	
-	/** @return  */
-	public List<Double>[][][] getGradient() {
-		return tableGradient;
+	/** @return the image depth */
+	public int getDepth() {
+		return depth;
 	}
 	
-}
\ No newline at end of file
+}
@@ -21,94 +21,294 @@ import ij.ImagePlus;
 import ij.ImageStack;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 
 /**
- * This class permit to obtain values who are on the Input image (8, 16 or 32 bits)
+ * This class permit to obtain values who are on the Input image (8, 16, 24 or 32 bits)
+ * <p>
+ * Only positive values are counted. Voxels are counted in one pass over the pixel arrays of the slices, in bins indexed
+ * by value for 8-bit and 16-bit images and for label images (integer values, no larger than 65535 or the number of
+ * voxels), so that counts are looked up in constant time. Other 32-bit images are counted by sorting their values, as
+ * are RGB images, whose values are their packed colours.
  *
  * @author Tristan Dubos and Axel Poulet
  */
 public class Histogram {
-	/** HashMap which stock the different values of voxels and the number of voxels for each value present on the image */
-	private final Map<Double, Integer> hHistogram = new TreeMap<>();
+	/** Number of voxels for each value, indexed by value (null if values are not integers) */
+	private int[] bins;
 	
-	/** All the value present on the image */
-	private double[] label;
+	/** All the value present on the image, sorted */
+	private double[] label  = new double[0];
+	/** Number of voxels for each value present on the image */
+	private int[]    counts = new int[0];
 	
-	/**  */
+	/** Largest value present on the image, -1 if none */
 	private double labelMax = -1;
 	
-	/**  */
+	/** Number of values present on the image */
 	private int nbLabels;
 	
+	/** Read-only map view of the histogram, built on demand */
+	private SortedMap<Double, Integer> view;
 	
-	/** @param imagePlusInput  */
+	
+	/**
+	 * Counts the positive values of an image.
+	 *
+	 * @param imagePlusInput image
+	 */
 	public void run(ImagePlus imagePlusInput) {
-		Object[] tTemp = computeHistogram(imagePlusInput).keySet().toArray();
-		label = new double[tTemp.length];
-		for (int i = 0; i < tTemp.length; ++i) {
-			label[i] = Double.parseDouble(tTemp[i].toString());
+		run(imagePlusInput, false);
+	}
+	
+	
+	/**
+	 * Counts the positive values of an image, optionally splitting the slices between threads and summing their counts.
+	 *
+	 * @param imagePlusInput image
+	 * @param parallel       whether slices are counted in parallel
+	 */
+	public void run(ImagePlus imagePlusInput, boolean parallel) {
+		ImageStack stack   = imagePlusInput.getImageStack();
+		int        nSlices = imagePlusInput.getNSlices();
+		int        size    = imagePlusInput.getWidth() * imagePlusInput.getHeight();
+		
+		int nBins;
+		switch (imagePlusInput.getBitDepth()) {
+			case 8:
+				nBins = 256;
+				break;
+			case 16:
+				nBins = 65536;
+				break;
+			case 32:
+				nBins = denseBins(stack, nSlices, size);
+				break;
+			default:
+				/* RGB: packed colours are too many for bins */
+				nBins = 0;
+				break;
+		}
+		if (nBins > 0) {
+			bins = countBins(stack, nSlices, size, nBins, parallel);
+			nbLabels = 0;
+			for (int value = 1; value < bins.length; ++value) {
+				if (bins[value] > 0) {
+					++nbLabels;
+				}
+			}
+			label = new double[nbLabels];
+			counts = new int[nbLabels];
+			int index = 0;
+			for (int value = 1; value < bins.length; ++value) {
+				if (bins[value] > 0) {
+					label[index] = value;
+					counts[index++] = bins[value];
+				}
+			}
+		} else {
+			bins = null;
+			countSorted(stack, nSlices, size, parallel);
 		}
-		Arrays.sort(label);
-		if (nbLabels > 0) {
-			labelMax = label[label.length - 1];
+		labelMax = nbLabels > 0 ? label[nbLabels - 1] : -1;
+		view = null;
+	}
+	
+	
+	/**
+	 * Checks if a 32-bit image only holds integer values small enough to be counted in bins.
+	 *
+	 * @return the number of bins needed, 0 if the values cannot be counted in bins
+	 */
+	private static int denseBins(ImageStack stack, int nSlices, int size) {
+		long   limit = Math.max(65536L, (long) size * nSlices);
+		double max   = 0;
+		for (int k = 1; k <= nSlices; ++k) {
+			float[] pixels = (float[]) stack.getPixels(k);
+			for (int i = 0; i < size; ++i) {
+				float value = pixels[i];
+				if (value > 0) {
+					if (value != (int) value || value >= limit) {
+						return 0;
+					}
+					max = Math.max(max, value);
+				}
+			}
 		}
+		return (int) max + 1;
 	}
 	
 	
 	/**
-	 * this method return a Histogram of the image input in hashMap form
+	 * Counts the voxels of an image in bins indexed by value. When parallel, the slices are split into one chunk per
+	 * thread, whose bins are then summed.
 	 *
-	 * @param imagePlusInput
+	 * @return the bins
+	 */
+	private static int[] countBins(ImageStack stack, int nSlices, int size, int nBins, boolean parallel) {
+		int     nChunks = parallel ? Math.min(nSlices, SharedExecutor.getParallelism()) : 1;
+		int[][] partial = new int[nChunks][];
+		SharedExecutor.parallelFor(0, nChunks, c -> {
+			int[] chunk = new int[nBins];
+			for (int k = c * nSlices / nChunks; k < (c + 1) * nSlices / nChunks; ++k) {
+				countSlice(stack.getPixels(k + 1), size, chunk);
+			}
+			partial[c] = chunk;
+		});
+		int[] total = partial[0];
+		for (int c = 1; c < nChunks; ++c) {
+			for (int value = 0; value < nBins; ++value) {
+				total[value] += partial[c][value];
+			}
+		}
+		return total;
+	}
+	
+	
+	/**
+	 * Counts the voxels of a slice in bins indexed by value.
 	 *
-	 * @return
+	 * @param pixels pixel array of the slice
+	 * @param size   number of pixels
+	 * @param bins   bins to increment
+	 */
+	private static void countSlice(Object pixels, int size, int[] bins) {
+		if (pixels instanceof byte[]) {
+			byte[] bytes = (byte[]) pixels;
+			for (int i = 0; i < size; ++i) {
+				++bins[bytes[i] & 0xFF];
+			}
+		} else if (pixels instanceof short[]) {
+			short[] shorts = (short[]) pixels;
+			for (int i = 0; i < size; ++i) {
+				++bins[shorts[i] & 0xFFFF];
+			}
+		} else {
+			float[] floats = (float[]) pixels;
+			for (int i = 0; i < size; ++i) {
+				if (floats[i] > 0) {
+					++bins[(int) floats[i]];
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Counts the positive values of a 32-bit or RGB image by sorting them. RGB values are their packed colours, which
+	 * floats hold exactly.
 	 */
-	private Map<Double, Integer> computeHistogram(ImagePlus imagePlusInput) {
-		double     voxelValue;
-		ImageStack imageStackInput = imagePlusInput.getImageStack();
-		for (int k = 0; k < imagePlusInput.getNSlices(); ++k) {
-			for (int i = 0; i < imagePlusInput.getWidth(); ++i) {
-				for (int j = 0; j < imagePlusInput.getHeight(); ++j) {
-					voxelValue = imageStackInput.getVoxel(i, j, k);
-					if (voxelValue > 0) {
-						int nbVoxel = hHistogram.getOrDefault(voxelValue, 0) + 1;
-						hHistogram.put(voxelValue, nbVoxel);
-						if (nbVoxel == 1) {
-							++nbLabels;
-						}
+	private void countSorted(ImageStack stack, int nSlices, int size, boolean parallel) {
+		float[] values = new float[size * nSlices];
+		int     n      = 0;
+		for (int k = 1; k <= nSlices; ++k) {
+			Object pixels = stack.getPixels(k);
+			if (pixels instanceof int[]) {
+				int[] rgb = (int[]) pixels;
+				for (int i = 0; i < size; ++i) {
+					int colour = rgb[i] & 0xFFFFFF;
+					if (colour > 0) {
+						values[n++] = colour;
 					}
 				}
+			} else {
+				float[] floats = (float[]) pixels;
+				for (int i = 0; i < size; ++i) {
+					if (floats[i] > 0) {
+						values[n++] = floats[i];
+					}
+				}
+			}
+		}
+		if (parallel) {
+			Arrays.parallelSort(values, 0, n);
+		} else {
+			Arrays.sort(values, 0, n);
+		}
+		double[] distinct = new double[n];
+		int[]    numbers  = new int[n];
+		nbLabels = 0;
+		for (int i = 0; i < n; ++i) {
+			if (nbLabels == 0 || values[i] != distinct[nbLabels - 1]) {
+				distinct[nbLabels++] = values[i];
 			}
+			++numbers[nbLabels - 1];
+		}
+		label = Arrays.copyOf(distinct, nbLabels);
+		counts = Arrays.copyOf(numbers, nbLabels);
+	}
+	
+	
+	/**
+	 * Returns the number of voxels with a given value.
+	 *
+	 * @param value voxel value
+	 *
+	 * @return the number of voxels, 0 if the value is absent or not positive
+	 */
+	public int getCount(double value) {
+		if (value <= 0) {
+			return 0;
+		}
+		if (bins != null) {
+			int index = (int) value;
+			return index == value && index < bins.length ? bins[index] : 0;
 		}
-		return hHistogram;
+		int index = Arrays.binarySearch(label, value);
+		return index >= 0 ? counts[index] : 0;
+	}
+	
+	
+	/**
+	 * Returns the number of voxels of the i-th value present on the image.
+	 *
+	 * @param index index of the value in {@link #getLabels()}
+	 *
+	 * @return the number of voxels
+	 */
+	public int getCountAt(int index) {
+		return counts[index];
 	}
 	
 	
 	/**
 	 * this method return a double table which contain the all the value voxel present on the input image
 	 *
-	 * @return
+	 * @return the values, sorted
 	 */
 	public double[] getLabels() {
-		return label;
+		return label.clone();
 	}
 	
 	
-	/** @return  */
+	/**
+	 * Returns the histogram as a read-only map of the values to their number of voxels, sorted by value.
+	 *
+	 * @return the histogram
+	 */
 	public Map<Double, Integer> getHistogram() {
-		return new TreeMap<>(hHistogram);
+		if (view == null) {
+			SortedMap<Double, Integer> map = new TreeMap<>();
+			for (int i = 0; i < nbLabels; ++i) {
+				map.put(label[i], counts[i]);
+			}
+			view = Collections.unmodifiableSortedMap(map);
+		}
+		return view;
 	}
 	
 	
-	/** @return  */
+	/** @return the largest value present on the image, -1 if none */
 	public double getLabelMax() {
 		return labelMax;
 	}
 	
 	
-	/** @return  */
+	/** @return the number of values present on the image */
 	public int getNbLabels() {
 		return nbLabels;
 	}
@@ -0,0 +1,301 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+
+/**
+ * Box statistics of the voxels of an image inside a mask, computed in constant time from 3D summed-area tables.
+ * <p>
+ * The tables hold, for each voxel, the sum, the sum of squares and the number of the masked voxels located before it
+ * on each axis. NaN values are counted as 0. Boxes are given as half-open intervals on each axis and are clipped to
+ * the image.
+ */
+public class LocalStatistics {
+	/** Image width */
+	private final int      width;
+	/** Image height */
+	private final int      height;
+	/** Image depth */
+	private final int      depth;
+	/** Summed-area table of the masked values */
+	private final double[] sums;
+	/** Summed-area table of the masked squared values (null if not computed) */
+	private final double[] squares;
+	/** Summed-area table of the masked voxels */
+	private final int[]    counts;
+	
+	
+	/**
+	 * Builds the summed-area tables of an image for the voxels above 0 in a mask.
+	 *
+	 * @param image       image
+	 * @param mask        mask (voxels above 0 are taken into account)
+	 * @param withSquares whether the sum of squares table is built
+	 */
+	public LocalStatistics(ImagePlus image, ImagePlus mask, boolean withSquares) {
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.depth = image.getStackSize();
+		int size = (width + 1) * (height + 1) * (depth + 1);
+		this.sums = new double[size];
+		this.squares = withSquares ? new double[size] : null;
+		this.counts = new int[size];
+		
+		ImageStack stack     = image.getStack();
+		ImageStack maskStack = mask.getStack();
+		SharedExecutor.parallelFor(0, depth, k -> {
+			ImageProcessor ip     = stack.getProcessor(k + 1);
+			ImageProcessor ipMask = maskStack.getProcessor(k + 1);
+			for (int j = 0; j < height; ++j) {
+				/* Prefix sums along x */
+				int    row    = index(0, j + 1, k + 1);
+				double sum    = 0;
+				double square = 0;
+				int    count  = 0;
+				for (int i = 0; i < width; ++i) {
+					int voxel = j * width + i;
+					if (ipMask.getf(voxel) > 0) {
+						double value = ip.getf(voxel);
+						if (Double.isNaN(value)) {
+							value = 0;
+						}
+						sum += value;
+						square += value * value;
+						count++;
+					}
+					sums[row + i + 1] = sum;
+					if (squares != null) {
+						squares[row + i + 1] = square;
+					}
+					counts[row + i + 1] = count;
+				}
+			}
+			/* Prefix sums along y */
+			for (int j = 1; j < height; ++j) {
+				int row      = index(0, j + 1, k + 1);
+				int previous = index(0, j, k + 1);
+				for (int i = 1; i <= width; ++i) {
+					sums[row + i] += sums[previous + i];
+					if (squares != null) {
+						squares[row + i] += squares[previous + i];
+					}
+					counts[row + i] += counts[previous + i];
+				}
+			}
+		});
+		/* Prefix sums along z */
+		int plane = (width + 1) * (height + 1);
+		for (int k = 2; k <= depth; ++k) {
+			int start = k * plane;
+			SharedExecutor.parallelFor(0, height + 1, j -> {
+				int row = start + j * (width + 1);
+				for (int i = row; i < row + width + 1; ++i) {
+					sums[i] += sums[i - plane];
+					if (squares != null) {
+						squares[i] += squares[i - plane];
+					}
+					counts[i] += counts[i - plane];
+				}
+			});
+		}
+	}
+	
+	
+	/**
+	 * Returns the index of a corner in the tables.
+	 */
+	private int index(int i, int j, int k) {
+		return (k * (height + 1) + j) * (width + 1) + i;
+	}
+	
+	
+	/**
+	 * Sums a table over a box, by inclusion-exclusion of its 8 corners.
+	 */
+	private double boxSum(double[] table, int[] box) {
+		return table[index(box[1], box[3], box[5])] -
+		       table[index(box[0], box[3], box[5])] -
+		       table[index(box[1], box[2], box[5])] -
+		       table[index(box[1], box[3], box[4])] +
+		       table[index(box[0], box[2], box[5])] +
+		       table[index(box[0], box[3], box[4])] +
+		       table[index(box[1], box[2], box[4])] -
+		       table[index(box[0], box[2], box[4])];
+	}
+	
+	
+	/**
+	 * Clips a box to the image.
+	 *
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}, with empty intervals if the box is outside the image
+	 */
+	private int[] clip(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		int x0 = Math.min(Math.max(xMin, 0), width);
+		int y0 = Math.min(Math.max(yMin, 0), height);
+		int z0 = Math.min(Math.max(zMin, 0), depth);
+		return new int[]{x0, Math.max(x0, Math.min(xMax, width)),
+		                 y0, Math.max(y0, Math.min(yMax, height)),
+		                 z0, Math.max(z0, Math.min(zMax, depth))};
+	}
+	
+	
+	/**
+	 * Returns the number of masked voxels in a box.
+	 *
+	 * @param xMin first x (inclusive)
+	 * @param xMax last x (exclusive)
+	 * @param yMin first y (inclusive)
+	 * @param yMax last y (exclusive)
+	 * @param zMin first z (inclusive)
+	 * @param zMax last z (exclusive)
+	 *
+	 * @return the number of voxels
+	 */
+	public int count(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		int[] box = clip(xMin, xMax, yMin, yMax, zMin, zMax);
+		return counts[index(box[1], box[3], box[5])] -
+		       counts[index(box[0], box[3], box[5])] -
+		       counts[index(box[1], box[2], box[5])] -
+		       counts[index(box[1], box[3], box[4])] +
+		       counts[index(box[0], box[2], box[5])] +
+		       counts[index(box[0], box[3], box[4])] +
+		       counts[index(box[1], box[2], box[4])] -
+		       counts[index(box[0], box[2], box[4])];
+	}
+	
+	
+	/**
+	 * Returns the sum of the masked voxels in a box.
+	 *
+	 * @param xMin first x (inclusive)
+	 * @param xMax last x (exclusive)
+	 * @param yMin first y (inclusive)
+	 * @param yMax last y (exclusive)
+	 * @param zMin first z (inclusive)
+	 * @param zMax last z (exclusive)
+	 *
+	 * @return the sum of the values
+	 */
+	public double sum(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		return boxSum(sums, clip(xMin, xMax, yMin, yMax, zMin, zMax));
+	}
+	
+	
+	/**
+	 * Returns the sum of the squares of the masked voxels in a box.
+	 *
+	 * @param xMin first x (inclusive)
+	 * @param xMax last x (exclusive)
+	 * @param yMin first y (inclusive)
+	 * @param yMax last y (exclusive)
+	 * @param zMin first z (inclusive)
+	 * @param zMax last z (exclusive)
+	 *
+	 * @return the sum of the squared values
+	 *
+	 * @throws IllegalStateException if the sum of squares table was not built
+	 */
+	public double sumOfSquares(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		if (squares == null) {
+			throw new IllegalStateException("Sum of squares table was not computed");
+		}
+		return boxSum(squares, clip(xMin, xMax, yMin, yMax, zMin, zMax));
+	}
+	
+	
+	/**
+	 * Returns the mean of the masked voxels in a box.
+	 *
+	 * @param xMin first x (inclusive)
+	 * @param xMax last x (exclusive)
+	 * @param yMin first y (inclusive)
+	 * @param yMax last y (exclusive)
+	 * @param zMin first z (inclusive)
+	 * @param zMax last z (exclusive)
+	 *
+	 * @return the mean value, or NaN if the box holds no masked voxel
+	 */
+	public double mean(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		int count = count(xMin, xMax, yMin, yMax, zMin, zMax);
+		return count > 0 ? sum(xMin, xMax, yMin, yMax, zMin, zMax) / count : Double.NaN;
+	}
+	
+	
+	/**
+	 * Returns the (population) variance of the masked voxels in a box.
+	 *
+	 * @param xMin first x (inclusive)
+	 * @param xMax last x (exclusive)
+	 * @param yMin first y (inclusive)
+	 * @param yMax last y (exclusive)
+	 * @param zMin first z (inclusive)
+	 * @param zMax last z (exclusive)
+	 *
+	 * @return the variance, or NaN if the box holds no masked voxel
+	 */
+	public double variance(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax) {
+		int count = count(xMin, xMax, yMin, yMax, zMin, zMax);
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double mean = sum(xMin, xMax, yMin, yMax, zMin, zMax) / count;
+		return Math.max(0, sumOfSquares(xMin, xMax, yMin, yMax, zMin, zMax) / count - mean * mean);
+	}
+	
+	
+	/**
+	 * Computes, in a single pass, the number, the mean and the (population) standard deviation of the voxels of an
+	 * image whose mask value is above a threshold.
+	 *
+	 * @param image         image
+	 * @param mask          mask
+	 * @param maskThreshold voxels whose mask value is strictly above this threshold are taken into account
+	 *
+	 * @return {count, mean, standard deviation}
+	 */
+	public static double[] maskedMeanAndStdDev(ImagePlus image, ImagePlus mask, double maskThreshold) {
+		ImageStack stack     = image.getStack();
+		ImageStack maskStack = mask.getStack();
+		int        wh        = image.getWidth() * image.getHeight();
+		long       count     = 0;
+		double     mean      = 0;
+		double     m2        = 0;
+		for (int k = 0; k < image.getStackSize(); ++k) {
+			ImageProcessor ip     = stack.getProcessor(k + 1);
+			ImageProcessor ipMask = maskStack.getProcessor(k + 1);
+			for (int index = 0; index < wh; ++index) {
+				if (ipMask.getf(index) > maskThreshold) {
+					/* Welford update, numerically stable in a single pass */
+					double value = ip.getf(index);
+					double delta = value - mean;
+					mean += delta / ++count;
+					m2 += delta * (value - mean);
+				}
+			}
+		}
+		if (count == 0) {
+			return new double[]{0, Double.NaN, Double.NaN};
+		}
+		return new double[]{count, mean, Math.sqrt(m2 / count)};
+	}
+	
+}
@@ -0,0 +1,411 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2014-2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Runs a batch of items (typically OMERO images) through three stages: download, process and upload.
+ * <p>
+ * Each stage has its own pool of threads, so that network transfers and computations overlap. Stages are connected by
+ * bounded queues: a stage blocks when the next one cannot keep up. The number of items between the start of their
+ * download and the end of their upload is also limited, which bounds the number of images held in memory.
+ * <p>
+ * Each stage is retried with an exponential backoff when it throws an exception. An item failing all its attempts in
+ * one stage is recorded and skipped, the other items are still processed. Results are handed over on the calling
+ * thread, in the order of the items, once all the items went through the pipeline.
+ *
+ * @param <T> type of the items
+ * @param <D> type of the downloaded data
+ * @param <P> type of the processed data
+ * @param <R> type of the results
+ */
+public class PipelineExecutor<T, D, P, R> {
+	/** Logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	
+	/** Default number of attempts of a stage */
+	private static final int  DEFAULT_ATTEMPTS = 1;
+	/** Default delay before the first retry of a stage, in milliseconds */
+	private static final long DEFAULT_DELAY    = 1000;
+	
+	/** Download stage */
+	private final BatchExecutor.Task<? super T, ? extends D> download;
+	/** Process stage */
+	private final Stage<? super T, ? super D, ? extends P>   process;
+	/** Upload stage */
+	private final Stage<? super T, ? super P, ? extends R>   upload;
+	
+	/** Number of threads of each stage */
+	private final Map<Step, Integer> threads  = new EnumMap<>(Step.class);
+	/** Number of attempts of each stage */
+	private final Map<Step, Integer> attempts = new EnumMap<>(Step.class);
+	/** Delay before the first retry of each stage, in milliseconds */
+	private final Map<Step, Long>    delays   = new EnumMap<>(Step.class);
+	
+	/** Capacity of the queues between stages (0: number of threads of the next stage) */
+	private int queueCapacity;
+	/** Maximum number of items in the pipeline at the same time (0: sum of the queue capacities and threads) */
+	private int maxInFlight;
+	
+	
+	/**
+	 * Constructor. Each stage uses one thread and is attempted once by default.
+	 *
+	 * @param download download stage
+	 * @param process  process stage
+	 * @param upload   upload stage
+	 */
+	public PipelineExecutor(BatchExecutor.Task<? super T, ? extends D> download,
+	                        Stage<? super T, ? super D, ? extends P> process,
+	                        Stage<? super T, ? super P, ? extends R> upload) {
+		this.download = download;
+		this.process = process;
+		this.upload = upload;
+		for (Step step : Step.values()) {
+			threads.put(step, 1);
+			attempts.put(step, DEFAULT_ATTEMPTS);
+			delays.put(step, DEFAULT_DELAY);
+		}
+	}
+	
+	
+	/**
+	 * Setter for the number of threads of a stage.
+	 *
+	 * @param step         stage
+	 * @param threadNumber number of threads (at least 1)
+	 */
+	public void setThreads(Step step, int threadNumber) {
+		threads.put(step, Math.max(1, threadNumber));
+	}
+	
+	
+	/**
+	 * Setter for the retries of a stage. The delay is doubled after each failed attempt.
+	 *
+	 * @param step         stage
+	 * @param attemptCount maximum number of attempts (at least 1)
+	 * @param delay        delay before the first retry
+	 * @param unit         unit of the delay
+	 */
+	public void setRetries(Step step, int attemptCount, long delay, TimeUnit unit) {
+		attempts.put(step, Math.max(1, attemptCount));
+		delays.put(step, Math.max(0, unit.toMillis(delay)));
+	}
+	
+	
+	/**
+	 * Setter for the capacity of the queues between stages.
+	 *
+	 * @param capacity capacity of each queue (0 or less: number of threads of the next stage)
+	 */
+	public void setQueueCapacity(int capacity) {
+		this.queueCapacity = Math.max(0, capacity);
+	}
+	
+	
+	/**
+	 * Setter for the maximum number of items in the pipeline at the same time, from the start of their download to
+	 * the end of their upload. This is the maximum number of downloaded images held in memory.
+	 *
+	 * @param itemNumber maximum number of items (0 or less: sum of the queue capacities and threads)
+	 */
+	public void setMaxInFlight(int itemNumber) {
+		this.maxInFlight = Math.max(0, itemNumber);
+	}
+	
+	
+	/**
+	 * Runs all the items through the pipeline.
+	 *
+	 * @param items    items to process
+	 * @param onResult called on the calling thread with each item and its result, in the order of the items (not
+	 *                 called for items that failed or have no result)
+	 *
+	 * @return the items that failed or have no result, in their original order, with the cause of the failure
+	 *
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for the pipeline
+	 */
+	public Map<T, Throwable> run(List<? extends T> items, BiConsumer<? super T, ? super R> onResult)
+	throws InterruptedException {
+		int nItems = items.size();
+		
+		List<R>         results = new ArrayList<>(nItems);
+		List<Throwable> errors  = new ArrayList<>(nItems);
+		for (int i = 0; i < nItems; i++) {
+			results.add(null);
+			errors.add(null);
+		}
+		
+		BlockingQueue<Entry> toProcess = new ArrayBlockingQueue<>(capacity(Step.PROCESS));
+		BlockingQueue<Entry> toUpload  = new ArrayBlockingQueue<>(capacity(Step.UPLOAD));
+		
+		int inFlight = maxInFlight > 0 ? maxInFlight :
+		               threads.get(Step.DOWNLOAD) + threads.get(Step.PROCESS) + threads.get(Step.UPLOAD) +
+		               capacity(Step.PROCESS) + capacity(Step.UPLOAD);
+		Semaphore permits = new Semaphore(inFlight);
+		
+		ExecutorService downloaders = Executors.newFixedThreadPool(threads.get(Step.DOWNLOAD));
+		ExecutorService processors  = Executors.newFixedThreadPool(threads.get(Step.PROCESS));
+		ExecutorService uploaders   = Executors.newFixedThreadPool(threads.get(Step.UPLOAD));
+		try {
+			for (int w = 0; w < threads.get(Step.PROCESS); w++) {
+				processors.execute(() -> consume(toProcess, toUpload, Step.PROCESS, items, errors, null, permits));
+			}
+			for (int w = 0; w < threads.get(Step.UPLOAD); w++) {
+				uploaders.execute(() -> consume(toUpload, null, Step.UPLOAD, items, errors, results, permits));
+			}
+			
+			/* A download starts only when the number of items in the pipeline is below the limit */
+			for (int i = 0; i < nItems; i++) {
+				permits.acquire();
+				int index = i;
+				downloaders.execute(() -> {
+					Entry entry = new Entry(index, null);
+					if (!runStage(Step.DOWNLOAD, entry, items.get(index), errors, permits)) {
+						return;
+					}
+					try {
+						toProcess.put(entry);
+					} catch (InterruptedException e) {
+						fail(index, items.get(index), Step.DOWNLOAD, e, errors, permits);
+						Thread.currentThread().interrupt();
+					}
+				});
+			}
+			
+			/* Each stage is stopped once the previous one is done */
+			shutdown(downloaders);
+			stop(toProcess, processors, threads.get(Step.PROCESS));
+			stop(toUpload, uploaders, threads.get(Step.UPLOAD));
+		} finally {
+			downloaders.shutdownNow();
+			processors.shutdownNow();
+			uploaders.shutdownNow();
+		}
+		
+		Map<T, Throwable> failures = new LinkedHashMap<>();
+		for (int i = 0; i < nItems; i++) {
+			T item = items.get(i);
+			if (errors.get(i) != null) {
+				failures.put(item, errors.get(i));
+			} else if (results.get(i) == null) {
+				/* The last stage returned nothing, or the item never reached it */
+				failures.put(item, new IllegalStateException("No result for " + item));
+			} else {
+				onResult.accept(item, results.get(i));
+			}
+		}
+		return failures;
+	}
+	
+	
+	/**
+	 * Returns the capacity of the queue before a stage.
+	 */
+	private int capacity(Step step) {
+		return queueCapacity > 0 ? queueCapacity : threads.get(step);
+	}
+	
+	
+	/**
+	 * Takes entries from a queue until the end marker, runs a stage on them and puts them in the next queue (or stores
+	 * the results, for the last stage, when the output queue is null).
+	 */
+	private void consume(BlockingQueue<Entry> input, BlockingQueue<Entry> output, Step step,
+	                     List<? extends T> items, List<Throwable> errors, List<R> results, Semaphore permits) {
+		try {
+			Entry entry = input.take();
+			while (entry.index >= 0) {
+				T item = items.get(entry.index);
+				if (runStage(step, entry, item, errors, permits)) {
+					if (output != null) {
+						output.put(entry);
+					} else {
+						@SuppressWarnings("unchecked")
+						R result = (R) entry.data;
+						results.set(entry.index, result);
+						permits.release();
+					}
+				}
+				entry = input.take();
+			}
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted while waiting for images to {}.", step.name().toLowerCase(), e);
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	/**
+	 * Runs one stage on an entry, retrying exceptions with an exponential backoff. On success, the entry holds the
+	 * output of the stage. On failure, including errors, the item is recorded as failed and leaves the pipeline.
+	 *
+	 * @return true if the stage succeeded
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean runStage(Step step, Entry entry, T item, List<Throwable> errors, Semaphore permits) {
+		int  maxAttempts = attempts.get(step);
+		long delay       = delays.get(step);
+		for (int attempt = 1; ; attempt++) {
+			try {
+				switch (step) {
+					case DOWNLOAD:
+						entry.data = download.process(item);
+						break;
+					case PROCESS:
+						entry.data = process.apply(item, (D) entry.data);
+						break;
+					default:
+						entry.data = upload.apply(item, (P) entry.data);
+						break;
+				}
+				return true;
+			} catch (InterruptedException e) {
+				fail(entry.index, item, step, e, errors, permits);
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (Exception e) {
+				if (attempt >= maxAttempts) {
+					fail(entry.index, item, step, e, errors, permits);
+					return false;
+				}
+				LOGGER.warn("Attempt {}/{} to {} {} failed, retrying in {} ms.",
+				            attempt, maxAttempts, step.name().toLowerCase(), item, delay, e);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					fail(entry.index, item, step, ie, errors, permits);
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				delay *= 2;
+			} catch (Throwable t) {
+				/* Errors are not retried, but the worker goes on with the next items */
+				fail(entry.index, item, step, t, errors, permits);
+				return false;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Records the failure of an item and removes it from the pipeline.
+	 */
+	private static void fail(int index, Object item, Step step, Throwable error, List<Throwable> errors,
+	                         Semaphore permits) {
+		LOGGER.error("Cannot {} {}", step.name().toLowerCase(), item, error);
+		errors.set(index, error);
+		permits.release();
+	}
+	
+	
+	/**
+	 * Waits for all the tasks of an executor to finish.
+	 */
+	private static void shutdown(ExecutorService executor) throws InterruptedException {
+		executor.shutdown();
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			LOGGER.info("Waiting for the pipeline to finish.");
+		}
+	}
+	
+	
+	/**
+	 * Sends one end marker per worker of a stage, then waits for the workers to finish.
+	 */
+	private static void stop(BlockingQueue<Entry> queue, ExecutorService workers, int workerCount)
+	throws InterruptedException {
+		for (int w = 0; w < workerCount; w++) {
+			queue.put(new Entry(-1, null));
+		}
+		shutdown(workers);
+	}
+	
+	
+	/** Stages of the pipeline */
+	public enum Step {
+		/** Download of the item */
+		DOWNLOAD,
+		/** Processing of the downloaded data */
+		PROCESS,
+		/** Upload of the processed data */
+		UPLOAD
+	}
+	
+	
+	/**
+	 * Stage of the pipeline after the download.
+	 *
+	 * @param <T> type of the items
+	 * @param <I> type of the input of the stage
+	 * @param <O> type of the output of the stage
+	 */
+	@FunctionalInterface
+	public interface Stage<T, I, O> {
+		
+		/**
+		 * Runs the stage on one item.
+		 *
+		 * @param item  item
+		 * @param input output of the previous stage for this item
+		 *
+		 * @return the output of this stage for this item
+		 *
+		 * @throws Exception if the stage failed
+		 */
+		O apply(T item, I input) throws Exception;
+		
+	}
+	
+	
+	/**
+	 * Item moving through the pipeline.
+	 */
+	private static final class Entry {
+		/** Index of the item, -1 for the end marker */
+		private final int    index;
+		/** Output of the last stage run on the item */
+		private       Object data;
+		
+		
+		Entry(int index, Object data) {
+			this.index = index;
+			this.data = data;
+		}
+		
+	}
+	
+}
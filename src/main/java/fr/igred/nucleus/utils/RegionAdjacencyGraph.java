@@ -0,0 +1,297 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+
+
+/**
+ * Sparse region adjacency graph of a label image, such as the result of a watershed.
+ * <p>
+ * The graph is built in a single pass over the label image: the number of voxels and the intensity sum of each
+ * region are collected, and for each inner voxel, each of its 6 neighbours with another (non-zero) label adds one
+ * face to the boundary between the two regions. Boundaries are counted from each side: the faces of region a touching
+ * region b are stored under the pair (a, b).
+ * <p>
+ * Only the pairs of adjacent regions are stored, in an open-addressing hash table of primitive longs, so the memory
+ * grows with the number of boundaries instead of the square of the number of regions.
+ */
+public final class RegionAdjacencyGraph {
+	/** Empty slot in the hash table (pairs always have non-zero labels) */
+	private static final long EMPTY = 0L;
+	
+	/** Maximum label */
+	private final int      maxLabel;
+	/** Number of voxels of each region */
+	private final int[]    voxelCounts;
+	/** Intensity sum of each region */
+	private final double[] intensitySums;
+	/** Number of boundary faces of each region, with all its neighbours */
+	private final long[]   boundaryTotals;
+	
+	/** Label pairs (a, b), packed as a << 32 | b */
+	private long[] pairs;
+	/** Number of faces of region a touching region b, for each pair */
+	private long[] faces;
+	/** Number of pairs */
+	private int    nbEdges;
+	
+	
+	private RegionAdjacencyGraph(int maxLabel) {
+		this.maxLabel = maxLabel;
+		this.voxelCounts = new int[maxLabel + 1];
+		this.intensitySums = new double[maxLabel + 1];
+		this.boundaryTotals = new long[maxLabel + 1];
+		this.pairs = new long[1024];
+		this.faces = new long[pairs.length];
+	}
+	
+	
+	/**
+	 * Builds the region adjacency graph of a label image.
+	 *
+	 * @param imagePlusLabels label image (0 for background)
+	 * @param imagePlusRaw    intensity image, of the same size
+	 *
+	 * @return the region adjacency graph
+	 */
+	public static RegionAdjacencyGraph build(ImagePlus imagePlusLabels, ImagePlus imagePlusRaw) {
+		VoxelView labels = VoxelView.of(imagePlusLabels);
+		VoxelView raw    = VoxelView.of(imagePlusRaw);
+		int       width  = labels.getWidth();
+		int       height = labels.getHeight();
+		int       depth  = labels.getDepth();
+		
+		int[] maxLabel = {0};
+		labels.forEach((x, y, z, value) -> maxLabel[0] = Math.max(maxLabel[0], (int) value));
+		RegionAdjacencyGraph graph = new RegionAdjacencyGraph(maxLabel[0]);
+		
+		for (int z = 0; z < depth; ++z) {
+			boolean innerSlice = z > 0 && z < depth - 1;
+			for (int y = 0; y < height; ++y) {
+				boolean innerRow = innerSlice && y > 0 && y < height - 1;
+				for (int x = 0; x < width; ++x) {
+					int offset = y * width + x;
+					int label  = (int) labels.get(z, offset);
+					if (label > 0) {
+						graph.voxelCounts[label]++;
+						graph.intensitySums[label] += raw.get(z, offset);
+						/* Boundaries are only collected on inner voxels, whose 6 neighbours are in the image */
+						if (innerRow && x > 0 && x < width - 1) {
+							graph.addFace(label, (int) labels.get(z - 1, offset));
+							graph.addFace(label, (int) labels.get(z + 1, offset));
+							graph.addFace(label, (int) labels.get(z, offset - width));
+							graph.addFace(label, (int) labels.get(z, offset + width));
+							graph.addFace(label, (int) labels.get(z, offset - 1));
+							graph.addFace(label, (int) labels.get(z, offset + 1));
+						}
+					}
+				}
+			}
+		}
+		return graph;
+	}
+	
+	
+	/**
+	 * Packs a label pair in a long.
+	 *
+	 * @param label     first label
+	 * @param neighbour second label
+	 *
+	 * @return the packed pair
+	 */
+	private static long pack(int label, int neighbour) {
+		return (long) label << 32 | neighbour & 0xFFFFFFFFL;
+	}
+	
+	
+	/**
+	 * Returns the first slot to look at for a pair in a hash table.
+	 *
+	 * @param pair   packed pair
+	 * @param length length of the table (power of 2)
+	 *
+	 * @return the slot index
+	 */
+	private static int hash(long pair, int length) {
+		long mixed = pair * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ mixed >>> 32) & length - 1;
+	}
+	
+	
+	/**
+	 * Returns the slot of a pair in the hash table: either the slot holding it, or the empty slot where it would be
+	 * inserted.
+	 *
+	 * @param pair packed pair
+	 *
+	 * @return the slot index
+	 */
+	private int slot(long pair) {
+		int index = hash(pair, pairs.length);
+		while (pairs[index] != EMPTY && pairs[index] != pair) {
+			index = index + 1 & pairs.length - 1;
+		}
+		return index;
+	}
+	
+	
+	/**
+	 * Adds a boundary face between a region and a neighbouring voxel, if the voxel belongs to another region.
+	 *
+	 * @param label     region label
+	 * @param neighbour label of the neighbouring voxel
+	 */
+	private void addFace(int label, int neighbour) {
+		if (neighbour > 0 && neighbour != label) {
+			long pair  = pack(label, neighbour);
+			int  index = slot(pair);
+			if (pairs[index] == EMPTY) {
+				pairs[index] = pair;
+				if (++nbEdges > pairs.length / 2) {
+					grow();
+				}
+			}
+			faces[slot(pair)]++;
+			boundaryTotals[label]++;
+		}
+	}
+	
+	
+	/** Doubles the size of the hash table. */
+	private void grow() {
+		long[] oldPairs = pairs;
+		long[] oldFaces = faces;
+		pairs = new long[2 * oldPairs.length];
+		faces = new long[pairs.length];
+		for (int i = 0; i < oldPairs.length; ++i) {
+			if (oldPairs[i] != EMPTY) {
+				int index = slot(oldPairs[i]);
+				pairs[index] = oldPairs[i];
+				faces[index] = oldFaces[i];
+			}
+		}
+	}
+	
+	
+	/** @return the maximum label */
+	public int getMaxLabel() {
+		return maxLabel;
+	}
+	
+	
+	/** @return the number of edges, each pair of adjacent regions being counted once from each side */
+	public int getNbEdges() {
+		return nbEdges;
+	}
+	
+	
+	/**
+	 * Returns the number of voxels of a region.
+	 *
+	 * @param label region label
+	 *
+	 * @return the number of voxels
+	 */
+	public int getVoxelCount(int label) {
+		return voxelCounts[label];
+	}
+	
+	
+	/**
+	 * Returns the mean intensity of a region.
+	 *
+	 * @param label region label
+	 *
+	 * @return the mean intensity, or 0 if the region is empty
+	 */
+	public double getMeanIntensity(int label) {
+		return voxelCounts[label] == 0 ? 0 : intensitySums[label] / voxelCounts[label];
+	}
+	
+	
+	/**
+	 * Returns the length of the boundary between two regions, as the number of faces of the first one touching the
+	 * second one.
+	 *
+	 * @param label     region label
+	 * @param neighbour neighbour label
+	 *
+	 * @return the number of faces (0 if the regions are not adjacent)
+	 */
+	public long getBoundaryFaces(int label, int neighbour) {
+		if (label <= 0 || neighbour <= 0) {
+			return 0;
+		}
+		int index = slot(pack(label, neighbour));
+		return pairs[index] == EMPTY ? 0 : faces[index];
+	}
+	
+	
+	/**
+	 * Returns the length of the whole boundary of a region with its neighbours (background excluded).
+	 *
+	 * @param label region label
+	 *
+	 * @return the number of faces
+	 */
+	public long getBoundaryFaces(int label) {
+		return boundaryTotals[label];
+	}
+	
+	
+	/**
+	 * Returns the contrast of a region with a neighbour: the difference of their mean intensities.
+	 *
+	 * @param label     region label
+	 * @param neighbour neighbour label
+	 *
+	 * @return the contrast
+	 */
+	public double getEdgeContrast(int label, int neighbour) {
+		return getMeanIntensity(label) - getMeanIntensity(neighbour);
+	}
+	
+	
+	/**
+	 * Computes the contrast of each region with its neighbours: the mean of the edge contrasts, weighted by the
+	 * boundary lengths. Regions darker than their neighbours, or without neighbours, have a contrast of 0.
+	 *
+	 * @return the contrast of each region, indexed by label
+	 */
+	public double[] computeContrast() {
+		double[] contrast = new double[maxLabel + 1];
+		for (int i = 0; i < pairs.length; ++i) {
+			if (pairs[i] != EMPTY) {
+				int label     = (int) (pairs[i] >>> 32);
+				int neighbour = (int) pairs[i];
+				contrast[label] += faces[i] * getEdgeContrast(label, neighbour);
+			}
+		}
+		for (int label = 1; label <= maxLabel; ++label) {
+			if (contrast[label] <= 0 || boundaryTotals[label] == 0) {
+				contrast[label] = 0;
+			} else {
+				contrast[label] /= boundaryTotals[label];
+			}
+		}
+		return contrast;
+	}
+	
+}
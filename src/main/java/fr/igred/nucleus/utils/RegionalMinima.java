@@ -0,0 +1,284 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+
+/**
+ * Detection of the regional minima of a 3D image: connected plateaus of voxels with the same value, none of whose
+ * neighbours has a lower value.
+ * <p>
+ * Each plateau is flooded once to find whether it has a lower neighbour, then once more to mark it if it does not, so
+ * the detection runs in linear time. Voxels are stored in flat arrays (voxel (x, y, z) at index
+ * {@code (z * height + y) * width + x}), and plateaus are flooded with a primitive ring-buffer queue. The input image
+ * is not modified.
+ */
+public final class RegionalMinima {
+	/** Value of the minima voxels in the result image */
+	private static final int BINARY_WHITE = 255;
+	
+	/** Voxel not flooded yet */
+	private static final byte UNVISITED = 0;
+	/** Voxel of a plateau already flooded, which is not a minimum */
+	private static final byte VISITED   = 1;
+	/** Voxel of a regional minimum */
+	private static final byte MINIMUM   = 2;
+	
+	
+	/** Private constructor to prevent instantiation */
+	private RegionalMinima() {
+		// Private constructor to prevent instantiation
+	}
+	
+	
+	/**
+	 * Finds the regional minima of an image, within a mask.
+	 *
+	 * @param imagePlusInput image (not modified)
+	 * @param imagePlusMask  mask: only voxels above 0 are considered, both as minima and as neighbours (null: whole
+	 *                       image)
+	 * @param connectivity   6 or 26
+	 *
+	 * @return a binary image, with the minima voxels at 255
+	 */
+	public static ImagePlus find(ImagePlus imagePlusInput, ImagePlus imagePlusMask, int connectivity) {
+		VoxelView input  = VoxelView.of(imagePlusInput);
+		int       width  = input.getWidth();
+		int       height = input.getHeight();
+		int       depth  = input.getDepth();
+		int       wh     = width * height;
+		
+		float[]   values = new float[wh * depth];
+		boolean[] mask   = null;
+		VoxelView view   = imagePlusMask == null ? null : VoxelView.of(imagePlusMask);
+		if (view != null) {
+			mask = new boolean[values.length];
+		}
+		for (int z = 0; z < depth; ++z) {
+			for (int offset = 0; offset < wh; ++offset) {
+				values[z * wh + offset] = input.get(z, offset);
+				if (view != null) {
+					mask[z * wh + offset] = view.get(z, offset) > 0;
+				}
+			}
+		}
+		
+		boolean[]  minima = find(values, mask, width, height, depth, connectivity);
+		ImageStack stack  = new ImageStack(width, height);
+		for (int z = 0; z < depth; ++z) {
+			byte[] pixels = new byte[wh];
+			for (int offset = 0; offset < wh; ++offset) {
+				if (minima[z * wh + offset]) {
+					pixels[offset] = (byte) BINARY_WHITE;
+				}
+			}
+			stack.addSlice(new ByteProcessor(width, height, pixels));
+		}
+		ImagePlus imagePlusMinima = new ImagePlus("minima_" + imagePlusInput.getTitle(), stack);
+		imagePlusMinima.setCalibration(imagePlusInput.getCalibration());
+		return imagePlusMinima;
+	}
+	
+	
+	/**
+	 * Finds the regional minima of an image stored in a flat array.
+	 *
+	 * @param values       voxel values
+	 * @param mask         voxels considered, both as minima and as neighbours (null: all voxels)
+	 * @param width        image width
+	 * @param height       image height
+	 * @param depth        image depth
+	 * @param connectivity 6 or 26
+	 *
+	 * @return whether each voxel belongs to a regional minimum
+	 */
+	public static boolean[] find(float[] values, boolean[] mask, int width, int height, int depth, int connectivity) {
+		int[][]   offsets    = neighbourOffsets(connectivity);
+		int[]     linear     = new int[offsets.length];
+		int[]     neighbours = new int[offsets.length];
+		byte[]    states     = new byte[values.length];
+		IntQueue  queue      = new IntQueue();
+		boolean[] minima     = new boolean[values.length];
+		for (int n = 0; n < offsets.length; ++n) {
+			linear[n] = (offsets[n][2] * height + offsets[n][1]) * width + offsets[n][0];
+		}
+		
+		for (int seed = 0; seed < values.length; ++seed) {
+			if (states[seed] == UNVISITED && (mask == null || mask[seed])) {
+				float value = values[seed];
+				
+				/* First flood: visit the plateau and look for a lower neighbour */
+				boolean minimum = true;
+				states[seed] = VISITED;
+				queue.add(seed);
+				while (!queue.isEmpty()) {
+					int nbNeighbours = listNeighbours(queue.remove(), width, height, depth, offsets, linear, neighbours);
+					for (int n = 0; n < nbNeighbours; ++n) {
+						int neighbour = neighbours[n];
+						if (mask == null || mask[neighbour]) {
+							if (values[neighbour] < value) {
+								minimum = false;
+							} else if (values[neighbour] == value && states[neighbour] == UNVISITED) {
+								states[neighbour] = VISITED;
+								queue.add(neighbour);
+							}
+						}
+					}
+				}
+				
+				/* Second flood: mark the plateau as a minimum */
+				if (minimum) {
+					states[seed] = MINIMUM;
+					minima[seed] = true;
+					queue.add(seed);
+					while (!queue.isEmpty()) {
+						int nbNeighbours = listNeighbours(queue.remove(), width, height, depth,
+						                                  offsets, linear, neighbours);
+						for (int n = 0; n < nbNeighbours; ++n) {
+							int neighbour = neighbours[n];
+							if (states[neighbour] == VISITED && values[neighbour] == value &&
+							    (mask == null || mask[neighbour])) {
+								states[neighbour] = MINIMUM;
+								minima[neighbour] = true;
+								queue.add(neighbour);
+							}
+						}
+					}
+				}
+			}
+		}
+		return minima;
+	}
+	
+	
+	/**
+	 * Lists the neighbours of a voxel which are inside the image.
+	 *
+	 * @param index      voxel index
+	 * @param width      image width
+	 * @param height     image height
+	 * @param depth      image depth
+	 * @param offsets    offsets of the neighbours, as {dx, dy, dz} triplets
+	 * @param linear     offsets of the neighbours in the flat array
+	 * @param neighbours array filled with the indices of the neighbours
+	 *
+	 * @return the number of neighbours
+	 */
+	private static int listNeighbours(int index, int width, int height, int depth,
+	                                  int[][] offsets, int[] linear, int[] neighbours) {
+		int x = index % width;
+		int y = index / width % height;
+		int z = index / (width * height);
+		if (x > 0 && x < width - 1 && y > 0 && y < height - 1 && z > 0 && z < depth - 1) {
+			/* Inner voxels: no bounds check */
+			for (int n = 0; n < linear.length; ++n) {
+				neighbours[n] = index + linear[n];
+			}
+			return linear.length;
+		}
+		int nbNeighbours = 0;
+		for (int n = 0; n < offsets.length; ++n) {
+			int xx = x + offsets[n][0];
+			int yy = y + offsets[n][1];
+			int zz = z + offsets[n][2];
+			if (xx >= 0 && xx < width && yy >= 0 && yy < height && zz >= 0 && zz < depth) {
+				neighbours[nbNeighbours++] = index + linear[n];
+			}
+		}
+		return nbNeighbours;
+	}
+	
+	
+	/**
+	 * Returns the neighbours of a voxel for a connectivity, as {dx, dy, dz} triplets.
+	 *
+	 * @param connectivity 6 or 26
+	 *
+	 * @return the offsets of the neighbours
+	 */
+	private static int[][] neighbourOffsets(int connectivity) {
+		if (connectivity == 6) {
+			return new int[][]{{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+		} else if (connectivity == 26) {
+			int[][] offsets = new int[26][];
+			int     n       = 0;
+			for (int dz = -1; dz <= 1; ++dz) {
+				for (int dy = -1; dy <= 1; ++dy) {
+					for (int dx = -1; dx <= 1; ++dx) {
+						if (dx != 0 || dy != 0 || dz != 0) {
+							offsets[n++] = new int[]{dx, dy, dz};
+						}
+					}
+				}
+			}
+			return offsets;
+		} else {
+			throw new IllegalArgumentException("Connectivity must be 6 or 26: " + connectivity);
+		}
+	}
+	
+	
+	/** First-in first-out queue of voxel indices, in a ring buffer which doubles when it is full. */
+	private static final class IntQueue {
+		/** Buffer, whose length is a power of 2 */
+		private int[] elements = new int[1024];
+		/** Index of the first element */
+		private int   head;
+		/** Number of elements */
+		private int   size;
+		
+		
+		/** @return whether the queue is empty */
+		boolean isEmpty() {
+			return size == 0;
+		}
+		
+		
+		/**
+		 * Adds an element at the end of the queue.
+		 *
+		 * @param element element
+		 */
+		void add(int element) {
+			if (size == elements.length) {
+				int[] grown = new int[2 * elements.length];
+				int   first = elements.length - head;
+				System.arraycopy(elements, head, grown, 0, first);
+				System.arraycopy(elements, 0, grown, first, head);
+				elements = grown;
+				head = 0;
+			}
+			elements[head + size & elements.length - 1] = element;
+			size++;
+		}
+		
+		
+		/** @return the first element, removed from the queue */
+		int remove() {
+			int element = elements[head];
+			head = head + 1 & elements.length - 1;
+			size--;
+			return element;
+		}
+		
+	}
+	
+}
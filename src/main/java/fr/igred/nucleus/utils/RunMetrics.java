@@ -0,0 +1,565 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import fr.igred.nucleus.io.OutputTextFile;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Records the resources used by each stage of a run, for each image: wall time, CPU time, bytes read and written,
+ * bytes allocated and heap used.
+ * <p>
+ * The images processed by a thread are tracked with {@link #track(String)}, and the stages are measured with
+ * {@link #stage(String)} from any code running on this thread: nothing is recorded when no image is tracked, so the
+ * algorithms can be instrumented without depending on the run. The input/output code reports the bytes it reads and
+ * writes with {@link #addBytesRead(long)} and {@link #addBytesWritten(long)}, which are counted in the innermost stage
+ * of the thread.
+ * <p>
+ * CPU time and allocated bytes are those of the thread running the stage: the work split on the
+ * {@link SharedExecutor} pool is only counted in the wall time.
+ * <p>
+ * At the end of the run, the records are saved as a JSON summary and a Prometheus text file.
+ */
+public class RunMetrics {
+	
+	/** Stage reading the input image */
+	public static final String OPEN            = "open";
+	/** Stage preparing the image (filters, contrast) */
+	public static final String PREPROCESS      = "preprocess";
+	/** Stage choosing the threshold */
+	public static final String THRESHOLD_SWEEP = "threshold_sweep";
+	/** Stage computing a fixed threshold and applying it */
+	public static final String THRESHOLD       = "threshold";
+	/** Stage labelling and correcting the thresholded objects */
+	public static final String MORPHOLOGY      = "morphology";
+	/** Stage computing the convex hull */
+	public static final String CONVEX_HULL     = "convex_hull";
+	/** Stage computing the parameters */
+	public static final String MEASURE         = "measure";
+	/** Stage writing the results */
+	public static final String SAVE            = "save";
+	/** Stage looking up and restoring cached results */
+	public static final String CACHE           = "cache";
+	
+	/** Prefix of the Prometheus metrics */
+	private static final String PREFIX = "nucleusj_";
+	
+	/** Nanoseconds in a second */
+	private static final double NANOS = 1.0e9;
+	
+	/** Image and stage tracked by each thread */
+	private static final ThreadLocal<Context> CURRENT = new ThreadLocal<>();
+	
+	/** Thread CPU time and allocations */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	
+	/** Heap usage */
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+	
+	/** Name of the run */
+	private final String name;
+	
+	/** Start date of the run */
+	private final String date;
+	
+	/** Start time of the run, in nanoseconds */
+	private final long start;
+	
+	/** Records for each image, then for each stage, in the order they were first measured */
+	private final Map<String, Map<String, Record>> images = new LinkedHashMap<>();
+	
+	/** Duration of the run, in nanoseconds (-1 while running) */
+	private long duration = -1;
+	
+	
+	/**
+	 * Starts the metrics of a run. The peak heap usage of the JVM is reset.
+	 *
+	 * @param name name of the run (segmentation, autocrop...)
+	 */
+	public RunMetrics(String name) {
+		this.name = name;
+		this.date = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+		this.start = System.nanoTime();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Starts measuring a stage of the image tracked by the current thread.
+	 * <p>
+	 * The returned stage must be closed (try-with-resources) at the end of the stage; it does nothing when no image is
+	 * tracked.
+	 *
+	 * @param stage name of the stage
+	 *
+	 * @return the stage being measured
+	 */
+	public static Stage stage(String stage) {
+		return new Stage(CURRENT.get(), stage);
+	}
+	
+	
+	/**
+	 * Counts bytes read in the current stage of the thread.
+	 *
+	 * @param bytes number of bytes read
+	 */
+	public static void addBytesRead(long bytes) {
+		Context context = CURRENT.get();
+		if (context != null && context.stage != null) {
+			context.stage.bytesRead += bytes;
+		}
+	}
+	
+	
+	/**
+	 * Counts bytes written in the current stage of the thread.
+	 *
+	 * @param bytes number of bytes written
+	 */
+	public static void addBytesWritten(long bytes) {
+		Context context = CURRENT.get();
+		if (context != null && context.stage != null) {
+			context.stage.bytesWritten += bytes;
+		}
+	}
+	
+	
+	/** @return the CPU time of the current thread, in nanoseconds (0 if not supported) */
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? Math.max(0, THREADS.getCurrentThreadCpuTime()) : 0;
+	}
+	
+	
+	/** @return the bytes allocated by the current thread (0 if not supported) */
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return Math.max(0, threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+			}
+		}
+		return 0;
+	}
+	
+	
+	/** @return the peak heap usage of the JVM since the start of the run */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+	
+	
+	/**
+	 * Formats a duration in seconds.
+	 *
+	 * @param nanos duration in nanoseconds
+	 *
+	 * @return the duration in seconds
+	 */
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.6f", nanos / NANOS);
+	}
+	
+	
+	/**
+	 * Escapes a string for JSON and Prometheus labels.
+	 *
+	 * @param text string to escape
+	 *
+	 * @return the escaped string, without quotes
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (char c : text.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c == '\n') {
+				escaped.append("\\n");
+			} else if (c < ' ') {
+				escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+	
+	
+	/**
+	 * Tracks an image on the current thread, until the returned object is closed (try-with-resources).
+	 *
+	 * @param image name of the image
+	 *
+	 * @return the tracking of the image
+	 */
+	public Tracking track(String image) {
+		Context previous = CURRENT.get();
+		CURRENT.set(new Context(this, image));
+		return new Tracking(previous);
+	}
+	
+	
+	/**
+	 * Adds the measure of a stage to the records.
+	 *
+	 * @param image   name of the image
+	 * @param stage   name of the stage
+	 * @param measure measured stage
+	 */
+	private synchronized void record(String image, String stage, Record measure) {
+		images.computeIfAbsent(image, i -> new LinkedHashMap<>())
+		      .computeIfAbsent(stage, s -> new Record())
+		      .add(measure);
+	}
+	
+	
+	/**
+	 * Ends the run: the duration is fixed.
+	 */
+	public synchronized void stop() {
+		if (duration < 0) {
+			duration = System.nanoTime() - start;
+		}
+	}
+	
+	
+	/** @return the duration of the run, up to now if it is not stopped */
+	private synchronized long getDuration() {
+		return duration < 0 ? System.nanoTime() - start : duration;
+	}
+	
+	
+	/** @return the records summed over the images, for each stage */
+	private synchronized Map<String, Record> getTotals() {
+		Map<String, Record> totals = new LinkedHashMap<>();
+		for (Map<String, Record> stages : images.values()) {
+			for (Map.Entry<String, Record> entry : stages.entrySet()) {
+				totals.computeIfAbsent(entry.getKey(), s -> new Record()).add(entry.getValue());
+			}
+		}
+		return totals;
+	}
+	
+	
+	/**
+	 * Formats the records of several stages as a JSON object.
+	 *
+	 * @param json   JSON being built
+	 * @param stages records for each stage
+	 * @param indent indentation of the object members
+	 */
+	private static void appendStages(StringBuilder json, Map<String, Record> stages, String indent) {
+		json.append('{');
+		String separator = "";
+		for (Map.Entry<String, Record> entry : stages.entrySet()) {
+			Record record = entry.getValue();
+			json.append(separator).append('\n').append(indent)
+			    .append('"').append(escape(entry.getKey())).append("\": {")
+			    .append("\"calls\": ").append(record.calls)
+			    .append(", \"wallSeconds\": ").append(seconds(record.wallTime))
+			    .append(", \"cpuSeconds\": ").append(seconds(record.cpuTime))
+			    .append(", \"bytesRead\": ").append(record.bytesRead)
+			    .append(", \"bytesWritten\": ").append(record.bytesWritten)
+			    .append(", \"allocatedBytes\": ").append(record.allocated)
+			    .append(", \"heapUsedBytes\": ").append(record.heapUsed)
+			    .append('}');
+			separator = ",";
+		}
+		json.append('\n').append(indent, 0, indent.length() - 1).append('}');
+	}
+	
+	
+	/**
+	 * Summarises the run as a JSON object: totals for each stage, then records for each image and stage.
+	 *
+	 * @return the JSON summary
+	 */
+	public synchronized String toJson() {
+		StringBuilder json = new StringBuilder(256 * (images.size() + 1));
+		json.append("{\n")
+		    .append("\t\"run\": \"").append(escape(name)).append("\",\n")
+		    .append("\t\"start\": \"").append(date).append("\",\n")
+		    .append("\t\"wallSeconds\": ").append(seconds(getDuration())).append(",\n")
+		    .append("\t\"images\": ").append(images.size()).append(",\n")
+		    .append("\t\"peakHeapBytes\": ").append(peakHeap()).append(",\n")
+		    .append("\t\"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n")
+		    .append("\t\"stages\": ");
+		appendStages(json, getTotals(), "\t\t");
+		json.append(",\n\t\"perImage\": {");
+		String separator = "";
+		for (Map.Entry<String, Map<String, Record>> image : images.entrySet()) {
+			json.append(separator).append("\n\t\t\"").append(escape(image.getKey())).append("\": ");
+			appendStages(json, image.getValue(), "\t\t\t");
+			separator = ",";
+		}
+		json.append("\n\t}\n}\n");
+		return json.toString();
+	}
+	
+	
+	/**
+	 * Formats the run in the Prometheus text format, with one series for each image and stage.
+	 *
+	 * @return the Prometheus metrics
+	 */
+	public synchronized String toPrometheus() {
+		String run = "run=\"" + escape(name) + "\"";
+		
+		StringBuilder text = new StringBuilder(1024 * (images.size() + 1));
+		appendGauge(text, "run_wall_seconds", "Wall time of the run.", run, seconds(getDuration()));
+		appendGauge(text, "run_images", "Number of images measured.", run, String.valueOf(images.size()));
+		appendGauge(text, "run_heap_peak_bytes", "Peak heap usage of the JVM during the run.", run,
+		            String.valueOf(peakHeap()));
+		
+		String[][] metrics = {{"stage_calls_total", "counter", "Number of times a stage was run."},
+		                      {"stage_wall_seconds_total", "counter", "Wall time spent in a stage."},
+		                      {"stage_cpu_seconds_total", "counter", "CPU time of the thread running a stage."},
+		                      {"stage_read_bytes_total", "counter", "Bytes read during a stage."},
+		                      {"stage_written_bytes_total", "counter", "Bytes written during a stage."},
+		                      {"stage_allocated_bytes_total", "counter", "Bytes allocated by a stage thread."},
+		                      {"stage_heap_used_bytes", "gauge", "Maximum heap usage at the end of a stage."}};
+		for (int m = 0; m < metrics.length; m++) {
+			text.append("# HELP ").append(PREFIX).append(metrics[m][0]).append(' ').append(metrics[m][2]).append('\n');
+			text.append("# TYPE ").append(PREFIX).append(metrics[m][0]).append(' ').append(metrics[m][1]).append('\n');
+			for (Map.Entry<String, Map<String, Record>> image : images.entrySet()) {
+				for (Map.Entry<String, Record> stage : image.getValue().entrySet()) {
+					text.append(PREFIX).append(metrics[m][0])
+					    .append('{').append(run)
+					    .append(",image=\"").append(escape(image.getKey()))
+					    .append("\",stage=\"").append(escape(stage.getKey())).append("\"} ")
+					    .append(stage.getValue().getValue(m)).append('\n');
+				}
+			}
+		}
+		return text.toString();
+	}
+	
+	
+	/**
+	 * Appends a gauge to a Prometheus text.
+	 *
+	 * @param text   Prometheus text being built
+	 * @param metric metric name, without prefix
+	 * @param help   description of the metric
+	 * @param labels labels of the series
+	 * @param value  value of the series
+	 */
+	private static void appendGauge(StringBuilder text, String metric, String help, String labels, String value) {
+		text.append("# HELP ").append(PREFIX).append(metric).append(' ').append(help).append('\n')
+		    .append("# TYPE ").append(PREFIX).append(metric).append(" gauge\n")
+		    .append(PREFIX).append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+	}
+	
+	
+	/**
+	 * Stops the run and saves the metrics in the output folder, as {@code <prefix>_Metrics.json} and
+	 * {@code <prefix>_Metrics.prom}.
+	 *
+	 * @param folder output folder (ending with a separator)
+	 * @param prefix prefix of the file names
+	 */
+	public void save(String folder, String prefix) {
+		stop();
+		new OutputTextFile(folder + prefix + "_Metrics.json").saveTextFile(toJson(), true);
+		new OutputTextFile(folder + prefix + "_Metrics.prom").saveTextFile(toPrometheus(), true);
+	}
+	
+	
+	/** Resources used by a stage, summed over its calls. */
+	private static class Record {
+		/** Number of calls */
+		long calls;
+		/** Wall time, in nanoseconds */
+		long wallTime;
+		/** CPU time, in nanoseconds */
+		long cpuTime;
+		/** Bytes read */
+		long bytesRead;
+		/** Bytes written */
+		long bytesWritten;
+		/** Bytes allocated */
+		long allocated;
+		/** Maximum heap usage at the end of the calls */
+		long heapUsed;
+		
+		
+		/**
+		 * Adds the resources of other calls.
+		 *
+		 * @param other resources to add
+		 */
+		void add(Record other) {
+			calls += other.calls;
+			wallTime += other.wallTime;
+			cpuTime += other.cpuTime;
+			bytesRead += other.bytesRead;
+			bytesWritten += other.bytesWritten;
+			allocated += other.allocated;
+			heapUsed = Math.max(heapUsed, other.heapUsed);
+		}
+		
+		
+		/**
+		 * Returns a value in the order of the Prometheus metrics.
+		 *
+		 * @param index index of the metric
+		 *
+		 * @return the formatted value
+		 */
+		String getValue(int index) {
+			switch (index) {
+				case 0:
+					return String.valueOf(calls);
+				case 1:
+					return seconds(wallTime);
+				case 2:
+					return seconds(cpuTime);
+				case 3:
+					return String.valueOf(bytesRead);
+				case 4:
+					return String.valueOf(bytesWritten);
+				case 5:
+					return String.valueOf(allocated);
+				default:
+					return String.valueOf(heapUsed);
+			}
+		}
+		
+	}
+	
+	
+	/** Image and innermost stage tracked by a thread. */
+	private static final class Context {
+		/** Metrics of the run */
+		final RunMetrics metrics;
+		/** Name of the image */
+		final String     image;
+		/** Innermost stage being measured */
+		Stage            stage;
+		
+		
+		Context(RunMetrics metrics, String image) {
+			this.metrics = metrics;
+			this.image = image;
+		}
+		
+	}
+	
+	
+	/** Tracking of an image by a thread: closing it restores the image previously tracked. */
+	public static final class Tracking implements AutoCloseable {
+		/** Image previously tracked by the thread */
+		private final Context previous;
+		
+		
+		private Tracking(Context previous) {
+			this.previous = previous;
+		}
+		
+		
+		@Override
+		public void close() {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+		
+	}
+	
+	
+	/** Stage being measured: closing it adds its resources to the records of the run. */
+	public static final class Stage implements AutoCloseable {
+		/** Image tracked by the thread (null: nothing is measured) */
+		private final Context context;
+		/** Name of the stage */
+		private final String  name;
+		/** Enclosing stage */
+		private final Stage   parent;
+		/** Start wall time */
+		private final long    wallStart;
+		/** Start CPU time */
+		private final long    cpuStart;
+		/** Bytes allocated before the stage */
+		private final long    allocatedStart;
+		/** Bytes read during the stage */
+		private       long    bytesRead;
+		/** Bytes written during the stage */
+		private       long    bytesWritten;
+		
+		
+		private Stage(Context context, String name) {
+			this.context = context;
+			this.name = name;
+			if (context != null) {
+				this.parent = context.stage;
+				context.stage = this;
+				this.allocatedStart = allocatedBytes();
+				this.cpuStart = cpuTime();
+				this.wallStart = System.nanoTime();
+			} else {
+				this.parent = null;
+				this.allocatedStart = 0;
+				this.cpuStart = 0;
+				this.wallStart = 0;
+			}
+		}
+		
+		
+		@Override
+		public void close() {
+			if (context != null) {
+				Record measure = new Record();
+				measure.wallTime = System.nanoTime() - wallStart;
+				measure.cpuTime = cpuTime() - cpuStart;
+				measure.allocated = allocatedBytes() - allocatedStart;
+				measure.heapUsed = MEMORY.getHeapMemoryUsage().getUsed();
+				measure.bytesRead = bytesRead;
+				measure.bytesWritten = bytesWritten;
+				measure.calls = 1;
+				context.stage = parent;
+				context.metrics.record(context.image, name, measure);
+			}
+		}
+		
+	}
+	
+}
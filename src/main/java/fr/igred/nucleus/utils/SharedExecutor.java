@@ -0,0 +1,71 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Thread pool shared by the image processing algorithms that split their work (slices, lines...) between threads.
+ * <p>
+ * The pool is a fork/join pool, so a parallel loop started from a task already running in the pool does not block a
+ * worker thread: the waiting thread helps with the pending tasks instead.
+ */
+public final class SharedExecutor {
+	
+	/** Shared pool, sized on the number of available processors */
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	
+	
+	/** Default constructor: private to prevent instantiation */
+	private SharedExecutor() {
+		// Prevent instantiation
+	}
+	
+	
+	/**
+	 * Runs a task for each index between start (inclusive) and end (exclusive), in parallel, and waits for all of them
+	 * to complete.
+	 *
+	 * @param start first index
+	 * @param end   last index (exclusive)
+	 * @param task  task to run for each index
+	 */
+	public static void parallelFor(int start, int end, IntConsumer task) {
+		if (end - start <= 1) {
+			for (int index = start; index < end; ++index) {
+				task.accept(index);
+			}
+		} else {
+			POOL.submit(() -> IntStream.range(start, end).parallel().forEach(task)).join();
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of threads of the shared pool.
+	 *
+	 * @return the parallelism level
+	 */
+	public static int getParallelism() {
+		return POOL.getParallelism();
+	}
+	
+}
@@ -18,7 +18,6 @@
 package fr.igred.nucleus.utils;
 
 import ij.ImagePlus;
-import ij.ImageStack;
 import ij.plugin.ContrastEnhancer;
 import ij.process.AutoThresholder;
 import ij.process.ImageConverter;
@@ -113,19 +112,18 @@ public final class Thresholding {
 	 * @param upperThreshold upper threshold value
 	 */
 	public static void convertToMask(ImagePlus input, double lowerThreshold, double upperThreshold) {
-		ImageStack stack = input.getStack();
-		for (int z = 0; z < input.getStackSize(); ++z) {
-			for (int x = 0; x < input.getWidth(); ++x) {
-				for (int y = 0; y < input.getHeight(); ++y) {
-					double voxelValue = stack.getVoxel(x, y, z);
-					if (voxelValue >= lowerThreshold && voxelValue <= upperThreshold) {
-						stack.setVoxel(x, y, z, 255);
-					} else {
-						stack.setVoxel(x, y, z, 0);
-					}
+		VoxelView voxels = VoxelView.of(input);
+		int       size   = input.getWidth() * input.getHeight();
+		voxels.forEachSlice(z -> {
+			for (int offset = 0; offset < size; ++offset) {
+				double voxelValue = voxels.get(z, offset);
+				if (voxelValue >= lowerThreshold && voxelValue <= upperThreshold) {
+					voxels.set(z, offset, 255);
+				} else {
+					voxels.set(z, offset, 0);
 				}
 			}
-		}
+		});
 		ImageConverter converter = new ImageConverter(input);
 		converter.convertToGray8(); // Ensure mask is 8-bit
 	}
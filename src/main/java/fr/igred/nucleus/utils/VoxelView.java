@@ -0,0 +1,266 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+import java.util.function.IntConsumer;
+
+
+/**
+ * Typed view over the pixel arrays of an 8-bit, 16-bit or 32-bit image stack, to read and write voxels without going
+ * through {@link ImageStack#getVoxel(int, int, int)}.
+ * <p>
+ * Voxels are visited in row-major order (z, then y, then x), which is the order of the pixel arrays. Voxel (x, y) of a
+ * slice is at offset {@code y * width + x} in that slice. Values are written as {@link ImageStack#setVoxel} does:
+ * rounded and clamped for 8-bit and 16-bit images.
+ */
+public final class VoxelView {
+	/** 8-bit pixels */
+	private static final int BYTE  = 0;
+	/** 16-bit pixels */
+	private static final int SHORT = 1;
+	/** 32-bit pixels */
+	private static final int FLOAT = 2;
+	
+	/** Image width */
+	private final int      width;
+	/** Image height */
+	private final int      height;
+	/** Image depth */
+	private final int      depth;
+	/** Pixel type */
+	private final int      type;
+	/** Pixel array of each slice */
+	private final Object[] slices;
+	
+	
+	/**
+	 * Creates a view over an image stack.
+	 *
+	 * @param stack 8-bit, 16-bit or 32-bit image stack
+	 */
+	public VoxelView(ImageStack stack) {
+		this.width = stack.getWidth();
+		this.height = stack.getHeight();
+		this.depth = stack.getSize();
+		this.slices = new Object[depth];
+		for (int z = 0; z < depth; ++z) {
+			slices[z] = stack.getPixels(z + 1);
+		}
+		Object pixels = depth > 0 ? slices[0] : null;
+		if (pixels instanceof byte[]) {
+			this.type = BYTE;
+		} else if (pixels instanceof short[]) {
+			this.type = SHORT;
+		} else if (pixels instanceof float[]) {
+			this.type = FLOAT;
+		} else {
+			throw new IllegalArgumentException("Unsupported image type: only 8-bit, 16-bit and 32-bit are handled");
+		}
+	}
+	
+	
+	/**
+	 * Creates a view over the stack of an image.
+	 *
+	 * @param image 8-bit, 16-bit or 32-bit image
+	 *
+	 * @return the view
+	 */
+	public static VoxelView of(ImagePlus image) {
+		return new VoxelView(image.getStack());
+	}
+	
+	
+	/** @return the image width */
+	public int getWidth() {
+		return width;
+	}
+	
+	
+	/** @return the image height */
+	public int getHeight() {
+		return height;
+	}
+	
+	
+	/** @return the image depth */
+	public int getDepth() {
+		return depth;
+	}
+	
+	
+	/**
+	 * Returns the value of a voxel.
+	 *
+	 * @param z      slice index (from 0)
+	 * @param offset offset of the voxel in the slice
+	 *
+	 * @return the voxel value
+	 */
+	public float get(int z, int offset) {
+		switch (type) {
+			case BYTE:
+				return ((byte[]) slices[z])[offset] & 0xFF;
+			case SHORT:
+				return ((short[]) slices[z])[offset] & 0xFFFF;
+			default:
+				return ((float[]) slices[z])[offset];
+		}
+	}
+	
+	
+	/**
+	 * Returns the value of a voxel.
+	 *
+	 * @param x column
+	 * @param y row
+	 * @param z slice index (from 0)
+	 *
+	 * @return the voxel value
+	 */
+	public float get(int x, int y, int z) {
+		return get(z, y * width + x);
+	}
+	
+	
+	/**
+	 * Sets the value of a voxel.
+	 *
+	 * @param z      slice index (from 0)
+	 * @param offset offset of the voxel in the slice
+	 * @param value  new value
+	 */
+	public void set(int z, int offset, double value) {
+		switch (type) {
+			case BYTE:
+				((byte[]) slices[z])[offset] = (byte) (Math.max(0, Math.min(255, value)) + 0.5);
+				break;
+			case SHORT:
+				((short[]) slices[z])[offset] = (short) (Math.max(0, Math.min(65535, value)) + 0.5);
+				break;
+			default:
+				((float[]) slices[z])[offset] = (float) value;
+		}
+	}
+	
+	
+	/**
+	 * Sets the value of a voxel.
+	 *
+	 * @param x     column
+	 * @param y     row
+	 * @param z     slice index (from 0)
+	 * @param value new value
+	 */
+	public void set(int x, int y, int z, double value) {
+		set(z, y * width + x, value);
+	}
+	
+	
+	/**
+	 * Visits every voxel in row-major order.
+	 *
+	 * @param action action run for each voxel
+	 */
+	public void forEach(VoxelConsumer action) {
+		for (int z = 0; z < depth; ++z) {
+			forEachInSlice(z, action);
+		}
+	}
+	
+	
+	/**
+	 * Visits every voxel, slices being split between the threads of the {@link SharedExecutor}. Voxels of a slice are
+	 * visited in row-major order, by a single thread.
+	 *
+	 * @param action action run for each voxel, which must be safe to call from several threads
+	 */
+	public void forEachParallel(VoxelConsumer action) {
+		forEachSlice(z -> forEachInSlice(z, action));
+	}
+	
+	
+	/**
+	 * Runs an action for each slice, slices being split between the threads of the {@link SharedExecutor}.
+	 *
+	 * @param action action run with each slice index (from 0)
+	 */
+	public void forEachSlice(IntConsumer action) {
+		SharedExecutor.parallelFor(0, depth, action);
+	}
+	
+	
+	/**
+	 * Visits the voxels of a slice in row-major order.
+	 *
+	 * @param z      slice index (from 0)
+	 * @param action action run for each voxel
+	 */
+	public void forEachInSlice(int z, VoxelConsumer action) {
+		int offset = 0;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				action.accept(x, y, z, get(z, offset++));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Visits, in row-major order, the voxels which are above 0 in a mask of the same size.
+	 *
+	 * @param mask   mask image
+	 * @param action action run for each voxel of the mask
+	 */
+	public void forEachMasked(VoxelView mask, VoxelConsumer action) {
+		if (mask.width != width || mask.height != height || mask.depth != depth) {
+			throw new IllegalArgumentException("Mask size does not match image size");
+		}
+		for (int z = 0; z < depth; ++z) {
+			int offset = 0;
+			for (int y = 0; y < height; ++y) {
+				for (int x = 0; x < width; ++x) {
+					if (mask.get(z, offset) > 0) {
+						action.accept(x, y, z, get(z, offset));
+					}
+					++offset;
+				}
+			}
+		}
+	}
+	
+	
+	/** Action run on a voxel. */
+	@FunctionalInterface
+	public interface VoxelConsumer {
+		/**
+		 * Runs the action on a voxel.
+		 *
+		 * @param x     column
+		 * @param y     row
+		 * @param z     slice index (from 0)
+		 * @param value voxel value
+		 */
+		void accept(int x, int y, int z, float value);
+		
+	}
+	
+}
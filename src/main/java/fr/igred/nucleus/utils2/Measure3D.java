@@ -20,6 +20,7 @@ package fr.igred.nucleus.utils2;
 
 import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
+import fr.igred.nucleus.core.LabelStatistics;
 import fr.igred.nucleus.utils.Histogram;
 import fr.igred.nucleus.utils.VoxelRecord;
 import ij.ImagePlus;
@@ -87,14 +88,10 @@ public class Measure3D {
 	 * @return double table which contain the volume of each image object
 	 */
 	public double[] computeVolumeOfAllObjects(ImagePlus imagePlusInput) {
-		Histogram histogram = new Histogram();
-		histogram.run(imagePlusInput);
-		double[]             tlabel        = histogram.getLabels();
-		double[]             tObjectVolume = new double[tlabel.length];
-		Map<Double, Integer> hist          = histogram.getHistogram();
-		for (int i = 0; i < tlabel.length; ++i) {
-			int nbVoxel = hist.get(tlabel[i]);
-			tObjectVolume[i] = nbVoxel * xCal * yCal * zCal;
+		LabelStatistics statistics    = LabelStatistics.of(imagePlusInput);
+		double[]        tObjectVolume = new double[statistics.getNbLabels()];
+		for (int i = 0; i < tObjectVolume.length; ++i) {
+			tObjectVolume[i] = statistics.getVolume(i, xCal, yCal, zCal);
 		}
 		return tObjectVolume;
 	}
@@ -360,32 +357,6 @@ public class Measure3D {
 	}
 	
 	
-	/**
-	 * @param label
-	 * @param segImg
-	 *
-	 * @return
-	 */
-	private double objectIntensity(double label, ImagePlus segImg) {
-		double     meanIntensity = 0;
-		int        voxelCounted  = 0;
-		ImageStack imageStackRaw = rawImage.getStack();
-		ImageStack imageStackSeg = segImg.getStack();
-		for (int k = 0; k < rawImage.getStackSize(); ++k) {
-			for (int i = 0; i < rawImage.getWidth(); ++i) {
-				for (int j = 0; j < rawImage.getHeight(); ++j) {
-					if (imageStackSeg.getVoxel(i, j, k) == label) {
-						meanIntensity += imageStackRaw.getVoxel(i, j, k);
-						voxelCounted++;
-					}
-					
-				}
-			}
-		}
-		return voxelCounted != 0 ? meanIntensity / voxelCounted : 0;
-	}
-	
-	
 	public void setRawImage(ImagePlus raw) {
 		this.rawImage = raw;
 	}
@@ -397,14 +368,13 @@ public class Measure3D {
 	 * @return
 	 */
 	public double[] computeIntensityofAllObjects(ImagePlus input) {
-		Histogram histogram = new Histogram();
-		histogram.run(input);
-		double nucAvgIntesnity = meanIntensity();
+		LabelStatistics statistics      = LabelStatistics.of(input, rawImage);
+		double          nucAvgIntesnity = meanIntensity();
 		
-		double[] tlabel     = histogram.getLabels();
+		double[] tlabel     = statistics.getLabels();
 		double[] tIntensity = new double[tlabel.length];
 		for (int i = 0; i < tlabel.length; ++i) {
-			double meh = objectIntensity(tlabel[i], input);
+			double meh = statistics.getIntensityMean(i);
 			tIntensity[i] = meh / nucAvgIntesnity;
 			LOGGER.debug("Object: {}\tNucleus intensity: {}\tRatio: {}", tlabel[i], nucAvgIntesnity, tIntensity[i]);
 		}
@@ -475,14 +445,14 @@ public class Measure3D {
 		double    voxelMedianValue = 0;
 		Histogram histogram        = new Histogram();
 		histogram.run(rawImage);
-		Map<Double, Integer> segNucHisto = histogram.getHistogram();
+		double[] labels = histogram.getLabels();
 		
 		int medianElementStop = rawImage.getHeight() * rawImage.getWidth() * rawImage.getNSlices() / 2;
 		int increment         = 0;
-		for (Map.Entry<Double, Integer> entry : segNucHisto.entrySet()) {
-			increment += entry.getValue();
+		for (int i = 0; i < labels.length; ++i) {
+			increment += histogram.getCountAt(i);
 			if (increment > medianElementStop) {
-				voxelMedianValue = entry.getKey();
+				voxelMedianValue = labels[i];
 				break;
 			}
 		}
@@ -19,6 +19,7 @@ package fr.igred.nucleus.utils2;
 
 import fr.igred.nucleus.process.ChromocenterParameters;
 import fr.igred.nucleus.utils.Histogram;
+import fr.igred.nucleus.utils.RunMetrics;
 import fr.igred.omero.Client;
 import fr.igred.omero.exception.AccessException;
 import fr.igred.omero.exception.ServiceException;
@@ -73,6 +74,23 @@ public final class NucleusChromocentersAnalysis {
 	public static File[] compute3DParameters(ImagePlus imagePlusInput, ImagePlus imagePlusSegmented,
 	                                         ImagePlus imagePlusCC,
 	                                         ChromocenterParameters params) throws IOException {
+		return save3DParameters(compute3DParametersText(imagePlusInput, imagePlusSegmented, imagePlusCC), params);
+	}
+	
+	
+	/**
+	 * Analysis for one nucleus, without writing the results: the lines are returned so that results computed in
+	 * parallel can be saved in a given order with {@link #save3DParameters(String[], ChromocenterParameters)}.
+	 *
+	 * @param imagePlusInput     raw image
+	 * @param imagePlusSegmented segmented nucleus
+	 * @param imagePlusCC        segmented chromocenters
+	 *
+	 * @return the nucleus line and the chromocenters lines
+	 */
+	public static String[] compute3DParametersText(ImagePlus imagePlusInput,
+	                                               ImagePlus imagePlusSegmented,
+	                                               ImagePlus imagePlusCC) {
 		LOGGER.info("3D PARAMETERS ");
 		Histogram histogram = new Histogram();
 		histogram.run(imagePlusCC);
@@ -84,19 +102,8 @@ public final class NucleusChromocentersAnalysis {
 		                                    imagePlusInput.getCalibration().pixelWidth,
 		                                    imagePlusInput.getCalibration().pixelHeight,
 		                                    imagePlusInput.getCalibration().pixelDepth);
-		File    fileResults   = new File(params.getOutputFolder() + "NucAndCcParameters3D.tab");
-		File    fileResultsCC = new File(params.getOutputFolder() + "CcParameters3D.tab");
-		boolean exist         = fileResults.exists();
-		
-		
 		String text   = "";
 		String textCC = "";
-		if (!exist) {
-			text = params.getAnalysisParametersNodeJ();
-			text += getResultsColumnNames();
-			textCC = params.getAnalysisParametersNodeJ();
-			textCC += getResultsColumnNamesCC();
-		}
 		
 		text += measure3D.nucleusParameter3D() + "," +
 		        measure3D.computeVolumeRHF(imagePlusSegmented, imagePlusCC) + ",";
@@ -134,6 +141,37 @@ public final class NucleusChromocentersAnalysis {
 		}
 		
 		text += voxelVolume + System.lineSeparator();
+		return new String[]{text, textCC};
+	}
+	
+	
+	/**
+	 * Appends the results of one nucleus to the output files, with the analysis parameters and column names if the
+	 * files do not exist yet.
+	 *
+	 * @param results the nucleus line and the chromocenters lines
+	 * @param params  chromocenter parameters
+	 *
+	 * @return File[] with the results of the analysis
+	 *
+	 * @throws IOException if the files could not be written
+	 */
+	public static synchronized File[] save3DParameters(String[] results, ChromocenterParameters params)
+	throws IOException {
+		File    fileResults   = new File(params.getOutputFolder() + "NucAndCcParameters3D.tab");
+		File    fileResultsCC = new File(params.getOutputFolder() + "CcParameters3D.tab");
+		boolean exist         = fileResults.exists();
+		
+		String text   = "";
+		String textCC = "";
+		if (!exist) {
+			text = params.getAnalysisParametersNodeJ();
+			text += getResultsColumnNames();
+			textCC = params.getAnalysisParametersNodeJ();
+			textCC += getResultsColumnNamesCC();
+		}
+		text += results[0];
+		textCC += results[1];
 		
 		try (BufferedWriter output = new BufferedWriter(new FileWriter(fileResults, true))) {
 			output.write(text);
@@ -144,6 +182,7 @@ public final class NucleusChromocentersAnalysis {
 			outputCC.write(textCC);
 			outputCC.flush();
 		}
+		RunMetrics.addBytesWritten((long) text.length() + textCC.length());
 		return new File[]{fileResults, fileResultsCC};
 	}
 	
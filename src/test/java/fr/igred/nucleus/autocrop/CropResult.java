@@ -35,12 +35,12 @@ public class CropResult {
 		this.cropNumber = cropNumber;
 		this.channel = channel;
 		
-		box = new Box((short) xStart,
-		              (short) (xStart + width),
-		              (short) yStart,
-		              (short) (yStart + height),
-		              (short) zStart,
-		              (short) (zStart + depth)
+		box = new Box(xStart,
+		              xStart + width,
+		              yStart,
+		              yStart + height,
+		              zStart,
+		              zStart + depth
 		);
 	}
 	
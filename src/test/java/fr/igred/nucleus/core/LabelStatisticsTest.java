@@ -0,0 +1,224 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.core;
+
+import fr.igred.nucleus.utils.Histogram;
+import fr.igred.nucleus.utils.VoxelRecord;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+@Tag("unit")
+class LabelStatisticsTest {
+	
+	private static final double EPSILON = 1.0e-9;
+	
+	
+	/**
+	 * Creates a random label image: runs of equal labels, background voxels and, for 32-bit images, non-integer labels.
+	 */
+	private static ImagePlus labels(Random random, int width, int height, int depth, int bitDepth) {
+		ImageStack stack = new ImageStack(width, height);
+		for (int k = 0; k < depth; k++) {
+			ImageProcessor ip;
+			if (bitDepth == 8) {
+				ip = new ByteProcessor(width, height);
+			} else if (bitDepth == 16) {
+				ip = new ShortProcessor(width, height);
+			} else {
+				ip = new FloatProcessor(width, height);
+			}
+			for (int i = 0; i < width * height; i++) {
+				float label = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(12);
+				if (bitDepth == 32 && random.nextBoolean()) {
+					label += 0.5f;
+				}
+				if (i > 0 && random.nextBoolean()) {
+					label = ip.getf(i - 1);
+				}
+				ip.setf(i, label);
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("labels", stack);
+	}
+	
+	
+	private static ImagePlus values(Random random, int width, int height, int depth) {
+		ImageStack stack = new ImageStack(width, height);
+		for (int k = 0; k < depth; k++) {
+			ImageProcessor ip = new FloatProcessor(width, height);
+			for (int i = 0; i < width * height; i++) {
+				ip.setf(i, random.nextFloat() * 50 - 10);
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("values", stack);
+	}
+	
+	
+	/**
+	 * Compares the statistics of one object with those computed voxel by voxel.
+	 */
+	private static void assertObject(ImagePlus labels, ImagePlus values, double label, LabelStatistics statistics) {
+		ImageStack ls    = labels.getStack();
+		ImageStack vs    = values.getStack();
+		int        index = statistics.indexOf(label);
+		
+		long   count = 0;
+		double sum   = 0;
+		double min   = Double.MAX_VALUE;
+		double max   = -Double.MAX_VALUE;
+		long   sumX  = 0;
+		long   sumY  = 0;
+		long   sumZ  = 0;
+		int[]  box   = {Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1};
+		for (int k = 0; k < labels.getNSlices(); k++) {
+			for (int j = 0; j < labels.getHeight(); j++) {
+				for (int i = 0; i < labels.getWidth(); i++) {
+					if (ls.getVoxel(i, j, k) == label) {
+						double value = vs.getVoxel(i, j, k);
+						count++;
+						sum += value;
+						min = Math.min(min, value);
+						max = Math.max(max, value);
+						sumX += i;
+						sumY += j;
+						sumZ += k;
+						box[0] = Math.min(box[0], i);
+						box[1] = Math.max(box[1], i);
+						box[2] = Math.min(box[2], j);
+						box[3] = Math.max(box[3], j);
+						box[4] = Math.min(box[4], k);
+						box[5] = Math.max(box[5], k);
+					}
+				}
+			}
+		}
+		double cx  = (double) sumX / count;
+		double cy  = (double) sumY / count;
+		double cz  = (double) sumZ / count;
+		double cxx = 0;
+		double cxy = 0;
+		double czz = 0;
+		for (int k = 0; k < labels.getNSlices(); k++) {
+			for (int j = 0; j < labels.getHeight(); j++) {
+				for (int i = 0; i < labels.getWidth(); i++) {
+					if (ls.getVoxel(i, j, k) == label) {
+						cxx += (i - cx) * (i - cx);
+						cxy += (i - cx) * (j - cy);
+						czz += (k - cz) * (k - cz);
+					}
+				}
+			}
+		}
+		
+		String message = "Label " + label;
+		assertEquals(count, statistics.getVoxelCount(index), message);
+		assertEquals(count * 0.5 * 0.5 * 2, statistics.getVolume(index, 0.5, 0.5, 2), EPSILON, message);
+		assertEquals(sum, statistics.getIntensitySum(index), EPSILON, message);
+		assertEquals(sum / count, statistics.getIntensityMean(index), EPSILON, message);
+		assertEquals(min, statistics.getIntensityMin(index), message);
+		assertEquals(max, statistics.getIntensityMax(index), message);
+		assertArrayEquals(box, statistics.getBoundingBox(index), message);
+		
+		VoxelRecord barycenter = statistics.getBarycenter(index);
+		assertEquals(sumX / count, barycenter.getI(), message);
+		assertEquals(sumY / count, barycenter.getJ(), message);
+		assertEquals(sumZ / count, barycenter.getK(), message);
+		
+		double[][] covariance = statistics.getCovariance(index, 0.5, 0.5, 2);
+		assertEquals(0.25 * cxx / count, covariance[0][0], EPSILON, message);
+		assertEquals(0.25 * cxy / count, covariance[0][1], EPSILON, message);
+		assertEquals(4 * czz / count, covariance[2][2], EPSILON, message);
+	}
+	
+	
+	@Test
+	void matchesVoxelByVoxelMeasures() {
+		Random random = new Random(9);
+		for (int t = 0; t < 60; t++) {
+			int       width    = 1 + random.nextInt(25);
+			int       height   = 1 + random.nextInt(25);
+			int       depth    = 1 + random.nextInt(10);
+			int       bitDepth = new int[]{8, 16, 32}[t % 3];
+			ImagePlus labels   = labels(random, width, height, depth, bitDepth);
+			ImagePlus values   = values(random, width, height, depth);
+			
+			Histogram histogram = new Histogram();
+			histogram.run(labels);
+			LabelStatistics statistics = LabelStatistics.of(labels, values);
+			assertArrayEquals(histogram.getLabels(), statistics.getLabels());
+			assertEquals(histogram.getNbLabels(), statistics.getNbLabels());
+			for (double label : histogram.getLabels()) {
+				assertObject(labels, values, label, statistics);
+			}
+		}
+	}
+	
+	
+	@Test
+	void labelsAreTheirOwnIntensities() {
+		Random          random     = new Random(10);
+		ImagePlus       labels     = labels(random, 12, 10, 4, 16);
+		LabelStatistics statistics = LabelStatistics.of(labels);
+		for (int index = 0; index < statistics.getNbLabels(); index++) {
+			double label = statistics.getLabels()[index];
+			assertEquals(label, statistics.getIntensityMin(index));
+			assertEquals(label, statistics.getIntensityMax(index));
+			assertEquals(label * statistics.getVoxelCount(index), statistics.getIntensitySum(index), EPSILON);
+		}
+		assertEquals(-1, statistics.indexOf(0));
+		assertEquals(-1, statistics.indexOf(100));
+	}
+	
+	
+	@Test
+	void imagesModifiedInPlaceAreMeasuredAgain() {
+		Random    random = new Random(11);
+		ImagePlus labels = labels(random, 10, 8, 3, 8);
+		ImagePlus values = values(random, 10, 8, 3);
+		
+		LabelStatistics before = LabelStatistics.of(labels, values);
+		ImageStack      stack  = labels.getStack();
+		for (int z = 1; z <= stack.getSize(); z++) {
+			ImageProcessor ip = stack.getProcessor(z);
+			for (int i = 0; i < ip.getPixelCount(); i++) {
+				ip.set(i, i % 2 == 0 ? 0 : 200);
+			}
+		}
+		LabelStatistics after = LabelStatistics.of(labels, values);
+		
+		assertArrayEquals(new double[]{200}, after.getLabels());
+		assertEquals(10 * 8 * 3 / 2, after.getVoxelCount(0));
+		assertObject(labels, values, 200, after);
+		assertEquals(-1, after.indexOf(before.getLabels()[0]));
+	}
+	
+}
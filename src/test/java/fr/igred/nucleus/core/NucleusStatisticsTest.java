@@ -0,0 +1,191 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.core;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+@Tag("unit")
+class NucleusStatisticsTest {
+	private static final double X_CAL = 0.1;
+	private static final double Y_CAL = 0.1;
+	private static final double Z_CAL = 0.2;
+	
+	
+	/**
+	 * Builds a nucleus mask: an ellipsoid at 255, with a few voxels at other values that must be ignored.
+	 */
+	private static ImagePlus mask(int width, int height, int depth) {
+		ImageStack stack = new ImageStack(width, height);
+		for (int k = 0; k < depth; ++k) {
+			ByteProcessor ip = new ByteProcessor(width, height);
+			for (int j = 0; j < height; ++j) {
+				for (int i = 0; i < width; ++i) {
+					double dx = (i - width * 0.45) / (width * 0.35);
+					double dy = (j - height * 0.5) / (height * 0.25);
+					double dz = (k - depth * 0.5) / (depth * 0.4);
+					if (dx * dx + dy * dy + dz * dz <= 1) {
+						ip.set(i, j, 255);
+					} else if ((i + j + k) % 17 == 0) {
+						ip.set(i, j, 3);
+					}
+				}
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("mask", stack);
+	}
+	
+	
+	/**
+	 * Builds a noisy raw image, brighter inside the mask.
+	 */
+	private static ImagePlus raw(ImagePlus mask, boolean sixteenBits) {
+		Random     random = new Random(42);
+		ImageStack stack  = new ImageStack(mask.getWidth(), mask.getHeight());
+		for (int k = 0; k < mask.getStackSize(); ++k) {
+			ImageProcessor ip = sixteenBits ?
+			                    new ShortProcessor(mask.getWidth(), mask.getHeight()) :
+			                    new ByteProcessor(mask.getWidth(), mask.getHeight());
+			ImageProcessor ipMask = mask.getStack().getProcessor(k + 1);
+			int            scale  = sixteenBits ? 200 : 1;
+			for (int index = 0; index < ip.getPixelCount(); ++index) {
+				int base = ipMask.get(index) == 255 ? 150 : 20;
+				ip.set(index, (base + random.nextInt(100)) * scale);
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("raw", stack);
+	}
+	
+	
+	/** Previous volume computation: count of the voxels at 255. */
+	private static double referenceVolume(ImagePlus mask) {
+		ImageStack stack = mask.getStack();
+		int        count = 0;
+		for (int k = 0; k < mask.getStackSize(); ++k) {
+			for (int i = 0; i < mask.getWidth(); ++i) {
+				for (int j = 0; j < mask.getHeight(); ++j) {
+					if (stack.getVoxel(i, j, k) == 255) {
+						count++;
+					}
+				}
+			}
+		}
+		return count * X_CAL * Y_CAL * Z_CAL;
+	}
+	
+	
+	/** Previous background mean computation: mean of the raw voxels at 0 in the mask. */
+	private static double referenceBackgroundMean(ImagePlus raw, ImagePlus mask) {
+		double mean  = 0;
+		int    count = 0;
+		for (int k = 0; k < raw.getStackSize(); ++k) {
+			for (int i = 0; i < raw.getWidth(); ++i) {
+				for (int j = 0; j < raw.getHeight(); ++j) {
+					if (mask.getStack().getVoxel(i, j, k) == 0) {
+						mean += raw.getStack().getVoxel(i, j, k);
+						count++;
+					}
+				}
+			}
+		}
+		return count != 0 ? mean / count : 0;
+	}
+	
+	
+	/** Previous histogram computation: intensities of the raw voxels at 255 (or not) in the mask. */
+	private static Map<Double, Integer> referenceHistogram(ImagePlus raw, ImagePlus mask, boolean nucleus) {
+		Map<Double, Integer> histogram = new TreeMap<>();
+		for (int k = 0; k < raw.getStackSize(); ++k) {
+			for (int i = 0; i < raw.getWidth(); ++i) {
+				for (int j = 0; j < raw.getHeight(); ++j) {
+					if (mask.getStack().getVoxel(i, j, k) == 255 == nucleus) {
+						histogram.merge(raw.getStack().getVoxel(i, j, k), 1, Integer::sum);
+					}
+				}
+			}
+		}
+		return histogram;
+	}
+	
+	
+	/** Eigen values computed by the per-label path of Measure3D, which scans the mask on each call. */
+	private static double[] referenceEigenValues(ImagePlus mask) {
+		Measure3D measure3D = new Measure3D(new ImagePlus[]{mask}, null, X_CAL, Y_CAL, Z_CAL);
+		return measure3D.computeEigenValue3D(NucleusStatistics.NUCLEUS);
+	}
+	
+	
+	private static void assertSameAsReference(ImagePlus raw, ImagePlus mask) {
+		NucleusStatistics statistics = NucleusStatistics.compute(raw, mask);
+		
+		assertEquals(referenceVolume(mask), statistics.getVolume(X_CAL, Y_CAL, Z_CAL), 1.0e-9);
+		assertEquals(referenceBackgroundMean(raw, mask), statistics.getBackgroundMean(), 1.0e-9);
+		assertEquals(referenceHistogram(raw, mask, true), statistics.getNucleusHistogram());
+		assertEquals(referenceHistogram(raw, mask, false), statistics.getBackgroundHistogram());
+		assertArrayEquals(referenceEigenValues(mask), statistics.getEigenValues(X_CAL, Y_CAL, Z_CAL), 1.0e-9);
+	}
+	
+	
+	@Test
+	void matchesPreviousResultsOn8BitImages() {
+		ImagePlus mask = mask(40, 32, 12);
+		assertSameAsReference(raw(mask, false), mask);
+	}
+	
+	
+	@Test
+	void matchesPreviousResultsOn16BitImages() {
+		ImagePlus mask = mask(33, 41, 9);
+		assertSameAsReference(raw(mask, true), mask);
+	}
+	
+	
+	@Test
+	void measure3DSeesImagesModifiedInPlace() {
+		ImagePlus mask      = mask(40, 32, 12);
+		ImagePlus raw       = raw(mask, false);
+		Measure3D measure3D = new Measure3D(new ImagePlus[]{mask}, raw, X_CAL, Y_CAL, Z_CAL);
+		measure3D.computeEigenValue3D(NucleusStatistics.NUCLEUS);
+		
+		/* Erase half of the nucleus: the next measure must not reuse the previous statistics */
+		ImageStack stack = mask.getStack();
+		for (int k = 0; k < mask.getStackSize() / 2; ++k) {
+			ImageProcessor ip = stack.getProcessor(k + 1);
+			for (int index = 0; index < ip.getPixelCount(); ++index) {
+				ip.set(index, 0);
+			}
+		}
+		assertArrayEquals(referenceEigenValues(mask), measure3D.computeEigenValue3D(NucleusStatistics.NUCLEUS), 1.0e-9);
+	}
+	
+}
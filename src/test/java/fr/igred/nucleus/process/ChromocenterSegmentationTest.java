@@ -0,0 +1,92 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.process;
+
+import fr.igred.nucleus.utils.LocalStatistics;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+@Tag("unit")
+class ChromocenterSegmentationTest {
+	
+	/**
+	 * Creates a random mask whose last column, last row and last slice are filled.
+	 */
+	private static ImagePlus borderMask(Random random, int width, int height, int depth) {
+		ImageStack stack = new ImageStack(width, height);
+		for (int z = 0; z < depth; z++) {
+			ByteProcessor ip = new ByteProcessor(width, height);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					boolean border = x == width - 1 || y == height - 1 || z == depth - 1;
+					if (border || random.nextBoolean()) {
+						ip.set(x, y, 255);
+					}
+				}
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("mask", stack);
+	}
+	
+	
+	private static int bruteForceCount(ImagePlus mask) {
+		int count = 0;
+		for (int z = 1; z <= mask.getStackSize(); z++) {
+			ImageStack stack = mask.getStack();
+			for (int y = 0; y < mask.getHeight(); y++) {
+				for (int x = 0; x < mask.getWidth(); x++) {
+					if (stack.getProcessor(z).getf(x, y) > 0) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+	
+	
+	@Test
+	void countNucleusVoxelsIncludesFarBorders() {
+		ImagePlus       mask  = borderMask(new Random(5), 9, 7, 4);
+		LocalStatistics local = new LocalStatistics(mask, mask, false);
+		assertEquals(bruteForceCount(mask), ChromocenterSegmentation.countNucleusVoxels(local, mask));
+	}
+	
+	
+	@Test
+	void countNucleusVoxelsOnFarCorner() {
+		ImageStack stack = new ImageStack(6, 5);
+		for (int z = 0; z < 3; z++) {
+			stack.addSlice(new ByteProcessor(6, 5));
+		}
+		stack.getProcessor(3).set(5, 4, 255);
+		ImagePlus       mask  = new ImagePlus("corner", stack);
+		LocalStatistics local = new LocalStatistics(mask, mask, false);
+		assertEquals(1, ChromocenterSegmentation.countNucleusVoxels(local, mask));
+	}
+	
+}
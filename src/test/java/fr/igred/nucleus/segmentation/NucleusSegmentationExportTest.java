@@ -0,0 +1,125 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.segmentation;
+
+import fr.igred.nucleus.utils.ConvexHullSegmentation;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+@Tag("unit")
+class NucleusSegmentationExportTest {
+	
+	private static final String TITLE = "nucleus.tif";
+	
+	
+	/**
+	 * Creates a binary stack with the given number of foreground voxels, titled like the segmented images.
+	 */
+	private static ImagePlus mask(int foreground) {
+		ImageStack stack = new ImageStack(8, 8);
+		for (int z = 0; z < 3; z++) {
+			ImageProcessor ip = new ByteProcessor(8, 8);
+			if (z == 1) {
+				for (int i = 0; i < foreground; i++) {
+					ip.set(i, 255);
+				}
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus(TITLE, stack);
+	}
+	
+	
+	private static int countForeground(String path) {
+		ImagePlus imp = IJ.openImage(path);
+		assertNotNull(imp, "Cannot open " + path);
+		ImageStack stack = imp.getStack();
+		int        count = 0;
+		for (int z = 1; z <= stack.getSize(); z++) {
+			ImageProcessor ip = stack.getProcessor(z);
+			for (int i = 0; i < ip.getPixelCount(); i++) {
+				if (ip.get(i) > 0) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	
+	private static void delete(String... paths) throws IOException {
+		for (String path : paths) {
+			Files.deleteIfExists(Paths.get(path));
+		}
+	}
+	
+	
+	@Test
+	void otsuAndConvexHullAreSavedToDifferentFiles() throws IOException {
+		SegmentationParameters params       = new SegmentationParameters(".", ".");
+		NucleusSegmentation    segmentation = new NucleusSegmentation(mask(10), params);
+		
+		String otsu       = segmentation.export(mask(10), "OTSU");
+		String convexHull = segmentation.export(mask(20), ConvexHullSegmentation.CONVEX_HULL_ALGORITHM);
+		try {
+			assertNotEquals(otsu, convexHull);
+			assertEquals(TITLE, new File(otsu).getName());
+			assertEquals(TITLE, new File(convexHull).getName());
+			assertEquals(10, countForeground(otsu));
+			assertEquals(20, countForeground(convexHull));
+		} finally {
+			delete(otsu, convexHull);
+		}
+	}
+	
+	
+	@Test
+	void imagesWithTheSameTitleDoNotOverwriteEachOther() throws IOException {
+		SegmentationParameters params = new SegmentationParameters(".", ".");
+		NucleusSegmentation    first  = new NucleusSegmentation(mask(5), params);
+		NucleusSegmentation    second = new NucleusSegmentation(mask(7), params);
+		
+		String firstPath  = first.export(mask(5), "OTSU");
+		String secondPath = second.export(mask(7), "OTSU");
+		try {
+			assertNotEquals(firstPath, secondPath);
+			assertTrue(new File(firstPath).isFile());
+			assertEquals(5, countForeground(firstPath));
+			assertEquals(7, countForeground(secondPath));
+		} finally {
+			delete(firstPath, secondPath);
+		}
+	}
+	
+}
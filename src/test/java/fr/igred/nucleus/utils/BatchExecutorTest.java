@@ -0,0 +1,143 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import fr.igred.nucleus.utils.BatchExecutor.Outcome;
+import fr.igred.nucleus.utils.BatchExecutor.Status;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+@Tag("unit")
+class BatchExecutorTest {
+	
+	/**
+	 * Busy task ignoring interruptions, as ImageJ loops do, until it is released.
+	 */
+	private static String stuck(CountDownLatch release) {
+		while (release.getCount() > 0) {
+			try {
+				release.await(10, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Ignored on purpose
+			}
+		}
+		return "released";
+	}
+	
+	
+	private static List<Status> statuses(BatchExecutor<?, ?> batch) {
+		List<Status> statuses = new ArrayList<>();
+		for (Outcome<?> outcome : batch.getOutcomes()) {
+			statuses.add(outcome.getStatus());
+		}
+		return statuses;
+	}
+	
+	
+	@Test
+	void resultsAreHandedOverInOrder() {
+		BatchExecutor<Integer, Integer> batch   = new BatchExecutor<>(4);
+		List<Integer>                   results = new ArrayList<>();
+		batch.run(Arrays.asList(5, 1, 4, 2, 3), item -> {
+			Thread.sleep(item * 10L);
+			return item * 10;
+		}, (item, result) -> results.add(result));
+		assertEquals(Arrays.asList(50, 10, 40, 20, 30), results);
+	}
+	
+	
+	@Test
+	void failuresAreIsolated() {
+		BatchExecutor<String, String> batch   = new BatchExecutor<>(2);
+		List<String>                  results = new ArrayList<>();
+		Map<String, Throwable> failures = batch.run(Arrays.asList("a", "bad", "c"), item -> {
+			if ("bad".equals(item)) {
+				throw new IOException("Cannot read " + item);
+			}
+			return item.toUpperCase();
+		}, (item, result) -> results.add(result));
+		
+		assertEquals(Arrays.asList("A", "C"), results);
+		assertEquals(1, failures.size());
+		assertInstanceOf(IOException.class, failures.get("bad"));
+		assertEquals(Arrays.asList(Status.SUCCESS, Status.FAILED, Status.SUCCESS), statuses(batch));
+	}
+	
+	
+	@Test
+	void stuckItemDoesNotBlockTheOtherItems() {
+		CountDownLatch                release = new CountDownLatch(1);
+		BatchExecutor<String, String> batch   = new BatchExecutor<>(1);
+		batch.setTimeout(200, TimeUnit.MILLISECONDS);
+		List<String> results = new ArrayList<>();
+		List<String> items   = Arrays.asList("stuck", "a", "b", "c");
+		try {
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				Map<String, Throwable> failures = batch.run(items, item -> {
+					assertTrue(Thread.currentThread().isDaemon(), "Workers must not prevent the JVM from exiting");
+					return "stuck".equals(item) ? stuck(release) : item;
+				}, (item, result) -> results.add(result));
+				assertInstanceOf(TimeoutException.class, failures.get("stuck"));
+			});
+		} finally {
+			release.countDown();
+		}
+		assertEquals(Arrays.asList("a", "b", "c"), results);
+		assertEquals(Arrays.asList(Status.TIMEOUT, Status.SUCCESS, Status.SUCCESS, Status.SUCCESS), statuses(batch));
+	}
+	
+	
+	@Test
+	void reportHasOneLinePerItem() {
+		BatchExecutor<String, String> batch = new BatchExecutor<>(2);
+		batch.run(Arrays.asList("ok", "bad\titem"), item -> {
+			if (item.startsWith("bad")) {
+				throw new IllegalStateException("Broken\nimage");
+			}
+			return item;
+		}, (item, result) -> {
+		});
+		
+		String[] lines = batch.getReport().split(System.lineSeparator());
+		assertEquals(3, lines.length);
+		assertEquals("Item\tStatus\tDuration(ms)\tError\tMessage", lines[0]);
+		assertTrue(lines[1].startsWith("ok\tSUCCESS\t"), lines[1]);
+		String[] failed = lines[2].split("\t");
+		assertEquals("bad item", failed[0]);
+		assertEquals("FAILED", failed[1]);
+		assertEquals(IllegalStateException.class.getName(), failed[3]);
+		assertEquals("Broken image", failed[4]);
+	}
+	
+}
@@ -0,0 +1,196 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+@Tag("unit")
+class ConvexHullSweepTest {
+	
+	private static final int WIDTH  = 40;
+	private static final int HEIGHT = 36;
+	private static final int DEPTH  = 20;
+	
+	
+	private static ImagePlus emptyMask() {
+		ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+		for (int z = 0; z < DEPTH; z++) {
+			stack.addSlice(new ByteProcessor(WIDTH, HEIGHT));
+		}
+		return new ImagePlus("mask", stack);
+	}
+	
+	
+	/**
+	 * Adds an ellipsoid to a mask.
+	 */
+	private static void ellipsoid(ImagePlus mask, double cx, double cy, double cz, double rx, double ry, double rz) {
+		ImageStack stack = mask.getStack();
+		for (int z = 0; z < DEPTH; z++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					double dx = (x - cx) / rx;
+					double dy = (y - cy) / ry;
+					double dz = (z - cz) / rz;
+					if (dx * dx + dy * dy + dz * dz <= 1) {
+						stack.setVoxel(x, y, z, 255);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Computes the convex hull correction as the union of the three images of {@link ConvexHullImageMaker}, as
+	 * ConvexHullSegmentation did before {@link ConvexHullSweep}.
+	 */
+	@SuppressWarnings("deprecation")
+	private static ImagePlus legacy(ImagePlus mask) {
+		ConvexHullImageMaker maker = new ConvexHullImageMaker();
+		maker.setAxes("xy");
+		ImageStack xy = maker.runConvexHullDetection(mask).getStack();
+		maker.setAxes("xz");
+		ImageStack xz = maker.runConvexHullDetection(mask).getStack();
+		maker.setAxes("yz");
+		ImageStack yz = maker.runConvexHullDetection(mask).getStack();
+		
+		ImagePlus  result = mask.duplicate();
+		ImageStack output = result.getStack();
+		for (int z = 0; z < DEPTH; z++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					if (xy.getVoxel(x, y, z) != 0 || yz.getVoxel(y, z, x) != 0 || xz.getVoxel(x, z, y) != 0) {
+						output.setVoxel(x, y, z, 255);
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	
+	private static int count(ImagePlus mask) {
+		ImageStack stack = mask.getStack();
+		int        count = 0;
+		for (int z = 0; z < DEPTH; z++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					if (stack.getVoxel(x, y, z) != 0) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+	
+	
+	private static void assertSameAsLegacy(ImagePlus mask) {
+		ImageStack expected    = legacy(mask).getStack();
+		ImageStack actual      = ConvexHullSweep.run(mask).getStack();
+		int        differences = 0;
+		String     first       = "";
+		for (int z = 0; z < DEPTH; z++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					if (expected.getVoxel(x, y, z) != actual.getVoxel(x, y, z)) {
+						if (differences++ == 0) {
+							first = " first at (" + x + ", " + y + ", " + z + ")";
+						}
+					}
+				}
+			}
+		}
+		assertEquals(0, differences, differences + " voxel(s) differ," + first);
+	}
+	
+	
+	@Test
+	void fillsTheGapOfACShape() {
+		ImagePlus  mask  = emptyMask();
+		ImageStack stack = mask.getStack();
+		for (int z = 5; z < 15; z++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					double r = Math.hypot(x - 20.3, y - 17.6);
+					if (r >= 8 && r <= 14 && x < 27) {
+						stack.setVoxel(x, y, z, 255);
+					}
+				}
+			}
+		}
+		ImagePlus hull = ConvexHullSweep.run(mask);
+		assertTrue(count(hull) > count(mask));
+		assertEquals(255, hull.getStack().getVoxel(20, 17, 10), 0);
+		assertSameAsLegacy(mask);
+	}
+	
+	
+	@Test
+	void fillsTheNeckOfADumbbell() {
+		ImagePlus mask = emptyMask();
+		ellipsoid(mask, 11.2, 17.5, 9.6, 7.5, 8.3, 6.1);
+		ellipsoid(mask, 28.7, 18.1, 10.2, 6.8, 7.4, 5.7);
+		ellipsoid(mask, 20, 17.8, 9.9, 10, 2.2, 2.1);
+		assertSameAsLegacy(mask);
+	}
+	
+	
+	@Test
+	void handlesSeveralComponentsPerSlice() {
+		ImagePlus mask = emptyMask();
+		ellipsoid(mask, 8.4, 8.2, 6.3, 5.1, 4.2, 3.3);
+		ellipsoid(mask, 30.6, 9.1, 12.2, 4.3, 6.7, 4.8);
+		ellipsoid(mask, 18.9, 27.3, 9.4, 8.2, 4.1, 5.6);
+		/* Components too small to be filled */
+		mask.getStack().setVoxel(35, 30, 3, 255);
+		mask.getStack().setVoxel(36, 30, 3, 255);
+		assertSameAsLegacy(mask);
+	}
+	
+	
+	@Test
+	void matchesLegacyOnRandomBlobs() {
+		Random random = new Random(21);
+		for (int n = 0; n < 5; n++) {
+			ImagePlus mask = emptyMask();
+			for (int e = 0; e < 4; e++) {
+				ellipsoid(mask,
+				          4 + random.nextDouble() * (WIDTH - 8),
+				          4 + random.nextDouble() * (HEIGHT - 8),
+				          3 + random.nextDouble() * (DEPTH - 6),
+				          2 + random.nextDouble() * 8,
+				          2 + random.nextDouble() * 8,
+				          1.5 + random.nextDouble() * 5);
+			}
+			assertSameAsLegacy(mask);
+		}
+	}
+	
+}
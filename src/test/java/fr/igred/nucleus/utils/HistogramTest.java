@@ -0,0 +1,178 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+@Tag("unit")
+class HistogramTest {
+	
+	private static final int WIDTH  = 64;
+	private static final int HEIGHT = 48;
+	private static final int DEPTH  = 12;
+	
+	
+	private static ImagePlus image(IntFunction<ImageProcessor> slice, DoubleSupplier values) {
+		ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+		for (int z = 0; z < DEPTH; z++) {
+			ImageProcessor ip = slice.apply(z);
+			for (int i = 0; i < WIDTH * HEIGHT; i++) {
+				ip.setf(i, (float) values.getAsDouble());
+			}
+			stack.addSlice(ip);
+		}
+		return new ImagePlus("histogram", stack);
+	}
+	
+	
+	/**
+	 * Counts the positive values voxel by voxel, as the histogram used to.
+	 */
+	private static SortedMap<Double, Integer> reference(ImagePlus imp) {
+		SortedMap<Double, Integer> counts = new TreeMap<>();
+		ImageStack                 stack  = imp.getStack();
+		for (int z = 0; z < imp.getNSlices(); z++) {
+			for (int y = 0; y < imp.getHeight(); y++) {
+				for (int x = 0; x < imp.getWidth(); x++) {
+					double value = stack.getVoxel(x, y, z);
+					if (value > 0) {
+						counts.merge(value, 1, Integer::sum);
+					}
+				}
+			}
+		}
+		return counts;
+	}
+	
+	
+	private static void assertHistogram(SortedMap<Double, Integer> expected, ImagePlus imp) {
+		for (boolean parallel : new boolean[]{false, true}) {
+			Histogram histogram = new Histogram();
+			histogram.run(imp, parallel);
+			
+			double[] labels = new double[expected.size()];
+			int      index  = 0;
+			for (Map.Entry<Double, Integer> entry : expected.entrySet()) {
+				double value = entry.getKey();
+				int    count = entry.getValue();
+				labels[index] = value;
+				assertEquals(count, histogram.getCountAt(index), "Count of " + value);
+				assertEquals(count, histogram.getCount(value), "Count of " + value);
+				index++;
+			}
+			assertArrayEquals(labels, histogram.getLabels());
+			assertEquals(expected.size(), histogram.getNbLabels());
+			assertEquals(expected.isEmpty() ? -1 : expected.lastKey(), histogram.getLabelMax());
+			assertEquals(expected, histogram.getHistogram());
+			assertEquals(0, histogram.getCount(0));
+			assertEquals(0, histogram.getCount(-1));
+		}
+	}
+	
+	
+	@Test
+	void counts8BitImages() {
+		Random    random = new Random(8);
+		ImagePlus imp    = image(z -> new ByteProcessor(WIDTH, HEIGHT), () -> random.nextInt(256));
+		assertHistogram(reference(imp), imp);
+	}
+	
+	
+	@Test
+	void counts16BitImages() {
+		Random    random = new Random(16);
+		ImagePlus imp    = image(z -> new ShortProcessor(WIDTH, HEIGHT), () -> random.nextInt(65536));
+		assertHistogram(reference(imp), imp);
+	}
+	
+	
+	@Test
+	void countsIntegerLabels() {
+		Random random = new Random(32);
+		/* Integer labels, up to the number of voxels, are counted in bins */
+		ImagePlus imp = image(z -> new FloatProcessor(WIDTH, HEIGHT),
+		                      () -> random.nextInt(10) == 0 ? 30000 + random.nextInt(6000) : random.nextInt(50));
+		assertHistogram(reference(imp), imp);
+	}
+	
+	
+	@Test
+	void countsNonIntegerValues() {
+		Random    random = new Random(33);
+		ImagePlus imp    = image(z -> new FloatProcessor(WIDTH, HEIGHT), () -> random.nextInt(40) / 4.0 - 2);
+		SortedMap<Double, Integer> expected = reference(imp);
+		assertEquals(0.25, expected.firstKey().doubleValue());
+		assertHistogram(expected, imp);
+	}
+	
+	
+	@Test
+	void countsLargeFloatValues() {
+		Random    random = new Random(34);
+		ImagePlus imp    = image(z -> new FloatProcessor(WIDTH, HEIGHT), () -> random.nextInt(4) * 1.0e6);
+		assertHistogram(reference(imp), imp);
+	}
+	
+	
+	@Test
+	void countsRgbColours() {
+		ImageStack                 stack    = new ImageStack(WIDTH, HEIGHT);
+		SortedMap<Double, Integer> expected = new TreeMap<>();
+		Random                     random   = new Random(24);
+		for (int z = 0; z < DEPTH; z++) {
+			ColorProcessor ip = new ColorProcessor(WIDTH, HEIGHT);
+			for (int i = 0; i < WIDTH * HEIGHT; i++) {
+				int colour = random.nextInt(4) * 0x10203 + (random.nextBoolean() ? 0x800000 : 0);
+				/* The alpha byte is not part of the value */
+				ip.set(i, 0xFF000000 | colour);
+				if (colour > 0) {
+					expected.merge((double) colour, 1, Integer::sum);
+				}
+			}
+			stack.addSlice(ip);
+		}
+		assertHistogram(expected, new ImagePlus("rgb", stack));
+	}
+	
+	
+	@Test
+	void emptyImagesHaveNoLabels() {
+		ImagePlus imp = image(z -> new ShortProcessor(WIDTH, HEIGHT), () -> 0);
+		assertHistogram(new TreeMap<>(), imp);
+	}
+	
+}
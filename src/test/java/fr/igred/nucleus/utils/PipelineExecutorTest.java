@@ -0,0 +1,210 @@
+/*
+ * NucleusJ
+ * Copyright (C) 2025 iGReD
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.igred.nucleus.utils;
+
+import fr.igred.nucleus.utils.PipelineExecutor.Step;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+@Tag("unit")
+class PipelineExecutorTest {
+	
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+	
+	
+	private static List<Integer> range(int n) {
+		List<Integer> items = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+	
+	
+	private static PipelineExecutor<Integer, Integer, Integer, Integer> identity() {
+		return new PipelineExecutor<>(item -> item, (item, input) -> input, (item, input) -> input);
+	}
+	
+	
+	@Test
+	void resultsAreHandedOverInOrder() {
+		PipelineExecutor<Integer, Integer, Integer, String> pipeline =
+				new PipelineExecutor<>(item -> item, (item, input) -> {
+					Thread.sleep((10L - input) * 5);
+					return input * 2;
+				}, (item, input) -> "r" + input);
+		pipeline.setThreads(Step.DOWNLOAD, 4);
+		pipeline.setThreads(Step.PROCESS, 4);
+		pipeline.setThreads(Step.UPLOAD, 2);
+		
+		List<String> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			Map<Integer, Throwable> failures = pipeline.run(range(10), (item, result) -> results.add(result));
+			assertTrue(failures.isEmpty());
+		});
+		assertEquals(Arrays.asList("r0", "r2", "r4", "r6", "r8", "r10", "r12", "r14", "r16", "r18"), results);
+	}
+	
+	
+	@Test
+	void downloadsWaitForUploadsBeyondMaxInFlight() {
+		AtomicInteger current = new AtomicInteger();
+		AtomicInteger maximum = new AtomicInteger();
+		PipelineExecutor<Integer, Integer, Integer, Integer> pipeline =
+				new PipelineExecutor<>(item -> {
+					maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+					return item;
+				}, (item, input) -> input, (item, input) -> {
+					Thread.sleep(20);
+					current.decrementAndGet();
+					return input;
+				});
+		pipeline.setThreads(Step.DOWNLOAD, 4);
+		pipeline.setThreads(Step.PROCESS, 4);
+		pipeline.setThreads(Step.UPLOAD, 4);
+		pipeline.setQueueCapacity(8);
+		pipeline.setMaxInFlight(2);
+		
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> pipeline.run(range(12), (item, result) -> results.add(result)));
+		assertEquals(range(12), results);
+		assertEquals(2, maximum.get());
+	}
+	
+	
+	@Test
+	void failedAttemptsAreRetriedWithBackoff() {
+		List<Long> attempts = Collections.synchronizedList(new ArrayList<>());
+		PipelineExecutor<Integer, Integer, Integer, Integer> pipeline =
+				new PipelineExecutor<>(item -> {
+					attempts.add(System.nanoTime());
+					if (attempts.size() < 3) {
+						throw new IOException("Transient failure");
+					}
+					return item;
+				}, (item, input) -> input, (item, input) -> input);
+		pipeline.setRetries(Step.DOWNLOAD, 3, 50, TimeUnit.MILLISECONDS);
+		
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			Map<Integer, Throwable> failures = pipeline.run(range(1), (item, result) -> results.add(result));
+			assertTrue(failures.isEmpty());
+		});
+		assertEquals(range(1), results);
+		assertEquals(3, attempts.size());
+		long first  = TimeUnit.NANOSECONDS.toMillis(attempts.get(1) - attempts.get(0));
+		long second = TimeUnit.NANOSECONDS.toMillis(attempts.get(2) - attempts.get(1));
+		assertTrue(first >= 50, "First retry after " + first + " ms");
+		assertTrue(second >= 100, "Second retry after " + second + " ms");
+	}
+	
+	
+	@Test
+	void failuresAreIsolated() {
+		AtomicInteger attempts = new AtomicInteger();
+		IOException   error    = new IOException("Permanent failure");
+		PipelineExecutor<Integer, Integer, Integer, Integer> pipeline =
+				new PipelineExecutor<>(item -> item, (item, input) -> input, (item, input) -> {
+					if (item == 3) {
+						attempts.incrementAndGet();
+						throw error;
+					}
+					return input;
+				});
+		pipeline.setRetries(Step.UPLOAD, 2, 1, TimeUnit.MILLISECONDS);
+		pipeline.setMaxInFlight(1);
+		
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			Map<Integer, Throwable> failures = pipeline.run(range(6), (item, result) -> results.add(result));
+			assertEquals(Collections.singleton(3), failures.keySet());
+			assertSame(error, failures.get(3));
+		});
+		assertEquals(Arrays.asList(0, 1, 2, 4, 5), results);
+		assertEquals(2, attempts.get());
+	}
+	
+	
+	@Test
+	void errorsDoNotStopTheWorkers() {
+		AtomicInteger attempts = new AtomicInteger();
+		PipelineExecutor<Integer, Integer, Integer, Integer> pipeline =
+				new PipelineExecutor<>(item -> item, (item, input) -> {
+					if (item % 2 == 0) {
+						attempts.incrementAndGet();
+						throw new AssertionError("Broken item " + item);
+					}
+					return input;
+				}, (item, input) -> input);
+		pipeline.setRetries(Step.PROCESS, 3, 1, TimeUnit.MILLISECONDS);
+		
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			Map<Integer, Throwable> failures = pipeline.run(range(6), (item, result) -> results.add(result));
+			assertEquals(Arrays.asList(0, 2, 4), new ArrayList<>(failures.keySet()));
+			assertInstanceOf(AssertionError.class, failures.get(2));
+		});
+		assertEquals(Arrays.asList(1, 3, 5), results);
+		assertEquals(3, attempts.get(), "Errors must not be retried");
+	}
+	
+	
+	@Test
+	void missingResultsAreReportedAsFailures() {
+		PipelineExecutor<Integer, Integer, Integer, Integer> pipeline =
+				new PipelineExecutor<>(item -> item, (item, input) -> input,
+				                       (item, input) -> item == 1 ? null : input);
+				
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			Map<Integer, Throwable> failures = pipeline.run(range(3), (item, result) -> {
+				assertNotNull(result);
+				results.add(result);
+			});
+			assertInstanceOf(IllegalStateException.class, failures.get(1));
+		});
+		assertEquals(Arrays.asList(0, 2), results);
+	}
+	
+	
+	@Test
+	void defaultPipelineProcessesEveryItem() {
+		List<Integer> results = new ArrayList<>();
+		assertTimeoutPreemptively(TIMEOUT, () -> identity().run(range(20), (item, result) -> results.add(result)));
+		assertEquals(range(20), results);
+	}
+	
+}